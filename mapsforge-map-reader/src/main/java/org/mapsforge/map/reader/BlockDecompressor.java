@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * Decompresses blocks in the LZ4 block format. All lengths and offsets are validated, corrupt input never leads to
+ * reads or writes outside of the given arrays.
+ */
+final class BlockDecompressor {
+	private static final int MIN_MATCH = 4;
+	private static final int RUN_MASK = 0x0f;
+
+	/**
+	 * Decompresses the given data into the destination array.
+	 * 
+	 * @param src
+	 *            the array with the compressed data.
+	 * @param srcOffset
+	 *            the offset of the compressed data.
+	 * @param srcLength
+	 *            the length of the compressed data.
+	 * @param dest
+	 *            the array to which the uncompressed data is written, starting at offset zero.
+	 * @param destLength
+	 *            the expected length of the uncompressed data.
+	 * @return true if all compressed data was consumed and exactly the expected length was produced, false otherwise.
+	 */
+	static boolean decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destLength) {
+		if (srcOffset < 0 || srcLength < 1 || srcOffset + srcLength > src.length || destLength > dest.length) {
+			return false;
+		}
+		int srcEnd = srcOffset + srcLength;
+		int srcPosition = srcOffset;
+		int destPosition = 0;
+
+		while (true) {
+			// the input must end with a sequence of literals
+			if (srcPosition == srcEnd) {
+				return false;
+			}
+			int token = src[srcPosition++] & 0xff;
+
+			// copy the literals
+			int literalsLength = token >>> 4;
+			if (literalsLength == RUN_MASK) {
+				int b;
+				do {
+					if (srcPosition == srcEnd) {
+						return false;
+					}
+					b = src[srcPosition++] & 0xff;
+					literalsLength += b;
+				} while (b == 0xff && literalsLength < destLength);
+			}
+			if (literalsLength > srcEnd - srcPosition || literalsLength > destLength - destPosition) {
+				return false;
+			}
+			System.arraycopy(src, srcPosition, dest, destPosition, literalsLength);
+			srcPosition += literalsLength;
+			destPosition += literalsLength;
+
+			// the last sequence has no match
+			if (srcPosition == srcEnd) {
+				return destPosition == destLength;
+			}
+
+			// copy the match, it may overlap with the bytes it produces
+			if (srcEnd - srcPosition < 2) {
+				return false;
+			}
+			int offset = (src[srcPosition++] & 0xff) | (src[srcPosition++] & 0xff) << 8;
+			if (offset == 0 || offset > destPosition) {
+				return false;
+			}
+			int matchLength = token & RUN_MASK;
+			if (matchLength == RUN_MASK) {
+				int b;
+				do {
+					if (srcPosition == srcEnd) {
+						return false;
+					}
+					b = src[srcPosition++] & 0xff;
+					matchLength += b;
+				} while (b == 0xff && matchLength < destLength);
+			}
+			matchLength += MIN_MATCH;
+			if (matchLength > destLength - destPosition) {
+				return false;
+			}
+			int matchPosition = destPosition - offset;
+			for (int i = 0; i < matchLength; ++i) {
+				dest[destPosition++] = dest[matchPosition++];
+			}
+		}
+	}
+
+	private BlockDecompressor() {
+		throw new IllegalStateException();
+	}
+}
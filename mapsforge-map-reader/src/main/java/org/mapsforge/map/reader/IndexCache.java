@@ -69,7 +69,7 @@ class IndexCache {
 	 * @param subFileParameter
 	 *            the parameters of the map file for which the index entry is needed.
 	 * @param blockNumber
-	 *            the number of the block in the map file.
+	 *            the number of the block in the map file, see {@link SubFileParameter#getBlockNumber(long, long)}.
 	 * @return the index entry or -1 if the block number is invalid.
 	 */
 	long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
@@ -476,7 +476,7 @@ public class MapDatabase {
 			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
 
 				// calculate the actual block number of the needed block in the file
-				long blockNumber = row * subFileParameter.blocksWidth + column;
+				long blockNumber = subFileParameter.getBlockNumber(column, row);
 
 				// get the current index entry
 				long currentBlockIndexEntry = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
@@ -532,9 +532,14 @@ public class MapDatabase {
 				// seek to the current block in the map file
 				this.inputFile.seek(subFileParameter.startAddress + currentBlockPointer);
 
-				// read the current block into the buffer
-				if (!this.readBuffer.readFromFile(currentBlockSize)) {
-					// skip the current block
+				// read the current block into the buffer, a block that cannot be read or decompressed ends the query
+				boolean blockRead;
+				if (subFileParameter.blockCompression != SubFileParameter.BLOCK_COMPRESSION_NONE) {
+					blockRead = this.readBuffer.readCompressedFromFile(currentBlockSize);
+				} else {
+					blockRead = this.readBuffer.readFromFile(currentBlockSize);
+				}
+				if (!blockRead) {
 					LOG.warning("reading current block has failed: " + currentBlockSize);
 					return;
 				}
@@ -32,6 +32,7 @@ public class ReadBuffer {
 	static final int MAXIMUM_BUFFER_SIZE = 2500000;
 
 	private byte[] bufferData;
+	private byte[] compressedData;
 	private int bufferPosition;
 	private final RandomAccessFile inputFile;
 
@@ -74,6 +75,52 @@ public class ReadBuffer {
 		return this.inputFile.read(this.bufferData, 0, length) == length;
 	}
 
+	/**
+	 * Reads the given amount of bytes of a compressed block from the file, decompresses them into the read buffer and
+	 * resets the internal buffer position. The compressed data is preceded by the length of the uncompressed data as
+	 * variable byte encoded unsigned int.
+	 * 
+	 * @param length
+	 *            the amount of bytes to read from the file.
+	 * @return true if the whole data was read and decompressed successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	boolean readCompressedFromFile(int length) throws IOException {
+		if (this.compressedData == null || this.compressedData.length < length) {
+			if (length > MAXIMUM_BUFFER_SIZE) {
+				LOG.warning("invalid read length: " + length);
+				return false;
+			}
+			this.compressedData = new byte[length];
+		}
+		if (this.inputFile.read(this.compressedData, 0, length) != length) {
+			return false;
+		}
+
+		// get and check the length of the uncompressed data
+		int uncompressedLength = 0;
+		int position = 0;
+		for (int shift = 0; position < length && shift < 32; shift += 7) {
+			byte b = this.compressedData[position++];
+			uncompressedLength |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+		}
+		if (uncompressedLength < 1 || uncompressedLength > MAXIMUM_BUFFER_SIZE) {
+			LOG.warning("invalid uncompressed length: " + uncompressedLength);
+			return false;
+		}
+
+		if (this.bufferData == null || this.bufferData.length < uncompressedLength) {
+			this.bufferData = new byte[uncompressedLength];
+		}
+		this.bufferPosition = 0;
+		return BlockDecompressor.decompress(this.compressedData, position, length - position, this.bufferData,
+				uncompressedLength);
+	}
+
 	/**
 	 * Converts four bytes from the read buffer to a signed int.
 	 * <p>
@@ -219,6 +219,17 @@ public class MapFileHeader {
 			}
 			subFileParameterBuilder.subFileSize = subFileSize;
 
+			if (mapFileInfoBuilder.optionalFields.hasBlockCompression) {
+				// get and check the codec of the blocks (1 byte)
+				byte blockCompression = readBuffer.readByte();
+				if (blockCompression != SubFileParameter.BLOCK_COMPRESSION_NONE
+						&& blockCompression != SubFileParameter.BLOCK_COMPRESSION_LZ4) {
+					return new FileOpenResult("unsupported block compression: " + blockCompression);
+				}
+				subFileParameterBuilder.blockCompression = blockCompression;
+			}
+
+			subFileParameterBuilder.zOrderBlockLayout = mapFileInfoBuilder.optionalFields.hasZOrderBlockLayout;
 			subFileParameterBuilder.boundingBox = mapFileInfoBuilder.boundingBox;
 
 			// add the current sub-file to the list of sub-files
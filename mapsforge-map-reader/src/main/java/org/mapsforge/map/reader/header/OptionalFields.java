@@ -18,6 +18,16 @@ import org.mapsforge.core.GeoPoint;
 import org.mapsforge.map.reader.ReadBuffer;
 
 final class OptionalFields {
+	/**
+	 * Bitmask for the block compression flag in the file header.
+	 */
+	private static final int HEADER_BITMASK_BLOCK_COMPRESSION = 0x02;
+
+	/**
+	 * Bitmask for the Z-order block layout flag in the file header.
+	 */
+	private static final int HEADER_BITMASK_BLOCK_LAYOUT_Z_ORDER = 0x01;
+
 	/**
 	 * Bitmask for the comment field in the file header.
 	 */
@@ -62,6 +72,17 @@ final class OptionalFields {
 		OptionalFields optionalFields = new OptionalFields(readBuffer.readByte());
 		mapFileInfoBuilder.optionalFields = optionalFields;
 
+		if (optionalFields.hasBlockCompression
+				&& mapFileInfoBuilder.fileVersion < RequiredFields.FILE_VERSION_BLOCK_COMPRESSION) {
+			return new FileOpenResult("block compression requires file version "
+					+ RequiredFields.FILE_VERSION_BLOCK_COMPRESSION + ": " + mapFileInfoBuilder.fileVersion);
+		}
+		if (optionalFields.hasZOrderBlockLayout
+				&& mapFileInfoBuilder.fileVersion < RequiredFields.FILE_VERSION_BLOCK_COMPRESSION) {
+			return new FileOpenResult("Z-order block layout requires file version "
+					+ RequiredFields.FILE_VERSION_BLOCK_COMPRESSION + ": " + mapFileInfoBuilder.fileVersion);
+		}
+
 		FileOpenResult fileOpenResult = optionalFields.readOptionalFields(readBuffer);
 		if (!fileOpenResult.isSuccess()) {
 			return fileOpenResult;
@@ -71,11 +92,13 @@ final class OptionalFields {
 
 	String comment;
 	String createdBy;
+	final boolean hasBlockCompression;
 	final boolean hasComment;
 	final boolean hasCreatedBy;
 	final boolean hasLanguagePreference;
 	final boolean hasStartPosition;
 	final boolean hasStartZoomLevel;
+	final boolean hasZOrderBlockLayout;
 	final boolean isDebugFile;
 	String languagePreference;
 	GeoPoint startPosition;
@@ -88,6 +111,8 @@ final class OptionalFields {
 		this.hasLanguagePreference = (flags & HEADER_BITMASK_LANGUAGE_PREFERENCE) != 0;
 		this.hasComment = (flags & HEADER_BITMASK_COMMENT) != 0;
 		this.hasCreatedBy = (flags & HEADER_BITMASK_CREATED_BY) != 0;
+		this.hasBlockCompression = (flags & HEADER_BITMASK_BLOCK_COMPRESSION) != 0;
+		this.hasZOrderBlockLayout = (flags & HEADER_BITMASK_BLOCK_LAYOUT_Z_ORDER) != 0;
 	}
 
 	private FileOpenResult readLanguagePreference(ReadBuffer readBuffer) {
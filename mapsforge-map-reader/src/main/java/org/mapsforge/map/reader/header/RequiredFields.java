@@ -48,9 +48,14 @@ final class RequiredFields {
 	private static final char SPACE = ' ';
 
 	/**
-	 * Version of the map file format which is supported by this implementation.
+	 * Oldest version of the map file format which is supported by this implementation.
 	 */
-	private static final int SUPPORTED_FILE_VERSION = 3;
+	private static final int SUPPORTED_FILE_VERSION_MIN = 3;
+
+	/**
+	 * Version of the map file format which introduced the block compression.
+	 */
+	static final int FILE_VERSION_BLOCK_COMPRESSION = 4;
 
 	/**
 	 * The maximum latitude values in microdegrees.
@@ -121,7 +126,7 @@ final class RequiredFields {
 	static FileOpenResult readFileVersion(ReadBuffer readBuffer, MapFileInfoBuilder mapFileInfoBuilder) {
 		// get and check the file version (4 bytes)
 		int fileVersion = readBuffer.readInt();
-		if (fileVersion != SUPPORTED_FILE_VERSION) {
+		if (fileVersion < SUPPORTED_FILE_VERSION_MIN || fileVersion > FILE_VERSION_BLOCK_COMPRESSION) {
 			return new FileOpenResult("unsupported file version: " + fileVersion);
 		}
 		mapFileInfoBuilder.fileVersion = fileVersion;
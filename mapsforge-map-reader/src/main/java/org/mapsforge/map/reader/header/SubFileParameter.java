@@ -20,6 +20,16 @@ import org.mapsforge.core.MercatorProjection;
  * Holds all parameters of a sub-file.
  */
 public class SubFileParameter {
+	/**
+	 * Codec of the blocks which are stored uncompressed.
+	 */
+	public static final byte BLOCK_COMPRESSION_NONE = 0;
+
+	/**
+	 * Codec of the blocks which are compressed in the LZ4 block format.
+	 */
+	public static final byte BLOCK_COMPRESSION_LZ4 = 1;
+
 	/**
 	 * Number of bytes a single index entry consists of.
 	 */
@@ -35,6 +45,11 @@ public class SubFileParameter {
 	 */
 	public final byte baseZoomLevel;
 
+	/**
+	 * Codec of the blocks in the sub-file.
+	 */
+	public final byte blockCompression;
+
 	/**
 	 * Size of the entries table at the beginning of each block in bytes.
 	 */
@@ -95,6 +110,11 @@ public class SubFileParameter {
 	 */
 	public final long subFileSize;
 
+	/**
+	 * True if the blocks are stored in Z-order, false if they are stored row by row.
+	 */
+	public final boolean zOrderBlockLayout;
+
 	/**
 	 * Maximum zoom level for which the block entries tables are made.
 	 */
@@ -115,6 +135,8 @@ public class SubFileParameter {
 		this.indexStartAddress = subFileParameterBuilder.indexStartAddress;
 		this.subFileSize = subFileParameterBuilder.subFileSize;
 		this.baseZoomLevel = subFileParameterBuilder.baseZoomLevel;
+		this.blockCompression = subFileParameterBuilder.blockCompression;
+		this.zOrderBlockLayout = subFileParameterBuilder.zOrderBlockLayout;
 		this.zoomLevelMin = subFileParameterBuilder.zoomLevelMin;
 		this.zoomLevelMax = subFileParameterBuilder.zoomLevelMax;
 		this.hashCodeValue = calculateHashCode();
@@ -142,6 +164,46 @@ public class SubFileParameter {
 		this.blockEntriesTableSize = 2 * (this.zoomLevelMax - this.zoomLevelMin + 1) * 2;
 	}
 
+	/**
+	 * Calculates the number of a block, which addresses its entry in the index of the sub-file.
+	 * <p>
+	 * In Z-order the quadrants of the smallest square of 2^k blocks which covers the grid are visited recursively in
+	 * the order upper left, upper right, lower left and lower right, blocks outside of the grid are skipped. The
+	 * number of a block is the number of blocks in the grid which precede it.
+	 * 
+	 * @param blockX
+	 *            the horizontal position of the block in the grid.
+	 * @param blockY
+	 *            the vertical position of the block in the grid.
+	 * @return the number of the block.
+	 */
+	public long getBlockNumber(long blockX, long blockY) {
+		if (!this.zOrderBlockLayout) {
+			return blockY * this.blocksWidth + blockX;
+		}
+
+		long blockNumber = 0;
+		long quadrantX = 0;
+		long quadrantY = 0;
+		for (long size = Long.highestOneBit(Math.max(this.blocksWidth, this.blocksHeight) - 1); size > 0; size >>= 1) {
+			boolean right = blockX >= quadrantX + size;
+			boolean lower = blockY >= quadrantY + size;
+			// all blocks of the quadrants before the quadrant of the block precede it
+			if (right || lower) {
+				blockNumber += getNumberOfBlocks(quadrantX, quadrantY, size);
+			}
+			if (lower) {
+				blockNumber += getNumberOfBlocks(quadrantX + size, quadrantY, size);
+				if (right) {
+					blockNumber += getNumberOfBlocks(quadrantX, quadrantY + size, size);
+				}
+			}
+			quadrantX += right ? size : 0;
+			quadrantY += lower ? size : 0;
+		}
+		return blockNumber;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj) {
@@ -170,6 +232,8 @@ public class SubFileParameter {
 		StringBuilder stringBuilder = new StringBuilder();
 		stringBuilder.append("SubFileParameter [baseZoomLevel=");
 		stringBuilder.append(this.baseZoomLevel);
+		stringBuilder.append(", blockCompression=");
+		stringBuilder.append(this.blockCompression);
 		stringBuilder.append(", blockEntriesTableSize=");
 		stringBuilder.append(this.blockEntriesTableSize);
 		stringBuilder.append(", blocksHeight=");
@@ -192,6 +256,8 @@ public class SubFileParameter {
 		stringBuilder.append(this.startAddress);
 		stringBuilder.append(", subFileSize=");
 		stringBuilder.append(this.subFileSize);
+		stringBuilder.append(", zOrderBlockLayout=");
+		stringBuilder.append(this.zOrderBlockLayout);
 		stringBuilder.append(", zoomLevelMax=");
 		stringBuilder.append(this.zoomLevelMax);
 		stringBuilder.append(", zoomLevelMin=");
@@ -210,4 +276,13 @@ public class SubFileParameter {
 		result = 31 * result + this.baseZoomLevel;
 		return result;
 	}
+
+	/**
+	 * @return the number of blocks of the grid inside of the given quadrant.
+	 */
+	private long getNumberOfBlocks(long quadrantX, long quadrantY, long size) {
+		long width = Math.min(quadrantX + size, this.blocksWidth) - quadrantX;
+		long height = Math.min(quadrantY + size, this.blocksHeight) - quadrantY;
+		return width > 0 && height > 0 ? width * height : 0;
+	}
 }
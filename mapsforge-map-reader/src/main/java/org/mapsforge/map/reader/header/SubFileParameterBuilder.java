@@ -18,10 +18,12 @@ import org.mapsforge.core.BoundingBox;
 
 class SubFileParameterBuilder {
 	byte baseZoomLevel;
+	byte blockCompression;
 	BoundingBox boundingBox;
 	long indexStartAddress;
 	long startAddress;
 	long subFileSize;
+	boolean zOrderBlockLayout;
 	byte zoomLevelMax;
 	byte zoomLevelMin;
 
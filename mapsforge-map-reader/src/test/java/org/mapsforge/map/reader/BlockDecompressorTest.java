@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BlockDecompressor} class.
+ */
+public class BlockDecompressorTest {
+	// four literals, a match of 15 bytes at offset 4 and five literals
+	private static final byte[] COMPRESSED = { 0x4b, 'a', 'b', 'c', 'd', 0x04, 0x00, 0x50, 'd', 'a', 'b', 'c', 'd' };
+	private static final byte[] UNCOMPRESSED = "abcdabcdabcdabcdabcdabcd".getBytes();
+
+	private static boolean decompress(byte[] compressed, int destLength) {
+		return BlockDecompressor.decompress(compressed, 0, compressed.length, new byte[destLength], destLength);
+	}
+
+	/**
+	 * Tests the {@link BlockDecompressor#decompress} method.
+	 */
+	@Test
+	public void decompressTest() {
+		byte[] dest = new byte[UNCOMPRESSED.length];
+		Assert.assertTrue(BlockDecompressor.decompress(COMPRESSED, 0, COMPRESSED.length, dest, dest.length));
+		Assert.assertArrayEquals(UNCOMPRESSED, dest);
+
+		// a long run of literals and a long match
+		byte[] compressed = new byte[] { (byte) 0xff, 2, 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l',
+				'm', 'n', 'o', 'p', 'q', 0x01, 0x00, 3, 0x50, 'x', 'x', 'x', 'x', 'x' };
+		dest = new byte[17 + 22 + 5];
+		Assert.assertTrue(BlockDecompressor.decompress(compressed, 0, compressed.length, dest, dest.length));
+		byte[] expected = new byte[dest.length];
+		System.arraycopy("abcdefghijklmnopq".getBytes(), 0, expected, 0, 17);
+		Arrays.fill(expected, 17, 39, (byte) 'q');
+		Arrays.fill(expected, 39, 44, (byte) 'x');
+		Assert.assertArrayEquals(expected, dest);
+	}
+
+	/**
+	 * Tests that corrupt input is rejected.
+	 */
+	@Test
+	public void corruptInputTest() {
+		// wrong uncompressed length
+		Assert.assertFalse(decompress(COMPRESSED, UNCOMPRESSED.length - 1));
+		Assert.assertFalse(decompress(COMPRESSED, UNCOMPRESSED.length + 1));
+
+		// truncated input
+		for (int length = 1; length < COMPRESSED.length; ++length) {
+			byte[] compressed = Arrays.copyOf(COMPRESSED, length);
+			Assert.assertFalse(decompress(compressed, UNCOMPRESSED.length));
+		}
+
+		// offset before the start of the output
+		byte[] compressed = COMPRESSED.clone();
+		compressed[5] = 0x05;
+		Assert.assertFalse(decompress(compressed, UNCOMPRESSED.length));
+
+		// offset zero
+		compressed[5] = 0x00;
+		Assert.assertFalse(decompress(compressed, UNCOMPRESSED.length));
+
+		// too many literals
+		compressed = COMPRESSED.clone();
+		compressed[0] = (byte) 0xfb;
+		Assert.assertFalse(decompress(compressed, UNCOMPRESSED.length));
+
+		// an endless length
+		compressed = new byte[] { (byte) 0xf0, (byte) 0xff, (byte) 0xff, (byte) 0xff };
+		Assert.assertFalse(decompress(compressed, UNCOMPRESSED.length));
+		Assert.assertFalse(decompress(new byte[0], 0));
+	}
+}
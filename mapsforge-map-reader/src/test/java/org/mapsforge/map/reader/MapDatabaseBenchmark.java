@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.mapsforge.core.BoundingBox;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Compares the file size of map files to the time needed to query all their tiles, for example to weigh a map file
+ * with compressed blocks against the same map file without compression. This is not a unit test, it is started with
+ * the zoom level of the queries and the paths of the map files as arguments.
+ */
+public final class MapDatabaseBenchmark {
+	private static final int ROUNDS = 10;
+	private static final int WARM_UP_ROUNDS = 3;
+
+	/**
+	 * @param args
+	 *            the zoom level of the queries followed by the paths of the map files
+	 */
+	public static void main(String[] args) {
+		byte zoomLevel = Byte.parseByte(args[0]);
+		for (int i = 1; i < args.length; ++i) {
+			MapDatabase mapDatabase = new MapDatabase();
+			FileOpenResult fileOpenResult = mapDatabase.openFile(args[i]);
+			if (!fileOpenResult.isSuccess()) {
+				System.out.println(args[i] + ": " + fileOpenResult.getErrorMessage());
+				continue;
+			}
+
+			try {
+				for (int j = 0; j < WARM_UP_ROUNDS; ++j) {
+					queryAllTiles(mapDatabase, zoomLevel);
+				}
+
+				DummyMapDatabaseCallback callback = null;
+				long startTime = System.nanoTime();
+				for (int j = 0; j < ROUNDS; ++j) {
+					callback = queryAllTiles(mapDatabase, zoomLevel);
+				}
+				long nanos = (System.nanoTime() - startTime) / ROUNDS;
+
+				System.out.println(args[i] + ": " + new File(args[i]).length() + " bytes, file version "
+						+ mapDatabase.getMapFileInfo().fileVersion + ", " + nanos / 1000 + " microseconds per round, "
+						+ callback.pointOfInterests + " POIs, " + callback.ways + " ways");
+			} finally {
+				mapDatabase.closeFile();
+			}
+		}
+	}
+
+	private static DummyMapDatabaseCallback queryAllTiles(MapDatabase mapDatabase, byte zoomLevel) {
+		BoundingBox boundingBox = mapDatabase.getMapFileInfo().boundingBox;
+		long tileLeft = MercatorProjection.longitudeToTileX(boundingBox.getMinLongitude(), zoomLevel);
+		long tileRight = MercatorProjection.longitudeToTileX(boundingBox.getMaxLongitude(), zoomLevel);
+		long tileTop = MercatorProjection.latitudeToTileY(boundingBox.getMaxLatitude(), zoomLevel);
+		long tileBottom = MercatorProjection.latitudeToTileY(boundingBox.getMinLatitude(), zoomLevel);
+
+		DummyMapDatabaseCallback callback = new DummyMapDatabaseCallback();
+		for (long tileY = tileTop; tileY <= tileBottom; ++tileY) {
+			for (long tileX = tileLeft; tileX <= tileRight; ++tileX) {
+				mapDatabase.executeQuery(new Tile(tileX, tileY, zoomLevel), callback);
+			}
+		}
+		return callback;
+	}
+
+	private MapDatabaseBenchmark() {
+		throw new IllegalStateException();
+	}
+}
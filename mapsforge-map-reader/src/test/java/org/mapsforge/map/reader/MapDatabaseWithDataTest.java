@@ -25,16 +25,15 @@ import org.mapsforge.map.reader.header.FileOpenResult;
  */
 public class MapDatabaseWithDataTest {
 	private static final String MAP_FILE = "src/test/resources/with_data/with_data.map";
+	private static final String MAP_FILE_LZ4 = "src/test/resources/with_data/with_data_lz4.map";
+	private static final String MAP_FILE_Z_ORDER = "src/test/resources/with_data/with_data_z_order.map";
 	private static final byte ZOOM_LEVEL = 11;
 
-	/**
-	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} method.
-	 */
-	@Test
-	public void executeQueryTest() {
+	private static void executeQuery(String mapFile, int fileVersion) {
 		MapDatabase mapDatabase = new MapDatabase();
-		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
 		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		Assert.assertEquals(fileVersion, mapDatabase.getMapFileInfo().fileVersion);
 
 		long tileX = MercatorProjection.longitudeToTileX(1, ZOOM_LEVEL);
 		long tileY = MercatorProjection.latitudeToTileY(1, ZOOM_LEVEL);
@@ -48,4 +47,30 @@ public class MapDatabaseWithDataTest {
 		Assert.assertEquals(1, dummyMapDatabaseCallback.ways);
 		Assert.assertEquals(1, dummyMapDatabaseCallback.waterBackground);
 	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} method.
+	 */
+	@Test
+	public void executeQueryTest() {
+		executeQuery(MAP_FILE, 3);
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} method with a map file whose blocks are
+	 * compressed.
+	 */
+	@Test
+	public void executeQueryCompressedTest() {
+		executeQuery(MAP_FILE_LZ4, 4);
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} method with a map file whose blocks are
+	 * stored in Z-order.
+	 */
+	@Test
+	public void executeQueryZOrderTest() {
+		executeQuery(MAP_FILE_Z_ORDER, 4);
+	}
 }
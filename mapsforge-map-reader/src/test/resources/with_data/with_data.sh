@@ -1,2 +1,4 @@
 #!/bin/bash
 osmosis --rx file=with_data.xml --mw file=with_data.map bbox=0,0,2,2
+osmosis --rx file=with_data.xml --mw file=with_data_lz4.map bbox=0,0,2,2 block-compression=lz4
+osmosis --rx file=with_data.xml --mw file=with_data_z_order.map bbox=0,0,2,2 block-layout=z-order
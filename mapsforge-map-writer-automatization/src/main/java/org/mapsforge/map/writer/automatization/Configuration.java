@@ -49,6 +49,8 @@ import javax.xml.bind.annotation.XmlType;
  *       &lt;attribute name="logging-dir" use="required" type="{http://www.w3.org/2001/XMLSchema}string" />
  *       &lt;attribute name="destination-dir" type="{http://www.w3.org/2001/XMLSchema}string" />
  *       &lt;attribute name="move" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" />
+ *       &lt;attribute name="max-cpus" type="{http://www.w3.org/2001/XMLSchema}positiveInteger" />
+ *       &lt;attribute name="max-memory" type="{http://www.w3.org/2001/XMLSchema}nonNegativeInteger" default="0" />
  *     &lt;/restriction>
  *   &lt;/complexContent>
  * &lt;/complexType>
@@ -88,6 +90,18 @@ public class Configuration {
 	@XmlAttribute
 	private Boolean move;
 
+	/**
+	 * The number of cores which the pipelines may use at the same time.
+	 */
+	@XmlAttribute(name = "max-cpus")
+	private Integer maxCpus;
+
+	/**
+	 * The heap size in MB which the osmosis processes of the pipelines may use at the same time, 0 for no limit.
+	 */
+	@XmlAttribute(name = "max-memory")
+	private Integer maxMemory;
+
 	/**
 	 * Gets the value of the pipeline property.
 	 * <p>
@@ -229,4 +243,48 @@ public class Configuration {
 		this.move = value;
 	}
 
+	/**
+	 * Gets the value of the maxCpus property.
+	 * 
+	 * @return the number of cores, the number of available processors if it is not set
+	 */
+	public int getMaxCpus() {
+		if (this.maxCpus == null) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		return this.maxCpus;
+	}
+
+	/**
+	 * Sets the value of the maxCpus property.
+	 * 
+	 * @param value
+	 *            allowed object is {@link Integer }
+	 */
+	public void setMaxCpus(Integer value) {
+		this.maxCpus = value;
+	}
+
+	/**
+	 * Gets the value of the maxMemory property.
+	 * 
+	 * @return the heap size in MB, 0 for no limit
+	 */
+	public int getMaxMemory() {
+		if (this.maxMemory == null) {
+			return 0;
+		}
+		return this.maxMemory;
+	}
+
+	/**
+	 * Sets the value of the maxMemory property.
+	 * 
+	 * @param value
+	 *            allowed object is {@link Integer }
+	 */
+	public void setMaxMemory(Integer value) {
+		this.maxMemory = value;
+	}
+
 }
@@ -109,6 +109,22 @@ public class FileOperation {
 		return result;
 	}
 
+	/**
+	 * Creates a file object to a file without accessing the file.
+	 * 
+	 * @param parent
+	 *            the absolute path of the parent directory.
+	 * @param file
+	 *            the path to the file.
+	 * @return a file object to the file.
+	 */
+	public static File getFile(String parent, String file) {
+		if (file.startsWith(File.separator)) {
+			return new File(file);
+		}
+		return new File(parent, file);
+	}
+
 	/**
 	 * Creates a file object to a file for reading.
 	 * 
@@ -27,6 +27,7 @@ import java.util.List;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 
 /**
@@ -44,6 +45,7 @@ import javax.xml.bind.annotation.XmlType;
  *           &lt;restriction base="{http://www.w3.org/2001/XMLSchema}string">
  *             &lt;enumeration value="ram"/>
  *             &lt;enumeration value="hd"/>
+ *             &lt;enumeration value="stream"/>
  *           &lt;/restriction>
  *         &lt;/simpleType>
  *       &lt;/attribute>
@@ -63,6 +65,14 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;/simpleType>
  *       &lt;/attribute>
  *       &lt;attribute name="debug-file" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" />
+ *       &lt;attribute name="shards" default="1">
+ *         &lt;simpleType>
+ *           &lt;restriction base="{http://www.w3.org/2001/XMLSchema}int">
+ *             &lt;minInclusive value="1"/>
+ *             &lt;maxInclusive value="128"/>
+ *           &lt;/restriction>
+ *         &lt;/simpleType>
+ *       &lt;/attribute>
  *     &lt;/extension>
  *   &lt;/complexContent>
  * &lt;/complexType>
@@ -71,6 +81,10 @@ import javax.xml.bind.annotation.XmlType;
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "mapfile-writer")
 public class MapfileWriter extends Sink {
+	/**
+	 * The index of the pass which counts the tag frequencies for the shards.
+	 */
+	static final int TAG_HISTOGRAM_PASS = -1;
 
 	/**
 	 * A parameter to declare if the output of the mapfile-writer should be stored in ram or on disk before writing the
@@ -135,6 +149,25 @@ public class MapfileWriter extends Sink {
 	@XmlAttribute(name = "debug-file")
 	private Boolean debugFile;
 
+	/**
+	 * The number of slices of the bounding box which are written by separate osmosis processes and merged into the
+	 * map file afterwards.
+	 */
+	@XmlAttribute
+	private Integer shards;
+
+	/**
+	 * The shard whose osmosis call is generated, or the pass which counts the tag frequencies.
+	 */
+	@XmlTransient
+	private int shardIndex = TAG_HISTOGRAM_PASS;
+
+	/**
+	 * The map file, it is set when the osmosis call is generated.
+	 */
+	@XmlTransient
+	private File outputFile;
+
 	/**
 	 * Gets the value of the type property.
 	 * 
@@ -343,27 +376,92 @@ public class MapfileWriter extends Sink {
 		this.debugFile = value;
 	}
 
+	/**
+	 * Gets the value of the shards property.
+	 * 
+	 * @return the number of shards
+	 */
+	public int getShards() {
+		if (this.shards == null) {
+			return 1;
+		}
+		return this.shards;
+	}
+
+	/**
+	 * Sets the value of the shards property.
+	 * 
+	 * @param value
+	 *            allowed object is {@link Integer }
+	 */
+	public void setShards(Integer value) {
+		this.shards = value;
+	}
+
+	/**
+	 * Selects the osmosis call which is generated for a map file with several shards.
+	 * 
+	 * @param shardIndex
+	 *            the index of the shard, {@link #TAG_HISTOGRAM_PASS} for the pass which counts the tag frequencies
+	 */
+	void setShardIndex(int shardIndex) {
+		this.shardIndex = shardIndex;
+	}
+
+	/**
+	 * @return the map file, null if no osmosis call has been generated yet
+	 */
+	File getOutputFile() {
+		return this.outputFile;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the shard
+	 * @return the map file of the shard
+	 */
+	File getShardFile(int index) {
+		return new File(this.outputFile.getPath() + ".shard" + index);
+	}
+
+	/**
+	 * @return the file with the tag frequencies which all shards share, so that they use the same tag ids
+	 */
+	File getTagHistogramFile() {
+		return new File(this.outputFile.getPath() + ".tag-histogram");
+	}
+
 	@Override
 	public String generate(List<String> md5List, String absoluteWorkingDirPath, String absoluteOutputDirPath) {
 
 		final StringBuilder sb = new StringBuilder();
 
 		// create output file
-		File outputFile = null;
-		outputFile = FileOperation.createWriteFile(absoluteOutputDirPath, getFile());
+		this.outputFile = FileOperation.createWriteFile(absoluteOutputDirPath, getFile());
 
-		if (outputFile == null) {
+		if (this.outputFile == null) {
 			throw new RuntimeException("An unexpected error occured. File is null.");
 		}
 
-		// check md5
-		if (isMd5()) {
-			md5List.add(outputFile.getAbsolutePath());
+		// check md5, the calls of the shards are generated after the call of the tag histogram pass
+		if (isMd5() && this.shardIndex == TAG_HISTOGRAM_PASS) {
+			md5List.add(this.outputFile.getAbsolutePath());
 		}
 
 		// generate osmosis call
+		if (getShards() > 1 && this.shardIndex == TAG_HISTOGRAM_PASS) {
+			sb.append("--mth").append(" ");
+			sb.append("file=").append(getTagHistogramFile().getAbsolutePath()).append(" ");
+			return sb.toString();
+		}
 		sb.append("--mw").append(" ");
-		sb.append("file=").append(outputFile.getAbsolutePath()).append(" ");
+		if (getShards() > 1) {
+			sb.append("file=").append(getShardFile(this.shardIndex).getAbsolutePath()).append(" ");
+			sb.append("shard=").append(this.shardIndex).append("/").append(getShards()).append(" ");
+			sb.append("tag-histogram-file=").append(getTagHistogramFile().getAbsolutePath()).append(" ");
+		} else {
+			sb.append("file=").append(this.outputFile.getAbsolutePath()).append(" ");
+		}
 		if (this.type != null) {
 			sb.append("type=").append(this.type).append(" ");
 		}
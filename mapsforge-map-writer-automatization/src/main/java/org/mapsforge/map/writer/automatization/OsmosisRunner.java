@@ -15,13 +15,9 @@
 
 package org.mapsforge.map.writer.automatization;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,7 +40,6 @@ public class OsmosisRunner {
 
 	// private static Logger LOGGER =
 	// Logger.getLogger(OsmosisRunner.class.getName());
-	private static String NEWLINE = System.getProperty("line.separator");
 	private static ArrayList<String> MD5LIST = new ArrayList<String>();
 
 	private static File workingDirectory;
@@ -99,7 +94,7 @@ public class OsmosisRunner {
 			// get all pipelines of the xml file
 			final List<Pipeline> pipelines = conf.getValue().getPipeline();
 
-			runPipelines(pipelines);
+			runPipelines(pipelines, conf.getValue().getMaxCpus(), conf.getValue().getMaxMemory());
 			createMD5Files();
 
 			// all pipelines are done. now we move or copy the generated files to the destination directory
@@ -124,37 +119,14 @@ public class OsmosisRunner {
 	}
 
 	/*
-	 * This method creates the osmosis calls for each pipeline and execute them. The output of the execution would be
-	 * written o a log file with the name of the pipeline.
+	 * This method creates the osmosis calls for the pipelines and executes them within the budget of the
+	 * configuration. The output of each execution would be written to log files with the names of the pipelines.
 	 */
-	private static void runPipelines(List<Pipeline> pipelines) throws IOException, InterruptedException {
-		String call;
-		File logfile;
-		Process process;
-		// run pipelines
-		for (final Pipeline pipeline : pipelines) {
-
-			// traverse the XML tree to the leafs to update the output directory of the sinks
-			// and generate their osmosis calls. also registered the file for what a md5 file
-			// should generated.
-			call = osmosisExecutable.getAbsolutePath() + " "
-					+ pipeline.generate(MD5LIST, workingDirectory.getAbsolutePath(), outputDirectory.getAbsolutePath());
-
-			// run the osmosis task of the pipeline
-			process = Runtime.getRuntime().exec(call, null, workingDirectory);
-
-			// log the output of the osmosis task to a file called like the name of the pipeline
-			logfile = FileOperation.createWriteFile(loggingDirectory.getAbsolutePath(), pipeline.getName() + ".log");
-
-			writeLog(logfile.getAbsolutePath(), process, true);
-
-			// wait for process and check the termination
-			if (process.waitFor() != 0) {
-				System.out.println("osmosis process exited with error");
-				return;
-			}
-
-		}
+	private static void runPipelines(List<Pipeline> pipelines, int maxCpus, long maxMemory) throws IOException,
+			InterruptedException {
+		final PipelineScheduler scheduler = new PipelineScheduler(osmosisExecutable, workingDirectory,
+				outputDirectory, loggingDirectory, maxCpus, maxMemory, MD5LIST);
+		scheduler.run(pipelines);
 	}
 
 	/*
@@ -183,36 +155,4 @@ public class OsmosisRunner {
 			FileUtils.writeByteArrayToFile(md5File, md5);
 		}
 	}
-
-	/*
-	 * This method writes error logs of a process to file.
-	 */
-	private static void writeLog(String logfile, Process process, boolean append) {
-
-		BufferedWriter bw = null;
-		BufferedReader br = null;
-		try {
-			bw = new BufferedWriter(new FileWriter(logfile, append));
-			br = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-
-			String line = null;
-
-			while ((line = br.readLine()) != null) {
-				bw.append(line).append(NEWLINE);
-				bw.flush();
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			try {
-				if (bw != null)
-					bw.close();
-				if (br != null)
-					br.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
-
-	}
 }
@@ -21,6 +21,7 @@
 package org.mapsforge.map.writer.automatization;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.bind.JAXBElement;
@@ -45,6 +46,8 @@ import javax.xml.bind.annotation.XmlType;
  *       &lt;/sequence>
  *       &lt;attribute name="name" use="required" type="{http://www.w3.org/2001/XMLSchema}string" />
  *       &lt;attribute name="output-dir" type="{http://www.w3.org/2001/XMLSchema}string" />
+ *       &lt;attribute name="cpus" type="{http://www.w3.org/2001/XMLSchema}positiveInteger" default="1" />
+ *       &lt;attribute name="memory" type="{http://www.w3.org/2001/XMLSchema}nonNegativeInteger" default="0" />
  *       &lt;attribute name="logging-level">
  *         &lt;simpleType>
  *           &lt;restriction base="{http://www.w3.org/2001/XMLSchema}string">
@@ -83,6 +86,18 @@ public class Pipeline {
 	@XmlAttribute(name = "logging-level")
 	private String loggingLevel;
 
+	/**
+	 * The number of cores which the osmosis process of the pipeline uses.
+	 */
+	@XmlAttribute
+	private Integer cpus;
+
+	/**
+	 * The maximum heap size in MB of the osmosis process of the pipeline, 0 for the default of osmosis.
+	 */
+	@XmlAttribute
+	private Integer memory;
+
 	/**
 	 * Gets the value of the source property.
 	 * 
@@ -163,6 +178,50 @@ public class Pipeline {
 		this.loggingLevel = value;
 	}
 
+	/**
+	 * Gets the value of the cpus property.
+	 * 
+	 * @return the number of cores
+	 */
+	public int getCpus() {
+		if (this.cpus == null) {
+			return 1;
+		}
+		return this.cpus;
+	}
+
+	/**
+	 * Sets the value of the cpus property.
+	 * 
+	 * @param value
+	 *            allowed object is {@link Integer }
+	 */
+	public void setCpus(Integer value) {
+		this.cpus = value;
+	}
+
+	/**
+	 * Gets the value of the memory property.
+	 * 
+	 * @return the maximum heap size in MB, 0 for the default of osmosis
+	 */
+	public int getMemory() {
+		if (this.memory == null) {
+			return 0;
+		}
+		return this.memory;
+	}
+
+	/**
+	 * Sets the value of the memory property.
+	 * 
+	 * @param value
+	 *            allowed object is {@link Integer }
+	 */
+	public void setMemory(Integer value) {
+		this.memory = value;
+	}
+
 	/**
 	 * Generate the osmosis calls of the hole pipeline. Starting by the Source and traverse the tree downstairs. The
 	 * path of the output directory would be actualized.
@@ -176,22 +235,88 @@ public class Pipeline {
 	 * @return the generated osmosis call
 	 */
 	public String generate(List<String> md5List, String absoluteWorkingDirPath, String absoluteOutputDirPath) {
+		return this.source.getValue().generate(md5List, absoluteWorkingDirPath,
+				getOutputDirPath(absoluteOutputDirPath));
+	}
 
+	/**
+	 * Generate the osmosis calls of the tasks which consume the output of the source of the pipeline, so that they
+	 * can be fed by a source which is shared with other pipelines.
+	 * 
+	 * @param md5List
+	 *            list of files where a MD5 file should generated
+	 * @param absoluteWorkingDirPath
+	 *            the absolute path to the working directory
+	 * @param absoluteOutputDirPath
+	 *            the absolute path of the output directory
+	 * @return the generated osmosis call without the source
+	 */
+	public String generateConsumers(List<String> md5List, String absoluteWorkingDirPath, String absoluteOutputDirPath) {
+		return this.source.getValue().generateConsumers(md5List, absoluteWorkingDirPath,
+				getOutputDirPath(absoluteOutputDirPath));
+	}
+
+	/**
+	 * @param absoluteWorkingDirPath
+	 *            the absolute path to the working directory
+	 * @return the file which is read by the source of the pipeline
+	 */
+	public File getInputFile(String absoluteWorkingDirPath) {
+		return FileOperation.getFile(absoluteWorkingDirPath, this.source.getValue().getFile());
+	}
+
+	/**
+	 * @param absoluteOutputDirPath
+	 *            the absolute path of the output directory of the configuration
+	 * @return the files which are written by the sinks of the pipeline
+	 */
+	public List<File> getOutputFiles(String absoluteOutputDirPath) {
+		final List<File> outputFiles = new ArrayList<File>();
+		for (final Sink sink : getSinks()) {
+			outputFiles.add(FileOperation.getFile(getOutputDirPath(absoluteOutputDirPath), sink.getFile()));
+		}
+		return outputFiles;
+	}
+
+	/**
+	 * @return all sinks of the pipeline, also those behind sink-sources
+	 */
+	public List<Sink> getSinks() {
+		final List<Sink> sinks = new ArrayList<Sink>();
+		collectSinks(this.source.getValue().getSinkSource(), this.source.getValue().getSink(), sinks);
+		return sinks;
+	}
+
+	private static void collectSinks(List<JAXBElement<? extends SinkSource>> sinkSources,
+			List<JAXBElement<? extends Sink>> sinks, List<Sink> result) {
+		for (final JAXBElement<? extends Sink> sink : sinks) {
+			result.add(sink.getValue());
+		}
+		for (final JAXBElement<? extends SinkSource> sinkSource : sinkSources) {
+			collectSinks(sinkSource.getValue().getSinkSource(), sinkSource.getValue().getSink(), result);
+		}
+	}
+
+	/**
+	 * @param absoluteOutputDirPath
+	 *            the absolute path of the output directory of the configuration
+	 * @return the absolute path of the output directory of the pipeline
+	 */
+	public String getOutputDirPath(String absoluteOutputDirPath) {
 		if (this.outputDir != null) {
 			// check if output directory of pipeline is absolute
 			if (this.outputDir.startsWith(File.separator)) {
 				// output directory of pipeline is absolute, so this would be used
-				return this.source.getValue().generate(md5List, absoluteWorkingDirPath, this.outputDir);
+				return this.outputDir;
 			}
 			// output directory is relative path, so it would be added to the given absolute
 			// path of the configuration output directory
-			return this.source.getValue().generate(md5List, absoluteWorkingDirPath,
-					absoluteOutputDirPath + File.separator + this.outputDir);
+			return absoluteOutputDirPath + File.separator + this.outputDir;
 		}
 
 		// output directory of pipeline is not set, so wie use the default output directory of
 		// the xml file
-		return this.source.getValue().generate(md5List, absoluteWorkingDirPath, absoluteOutputDirPath);
+		return absoluteOutputDirPath;
 	}
 
 }
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.automatization;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.mapsforge.map.writer.MapFileMerger;
+
+/**
+ * Runs the pipelines of a configuration in parallel osmosis processes within a budget of cores and memory. A pipeline
+ * waits for the pipelines before it whose files it reads or writes. Pipelines which read the same file and do not
+ * depend on each other share one osmosis process, in which the file is read once and its data is split by a tee.
+ */
+final class PipelineScheduler {
+	/**
+	 * A group of pipelines which is run together, either by one osmosis process or, if they write map files with
+	 * several shards, by one osmosis process for each shard.
+	 */
+	private final class Job implements Callable<Boolean> {
+		final Set<Job> dependencies = new HashSet<Job>();
+		final int firstIndex;
+		final List<Pipeline> pipelines = new ArrayList<Pipeline>();
+		final List<MapfileWriter> shardedWriters;
+
+		Job(int firstIndex, Pipeline pipeline, List<MapfileWriter> shardedWriters) {
+			this.firstIndex = firstIndex;
+			this.pipelines.add(pipeline);
+			this.shardedWriters = shardedWriters;
+		}
+
+		@Override
+		public Boolean call() throws IOException, InterruptedException {
+			if (!this.shardedWriters.isEmpty()) {
+				return Boolean.valueOf(runShards());
+			}
+
+			final String workingDirectoryPath = PipelineScheduler.this.workingDirectory.getAbsolutePath();
+			final String outputDirectoryPath = PipelineScheduler.this.outputDirectory.getAbsolutePath();
+			final List<String> md5List = new ArrayList<String>();
+			String call;
+			if (this.pipelines.size() == 1) {
+				call = this.pipelines.get(0).generate(md5List, workingDirectoryPath, outputDirectoryPath);
+			} else {
+				// the source is read once and split for the tasks of all pipelines
+				final StringBuilder sb = new StringBuilder();
+				sb.append(this.pipelines.get(0).getSource().getValue().generateRead(workingDirectoryPath));
+				sb.append("--tee").append(" ").append("outputCount=").append(this.pipelines.size()).append(" ");
+				for (final Pipeline pipeline : this.pipelines) {
+					sb.append(pipeline.generateConsumers(md5List, workingDirectoryPath, outputDirectoryPath));
+				}
+				call = sb.toString();
+			}
+			addMd5Files(md5List);
+
+			final Process process = startOsmosis(call, getMemory());
+			writeLog(getLogFiles(""), process);
+			return Boolean.valueOf(process.waitFor() == 0);
+		}
+
+		int getCpus() {
+			int cpus = 0;
+			for (final Pipeline pipeline : this.pipelines) {
+				cpus += pipeline.getCpus() * getShards();
+			}
+			return cpus;
+		}
+
+		long getMemory() {
+			long memory = 0;
+			for (final Pipeline pipeline : this.pipelines) {
+				memory += (long) pipeline.getMemory() * getShards();
+			}
+			return memory;
+		}
+
+		private List<File> getLogFiles(String suffix) {
+			final List<File> logFiles = new ArrayList<File>();
+			for (final Pipeline pipeline : this.pipelines) {
+				logFiles.add(FileOperation.createWriteFile(PipelineScheduler.this.loggingDirectory.getAbsolutePath(),
+						pipeline.getName() + suffix + ".log"));
+			}
+			return logFiles;
+		}
+
+		private int getShards() {
+			return this.shardedWriters.isEmpty() ? 1 : this.shardedWriters.get(0).getShards();
+		}
+
+		/*
+		 * First the tag frequencies are counted, so that all shards use the same tag ids. Then the shards are written
+		 * by parallel osmosis processes, each of them reads the whole input. Finally the shards are merged into the
+		 * map files.
+		 */
+		private boolean runShards() throws IOException, InterruptedException {
+			final String workingDirectoryPath = PipelineScheduler.this.workingDirectory.getAbsolutePath();
+			final String outputDirectoryPath = PipelineScheduler.this.outputDirectory.getAbsolutePath();
+			final Pipeline pipeline = this.pipelines.get(0);
+			final List<String> md5List = new ArrayList<String>();
+			for (final MapfileWriter writer : this.shardedWriters) {
+				writer.setShardIndex(MapfileWriter.TAG_HISTOGRAM_PASS);
+			}
+			String call = pipeline.generate(md5List, workingDirectoryPath, outputDirectoryPath);
+			addMd5Files(md5List);
+			Process process = startOsmosis(call, pipeline.getMemory());
+			writeLog(getLogFiles(""), process);
+			if (process.waitFor() != 0) {
+				return false;
+			}
+
+			final int shards = getShards();
+			final Process[] processes = new Process[shards];
+			final Thread[] logThreads = new Thread[shards];
+			for (int i = 0; i < shards; ++i) {
+				for (final MapfileWriter writer : this.shardedWriters) {
+					writer.setShardIndex(i);
+				}
+				call = pipeline.generate(md5List, workingDirectoryPath, outputDirectoryPath);
+				processes[i] = startOsmosis(call, pipeline.getMemory());
+
+				// the log of each shard is written by its own thread, as the processes run at the same time
+				final Process shardProcess = processes[i];
+				final List<File> shardLogFiles = getLogFiles(".shard" + i);
+				logThreads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						writeLog(shardLogFiles, shardProcess);
+					}
+				});
+				logThreads[i].start();
+			}
+
+			boolean success = true;
+			for (int i = 0; i < shards; ++i) {
+				if (processes[i].waitFor() != 0) {
+					success = false;
+				}
+				logThreads[i].join();
+			}
+			if (!success) {
+				return false;
+			}
+
+			for (final MapfileWriter writer : this.shardedWriters) {
+				final List<File> shardFiles = new ArrayList<File>();
+				for (int i = 0; i < shards; ++i) {
+					shardFiles.add(writer.getShardFile(i));
+				}
+				MapFileMerger.merge(shardFiles, writer.getOutputFile());
+				for (final File shardFile : shardFiles) {
+					FileUtils.deleteQuietly(shardFile);
+				}
+				FileUtils.deleteQuietly(writer.getTagHistogramFile());
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			for (final Pipeline pipeline : this.pipelines) {
+				if (sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append(pipeline.getName());
+			}
+			return sb.toString();
+		}
+	}
+
+	private static final String JAVACMD_OPTIONS = "JAVACMD_OPTIONS";
+	private static final String NEWLINE = System.getProperty("line.separator");
+
+	/*
+	 * This method returns the map file writers of a pipeline if they write several shards. As the whole pipeline is
+	 * run once for each shard, all sinks of such a pipeline must be map file writers with the same number of shards.
+	 */
+	private static List<MapfileWriter> getShardedMapfileWriters(Pipeline pipeline) {
+		final List<Sink> sinks = pipeline.getSinks();
+		final List<MapfileWriter> writers = new ArrayList<MapfileWriter>();
+		for (final Sink sink : sinks) {
+			if (sink instanceof MapfileWriter && ((MapfileWriter) sink).getShards() > 1) {
+				writers.add((MapfileWriter) sink);
+			}
+		}
+		if (!writers.isEmpty()) {
+			for (final Sink sink : sinks) {
+				if (!(sink instanceof MapfileWriter)
+						|| ((MapfileWriter) sink).getShards() != writers.get(0).getShards()) {
+					throw new IllegalArgumentException("all sinks of pipeline " + pipeline.getName()
+							+ " must be mapfile writers with the same number of shards");
+				}
+			}
+		}
+		return writers;
+	}
+
+	/*
+	 * This method writes the error output of a process to log files.
+	 */
+	private static void writeLog(List<File> logFiles, Process process) {
+		final List<BufferedWriter> writers = new ArrayList<BufferedWriter>();
+		BufferedReader br = null;
+		try {
+			for (final File logFile : logFiles) {
+				writers.add(new BufferedWriter(new FileWriter(logFile, true)));
+			}
+			br = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				for (final BufferedWriter bw : writers) {
+					bw.append(line).append(NEWLINE);
+					bw.flush();
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				for (final BufferedWriter bw : writers) {
+					bw.close();
+				}
+				if (br != null) {
+					br.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private final File loggingDirectory;
+	private final int maxCpus;
+	private final long maxMemory;
+	private final List<String> md5List;
+	private final File osmosisExecutable;
+	private final File outputDirectory;
+	private final File workingDirectory;
+
+	/**
+	 * @param osmosisExecutable
+	 *            the osmosis start script
+	 * @param workingDirectory
+	 *            the working directory of the osmosis processes
+	 * @param outputDirectory
+	 *            the output directory of the configuration
+	 * @param loggingDirectory
+	 *            the directory of the log files of the pipelines
+	 * @param maxCpus
+	 *            the number of cores which the pipelines may use at the same time
+	 * @param maxMemory
+	 *            the heap size in MB which the pipelines may use at the same time, 0 for no limit
+	 * @param md5List
+	 *            the list to which the files are added for which a MD5 file should be generated
+	 */
+	PipelineScheduler(File osmosisExecutable, File workingDirectory, File outputDirectory, File loggingDirectory,
+			int maxCpus, long maxMemory, List<String> md5List) {
+		this.osmosisExecutable = osmosisExecutable;
+		this.workingDirectory = workingDirectory;
+		this.outputDirectory = outputDirectory;
+		this.loggingDirectory = loggingDirectory;
+		this.maxCpus = maxCpus;
+		this.maxMemory = maxMemory;
+		this.md5List = md5List;
+	}
+
+	/**
+	 * Runs the pipelines. A job which exceeds the budget on its own is run when no other job is running. After a
+	 * pipeline failed no further pipelines are started.
+	 * 
+	 * @param pipelines
+	 *            the pipelines in the order of the configuration
+	 * @return true if all pipelines have been run successfully
+	 * @throws IOException
+	 *             thrown if the files of the pipelines cannot be resolved
+	 * @throws InterruptedException
+	 *             thrown if the thread is interrupted while waiting for a pipeline
+	 */
+	boolean run(List<Pipeline> pipelines) throws IOException, InterruptedException {
+		final List<Job> pending = createJobs(pipelines);
+		final Set<Job> completed = new HashSet<Job>();
+		final Map<Future<Boolean>, Job> running = new HashMap<Future<Boolean>, Job>();
+		final ExecutorService executorService = Executors.newCachedThreadPool();
+		final CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executorService);
+
+		int usedCpus = 0;
+		long usedMemory = 0;
+		boolean failed = false;
+		try {
+			while (!running.isEmpty() || !failed && !pending.isEmpty()) {
+				// the jobs are started in the order of the configuration, later jobs may fill the remaining budget
+				for (final Iterator<Job> iterator = pending.iterator(); !failed && iterator.hasNext();) {
+					final Job job = iterator.next();
+					if (completed.containsAll(job.dependencies)
+							&& (running.isEmpty() || usedCpus + job.getCpus() <= this.maxCpus
+									&& (this.maxMemory == 0 || usedMemory + job.getMemory() <= this.maxMemory))) {
+						iterator.remove();
+						running.put(completionService.submit(job), job);
+						usedCpus += job.getCpus();
+						usedMemory += job.getMemory();
+						System.out.println("started pipelines " + job);
+					}
+				}
+
+				final Future<Boolean> future = completionService.take();
+				final Job job = running.remove(future);
+				usedCpus -= job.getCpus();
+				usedMemory -= job.getMemory();
+				boolean success;
+				try {
+					success = future.get().booleanValue();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+					success = false;
+				}
+				if (success) {
+					completed.add(job);
+				} else {
+					System.out.println("osmosis process of pipelines " + job + " exited with error");
+					failed = true;
+				}
+			}
+		} finally {
+			executorService.shutdown();
+		}
+		return !failed;
+	}
+
+	private void addMd5Files(List<String> files) {
+		synchronized (this.md5List) {
+			this.md5List.addAll(files);
+		}
+	}
+
+	/*
+	 * This method groups the pipelines into jobs. A pipeline joins the job of an earlier pipeline which reads the same
+	 * file if it does not conflict with any pipeline from the first pipeline of the job on, so a job only depends on
+	 * jobs before it.
+	 */
+	private List<Job> createJobs(List<Pipeline> pipelines) throws IOException {
+		final int n = pipelines.size();
+		final File[] inputFiles = new File[n];
+		final List<Set<File>> outputFiles = new ArrayList<Set<File>>();
+		for (int i = 0; i < n; ++i) {
+			inputFiles[i] = pipelines.get(i).getInputFile(this.workingDirectory.getAbsolutePath()).getCanonicalFile();
+			final Set<File> files = new HashSet<File>();
+			for (final File file : pipelines.get(i).getOutputFiles(this.outputDirectory.getAbsolutePath())) {
+				files.add(file.getCanonicalFile());
+			}
+			outputFiles.add(files);
+		}
+
+		final List<Job> jobs = new ArrayList<Job>();
+		final Map<Pipeline, Job> jobsByPipeline = new HashMap<Pipeline, Job>();
+		for (int i = 0; i < n; ++i) {
+			final Pipeline pipeline = pipelines.get(i);
+			final List<MapfileWriter> shardedWriters = getShardedMapfileWriters(pipeline);
+			Job sharedJob = null;
+			if (shardedWriters.isEmpty()) {
+				for (final Job job : jobs) {
+					if (job.shardedWriters.isEmpty() && inputFiles[job.firstIndex].equals(inputFiles[i])
+							&& !conflicts(i, job.firstIndex, inputFiles, outputFiles)) {
+						sharedJob = job;
+						break;
+					}
+				}
+			}
+			if (sharedJob == null) {
+				sharedJob = new Job(i, pipeline, shardedWriters);
+				jobs.add(sharedJob);
+			} else {
+				sharedJob.pipelines.add(pipeline);
+			}
+			jobsByPipeline.put(pipeline, sharedJob);
+		}
+
+		for (int i = 0; i < n; ++i) {
+			final Job job = jobsByPipeline.get(pipelines.get(i));
+			for (int j = 0; j < i; ++j) {
+				final Job earlierJob = jobsByPipeline.get(pipelines.get(j));
+				if (earlierJob != job && conflicts(i, j, j + 1, inputFiles, outputFiles)) {
+					job.dependencies.add(earlierJob);
+				}
+			}
+		}
+		return jobs;
+	}
+
+	// whether the pipeline conflicts with any pipeline from the given index up to itself
+	private static boolean conflicts(int index, int fromIndex, File[] inputFiles, List<Set<File>> outputFiles) {
+		return conflicts(index, fromIndex, index, inputFiles, outputFiles);
+	}
+
+	private static boolean conflicts(int index, int fromIndex, int toIndex, File[] inputFiles,
+			List<Set<File>> outputFiles) {
+		for (int j = fromIndex; j < toIndex; ++j) {
+			if (outputFiles.get(j).contains(inputFiles[index]) || outputFiles.get(index).contains(inputFiles[j])) {
+				return true;
+			}
+			for (final File file : outputFiles.get(index)) {
+				if (outputFiles.get(j).contains(file)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private Process startOsmosis(String call, long memory) throws IOException {
+		String[] environment = null;
+		if (memory > 0) {
+			// the start script of osmosis passes these options to the java virtual machine
+			final Map<String, String> variables = new HashMap<String, String>(System.getenv());
+			final String options = variables.get(JAVACMD_OPTIONS);
+			variables.put(JAVACMD_OPTIONS, (options == null ? "" : options + " ") + "-Xmx" + memory + "m");
+			environment = new String[variables.size()];
+			int i = 0;
+			for (final Map.Entry<String, String> variable : variables.entrySet()) {
+				environment[i++] = variable.getKey() + "=" + variable.getValue();
+			}
+		}
+		return Runtime.getRuntime().exec(this.osmosisExecutable.getAbsolutePath() + " " + call, environment,
+				this.workingDirectory);
+	}
+}
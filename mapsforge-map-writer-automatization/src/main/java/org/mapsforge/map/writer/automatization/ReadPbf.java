@@ -51,6 +51,17 @@ public class ReadPbf extends Source {
 	@Override
 	public String generate(List<String> md5List, String absoluteWorkingDirPath, String absoluteOutputDirPath) {
 
+		// generate osmosis call
+		final StringBuilder sb = new StringBuilder();
+		sb.append(generateRead(absoluteWorkingDirPath));
+		sb.append(super.generate(md5List, absoluteWorkingDirPath, absoluteOutputDirPath));
+
+		return sb.toString();
+	}
+
+	@Override
+	public String generateRead(String absoluteWorkingDirPath) {
+
 		// check input file
 		File inputFile = null;
 		inputFile = FileOperation.createReadFile(absoluteWorkingDirPath, getFile());
@@ -59,11 +70,6 @@ public class ReadPbf extends Source {
 			throw new RuntimeException("An unexpected error occured. File is null.");
 		}
 
-		// generate osmosis call
-		final StringBuilder sb = new StringBuilder();
-		sb.append("--rb file=").append(inputFile.getAbsolutePath()).append(" ");
-		sb.append(super.generate(md5List, absoluteWorkingDirPath, absoluteOutputDirPath));
-
-		return sb.toString();
+		return "--rb file=" + inputFile.getAbsolutePath() + " ";
 	}
 }
@@ -159,6 +159,32 @@ public abstract class Source {
 	 * @return the generated osmosis call
 	 */
 	public String generate(List<String> md5List, String absoluteWorkingDirPath, String absoluteOutputDirPath) {
+		return generateConsumers(md5List, absoluteWorkingDirPath, absoluteOutputDirPath);
+	}
+
+	/**
+	 * Generates the osmosis call of the task which reads the source, the calls of the tasks which consume its output
+	 * are not included.
+	 * 
+	 * @param absoluteWorkingDirPath
+	 *            the absolute path to the working directory
+	 * @return the generated osmosis call
+	 */
+	public abstract String generateRead(String absoluteWorkingDirPath);
+
+	/**
+	 * Generates the call to split the pipe for each task that needs the data of this source and the osmosis calls of
+	 * these tasks.
+	 * 
+	 * @param md5List
+	 *            list of files where a MD5 file should generated
+	 * @param absoluteWorkingDirPath
+	 *            the absolute path to the working directory
+	 * @param absoluteOutputDirPath
+	 *            the absolute path of the output directory
+	 * @return the generated osmosis call
+	 */
+	public String generateConsumers(List<String> md5List, String absoluteWorkingDirPath, String absoluteOutputDirPath) {
 
 		// get the count of all sub task to set the tee parameter
 		final int teeTotal = (this.sinkSource != null ? this.sinkSource.size() : 0)
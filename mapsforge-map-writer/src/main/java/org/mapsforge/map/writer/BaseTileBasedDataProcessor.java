@@ -14,20 +14,28 @@
  */
 package org.mapsforge.map.writer;
 
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.hash.TLongObjectHashMap;
-import gnu.trove.map.hash.TShortIntHashMap;
 import gnu.trove.procedure.TObjectProcedure;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.mapsforge.map.writer.model.GeoCoordinate;
@@ -40,33 +48,42 @@ import org.mapsforge.map.writer.model.TDRelation;
 import org.mapsforge.map.writer.model.TDWay;
 import org.mapsforge.map.writer.model.TileBasedDataProcessor;
 import org.mapsforge.map.writer.model.TileCoordinate;
-import org.mapsforge.map.writer.model.TileData;
+import org.mapsforge.map.writer.model.TileDataAppender;
 import org.mapsforge.map.writer.model.TileGridLayout;
 import org.mapsforge.map.writer.model.TileInfo;
 import org.mapsforge.map.writer.model.WayResolver;
 import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
 import org.mapsforge.map.writer.util.GeoUtils;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
 
 abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, NodeResolver, WayResolver {
 
 	protected static final Logger LOGGER = Logger.getLogger(BaseTileBasedDataProcessor.class.getName());
 
+	private static final int PENDING_RELATIONS_PER_THREAD = 16;
+
 	protected final Rect boundingbox;
 	protected TileGridLayout[] tileGridLayouts;
 	protected final ZoomIntervalConfiguration zoomIntervalConfiguration;
 	protected final int bboxEnlargement;
 	protected final String preferredLanguage;
+	protected final PerformanceReport performanceReport;
+	protected final int threadPoolSize;
+	protected final File tagHistogramFile;
 
 	protected final TLongObjectHashMap<TLongArrayList> outerToInnerMapping;
 	protected final TLongSet innerWaysWithoutAdditionalTags;
 	protected final Map<TileCoordinate, TLongHashSet> tilesToCoastlines;
+	// the junction nodes are only needed for the simplification per zoom interval
+	private JunctionNodes junctionNodes;
+	private TLongSet completedJunctionNodes;
 
 	// accounting
 	protected float[] countWays;
 	protected float[] countWayTileFactor;
 
-	protected final TShortIntHashMap histogramPoiTags;
-	protected final TShortIntHashMap histogramWayTags;
+	protected final TagHistogram histogramPoiTags;
+	protected final TagHistogram histogramWayTags;
 	protected long maxWayID = Long.MIN_VALUE;
 
 	// public BaseTileBasedDataProcessor(double minLat, double maxLat, double minLon, double maxLon,
@@ -77,32 +94,42 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 
 	public BaseTileBasedDataProcessor(MapWriterConfiguration configuration) {
 		super();
-		this.boundingbox = configuration.getBboxConfiguration();
 		this.zoomIntervalConfiguration = configuration.getZoomIntervalConfiguration();
+		if (configuration.getShard() == null) {
+			this.boundingbox = configuration.getBboxConfiguration();
+		} else {
+			this.boundingbox = configuration.getShard().getBoundingBox(configuration.getBboxConfiguration(),
+					this.zoomIntervalConfiguration);
+			LOGGER.info("writing shard " + configuration.getShard() + " with bounding box " + this.boundingbox);
+		}
 		this.tileGridLayouts = new TileGridLayout[this.zoomIntervalConfiguration.getNumberOfZoomIntervals()];
 		this.bboxEnlargement = configuration.getBboxEnlargement();
 		this.preferredLanguage = configuration.getPreferredLanguage();
+		this.performanceReport = configuration.getPerformanceReport();
+		this.threadPoolSize = configuration.getThreadPoolSize();
+		this.tagHistogramFile = configuration.getTagHistogramFile();
 
 		this.outerToInnerMapping = new TLongObjectHashMap<TLongArrayList>();
 		this.innerWaysWithoutAdditionalTags = new TLongHashSet();
 		this.tilesToCoastlines = new HashMap<TileCoordinate, TLongHashSet>();
+		if (configuration.getZoomSimplification() != null) {
+			this.junctionNodes = new JunctionNodes();
+		}
 
 		this.countWays = new float[this.zoomIntervalConfiguration.getNumberOfZoomIntervals()];
 		this.countWayTileFactor = new float[this.zoomIntervalConfiguration.getNumberOfZoomIntervals()];
 
-		this.histogramPoiTags = new TShortIntHashMap();
-		this.histogramWayTags = new TShortIntHashMap();
+		this.histogramPoiTags = new TagHistogram();
+		this.histogramWayTags = new TagHistogram();
 
 		// compute horizontal and vertical tile coordinate offsets for all
 		// base zoom levels
 		for (int i = 0; i < this.zoomIntervalConfiguration.getNumberOfZoomIntervals(); i++) {
-			TileCoordinate upperLeft = new TileCoordinate((int) MercatorProjection.longitudeToTileX(
-					GeoCoordinate.intToDouble(this.boundingbox.minLongitudeE6),
-					this.zoomIntervalConfiguration.getBaseZoom(i)), (int) MercatorProjection.latitudeToTileY(
-					GeoCoordinate.intToDouble(this.boundingbox.maxLatitudeE6),
-					this.zoomIntervalConfiguration.getBaseZoom(i)), this.zoomIntervalConfiguration.getBaseZoom(i));
-			this.tileGridLayouts[i] = new TileGridLayout(upperLeft, computeNumberOfHorizontalTiles(i),
-					computeNumberOfVerticalTiles(i));
+			this.tileGridLayouts[i] = TileGridLayout.fromBoundingBox(this.boundingbox,
+					this.zoomIntervalConfiguration.getBaseZoom(i));
+			LOGGER.finer("basezoom: " + this.zoomIntervalConfiguration.getBaseZoom(i) + "\t+n_horizontal: "
+					+ this.tileGridLayouts[i].getAmountTilesHorizontal() + "\t+n_vertical: "
+					+ this.tileGridLayouts[i].getAmountTilesVertical());
 		}
 	}
 
@@ -121,6 +148,11 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 		return this.zoomIntervalConfiguration;
 	}
 
+	@Override
+	public TLongSet getJunctionNodes() {
+		return this.completedJunctionNodes;
+	}
+
 	@Override
 	public long cumulatedNumberOfTiles() {
 		long cumulated = 0;
@@ -131,30 +163,77 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 		return cumulated;
 	}
 
+	protected void addJunctionNodes(Way way) {
+		if (this.junctionNodes != null) {
+			this.junctionNodes.add(way.getWayNodes());
+		}
+	}
+
+	protected void completeJunctionNodes() {
+		if (this.junctionNodes != null) {
+			this.completedJunctionNodes = this.junctionNodes.complete();
+			this.junctionNodes = null;
+		}
+	}
+
 	protected void countPoiTags(TDNode poi) {
-		if (poi == null || poi.getTags() == null) {
+		if (poi == null) {
 			return;
 		}
-		for (short tag : poi.getTags()) { // NOPMD by bross on 25.12.11 13:48
-			this.histogramPoiTags.adjustOrPutValue(tag, 1, 1);
-		}
+		this.histogramPoiTags.addAll(poi.getTags());
 	}
 
 	protected void countWayTags(TDWay way) {
-		if (way == null || way.getTags() == null) {
+		if (way == null) {
 			return;
 		}
-		for (short tag : way.getTags()) { // NOPMD by bross on 25.12.11 13:48
-			this.histogramWayTags.adjustOrPutValue(tag, 1, 1);
-		}
+		this.histogramWayTags.addAll(way.getTags());
 	}
 
 	protected void countWayTags(short[] tags) { // NOPMD by bross on 25.12.11 13:49
-		if (tags == null) {
+		this.histogramWayTags.addAll(tags);
+	}
+
+	/**
+	 * Optimizes the ordering of the tag ids by the frequencies of the tags. If a tag histogram file of the region
+	 * exists, the ordering computed from it is used and tags which it does not contain are appended, otherwise the
+	 * frequencies counted by this data processor are written to it for later builds.
+	 */
+	protected void optimizeTagOrdering() {
+		OSMTagMapping tagMapping = OSMTagMapping.getInstance();
+		tagMapping.optimizePoiOrdering(this.histogramPoiTags);
+		tagMapping.optimizeWayOrdering(this.histogramWayTags);
+		if (this.tagHistogramFile == null) {
 			return;
 		}
-		for (short tag : tags) { // NOPMD by bross on 25.12.11 13:49
-			this.histogramWayTags.adjustOrPutValue(tag, 1, 1);
+
+		try {
+			if (!this.tagHistogramFile.exists()) {
+				TagHistogram.writeFile(this.tagHistogramFile, this.histogramPoiTags, this.histogramWayTags, tagMapping);
+				return;
+			}
+
+			TagHistogram cachedPoiTags = new TagHistogram();
+			TagHistogram cachedWayTags = new TagHistogram();
+			if (!TagHistogram.readFile(this.tagHistogramFile, cachedPoiTags, cachedWayTags, tagMapping)) {
+				LOGGER.warning("tag histogram file contains tags which are not part of the tag mapping, "
+						+ "using the ordering of this build: " + this.tagHistogramFile);
+				return;
+			}
+			List<String> poiTagKeys = new ArrayList<String>();
+			for (short tag : cachedPoiTags.getTagsByFrequency()) {
+				poiTagKeys.add(tagMapping.getPoiTag(tag).tagKey());
+			}
+			List<String> wayTagKeys = new ArrayList<String>();
+			for (short tag : cachedWayTags.getTagsByFrequency()) {
+				wayTagKeys.add(tagMapping.getWayTag(tag).tagKey());
+			}
+			// the tags are known, so retaining the ordering cannot fail
+			tagMapping.retainPoiOrdering(poiTagKeys);
+			tagMapping.retainWayOrdering(wayTagKeys);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "could not access tag histogram file, using the ordering of this build: "
+					+ this.tagHistogramFile, e);
 		}
 	}
 
@@ -172,7 +251,7 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 						GeoCoordinate.intToDouble(poi.getLongitude()), this.zoomIntervalConfiguration.getBaseZoom(i));
 				long tileCoordinateY = MercatorProjection.latitudeToTileY(GeoCoordinate.intToDouble(poi.getLatitude()),
 						this.zoomIntervalConfiguration.getBaseZoom(i));
-				TileData tileData = getTileImpl(i, (int) tileCoordinateX, (int) tileCoordinateY);
+				TileDataAppender tileData = getTileImpl(i, (int) tileCoordinateX, (int) tileCoordinateY);
 				if (tileData != null) {
 					tileData.addPOI(poi);
 					countPoiTags(poi);
@@ -207,7 +286,7 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 						this.zoomIntervalConfiguration.getBaseZoom(i), bboxEnlargementLocal);
 				boolean added = false;
 				for (TileCoordinate matchedTile : matchedTiles) {
-					TileData td = getTileImpl(i, matchedTile.getX(), matchedTile.getY());
+					TileDataAppender td = getTileImpl(i, matchedTile.getX(), matchedTile.getY());
 					if (td != null) {
 						countWayTags(way);
 						this.countWayTileFactor[i]++;
@@ -222,7 +301,7 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 		}
 	}
 
-	protected abstract TileData getTileImpl(int zoom, int tileX, int tileY);
+	protected abstract TileDataAppender getTileImpl(int zoom, int tileX, int tileY);
 
 	protected abstract void handleVirtualOuterWay(TDWay virtualWay);
 
@@ -230,50 +309,49 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 
 	protected abstract void handleVirtualInnerWay(TDWay virtualWay);
 
-	private int computeNumberOfHorizontalTiles(int zoomIntervalIndex) {
-		long tileCoordinateLeft = MercatorProjection.longitudeToTileX(
-				GeoCoordinate.intToDouble(this.boundingbox.getMinLongitudeE6()),
-				this.zoomIntervalConfiguration.getBaseZoom(zoomIntervalIndex));
-
-		long tileCoordinateRight = MercatorProjection.longitudeToTileX(
-				GeoCoordinate.intToDouble(this.boundingbox.getMaxLongitudeE6()),
-				this.zoomIntervalConfiguration.getBaseZoom(zoomIntervalIndex));
-
-		assert tileCoordinateLeft <= tileCoordinateRight;
-		assert tileCoordinateLeft - tileCoordinateRight + 1 < Integer.MAX_VALUE;
-
-		LOGGER.finer("basezoom: " + this.zoomIntervalConfiguration.getBaseZoom(zoomIntervalIndex) + "\t+n_horizontal: "
-				+ (tileCoordinateRight - tileCoordinateLeft + 1));
-
-		return (int) (tileCoordinateRight - tileCoordinateLeft + 1);
-
-	}
-
-	private int computeNumberOfVerticalTiles(int zoomIntervalIndex) {
-		long tileCoordinateBottom = MercatorProjection.latitudeToTileY(
-				GeoCoordinate.intToDouble(this.boundingbox.getMinLatitudeE6()),
-				this.zoomIntervalConfiguration.getBaseZoom(zoomIntervalIndex));
-
-		long tileCoordinateTop = MercatorProjection.latitudeToTileY(
-				GeoCoordinate.intToDouble(this.boundingbox.getMaxLatitudeE6()),
-				this.zoomIntervalConfiguration.getBaseZoom(zoomIntervalIndex));
-
-		assert tileCoordinateBottom >= tileCoordinateTop;
-		assert tileCoordinateBottom - tileCoordinateTop + 1 <= Integer.MAX_VALUE;
-
-		LOGGER.finer("basezoom: " + this.zoomIntervalConfiguration.getBaseZoom(zoomIntervalIndex) + "\t+n_vertical: "
-				+ (tileCoordinateBottom - tileCoordinateTop + 1));
+	/**
+	 * Merges and relates the member ways of a multipolygon relation, this does not modify any shared state.
+	 */
+	private static final class PolygonizedRelation implements Callable<PolygonizedRelation> {
+		long nanos;
+		final WayPolygonizer polygonizer;
+		final TDRelation relation;
+
+		PolygonizedRelation(TDRelation relation) {
+			this.relation = relation;
+			this.polygonizer = new WayPolygonizer();
+		}
 
-		return (int) (tileCoordinateBottom - tileCoordinateTop + 1);
+		@Override
+		public PolygonizedRelation call() {
+			long startTime = System.nanoTime();
+			this.polygonizer.polygonizeAndRelate(this.relation.getMemberWays());
+			this.nanos = System.nanoTime() - startTime;
+			return this;
+		}
 	}
 
+	/**
+	 * Polygonizes multipolygon relations and adds the resulting polygons. If more than one thread is configured, the
+	 * relations are polygonized on a thread pool. The results are added in the order of the relations, so the result
+	 * is identical to the sequential processing. {@link #finish()} must be called after the last relation and
+	 * {@link #release()} in any case.
+	 */
 	protected class RelationHandler implements TObjectProcedure<TDRelation> {
 
-		private final WayPolygonizer polygonizer = new WayPolygonizer();
+		private final ExecutorService executorService;
+		private final int maximumPendingRelations;
+		private final Deque<Future<PolygonizedRelation>> pendingRelations;
 
-		private List<Integer> inner;
+		private TIntArrayList inner;
 		private List<Deque<TDWay>> extractedPolygons;
-		private Map<Integer, List<Integer>> outerToInner;
+
+		protected RelationHandler() {
+			int poolSize = BaseTileBasedDataProcessor.this.threadPoolSize;
+			this.executorService = poolSize > 1 ? Executors.newFixedThreadPool(poolSize) : null;
+			this.maximumPendingRelations = poolSize * PENDING_RELATIONS_PER_THREAD;
+			this.pendingRelations = new ArrayDeque<Future<PolygonizedRelation>>();
+		}
 
 		@Override
 		public boolean execute(TDRelation relation) {
@@ -281,29 +359,78 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 				return false;
 			}
 
+			PolygonizedRelation polygonizedRelation = new PolygonizedRelation(relation);
+			if (this.executorService == null) {
+				addRelation(polygonizedRelation.call());
+				return true;
+			}
+
+			// keep a limited number of relations in flight to bound the memory consumption
+			while (this.pendingRelations.size() >= this.maximumPendingRelations) {
+				addNextRelation();
+			}
+			this.pendingRelations.add(this.executorService.submit(polygonizedRelation));
+			return true;
+		}
+
+		/**
+		 * Waits until all relations have been polygonized and adds their polygons.
+		 */
+		public void finish() {
+			while (!this.pendingRelations.isEmpty()) {
+				addNextRelation();
+			}
+		}
+
+		/**
+		 * Stops the threads, relations which have not been finished are discarded.
+		 */
+		public void release() {
+			if (this.executorService != null) {
+				this.executorService.shutdownNow();
+			}
+		}
+
+		private void addNextRelation() {
+			try {
+				addRelation(this.pendingRelations.poll().get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while polygonizing relations", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException("could not polygonize relations", e.getCause());
+			}
+		}
+
+		private void addRelation(PolygonizedRelation polygonizedRelation) {
+			TDRelation relation = polygonizedRelation.relation;
+			WayPolygonizer polygonizer = polygonizedRelation.polygonizer;
 			this.extractedPolygons = null;
-			this.outerToInner = null;
 
-			TDWay[] members = relation.getMemberWays();
-			this.polygonizer.polygonizeAndRelate(members);
+			// the ways may be shared with other relations, so their direction is only set when the relation is added
+			polygonizer.updateReversedInRelation(relation.getMemberWays());
+			BaseTileBasedDataProcessor.this.performanceReport.addTime(PerformanceReport.Stage.POLYGONIZATION,
+					polygonizedRelation.nanos);
 
 			// skip invalid relations
-			if (!this.polygonizer.getDangling().isEmpty()) {
+			if (!polygonizer.getDangling().isEmpty()) {
 				LOGGER.fine("relation contains dangling ways which could not be merged to polygons: "
 						+ relation.getId());
-				return true;
-			} else if (!this.polygonizer.getIllegal().isEmpty()) {
+				return;
+			} else if (!polygonizer.getIllegal().isEmpty()) {
 				LOGGER.fine("relation contains illegal closed ways with fewer than 4 nodes: " + relation.getId());
-				return true;
+				return;
 			}
 
-			this.extractedPolygons = this.polygonizer.getPolygons();
-			this.outerToInner = this.polygonizer.getOuterToInner();
+			this.extractedPolygons = polygonizer.getPolygons();
+			TIntArrayList outerPolygons = polygonizer.getOuterPolygons();
 
-			for (Entry<Integer, List<Integer>> entry : this.outerToInner.entrySet()) {
-				Deque<TDWay> outerPolygon = this.extractedPolygons.get(entry.getKey().intValue());
-				this.inner = null;
-				this.inner = entry.getValue();
+			for (int k = 0; k < outerPolygons.size(); k++) {
+				Deque<TDWay> outerPolygon = this.extractedPolygons.get(outerPolygons.get(k));
+				this.inner = polygonizer.getInnerPolygons(outerPolygons.get(k));
 				byte shape = TDWay.SIMPLE_POLYGON;
 				// does it contain inner ways?
 				if (this.inner != null && !this.inner.isEmpty()) {
@@ -320,26 +447,10 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 						LOGGER.fine("constructed outer polygon in relation has no known tags: " + relation.getId());
 						continue;
 					}
-					// merge way nodes from outer way segments
-					List<TDNode> waynodeList = new ArrayList<TDNode>();
-					for (TDWay outerSegment : outerPolygon) {
-						if (outerSegment.isReversedInRelation()) {
-							for (int i = outerSegment.getWayNodes().length - 1; i >= 0; i--) {
-								waynodeList.add(outerSegment.getWayNodes()[i]);
-							}
-						} else {
-							for (TDNode tdNode : outerSegment.getWayNodes()) {
-								waynodeList.add(tdNode);
-							}
-						}
-					}
-					TDNode[] waynodes = waynodeList.toArray(new TDNode[waynodeList.size()]);
-
-					// create new virtual way which represents the outer way
+					// create new virtual way from the way nodes of the outer way segments
 					// use maxWayID counter to create unique id
-					outerWay = new TDWay(++BaseTileBasedDataProcessor.this.maxWayID, relation.getLayer(),
-							relation.getName(), relation.getHouseNumber(), relation.getRef(), relation.getTags(),
-							shape, waynodes);
+					outerWay = mergeSegments(outerPolygon, relation.getLayer(), relation.getName(),
+							relation.getHouseNumber(), relation.getRef(), relation.getTags(), shape);
 
 					// add the newly created way to matching tiles
 					addWayToTiles(outerWay, BaseTileBasedDataProcessor.this.bboxEnlargement);
@@ -377,7 +488,6 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 				// relate inner ways to outer way
 				addInnerWays(outerWay);
 			}
-			return true;
 		}
 
 		private void addInnerWays(TDWay outer) {
@@ -389,8 +499,8 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 					BaseTileBasedDataProcessor.this.outerToInnerMapping.put(outer.getId(), innerList);
 				}
 
-				for (Integer innerIndex : this.inner) {
-					Deque<TDWay> innerSegments = this.extractedPolygons.get(innerIndex.intValue());
+				for (int k = 0; k < this.inner.size(); k++) {
+					Deque<TDWay> innerSegments = this.extractedPolygons.get(this.inner.get(k));
 					TDWay innerWay = null;
 
 					if (innerSegments.size() == 1) {
@@ -411,22 +521,8 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 							}
 						}
 					} else {
-						List<TDNode> waynodeList = new ArrayList<TDNode>();
-						for (TDWay innerSegment : innerSegments) {
-							if (innerSegment.isReversedInRelation()) {
-								for (int i = innerSegment.getWayNodes().length - 1; i >= 0; i--) {
-									waynodeList.add(innerSegment.getWayNodes()[i]);
-								}
-							} else {
-								for (TDNode tdNode : innerSegment.getWayNodes()) {
-									waynodeList.add(tdNode);
-								}
-							}
-						}
-						TDNode[] waynodes = waynodeList.toArray(new TDNode[waynodeList.size()]);
 						// TODO which layer?
-						innerWay = new TDWay(++BaseTileBasedDataProcessor.this.maxWayID, (byte) 0, null, null, null,
-								waynodes);
+						innerWay = mergeSegments(innerSegments, (byte) 0, null, null, null, null, (byte) 0);
 						handleVirtualInnerWay(innerWay);
 						// does not need to be added to corresponding tiles
 						// virtual inner ways do not have any tags, they are holes in the outer polygon
@@ -436,6 +532,32 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 			}
 		}
 
+		/**
+		 * Creates a new virtual way from the way nodes of the given segments, copying ids and coordinates directly
+		 * instead of materializing a node object per way node.
+		 */
+		private TDWay mergeSegments(Deque<TDWay> segments, byte layer, String name, String houseNumber, String ref,
+				short[] tags, byte shape) {
+			int wayNodeCount = 0;
+			for (TDWay segment : segments) {
+				wayNodeCount += segment.getWayNodeCount();
+			}
+			long[] wayNodeIds = new long[wayNodeCount];
+			int[] wayNodeCoordinates = new int[2 * wayNodeCount];
+			int k = 0;
+			for (TDWay segment : segments) {
+				int segmentWayNodeCount = segment.getWayNodeCount();
+				boolean reversed = segment.isReversedInRelation();
+				for (int i = 0; i < segmentWayNodeCount; ++i, ++k) {
+					int index = reversed ? segmentWayNodeCount - 1 - i : i;
+					wayNodeIds[k] = segment.getWayNodeId(index);
+					wayNodeCoordinates[2 * k] = segment.getWayNodeLatitude(index);
+					wayNodeCoordinates[2 * k + 1] = segment.getWayNodeLongitude(index);
+				}
+			}
+			return new TDWay(++BaseTileBasedDataProcessor.this.maxWayID, layer, name, houseNumber, ref, tags, shape,
+					wayNodeIds, wayNodeCoordinates);
+		}
 	}
 
 	protected class WayHandler implements TObjectProcedure<TDWay> {
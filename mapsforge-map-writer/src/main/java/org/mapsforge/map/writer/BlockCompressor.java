@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compresses tile blocks in the LZ4 block format. The compression is greedy with a single hash table of the last
+ * positions of four byte sequences, it favors the decompression speed over the compression ratio. An instance must
+ * only be used by one thread at a time.
+ */
+final class BlockCompressor {
+	private static final int HASH_LOG = 12;
+	private static final int LAST_LITERALS = 5;
+	private static final int MAX_OFFSET = 0xffff;
+	// the last match must start at least this many bytes before the end of the input
+	private static final int MATCH_FIND_LIMIT = 12;
+	private static final int MIN_MATCH = 4;
+	private static final int RUN_MASK = 0x0f;
+	// the number of failed match attempts after which the step size is increased
+	private static final int SKIP_TRIGGER = 6;
+
+	/**
+	 * @param length
+	 *            the length of the uncompressed data
+	 * @return the maximum length of the compressed data
+	 */
+	static int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+	private static int readInt(byte[] data, int offset) {
+		return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16
+				| (data[offset + 3] & 0xff) << 24;
+	}
+
+	private static int writeLength(int length, byte[] dest, int destOffset) {
+		int position = destOffset;
+		int remaining = length;
+		while (remaining >= 0xff) {
+			dest[position++] = (byte) 0xff;
+			remaining -= 0xff;
+		}
+		dest[position++] = (byte) remaining;
+		return position;
+	}
+
+	private static int writeLiterals(byte[] src, int literalsOffset, int literalsLength, byte[] dest, int token,
+			int destOffset) {
+		int position = destOffset;
+		if (literalsLength >= RUN_MASK) {
+			dest[token] = (byte) (RUN_MASK << 4);
+			position = writeLength(literalsLength - RUN_MASK, dest, position);
+		} else {
+			dest[token] = (byte) (literalsLength << 4);
+		}
+		System.arraycopy(src, literalsOffset, dest, position, literalsLength);
+		return position + literalsLength;
+	}
+
+	// positions of the last occurrences of the hashed sequences in the current input, it is cleared for each input
+	// so that the compressed data does not depend on the previously compressed blocks
+	private final int[] hashTable = new int[1 << HASH_LOG];
+	private byte[] buffer = new byte[0];
+
+	/**
+	 * Replaces the content of the block by its compressed form. The compressed data is preceded by the length of the
+	 * uncompressed data as variable byte encoded unsigned int, an empty block remains empty.
+	 * 
+	 * @param block
+	 *            the buffer with the block from its start to its position
+	 */
+	void compressBlock(ByteBuffer block) {
+		int length = block.position();
+		if (length == 0) {
+			return;
+		}
+		if (this.buffer.length < maxCompressedLength(length)) {
+			this.buffer = new byte[maxCompressedLength(length)];
+		}
+		int compressedLength = compress(block.array(), 0, length, this.buffer, 0);
+		block.clear();
+		block.put(Serializer.getVariableByteUnsigned(length));
+		block.put(this.buffer, 0, compressedLength);
+	}
+
+	/**
+	 * Compresses the given data, the destination must provide at least {@link #maxCompressedLength(int)} bytes.
+	 * 
+	 * @param src
+	 *            the array with the uncompressed data
+	 * @param srcOffset
+	 *            the offset of the uncompressed data
+	 * @param length
+	 *            the length of the uncompressed data
+	 * @param dest
+	 *            the array to which the compressed data is written
+	 * @param destOffset
+	 *            the offset at which the compressed data is written
+	 * @return the length of the compressed data
+	 */
+	int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) {
+		int srcEnd = srcOffset + length;
+		int matchLimit = srcEnd - LAST_LITERALS;
+		int matchFindLimit = srcEnd - MATCH_FIND_LIMIT;
+		int anchor = srcOffset;
+		int position = srcOffset;
+		int destPosition = destOffset;
+		Arrays.fill(this.hashTable, -1);
+
+		while (position < matchFindLimit) {
+			int sequence = readInt(src, position);
+			int hash = hash(sequence);
+			int reference = this.hashTable[hash];
+			this.hashTable[hash] = position;
+			if (reference < srcOffset || reference >= position || position - reference > MAX_OFFSET
+					|| readInt(src, reference) != sequence) {
+				// skip faster through data which does not compress
+				position += 1 + ((position - anchor) >>> SKIP_TRIGGER);
+				continue;
+			}
+
+			// extend the match backwards into the pending literals
+			while (position > anchor && reference > srcOffset && src[position - 1] == src[reference - 1]) {
+				--position;
+				--reference;
+			}
+			int matchLength = MIN_MATCH;
+			while (position + matchLength < matchLimit && src[position + matchLength] == src[reference + matchLength]) {
+				++matchLength;
+			}
+
+			int token = destPosition++;
+			destPosition = writeLiterals(src, anchor, position - anchor, dest, token, destPosition);
+			int offset = position - reference;
+			dest[destPosition++] = (byte) offset;
+			dest[destPosition++] = (byte) (offset >>> 8);
+			if (matchLength - MIN_MATCH >= RUN_MASK) {
+				dest[token] |= RUN_MASK;
+				destPosition = writeLength(matchLength - MIN_MATCH - RUN_MASK, dest, destPosition);
+			} else {
+				dest[token] |= matchLength - MIN_MATCH;
+			}
+
+			position += matchLength;
+			anchor = position;
+		}
+
+		// the last sequence consists of literals only
+		int token = destPosition++;
+		destPosition = writeLiterals(src, anchor, srcEnd - anchor, dest, token, destPosition);
+		return destPosition - destOffset;
+	}
+}
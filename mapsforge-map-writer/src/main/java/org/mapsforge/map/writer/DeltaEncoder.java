@@ -87,6 +87,70 @@ public final class DeltaEncoder {
 		return sum;
 	}
 
+	/**
+	 * Computes the sizes in bytes of a list of WayDataBlock objects with delta encoding and with double delta encoding
+	 * in a single pass, without encoding the coordinates. The sizes equal the results of
+	 * {@link #simulateSerialization(List)} for the encoded blocks.
+	 * 
+	 * @param blocks
+	 *            the blocks which should be encoded
+	 * @return both sizes, to be extracted with {@link #getDeltaSize(long)} and {@link #getDoubleDeltaSize(long)}
+	 */
+	static long simulateDeltaSerializations(List<WayDataBlock> blocks) {
+		long sizes = 0;
+		for (WayDataBlock wayDataBlock : blocks) {
+			sizes += mSimulateDeltaSerializations(wayDataBlock.getOuterWay());
+			if (wayDataBlock.getInnerWays() != null) {
+				for (List<Integer> list : wayDataBlock.getInnerWays()) {
+					sizes += mSimulateDeltaSerializations(list);
+				}
+			}
+		}
+		return sizes;
+	}
+
+	static int getDeltaSize(long sizes) {
+		return (int) (sizes >>> 32);
+	}
+
+	static int getDoubleDeltaSize(long sizes) {
+		return (int) sizes;
+	}
+
+	// the delta size is stored in the upper and the double delta size in the lower 32 bits
+	private static long mSimulateDeltaSerializations(List<Integer> list) {
+		Iterator<Integer> it = list.iterator();
+		if (!it.hasNext()) {
+			return 0;
+		}
+		// the first way node is stored in the same way by both encodings
+		int prevLat = it.next().intValue();
+		int prevLon = it.next().intValue();
+		int deltaSize = Serializer.getVariableByteSignedLength(prevLat)
+				+ Serializer.getVariableByteSignedLength(prevLon);
+		int doubleDeltaSize = deltaSize;
+
+		int prevLatDelta = 0;
+		int prevLonDelta = 0;
+		while (it.hasNext()) {
+			int currentLat = it.next().intValue();
+			int currentLon = it.next().intValue();
+			int deltaLat = currentLat - prevLat;
+			int deltaLon = currentLon - prevLon;
+
+			deltaSize += Serializer.getVariableByteSignedLength(deltaLat)
+					+ Serializer.getVariableByteSignedLength(deltaLon);
+			doubleDeltaSize += Serializer.getVariableByteSignedLength(deltaLat - prevLatDelta)
+					+ Serializer.getVariableByteSignedLength(deltaLon - prevLonDelta);
+
+			prevLat = currentLat;
+			prevLon = currentLon;
+			prevLatDelta = deltaLat;
+			prevLonDelta = deltaLon;
+		}
+		return ((long) deltaSize << 32) + doubleDeltaSize;
+	}
+
 	private static List<Integer> mEncode(List<Integer> list, Encoding encoding) {
 		switch (encoding) {
 			case DELTA:
@@ -103,7 +167,7 @@ public final class DeltaEncoder {
 	private static int mSimulateSerialization(List<Integer> list) {
 		int sum = 0;
 		for (Integer coordinate : list) {
-			sum += Serializer.getVariableByteSigned(coordinate.intValue()).length;
+			sum += Serializer.getVariableByteSignedLength(coordinate.intValue());
 		}
 		return sum;
 	}
@@ -112,7 +176,7 @@ public final class DeltaEncoder {
 		if (list == null) {
 			return null;
 		}
-		ArrayList<Integer> result = new ArrayList<Integer>();
+		ArrayList<Integer> result = new ArrayList<Integer>(list.size());
 
 		if (list.isEmpty()) {
 			return result;
@@ -144,7 +208,7 @@ public final class DeltaEncoder {
 			return null;
 		}
 
-		ArrayList<Integer> result = new ArrayList<Integer>();
+		ArrayList<Integer> result = new ArrayList<Integer>(list.size());
 		if (list.isEmpty()) {
 			return result;
 		}
@@ -18,68 +18,102 @@ import gnu.trove.iterator.TLongIterator;
 import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.procedure.TObjectProcedure;
 import gnu.trove.set.hash.TLongHashSet;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import org.mapsforge.map.writer.model.BlockLayout;
 import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.NodeResolver;
 import org.mapsforge.map.writer.model.TDNode;
 import org.mapsforge.map.writer.model.TDRelation;
 import org.mapsforge.map.writer.model.TDWay;
 import org.mapsforge.map.writer.model.TileCoordinate;
 import org.mapsforge.map.writer.model.TileData;
+import org.mapsforge.map.writer.model.TileDataAppender;
+import org.mapsforge.map.writer.model.TileGridLayout;
 import org.mapsforge.map.writer.model.TileInfo;
 import org.openstreetmap.osmosis.core.domain.v0_6.Node;
 import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
 import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
 import org.openstreetmap.osmosis.core.lifecycle.ReleasableIterator;
 import org.openstreetmap.osmosis.core.store.IndexedObjectStore;
 import org.openstreetmap.osmosis.core.store.IndexedObjectStoreReader;
-import org.openstreetmap.osmosis.core.store.NoSuchIndexElementException;
 import org.openstreetmap.osmosis.core.store.SimpleObjectStore;
 import org.openstreetmap.osmosis.core.store.SingleClassObjectSerializationFactory;
 
 /**
- * A TileBasedDataStore that uses the hard disk as storage device for temporary data structures.
+ * A TileBasedDataStore that uses the hard disk as storage device for temporary data structures. The coordinates of
+ * all nodes are kept in a memory mapped file, the ways are resolved in batches and stored together with their way node
+ * coordinates in the order in which the tiles are written.
+ * <p>
+ * In the streaming mode (data processor type "stream") the input must be sorted by type and id as the PBF files of
+ * the planet and its extracts. The ways are then resolved while they are read, and the POIs and ways of the tiles are
+ * kept in temporary files per band of tile rows. Only the band which is currently written is held in memory and it is
+ * released once the writer has finished its rows.
  * 
  * @author bross
  */
 public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
+	/**
+	 * The data processor type which enables the streaming mode.
+	 */
+	public static final String TYPE_STREAM = "stream";
+	private static final int WAYS_PER_BATCH = 10000;
 
-	private final IndexedObjectStore<Node> indexedNodeStore;
-	private final IndexedObjectStore<Way> indexedWayStore;
+	private final BlockLayout blockLayout;
+	private final NodeCoordinateStore nodes;
+	private final IndexedObjectStore<Node> indexedPoiStore;
+	private final WayStore ways;
 	private final SimpleObjectStore<Way> wayStore;
 	private final SimpleObjectStore<Relation> relationStore;
 	private final HDTileData[][][] tileData;
+	private final TileBandStore[] tileBands;
+	private final List<Way> wayBatch;
 
 	final TLongObjectMap<TDWay> virtualWays;
 	final TLongObjectMap<List<TDRelation>> additionalRelationTags;
 
-	private IndexedObjectStoreReader<Node> nodeIndexReader;
-	private IndexedObjectStoreReader<Way> wayIndexReader;
+	private IndexedObjectStoreReader<Node> poiIndexReader;
+	private boolean completed;
+	private boolean nodeAfterWayLogged;
 
 	private HDTileBasedDataProcessor(MapWriterConfiguration configuration) {
 		super(configuration);
-		this.indexedNodeStore = new IndexedObjectStore<Node>(new SingleClassObjectSerializationFactory(Node.class),
-				"idxNodes");
-		this.indexedWayStore = new IndexedObjectStore<Way>(new SingleClassObjectSerializationFactory(Way.class),
-				"idxWays");
-		// indexedRelationStore = new IndexedObjectStore<Relation>(
-		// new SingleClassObjectSerializationFactory(
-		// Relation.class), "idxWays");
+		this.blockLayout = configuration.getBlockLayout();
+		this.nodes = new NodeCoordinateStore();
+		this.indexedPoiStore = new IndexedObjectStore<Node>(new SingleClassObjectSerializationFactory(Node.class),
+				"idxPois");
+		this.ways = new WayStore();
 		this.wayStore = new SimpleObjectStore<Way>(new SingleClassObjectSerializationFactory(Way.class), "heapWays",
 				true);
 		this.relationStore = new SimpleObjectStore<Relation>(new SingleClassObjectSerializationFactory(Relation.class),
 				"heapRelations", true);
 
-		this.tileData = new HDTileData[this.zoomIntervalConfiguration.getNumberOfZoomIntervals()][][];
-		for (int i = 0; i < this.zoomIntervalConfiguration.getNumberOfZoomIntervals(); i++) {
-			this.tileData[i] = new HDTileData[this.tileGridLayouts[i].getAmountTilesHorizontal()][this.tileGridLayouts[i]
-					.getAmountTilesVertical()];
+		if (TYPE_STREAM.equalsIgnoreCase(configuration.getDataProcessorType())) {
+			this.tileData = null;
+			this.tileBands = new TileBandStore[this.zoomIntervalConfiguration.getNumberOfZoomIntervals()];
+			for (int i = 0; i < this.zoomIntervalConfiguration.getNumberOfZoomIntervals(); i++) {
+				this.tileBands[i] = new TileBandStore(this.tileGridLayouts[i], configuration.getBlockLayout());
+			}
+			this.wayBatch = new ArrayList<Way>(WAYS_PER_BATCH);
+		} else {
+			this.tileData = new HDTileData[this.zoomIntervalConfiguration.getNumberOfZoomIntervals()][][];
+			for (int i = 0; i < this.zoomIntervalConfiguration.getNumberOfZoomIntervals(); i++) {
+				TileGridLayout tileGridLayout = this.tileGridLayouts[i];
+				this.tileData[i] = new HDTileData[tileGridLayout.getAmountTilesHorizontal()][tileGridLayout
+						.getAmountTilesVertical()];
+			}
+			this.tileBands = null;
+			this.wayBatch = null;
 		}
 		this.virtualWays = new TLongObjectHashMap<TDWay>();
 		this.additionalRelationTags = new TLongObjectHashMap<List<TDRelation>>();
@@ -98,18 +132,55 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 	@Override
 	public void addNode(Node node) {
-		this.indexedNodeStore.add(node.getId(), node);
-		TDNode tdNode = TDNode.fromNode(node, this.preferredLanguage);
-		addPOI(tdNode);
+		addNode(node, convertNode(node));
+	}
+
+	@Override
+	public void addNode(Node node, TDNode tdNode) {
+		if (this.wayBatch != null && this.maxWayID != Long.MIN_VALUE && !this.nodeAfterWayLogged) {
+			LOGGER.warning("node " + node.getId() + " follows the ways, the streaming mode requires sorted input");
+			this.nodeAfterWayLogged = true;
+		}
+		this.nodes.add(tdNode.getId(), tdNode.getLatitude(), tdNode.getLongitude());
+		if (tdNode.isPOI()) {
+			this.indexedPoiStore.add(tdNode.getId(), node);
+			addPOI(tdNode);
+		}
 	}
 
 	@Override
 	public void addWay(Way way) {
-		this.wayStore.add(way);
-		this.indexedWayStore.add(way.getId(), way);
+		addWay(way, null);
+	}
+
+	@Override
+	public void addWay(Way way, TDWay tdWay) {
+		addJunctionNodes(way);
+
+		// the ways are resolved in batches or once all nodes have been read
+		if (this.wayBatch == null) {
+			this.wayStore.add(way);
+		} else {
+			// all nodes have been read already, so the way can be resolved right away
+			this.wayBatch.add(way);
+			if (this.wayBatch.size() == WAYS_PER_BATCH) {
+				resolveWays(this.wayBatch);
+				this.wayBatch.clear();
+			}
+		}
 		this.maxWayID = Math.max(way.getId(), this.maxWayID);
 	}
 
+	@Override
+	public TDNode convertNode(Node node) {
+		return TDNode.fromNode(node, this.preferredLanguage);
+	}
+
+	@Override
+	public TDWay convertWay(Way way) {
+		return null;
+	}
+
 	@Override
 	public void addRelation(Relation relation) {
 		this.relationStore.add(relation);
@@ -130,10 +201,8 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		}
 		List<TDWay> res = new ArrayList<TDWay>();
 		for (long id : innerWayIDs) {
-			TDWay current = null;
-			try {
-				current = TDWay.fromWay(this.wayIndexReader.get(id), this, this.preferredLanguage);
-			} catch (NoSuchIndexElementException e) {
+			TDWay current = this.ways.get(id);
+			if (current == null) {
 				current = this.virtualWays.get(id);
 				if (current == null) {
 					LOGGER.fine("multipolygon with outer way id " + id + " references non-existing inner way " + id);
@@ -149,7 +218,12 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 	@Override
 	public TileData getTile(int baseZoomIndex, int tileCoordinateX, int tileCoordinateY) {
-		HDTileData hdt = getTileImpl(baseZoomIndex, tileCoordinateX, tileCoordinateY);
+		HDTileData hdt;
+		if (this.tileBands == null) {
+			hdt = (HDTileData) getTileImpl(baseZoomIndex, tileCoordinateX, tileCoordinateY);
+		} else {
+			hdt = this.tileBands[baseZoomIndex].getTile(tileCoordinateX, tileCoordinateY);
+		}
 		if (hdt == null) {
 			return null;
 		}
@@ -164,7 +238,7 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		}
 		TileCoordinate correspondingOceanTile = tc.translateToZoomLevel(TileInfo.TILE_INFO_ZOOMLEVEL).get(0);
 
-		if (this.wayIndexReader == null) {
+		if (!this.completed) {
 			throw new IllegalStateException("way store not accessible, call complete() first");
 		}
 
@@ -177,14 +251,11 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		HashSet<TDWay> coastlinesAsTDWay = new HashSet<TDWay>(coastlines.size());
 		while (it.hasNext()) {
 			long id = it.next();
-			TDWay tdWay = null;
-			try {
-				tdWay = TDWay.fromWay(this.wayIndexReader.get(id), this, this.preferredLanguage);
-			} catch (NoSuchIndexElementException e) {
-				LOGGER.finer("coastline way non-existing" + id);
-			}
+			TDWay tdWay = this.ways.get(id);
 			if (tdWay != null) {
 				coastlinesAsTDWay.add(tdWay);
+			} else {
+				LOGGER.finer("coastline way non-existing" + id);
 			}
 		}
 		return coastlinesAsTDWay;
@@ -193,42 +264,74 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 	// TODO add accounting of average number of tiles per way
 	@Override
 	public void complete() {
-		this.indexedNodeStore.complete();
-		this.nodeIndexReader = this.indexedNodeStore.createReader();
-
-		this.indexedWayStore.complete();
-		this.wayIndexReader = this.indexedWayStore.createReader();
+		completeJunctionNodes();
+		this.indexedPoiStore.complete();
+		this.poiIndexReader = this.indexedPoiStore.createReader();
+
+		// resolve the way nodes of all ways, the coordinates are not needed afterwards
+		if (this.wayBatch == null) {
+			ReleasableIterator<Way> wayReader = this.wayStore.iterate();
+			List<Way> batch = new ArrayList<Way>(WAYS_PER_BATCH);
+			while (wayReader.hasNext()) {
+				batch.add(wayReader.next());
+				if (batch.size() == WAYS_PER_BATCH) {
+					resolveWays(batch);
+					batch.clear();
+				}
+			}
+			resolveWays(batch);
+			wayReader.release();
+		} else {
+			resolveWays(this.wayBatch);
+			this.wayBatch.clear();
+		}
+		this.wayStore.release();
+		this.nodes.release();
+		this.completed = true;
 
 		// handle relations
 		ReleasableIterator<Relation> relationReader = this.relationStore.iterate();
 		RelationHandler relationHandler = new RelationHandler();
-		while (relationReader.hasNext()) {
-			Relation entry = relationReader.next();
-			TDRelation tdRelation = TDRelation.fromRelation(entry, this, this.preferredLanguage);
-			relationHandler.execute(tdRelation);
+		try {
+			while (relationReader.hasNext()) {
+				Relation entry = relationReader.next();
+				TDRelation tdRelation = TDRelation.fromRelation(entry, this, this.preferredLanguage);
+				relationHandler.execute(tdRelation);
+			}
+			relationHandler.finish();
+		} finally {
+			relationHandler.release();
 		}
 
-		// handle ways
-		ReleasableIterator<Way> wayReader = this.wayStore.iterate();
-		WayHandler wayHandler = new WayHandler();
-		while (wayReader.hasNext()) {
-			Way way = wayReader.next();
-			TDWay tdWay = TDWay.fromWay(way, this, this.preferredLanguage);
-			if (tdWay == null) {
-				continue;
+		// the virtual ways are shared by all tiles, so they must not be modified while the tiles are encoded
+		this.virtualWays.forEachValue(new TObjectProcedure<TDWay>() {
+			@Override
+			public boolean execute(TDWay virtualWay) {
+				applyRelationInformation(virtualWay);
+				return true;
 			}
-			List<TDRelation> associatedRelations = this.additionalRelationTags.get(tdWay.getId());
-			if (associatedRelations != null) {
-				for (TDRelation tileDataRelation : associatedRelations) {
-					tdWay.mergeRelationInformation(tileDataRelation);
+		});
+
+		// handle ways
+		final WayHandler wayHandler = new WayHandler();
+		this.ways.forEach(new TObjectProcedure<TDWay>() {
+			@Override
+			public boolean execute(TDWay tdWay) {
+				List<TDRelation> associatedRelations = HDTileBasedDataProcessor.this.additionalRelationTags.get(tdWay
+						.getId());
+				if (associatedRelations != null) {
+					for (TDRelation tileDataRelation : associatedRelations) {
+						tdWay.mergeRelationInformation(tileDataRelation);
+					}
 				}
+				return wayHandler.execute(tdWay);
 			}
+		});
 
-			wayHandler.execute(tdWay);
-		}
+		// store the ways in the order in which the tiles with the most way lookups are written
+		this.ways.reorder(getWaysInTileOrder());
 
-		OSMTagMapping.getInstance().optimizePoiOrdering(this.histogramPoiTags);
-		OSMTagMapping.getInstance().optimizeWayOrdering(this.histogramWayTags);
+		optimizeTagOrdering();
 	}
 
 	@Override
@@ -253,43 +356,121 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 	@Override
 	public void release() {
-
-		this.indexedNodeStore.release();
-		this.indexedWayStore.release();
+		if (this.tileBands != null) {
+			for (TileBandStore tileBandStore : this.tileBands) {
+				tileBandStore.release();
+			}
+		}
+		this.nodes.release();
+		this.indexedPoiStore.release();
+		this.ways.release();
 		this.wayStore.release();
 		this.relationStore.release();
 	}
 
 	@Override
 	public TDNode getNode(long id) {
-		if (this.nodeIndexReader == null) {
-			throw new IllegalStateException("node store not accessible, call complete() first");
-		}
-
-		try {
-			return TDNode.fromNode(this.nodeIndexReader.get(id), this.preferredLanguage);
-		} catch (NoSuchIndexElementException e) {
-			LOGGER.finer("node cannot be found in index: " + id);
-			return null;
-		}
+		return this.nodes.get(id);
 	}
 
 	@Override
 	public TDWay getWay(long id) {
-		if (this.wayIndexReader == null) {
+		if (!this.completed) {
 			throw new IllegalStateException("way store not accessible, call complete() first");
 		}
 
-		try {
-			return TDWay.fromWay(this.wayIndexReader.get(id), this, this.preferredLanguage);
-		} catch (NoSuchIndexElementException e) {
+		TDWay way = this.ways.get(id);
+		if (way == null) {
 			LOGGER.finer("way cannot be found in index: " + id);
-			return null;
 		}
+		return way;
 	}
 
 	@Override
-	protected HDTileData getTileImpl(int zoom, int tileX, int tileY) {
+	public void releaseTileRow(int baseZoomIndex, int tileCoordinateY) {
+		if (this.tileBands != null) {
+			this.tileBands[baseZoomIndex].releaseRow(tileCoordinateY);
+			return;
+		}
+
+		int tileCoordinateYIndex = tileCoordinateY - this.tileGridLayouts[baseZoomIndex].getUpperLeft().getY();
+		if (tileCoordinateYIndex < 0 || tileCoordinateYIndex >= this.tileGridLayouts[baseZoomIndex]
+				.getAmountTilesVertical()) {
+			return;
+		}
+		for (HDTileData[] column : this.tileData[baseZoomIndex]) {
+			column[tileCoordinateYIndex] = null;
+		}
+	}
+
+	/**
+	 * @return the way ids of the tiles of the zoom interval with the most tiles in the order in which they are written
+	 */
+	private Iterator<TLongArrayList> getWaysInTileOrder() {
+		int zoomIntervalIndex = 0;
+		long maximumAmountTiles = 0;
+		for (int i = 0; i < this.tileGridLayouts.length; i++) {
+			long amountTiles = (long) this.tileGridLayouts[i].getAmountTilesHorizontal()
+					* this.tileGridLayouts[i].getAmountTilesVertical();
+			if (amountTiles > maximumAmountTiles) {
+				maximumAmountTiles = amountTiles;
+				zoomIntervalIndex = i;
+			}
+		}
+
+		if (this.tileBands != null) {
+			return this.tileBands[zoomIntervalIndex].wayIterator();
+		}
+
+		List<TLongArrayList> wayIds = new ArrayList<TLongArrayList>();
+		HDTileData[][] tiles = this.tileData[zoomIntervalIndex];
+		int lengthX = tiles.length;
+		int lengthY = this.tileGridLayouts[zoomIntervalIndex].getAmountTilesVertical();
+		for (int position = 0; position < lengthX * lengthY; position++) {
+			int tileIndex = this.blockLayout.getTileIndex(position, lengthX, lengthY);
+			HDTileData tile = tiles[tileIndex % lengthX][tileIndex / lengthX];
+			if (tile != null) {
+				wayIds.add(tile.getWays());
+			}
+		}
+		return wayIds.iterator();
+	}
+
+	/**
+	 * Resolves the way nodes of a batch of ways and adds the valid ways to the way store. The way nodes of the whole
+	 * batch are looked up in ascending order of their ids, which reads the node store sequentially.
+	 */
+	private void resolveWays(List<Way> wayBatch) {
+		TLongArrayList wayNodeIds = new TLongArrayList();
+		for (Way way : wayBatch) {
+			for (WayNode wayNode : way.getWayNodes()) {
+				wayNodeIds.add(wayNode.getNodeId());
+			}
+		}
+		final long[] sortedIds = wayNodeIds.toArray();
+		Arrays.sort(sortedIds);
+		final TDNode[] wayNodes = this.nodes.get(sortedIds);
+
+		NodeResolver batchResolver = new NodeResolver() {
+			@Override
+			public TDNode getNode(long id) {
+				return wayNodes[Arrays.binarySearch(sortedIds, id)];
+			}
+		};
+		for (Way way : wayBatch) {
+			TDWay tdWay = TDWay.fromWay(way, batchResolver, this.preferredLanguage);
+			if (tdWay != null) {
+				this.ways.add(tdWay);
+			}
+		}
+	}
+
+	@Override
+	protected TileDataAppender getTileImpl(int zoom, int tileX, int tileY) {
+		if (this.tileBands != null) {
+			return this.tileBands[zoom].getAppender(tileX, tileY);
+		}
+
 		int tileCoordinateXIndex = tileX - this.tileGridLayouts[zoom].getUpperLeft().getX();
 		int tileCoordinateYIndex = tileY - this.tileGridLayouts[zoom].getUpperLeft().getY();
 		// check for valid range
@@ -311,40 +492,40 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		final RAMTileData td = new RAMTileData();
 		TLongIterator it = hdt.getPois().iterator();
 		while (it.hasNext()) {
-			td.addPOI(TDNode.fromNode(this.nodeIndexReader.get(it.next()), this.preferredLanguage));
+			td.addPOI(TDNode.fromNode(this.poiIndexReader.get(it.next()), this.preferredLanguage));
 		}
 
 		it = hdt.getWays().iterator();
 		while (it.hasNext()) {
-			TDWay way = null;
 			long id = it.next();
-			try {
-				way = TDWay.fromWay(this.wayIndexReader.get(id), this, this.preferredLanguage);
-				td.addWay(way);
-			} catch (NoSuchIndexElementException e) {
-				// is it a virtual way?
+			TDWay way = this.ways.get(id);
+			if (way != null) {
+				// the way store returns a new object for each tile
+				applyRelationInformation(way);
+			} else {
+				// is it a virtual way? its relation information has already been applied
 				way = this.virtualWays.get(id);
-				if (way != null) {
-					td.addWay(way);
-				} else {
-					LOGGER.finer("referenced way non-existing" + id);
-				}
 			}
-
 			if (way != null) {
-				if (this.outerToInnerMapping.contains(way.getId())) {
-					way.setShape(TDWay.MULTI_POLYGON);
-				}
-
-				List<TDRelation> associatedRelations = this.additionalRelationTags.get(id);
-				if (associatedRelations != null) {
-					for (TDRelation tileDataRelation : associatedRelations) {
-						way.mergeRelationInformation(tileDataRelation);
-					}
-				}
+				td.addWay(way);
+			} else {
+				LOGGER.finer("referenced way non-existing" + id);
 			}
 		}
 
 		return td;
 	}
+
+	private void applyRelationInformation(TDWay way) {
+		if (this.outerToInnerMapping.contains(way.getId())) {
+			way.setShape(TDWay.MULTI_POLYGON);
+		}
+
+		List<TDRelation> associatedRelations = this.additionalRelationTags.get(way.getId());
+		if (associatedRelations != null) {
+			for (TDRelation tileDataRelation : associatedRelations) {
+				way.mergeRelationInformation(tileDataRelation);
+			}
+		}
+	}
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.List;
+
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Finds the junction nodes of the ways, at which ways end or part from each other. A node is a junction node if it is
+ * the first or the last node of a way which is not closed, or if it has different neighbors in two of the ways which
+ * contain it. The ways meet only at junction nodes or share the whole part between two junction nodes.
+ */
+final class JunctionNodes {
+	private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+	// a hash of the unordered pair of neighbors, so that the direction of a way does not matter
+	private static long hashNeighbors(long previous, long next) {
+		return Math.min(previous, next) * MULTIPLIER + Math.max(previous, next);
+	}
+
+	private final TLongHashSet junctionNodes;
+	private TLongLongHashMap neighbors;
+
+	JunctionNodes() {
+		this.junctionNodes = new TLongHashSet();
+		this.neighbors = new TLongLongHashMap();
+	}
+
+	/**
+	 * Adds the nodes of a way.
+	 * 
+	 * @param wayNodes
+	 *            the nodes of the way
+	 */
+	void add(List<WayNode> wayNodes) {
+		int wayNodeCount = wayNodes.size();
+		if (wayNodeCount == 0) {
+			return;
+		}
+		boolean closed = wayNodeCount > 2
+				&& wayNodes.get(0).getNodeId() == wayNodes.get(wayNodeCount - 1).getNodeId();
+		if (!closed) {
+			this.junctionNodes.add(wayNodes.get(0).getNodeId());
+			this.junctionNodes.add(wayNodes.get(wayNodeCount - 1).getNodeId());
+		}
+
+		// the first node of a closed way is its last node, its neighbors are the second and the second to last node
+		for (int i = closed ? 0 : 1; i < wayNodeCount - 1; ++i) {
+			long previous = wayNodes.get(i > 0 ? i - 1 : wayNodeCount - 2).getNodeId();
+			long next = wayNodes.get(i + 1).getNodeId();
+			long nodeId = wayNodes.get(i).getNodeId();
+			long hash = hashNeighbors(previous, next);
+			if (!this.neighbors.containsKey(nodeId)) {
+				this.neighbors.put(nodeId, hash);
+			} else if (this.neighbors.get(nodeId) != hash) {
+				this.junctionNodes.add(nodeId);
+			}
+		}
+	}
+
+	/**
+	 * Releases the neighbors of the nodes after all ways have been added.
+	 * 
+	 * @return the ids of the junction nodes
+	 */
+	TLongSet complete() {
+		this.neighbors = null;
+		return this.junctionNodes;
+	}
+}
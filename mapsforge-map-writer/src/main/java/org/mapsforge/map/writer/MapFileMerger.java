@@ -0,0 +1,402 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.mapsforge.map.writer.model.BlockLayout;
+import org.mapsforge.map.writer.model.Rect;
+import org.mapsforge.map.writer.model.TileGridLayout;
+
+/**
+ * Merges the map files of the shards of a bounding box into the map file of the whole bounding box. The tile blocks
+ * are copied without being decoded, only the header and the index of each sub file are written again.
+ * <p>
+ * All shards must have been written with the same configuration and the same tag ordering, which is ensured by a
+ * common tag histogram file. Each tile of the merged map file must be covered by exactly one shard.
+ */
+public final class MapFileMerger {
+	/**
+	 * The header and the sub files of the map file of a shard.
+	 */
+	private static final class ShardFile {
+		final Rect boundingBox;
+		final FileChannel channel;
+		final byte[] header;
+		final RandomAccessFile randomAccessFile;
+		final long[] subfileSizes;
+		final long[] subfileStarts;
+
+		ShardFile(RandomAccessFile randomAccessFile, byte[] header, int subfileTablePosition) {
+			this.randomAccessFile = randomAccessFile;
+			this.channel = randomAccessFile.getChannel();
+			this.header = header;
+			ByteBuffer buffer = ByteBuffer.wrap(header);
+			// the bounding box is stored as minimum latitude, minimum longitude, maximum latitude, maximum longitude
+			this.boundingBox = new Rect(buffer.getInt(OFFSET_BOUNDING_BOX + BYTES_INT),
+					buffer.getInt(OFFSET_BOUNDING_BOX + 3 * BYTES_INT), buffer.getInt(OFFSET_BOUNDING_BOX),
+					buffer.getInt(OFFSET_BOUNDING_BOX + 2 * BYTES_INT));
+			int numberOfSubfiles = header[subfileTablePosition - 1];
+			int sizeOfSubfileEntry = sizeOfSubfileEntry(header[getFlagsPosition(header)]);
+			this.subfileStarts = new long[numberOfSubfiles];
+			this.subfileSizes = new long[numberOfSubfiles];
+			for (int i = 0; i < numberOfSubfiles; ++i) {
+				int entryPosition = subfileTablePosition + i * sizeOfSubfileEntry + OFFSET_SUBFILE_START;
+				this.subfileStarts[i] = buffer.getLong(entryPosition);
+				this.subfileSizes[i] = buffer.getLong(entryPosition + BYTES_LONG);
+			}
+		}
+	}
+
+	private static final int BYTES_INT = 4;
+	private static final int BYTES_LONG = 8;
+	private static final long INDEX_ENTRY_OFFSET_MASK = 0x7FFFFFFFFFL;
+	private static final long INDEX_ENTRY_WATER = (long) MapFileWriter.BITMAP_INDEX_ENTRY_WATER << 32;
+	private static final Logger LOGGER = Logger.getLogger(MapFileMerger.class.getName());
+	private static final int OFFSET_BOUNDING_BOX = MapFileWriter.OFFSET_DATE_OF_CREATION + BYTES_LONG;
+	// the offset of the start address of a sub file in its entry of the zoom interval configuration
+	private static final int OFFSET_SUBFILE_START = 3;
+
+	/**
+	 * Merges the map files of the shards given on the command line.
+	 * 
+	 * @param args
+	 *            the merged map file followed by the map files of all shards
+	 * @throws IOException
+	 *             thrown if the map files cannot be merged
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: " + MapFileMerger.class.getName() + " <output file> <shard file>...");
+			System.exit(1);
+		}
+		List<File> shardFiles = new ArrayList<File>();
+		for (int i = 1; i < args.length; ++i) {
+			shardFiles.add(new File(args[i]));
+		}
+		merge(shardFiles, new File(args[0]));
+	}
+
+	/**
+	 * Merges the map files of the shards of a bounding box into the map file of the whole bounding box.
+	 * 
+	 * @param shardFiles
+	 *            the map files of the shards
+	 * @param outputFile
+	 *            the merged map file
+	 * @throws IOException
+	 *             thrown if the map files cannot be read or do not belong to the same map file
+	 */
+	public static void merge(List<File> shardFiles, File outputFile) throws IOException {
+		if (shardFiles.isEmpty()) {
+			throw new IllegalArgumentException("no map files to merge");
+		}
+
+		long startTime = System.currentTimeMillis();
+		List<ShardFile> shards = new ArrayList<ShardFile>();
+		RandomAccessFile output = null;
+		try {
+			byte[] normalizedHeader = null;
+			int subfileTablePosition = 0;
+			for (File shardFile : shardFiles) {
+				RandomAccessFile randomAccessFile = new RandomAccessFile(shardFile, "r");
+				byte[] header;
+				try {
+					header = readHeader(randomAccessFile, shardFile);
+				} catch (IOException e) {
+					randomAccessFile.close();
+					throw e;
+				}
+				int position = getSubfileTablePosition(header);
+				shards.add(new ShardFile(randomAccessFile, header, position));
+
+				byte[] normalized = normalize(header, position);
+				if (normalizedHeader == null) {
+					normalizedHeader = normalized;
+					subfileTablePosition = position;
+				} else if (!Arrays.equals(normalizedHeader, normalized)) {
+					throw new IOException("map file " + shardFile + " has not been written with the same configuration"
+							+ " and tag ordering as " + shardFiles.get(0)
+							+ ", all shards must be written with a common tag-histogram-file");
+				}
+			}
+
+			Rect boundingBox = shards.get(0).boundingBox;
+			for (ShardFile shard : shards) {
+				boundingBox = new Rect(Math.min(boundingBox.minLongitudeE6, shard.boundingBox.minLongitudeE6),
+						Math.max(boundingBox.maxLongitudeE6, shard.boundingBox.maxLongitudeE6), Math.min(
+								boundingBox.minLatitudeE6, shard.boundingBox.minLatitudeE6), Math.max(
+								boundingBox.maxLatitudeE6, shard.boundingBox.maxLatitudeE6));
+			}
+
+			ByteBuffer header = ByteBuffer.wrap(shards.get(0).header.clone());
+			header.putLong(MapFileWriter.OFFSET_DATE_OF_CREATION, System.currentTimeMillis());
+			header.putInt(OFFSET_BOUNDING_BOX, boundingBox.minLatitudeE6);
+			header.putInt(OFFSET_BOUNDING_BOX + BYTES_INT, boundingBox.minLongitudeE6);
+			header.putInt(OFFSET_BOUNDING_BOX + 2 * BYTES_INT, boundingBox.maxLatitudeE6);
+			header.putInt(OFFSET_BOUNDING_BOX + 3 * BYTES_INT, boundingBox.maxLongitudeE6);
+
+			output = new RandomAccessFile(outputFile, "rw");
+			// discard the content of an existing file, otherwise it would remain behind a smaller map file
+			output.setLength(0);
+
+			byte flags = header.get(getFlagsPosition(header.array()));
+			boolean debug = (flags & MapFileWriter.BITMAP_DEBUG) != 0;
+			BlockLayout blockLayout = (flags & MapFileWriter.BITMAP_BLOCK_LAYOUT_Z_ORDER) != 0 ? BlockLayout.Z_ORDER
+					: BlockLayout.ROW_MAJOR;
+			int sizeOfSubfileEntry = sizeOfSubfileEntry(flags);
+
+			long currentFileSize = header.capacity();
+			for (int i = 0; i < shards.get(0).subfileStarts.length; ++i) {
+				int entryPosition = subfileTablePosition + i * sizeOfSubfileEntry;
+				byte baseZoom = header.get(entryPosition);
+				long subfileSize = mergeSubfile(shards, i, TileGridLayout.fromBoundingBox(boundingBox, baseZoom),
+						blockLayout, debug, currentFileSize, output);
+				header.putLong(entryPosition + OFFSET_SUBFILE_START, currentFileSize);
+				header.putLong(entryPosition + OFFSET_SUBFILE_START + BYTES_LONG, subfileSize);
+				currentFileSize += subfileSize;
+			}
+
+			header.putLong(MapFileWriter.OFFSET_FILE_SIZE, currentFileSize);
+			output.seek(0);
+			output.write(header.array());
+			output.close();
+			output = null;
+		} finally {
+			if (output != null) {
+				output.close();
+			}
+			for (ShardFile shard : shards) {
+				shard.randomAccessFile.close();
+			}
+		}
+
+		LOGGER.info("merged " + shards.size() + " shards into " + outputFile.getAbsolutePath() + " in "
+				+ (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	private static void copy(FileChannel source, long position, long count, FileChannel target) throws IOException {
+		long transferred = 0;
+		while (transferred < count) {
+			transferred += source.transferTo(position + transferred, count - transferred, target);
+		}
+	}
+
+	private static int getFlagsPosition(byte[] header) {
+		// the projection follows the tile size
+		return skipString(header, OFFSET_BOUNDING_BOX + 4 * BYTES_INT + 2);
+	}
+
+	private static int getSubfileTablePosition(byte[] header) {
+		int position = getFlagsPosition(header);
+		byte flags = header[position++];
+		if ((flags & MapFileWriter.BITMAP_MAP_START_POSITION) != 0) {
+			position += 2 * BYTES_INT;
+		}
+		if ((flags & MapFileWriter.BITMAP_MAP_START_ZOOM) != 0) {
+			++position;
+		}
+		if ((flags & MapFileWriter.BITMAP_PREFERRED_LANGUAGE) != 0) {
+			position = skipString(header, position);
+		}
+		if ((flags & MapFileWriter.BITMAP_COMMENT) != 0) {
+			position = skipString(header, position);
+		}
+		// created with
+		position = skipString(header, position);
+		for (int tags = 0; tags < 2; ++tags) {
+			int amountTags = ((header[position] & 0xff) << 8) | (header[position + 1] & 0xff);
+			position += 2;
+			for (int j = 0; j < amountTags; ++j) {
+				position = skipString(header, position);
+			}
+		}
+		// the amount of zoom intervals precedes the table
+		return position + 1;
+	}
+
+	private static long mergeSubfile(List<ShardFile> shards, int subfileIndex, TileGridLayout tileGridLayout,
+			BlockLayout blockLayout, boolean debug, long startPositionSubfile, RandomAccessFile output)
+			throws IOException {
+		int lengthX = tileGridLayout.getAmountTilesHorizontal();
+		int lengthY = tileGridLayout.getAmountTilesVertical();
+		int prefixLength = debug ? MapFileWriter.DEBUG_INDEX_START_STRING.getBytes().length : 0;
+
+		// the grid and the index of each shard
+		TileGridLayout[] shardLayouts = new TileGridLayout[shards.size()];
+		long[][] shardIndexes = new long[shards.size()][];
+		for (int s = 0; s < shards.size(); ++s) {
+			ShardFile shard = shards.get(s);
+			byte baseZoom = tileGridLayout.getUpperLeft().getZoomlevel();
+			shardLayouts[s] = TileGridLayout.fromBoundingBox(shard.boundingBox, baseZoom);
+			shardIndexes[s] = readIndex(shard, subfileIndex, prefixLength, shardLayouts[s].getAmountTilesHorizontal()
+					* shardLayouts[s].getAmountTilesVertical());
+		}
+
+		int amountTiles = lengthX * lengthY;
+		ByteBuffer indexBuffer = ByteBuffer.allocate(prefixLength + amountTiles
+				* MapFileWriter.BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE);
+		if (debug) {
+			indexBuffer.put(MapFileWriter.DEBUG_INDEX_START_STRING.getBytes());
+		}
+
+		FileChannel target = output.getChannel();
+		target.position(startPositionSubfile + indexBuffer.capacity());
+		long currentSubfileOffset = indexBuffer.capacity();
+
+		// adjacent blocks of the same shard are copied at once
+		int runShard = -1;
+		long runStart = 0;
+		long runEnd = 0;
+		for (int position = 0; position < amountTiles; ++position) {
+			int tileIndex = blockLayout.getTileIndex(position, lengthX, lengthY);
+			int tileX = tileGridLayout.getUpperLeft().getX() + tileIndex % lengthX;
+			int tileY = tileGridLayout.getUpperLeft().getY() + tileIndex / lengthX;
+
+			int s = -1;
+			for (int candidate = 0; candidate < shards.size(); ++candidate) {
+				if (shardLayouts[candidate].contains(tileX, tileY)) {
+					if (s >= 0) {
+						throw new IOException("tile " + tileX + "," + tileY + " of sub file " + subfileIndex
+								+ " is contained in more than one shard");
+					}
+					s = candidate;
+				}
+			}
+			if (s < 0) {
+				throw new IOException("tile " + tileX + "," + tileY + " of sub file " + subfileIndex
+						+ " is not contained in any shard");
+			}
+
+			TileGridLayout shardLayout = shardLayouts[s];
+			int shardPosition = blockLayout.getPosition(tileX - shardLayout.getUpperLeft().getX(), tileY
+					- shardLayout.getUpperLeft().getY(), shardLayout.getAmountTilesHorizontal(),
+					shardLayout.getAmountTilesVertical());
+			long[] shardIndex = shardIndexes[s];
+			long blockStart = shardIndex[shardPosition] & INDEX_ENTRY_OFFSET_MASK;
+			long blockEnd = shardPosition + 1 < shardIndex.length ? shardIndex[shardPosition + 1]
+					& INDEX_ENTRY_OFFSET_MASK : shards.get(s).subfileSizes[subfileIndex];
+
+			indexBuffer.put(Serializer.getFiveBytes(currentSubfileOffset
+					| (shardIndex[shardPosition] & INDEX_ENTRY_WATER)));
+			currentSubfileOffset += blockEnd - blockStart;
+
+			if (s != runShard || blockStart != runEnd) {
+				if (runShard >= 0) {
+					copy(shards.get(runShard).channel, shards.get(runShard).subfileStarts[subfileIndex] + runStart,
+							runEnd - runStart, target);
+				}
+				runShard = s;
+				runStart = blockStart;
+			}
+			runEnd = blockEnd;
+		}
+		copy(shards.get(runShard).channel, shards.get(runShard).subfileStarts[subfileIndex] + runStart, runEnd
+				- runStart, target);
+
+		output.seek(startPositionSubfile);
+		output.write(indexBuffer.array());
+		return currentSubfileOffset;
+	}
+
+	// a copy of the header without the fields which differ between the shards of a map file
+	private static byte[] normalize(byte[] header, int subfileTablePosition) {
+		ByteBuffer buffer = ByteBuffer.wrap(header.clone());
+		buffer.putLong(MapFileWriter.OFFSET_FILE_SIZE, 0);
+		buffer.putLong(MapFileWriter.OFFSET_DATE_OF_CREATION, 0);
+		for (int i = 0; i < 4; ++i) {
+			buffer.putInt(OFFSET_BOUNDING_BOX + i * BYTES_INT, 0);
+		}
+		int sizeOfSubfileEntry = sizeOfSubfileEntry(header[getFlagsPosition(header)]);
+		for (int i = 0; i < header[subfileTablePosition - 1]; ++i) {
+			buffer.putLong(subfileTablePosition + i * sizeOfSubfileEntry + OFFSET_SUBFILE_START, 0);
+			buffer.putLong(subfileTablePosition + i * sizeOfSubfileEntry + OFFSET_SUBFILE_START + BYTES_LONG, 0);
+		}
+		return buffer.array();
+	}
+
+	private static byte[] readHeader(RandomAccessFile randomAccessFile, File file) throws IOException {
+		byte[] magicBytes = MapFileWriter.MAGIC_BYTE.getBytes();
+		if (randomAccessFile.length() < magicBytes.length + BYTES_INT) {
+			throw new IOException("not a map file: " + file);
+		}
+		byte[] prefix = new byte[magicBytes.length];
+		randomAccessFile.readFully(prefix);
+		if (!Arrays.equals(magicBytes, prefix)) {
+			throw new IOException("not a map file: " + file);
+		}
+		int headerSize = randomAccessFile.readInt();
+		if (headerSize < 0 || magicBytes.length + BYTES_INT + (long) headerSize > randomAccessFile.length()) {
+			throw new IOException("invalid header size " + headerSize + " of map file " + file);
+		}
+
+		byte[] header = new byte[magicBytes.length + BYTES_INT + headerSize];
+		randomAccessFile.seek(0);
+		randomAccessFile.readFully(header);
+		return header;
+	}
+
+	private static long[] readIndex(ShardFile shard, int subfileIndex, int prefixLength, int amountTiles)
+			throws IOException {
+		byte[] index = new byte[amountTiles * MapFileWriter.BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE];
+		shard.randomAccessFile.seek(shard.subfileStarts[subfileIndex] + prefixLength);
+		shard.randomAccessFile.readFully(index);
+
+		long[] entries = new long[amountTiles];
+		for (int i = 0; i < amountTiles; ++i) {
+			long entry = 0;
+			for (int j = 0; j < MapFileWriter.BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE; ++j) {
+				entry = entry << 8 | index[i * MapFileWriter.BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE + j] & 0xff;
+			}
+			entries[i] = entry;
+		}
+		return entries;
+	}
+
+	private static int sizeOfSubfileEntry(byte flags) {
+		if ((flags & MapFileWriter.BITMAP_BLOCK_COMPRESSION) != 0) {
+			// the codec of each sub file
+			return MapFileWriter.SIZE_ZOOMINTERVAL_CONFIGURATION + 1;
+		}
+		return MapFileWriter.SIZE_ZOOMINTERVAL_CONFIGURATION;
+	}
+
+	private static int skipString(byte[] header, int position) {
+		int length = 0;
+		int shift = 0;
+		int current = position;
+		while ((header[current] & 0x80) != 0) {
+			length |= (header[current++] & 0x7f) << shift;
+			shift += 7;
+		}
+		length |= header[current++] << shift;
+		return current + length;
+	}
+
+	/**
+	 * Empty private constructor to prevent object creation.
+	 */
+	private MapFileMerger() {
+		// do nothing
+	}
+}
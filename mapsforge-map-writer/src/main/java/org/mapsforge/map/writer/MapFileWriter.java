@@ -14,15 +14,28 @@
  */
 package org.mapsforge.map.writer;
 
+import gnu.trove.set.TLongSet;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
+import org.mapsforge.map.writer.model.BlockCompression;
+import org.mapsforge.map.writer.model.BlockLayout;
 import org.mapsforge.map.writer.model.Encoding;
 import org.mapsforge.map.writer.model.GeoCoordinate;
 import org.mapsforge.map.writer.model.MapWriterConfiguration;
@@ -33,6 +46,7 @@ import org.mapsforge.map.writer.model.TDWay;
 import org.mapsforge.map.writer.model.TileBasedDataProcessor;
 import org.mapsforge.map.writer.model.TileCoordinate;
 import org.mapsforge.map.writer.model.TileData;
+import org.mapsforge.map.writer.model.TileGridLayout;
 import org.mapsforge.map.writer.model.TileInfo;
 import org.mapsforge.map.writer.model.WayDataBlock;
 import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
@@ -40,6 +54,7 @@ import org.mapsforge.map.writer.util.Constants;
 import org.mapsforge.map.writer.util.GeoUtils;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 
 /**
  * Writes the binary file format for mapsforge maps.
@@ -61,17 +76,19 @@ public final class MapFileWriter {
 
 	private static final int DEBUG_BLOCK_SIZE = 32;
 
-	private static final String DEBUG_INDEX_START_STRING = "+++IndexStart+++";
+	static final String DEBUG_INDEX_START_STRING = "+++IndexStart+++";
 
-	private static final int SIZE_ZOOMINTERVAL_CONFIGURATION = 19;
+	static final int SIZE_ZOOMINTERVAL_CONFIGURATION = 19;
 
 	// private static final int PIXEL_COMPRESSION_MAX_DELTA = 5;
 
-	private static final int BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE = 5;
+	static final int BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE = 5;
+
+	static final String MAGIC_BYTE = "mapsforge binary OSM";
 
-	private static final String MAGIC_BYTE = "mapsforge binary OSM";
+	static final int OFFSET_FILE_SIZE = 28;
 
-	private static final int OFFSET_FILE_SIZE = 28;
+	static final int OFFSET_DATE_OF_CREATION = 36;
 
 	// private static final CoastlineHandler COASTLINE_HANDLER = new
 	// CoastlineHandler();
@@ -98,14 +115,19 @@ public final class MapFileWriter {
 	private static final short BITMAP_ENCODING = 4;
 
 	// bitmap flags for file features
-	private static final short BITMAP_DEBUG = 128; // NOPMD by bross on 25.12.11 13:53
-	private static final short BITMAP_MAP_START_POSITION = 64; // NOPMD by bross on 25.12.11 13:53
-	private static final short BITMAP_MAP_START_ZOOM = 32; // NOPMD by bross on 25.12.11 13:53
-	private static final short BITMAP_PREFERRED_LANGUAGE = 16; // NOPMD by bross on 25.12.11 13:53
-	private static final short BITMAP_COMMENT = 8; // NOPMD by bross on 25.12.11 13:53
-	private static final short BITMAP_CREATED_WITH = 4; // NOPMD by bross on 25.12.11 13:53
+	static final short BITMAP_DEBUG = 128; // NOPMD by bross on 25.12.11 13:53
+	static final short BITMAP_MAP_START_POSITION = 64; // NOPMD by bross on 25.12.11 13:53
+	static final short BITMAP_MAP_START_ZOOM = 32; // NOPMD by bross on 25.12.11 13:53
+	static final short BITMAP_PREFERRED_LANGUAGE = 16; // NOPMD by bross on 25.12.11 13:53
+	static final short BITMAP_COMMENT = 8; // NOPMD by bross on 25.12.11 13:53
+	static final short BITMAP_CREATED_WITH = 4; // NOPMD by bross on 25.12.11 13:53
+	static final short BITMAP_BLOCK_COMPRESSION = 2;
+	static final short BITMAP_BLOCK_LAYOUT_Z_ORDER = 1;
+
+	// older readers reject map files with compressed blocks or blocks in Z-order by their file version
+	private static final int FILE_VERSION_BLOCK_FORMAT = 4;
 
-	private static final int BITMAP_INDEX_ENTRY_WATER = 0x80;
+	static final int BITMAP_INDEX_ENTRY_WATER = 0x80;
 
 	private static final Logger LOGGER = Logger.getLogger(MapFileWriter.class.getName());
 
@@ -125,6 +147,26 @@ public final class MapFileWriter {
 	static final int WAY_BUFFER_SIZE = 0x100000; // 1MB
 	static final int POI_BUFFER_SIZE = 0x100000; // 1MB
 
+	// maximum number of coordinates of the cached way geometries of a sub file
+	private static final int WAY_GEOMETRY_CACHE_SIZE = 1000000;
+
+	// parallel processing of tiles
+	private static final int TILES_PER_BATCH = 64;
+	private static final int PENDING_BATCHES_PER_THREAD = 4;
+	private static final ThreadLocal<BlockCompressor> BLOCK_COMPRESSORS = new ThreadLocal<BlockCompressor>() {
+		@Override
+		protected BlockCompressor initialValue() {
+			return new BlockCompressor();
+		}
+	};
+	private static final ThreadLocal<ByteBuffer[]> BATCH_BUFFERS = new ThreadLocal<ByteBuffer[]>() {
+		@Override
+		protected ByteBuffer[] initialValue() {
+			return new ByteBuffer[] { ByteBuffer.allocate(TILE_BUFFER_SIZE), ByteBuffer.allocate(POI_BUFFER_SIZE),
+					ByteBuffer.allocate(WAY_BUFFER_SIZE) };
+		}
+	};
+
 	/**
 	 * Writes the map file according to the given configuration using the given data processor.
 	 * 
@@ -137,10 +179,29 @@ public final class MapFileWriter {
 	 */
 	public static void writeFile(MapWriterConfiguration configuration, TileBasedDataProcessor dataProcessor)
 			throws IOException {
+		long startTime = System.nanoTime();
+		PerformanceReport performanceReport = configuration.getPerformanceReport();
 
 		RandomAccessFile randomAccessFile = new RandomAccessFile(configuration.getOutputFile(), "rw");
+		// discard the content of an existing file, otherwise it would remain behind a smaller map file
+		randomAccessFile.setLength(0);
 
 		int amountOfZoomIntervals = dataProcessor.getZoomIntervalConfiguration().getNumberOfZoomIntervals();
+
+		// PREVIOUS MAP FILE: must be read before the header as it determines the tag ordering
+		TileFingerprints previousFingerprints = null;
+		RandomAccessFile previousFile = null;
+		if (configuration.getPreviousFile() != null) {
+			previousFingerprints = readPreviousFingerprints(configuration);
+			if (previousFingerprints != null) {
+				previousFile = new RandomAccessFile(configuration.getPreviousFile(), "r");
+			}
+		}
+		TileFingerprints fingerprints = null;
+		if (configuration.isFingerprints()) {
+			fingerprints = new TileFingerprints(configuration, amountOfZoomIntervals);
+		}
+
 		ByteBuffer containerHeaderBuffer = ByteBuffer.allocate(HEADER_BUFFER_SIZE);
 		// CONTAINER HEADER
 		int totalHeaderSize = writeHeaderBuffer(configuration, dataProcessor, containerHeaderBuffer);
@@ -152,14 +213,41 @@ public final class MapFileWriter {
 		// for each zoom interval write a sub file
 		long currentFileSize = totalHeaderSize;
 		for (int i = 0; i < amountOfZoomIntervals; i++) {
+			TileFingerprints.Subfile subfileFingerprints = null;
+			if (fingerprints != null) {
+				ZoomIntervalConfiguration zoomIntervalConfiguration = dataProcessor.getZoomIntervalConfiguration();
+				subfileFingerprints = new TileFingerprints.Subfile(zoomIntervalConfiguration.getBaseZoom(i),
+						zoomIntervalConfiguration.getMinZoom(i), zoomIntervalConfiguration.getMaxZoom(i),
+						dataProcessor.getTileGridLayout(i));
+				subfileFingerprints.startAddress = currentFileSize;
+				fingerprints.subfiles[i] = subfileFingerprints;
+			}
+			PreviousSubfile previousSubfile = null;
+			if (previousFingerprints != null && i < previousFingerprints.subfiles.length
+					&& previousFingerprints.subfiles[i].hasSameTiles(subfileFingerprints)) {
+				previousSubfile = new PreviousSubfile(previousFile, previousFingerprints.subfiles[i],
+						configuration.isDebugStrings());
+			}
+
 			// SUB FILE INDEX AND DATA
-			long subfileSize = writeSubfile(currentFileSize, i, dataProcessor, randomAccessFile, configuration);
+			long subfileStartTime = System.nanoTime();
+			long subfileSize = writeSubfile(currentFileSize, i, dataProcessor, randomAccessFile, configuration,
+					subfileFingerprints, previousSubfile);
+			TileGridLayout tileGridLayout = dataProcessor.getTileGridLayout(i);
+			performanceReport.addSubfile(dataProcessor.getZoomIntervalConfiguration().getBaseZoom(i),
+					tileGridLayout.getAmountTilesHorizontal() * tileGridLayout.getAmountTilesVertical(),
+					previousSubfile == null ? 0 : previousSubfile.copiedTiles, subfileSize, System.nanoTime()
+							- subfileStartTime);
+			if (subfileFingerprints != null) {
+				subfileFingerprints.size = subfileSize;
+			}
 			// SUB FILE META DATA IN CONTAINER HEADER
 			writeSubfileMetaDataToContainerHeader(dataProcessor.getZoomIntervalConfiguration(), i, currentFileSize,
-					subfileSize, containerHeaderBuffer);
+					subfileSize, configuration.getBlockCompression(), containerHeaderBuffer);
 			currentFileSize += subfileSize;
 		}
 
+		long ioStartTime = System.nanoTime();
 		randomAccessFile.seek(0);
 		randomAccessFile.write(containerHeaderBuffer.array(), 0, totalHeaderSize);
 
@@ -170,7 +258,60 @@ public final class MapFileWriter {
 
 		randomAccessFile.close();
 
+		if (previousFile != null) {
+			previousFile.close();
+		}
+		if (fingerprints != null) {
+			fingerprints.write(configuration.getOutputFile(), containerHeaderBuffer.getLong(OFFSET_DATE_OF_CREATION));
+		}
+		performanceReport.addTime(PerformanceReport.Stage.IO, System.nanoTime() - ioStartTime);
+		performanceReport.addTime(PerformanceReport.Stage.WRITING, System.nanoTime() - startTime);
+
 		LOGGER.info("Finished writing file.");
+
+		if (configuration.getReportFile() != null) {
+			performanceReport.write(configuration.getReportFile(), configuration, fileSize);
+			LOGGER.info("written performance report to " + configuration.getReportFile().getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Reads the fingerprints of the previous map file and retains its tag ordering, so that its tiles can be copied.
+	 * 
+	 * @return the fingerprints, null if the tiles of the previous map file cannot be reused
+	 */
+	private static TileFingerprints readPreviousFingerprints(MapWriterConfiguration configuration)
+			throws IOException {
+		TileFingerprints previousFingerprints = TileFingerprints.read(configuration.getPreviousFile());
+		if (previousFingerprints == null) {
+			LOGGER.warning("no fingerprints found for previous map file, all tiles are encoded: "
+					+ configuration.getPreviousFile());
+			return null;
+		}
+
+		RandomAccessFile previousFile = new RandomAccessFile(configuration.getPreviousFile(), "r");
+		try {
+			previousFile.seek(OFFSET_DATE_OF_CREATION);
+			if (previousFingerprints.creationDate != previousFile.readLong()
+					|| previousFingerprints.mapFileSize != previousFile.length()) {
+				LOGGER.warning("fingerprints do not belong to previous map file, all tiles are encoded: "
+						+ configuration.getPreviousFile());
+				return null;
+			}
+		} finally {
+			previousFile.close();
+		}
+
+		if (previousFingerprints.configuration != TileFingerprints.fingerprintConfiguration(configuration)) {
+			LOGGER.warning("previous map file has been written with a different configuration, all tiles are encoded");
+			return null;
+		}
+		if (!configuration.getTagMapping().retainPoiOrdering(previousFingerprints.poiTags)
+				|| !configuration.getTagMapping().retainWayOrdering(previousFingerprints.wayTags)) {
+			LOGGER.warning("tag mapping does not contain the tags of the previous map file, all tiles are encoded");
+			return null;
+		}
+		return previousFingerprints;
 	}
 
 	private static void writeUTF8(String string, ByteBuffer buffer) {
@@ -197,7 +338,13 @@ public final class MapFileWriter {
 		containerHeaderBuffer.putInt(DUMMY_INT);
 
 		// FILE VERSION
-		containerHeaderBuffer.putInt(configuration.getFileSpecificationVersion());
+		if (configuration.getBlockCompression() == BlockCompression.NONE
+				&& configuration.getBlockLayout() == BlockLayout.ROW_MAJOR) {
+			containerHeaderBuffer.putInt(configuration.getFileSpecificationVersion());
+		} else {
+			containerHeaderBuffer.putInt(Math.max(configuration.getFileSpecificationVersion(),
+					FILE_VERSION_BLOCK_FORMAT));
+		}
 
 		// FILE SIZE: Write dummy pattern as file size. It will be replaced
 		// later in time
@@ -271,7 +418,12 @@ public final class MapFileWriter {
 		// SET MARK OF THIS BUFFER AT POSITION FOR WRITING ZOOM INTERVAL CONFIG
 		containerHeaderBuffer.mark();
 		// ZOOM INTERVAL CONFIGURATION: SKIP COMPUTED AMOUNT OF BYTES
-		containerHeaderBuffer.position(containerHeaderBuffer.position() + SIZE_ZOOMINTERVAL_CONFIGURATION
+		int sizeZoomIntervalConfiguration = SIZE_ZOOMINTERVAL_CONFIGURATION;
+		if (configuration.getBlockCompression() != BlockCompression.NONE) {
+			// the codec of each sub file
+			++sizeZoomIntervalConfiguration;
+		}
+		containerHeaderBuffer.position(containerHeaderBuffer.position() + sizeZoomIntervalConfiguration
 				* numberOfZoomIntervals);
 
 		// now write header size
@@ -283,7 +435,7 @@ public final class MapFileWriter {
 	}
 
 	private static void writeSubfileMetaDataToContainerHeader(ZoomIntervalConfiguration zoomIntervalConfiguration,
-			int i, long startIndexOfSubfile, long subfileSize, ByteBuffer buffer) {
+			int i, long startIndexOfSubfile, long subfileSize, BlockCompression blockCompression, ByteBuffer buffer) {
 
 		// HEADER META DATA FOR SUB FILE
 		// write zoom interval configuration to header
@@ -296,11 +448,15 @@ public final class MapFileWriter {
 		buffer.put(maxZoomCurrentInterval);
 		buffer.putLong(startIndexOfSubfile);
 		buffer.putLong(subfileSize);
+		if (blockCompression != BlockCompression.NONE) {
+			buffer.put(blockCompression.getId());
+		}
 	}
 
 	private static long writeSubfile(final long startPositionSubfile, final int zoomIntervalIndex,
 			final TileBasedDataProcessor dataStore, final RandomAccessFile randomAccessFile,
-			final MapWriterConfiguration configuration) throws IOException {
+			final MapWriterConfiguration configuration, final TileFingerprints.Subfile fingerprints,
+			final PreviousSubfile previousSubfile) throws IOException {
 
 		LOGGER.fine("writing data for zoom interval " + zoomIntervalIndex + ", number of tiles: "
 				+ dataStore.getTileGridLayout(zoomIntervalIndex).getAmountTilesHorizontal()
@@ -326,9 +482,6 @@ public final class MapFileWriter {
 				+ (configuration.isDebugStrings() ? DEBUG_INDEX_START_STRING.getBytes().length : 0);
 
 		final ByteBuffer indexBuffer = ByteBuffer.allocate(indexBufferSize);
-		final ByteBuffer tileBuffer = ByteBuffer.allocate(TILE_BUFFER_SIZE);
-		final ByteBuffer wayBuffer = ByteBuffer.allocate(WAY_BUFFER_SIZE);
-		final ByteBuffer poiBuffer = ByteBuffer.allocate(POI_BUFFER_SIZE);
 
 		final ByteBuffer multipleTilesBuffer = ByteBuffer.allocate(TILES_BUFFER_SIZE);
 
@@ -337,34 +490,56 @@ public final class MapFileWriter {
 			indexBuffer.put(DEBUG_INDEX_START_STRING.getBytes());
 		}
 
+		final PerformanceReport performanceReport = configuration.getPerformanceReport();
+
 		long currentSubfileOffset = indexBufferSize;
 		randomAccessFile.seek(startPositionSubfile + indexBufferSize);
 
-		for (int tileY = upperLeft.getY(); tileY < upperLeft.getY() + lengthY; tileY++) {
-			for (int tileX = upperLeft.getX(); tileX < upperLeft.getX() + lengthX; tileX++) {
-				TileCoordinate tileCoordinate = new TileCoordinate(tileX, tileY, baseZoomCurrentInterval);
+		final WayGeometryCache wayGeometryCache = new WayGeometryCache(WAY_GEOMETRY_CACHE_SIZE);
+
+		// the tiles are processed in the order of the block layout, a row is released after its last tile
+		final int[] remainingTilesOfRow = new int[lengthY];
+		Arrays.fill(remainingTilesOfRow, lengthX);
+
+		if (configuration.getThreadPoolSize() > 1) {
+			currentSubfileOffset = writeTilesParallel(upperLeft, lengthX, lengthY, baseZoomCurrentInterval,
+					zoomIntervalIndex, dataStore, configuration, wayGeometryCache, fingerprints, previousSubfile,
+					indexBuffer, multipleTilesBuffer, currentSubfileOffset, amountOfTilesInPercentStep,
+					remainingTilesOfRow, randomAccessFile);
+		} else {
+			final ByteBuffer tileBuffer = ByteBuffer.allocate(TILE_BUFFER_SIZE);
+			final ByteBuffer wayBuffer = ByteBuffer.allocate(WAY_BUFFER_SIZE);
+			final ByteBuffer poiBuffer = ByteBuffer.allocate(POI_BUFFER_SIZE);
+			final BlockLayout blockLayout = configuration.getBlockLayout();
+
+			while (processedTiles < amountTiles) {
+				int tileIndex = blockLayout.getTileIndex(processedTiles, lengthX, lengthY);
+				int tileY = tileIndex / lengthX;
+				TileCoordinate tileCoordinate = new TileCoordinate(upperLeft.getX() + tileIndex % lengthX,
+						upperLeft.getY() + tileY, baseZoomCurrentInterval);
 
 				processIndexEntry(tileCoordinate, indexBuffer, currentSubfileOffset);
-				processTile(configuration, tileCoordinate, dataStore, zoomIntervalIndex, tileBuffer, poiBuffer,
-						wayBuffer);
-				currentSubfileOffset += tileBuffer.position();
-
-				writeTile(multipleTilesBuffer, tileBuffer, randomAccessFile);
-
-				if (++processedTiles % amountOfTilesInPercentStep == 0) {
-					if (processedTiles == amountTiles) {
-						LOGGER.info("written 100% of sub file for zoom interval index " + zoomIntervalIndex);
-					} else {
-						LOGGER.info("written " + (processedTiles / amountOfTilesInPercentStep) * PROGRESS_PERCENT_STEP
-								+ "% of sub file for zoom interval index " + zoomIntervalIndex);
-					}
-
+				if (processTile(configuration, tileCoordinate, dataStore, zoomIntervalIndex, wayGeometryCache,
+						fingerprints, previousSubfile, processedTiles, tileBuffer, poiBuffer, wayBuffer)) {
+					currentSubfileOffset += tileBuffer.position();
+					writeTile(multipleTilesBuffer, tileBuffer.array(), 0, tileBuffer.position(), randomAccessFile,
+							performanceReport);
+				} else {
+					byte[] tile = readPreviousTile(previousSubfile, processedTiles, performanceReport);
+					currentSubfileOffset += tile.length;
+					writeTile(multipleTilesBuffer, tile, 0, tile.length, randomAccessFile, performanceReport);
 				}
 
+				logProgress(++processedTiles, amountTiles, amountOfTilesInPercentStep, zoomIntervalIndex);
+
 				// TODO accounting for progress information
-			} // end for loop over tile columns
-		} // /end for loop over tile rows
+				if (--remainingTilesOfRow[tileY] == 0) {
+					dataStore.releaseTileRow(zoomIntervalIndex, upperLeft.getY() + tileY);
+				}
+			}
+		}
 
+		long ioStartTime = System.nanoTime();
 		// write remaining tiles
 		if (multipleTilesBuffer.position() > 0) {
 			// byte buffer was not previously cleared
@@ -372,20 +547,129 @@ public final class MapFileWriter {
 		}
 
 		writeIndex(indexBuffer, startPositionSubfile, currentSubfileOffset, randomAccessFile);
+		performanceReport.addTime(PerformanceReport.Stage.IO, System.nanoTime() - ioStartTime);
+
+		LOGGER.fine("way geometry cache hit rate for zoom interval index " + zoomIntervalIndex + ": "
+				+ wayGeometryCache.getHitRate());
+		if (previousSubfile != null) {
+			LOGGER.info("copied " + previousSubfile.copiedTiles + " of " + amountTiles
+					+ " tiles from the previous map file for zoom interval index " + zoomIntervalIndex);
+		}
 
 		// return size of sub file in bytes
 		return currentSubfileOffset;
 
 	}
 
-	private static void writeTile(ByteBuffer multipleTilesBuffer, ByteBuffer tileBuffer,
-			RandomAccessFile randomAccessFile) throws IOException {
+	/**
+	 * Processes the tiles of a sub file in batches on a thread pool. The batches are written in their original order,
+	 * so the result is identical to the sequential processing.
+	 */
+	private static long writeTilesParallel(TileCoordinate upperLeft, int lengthX, int lengthY, byte baseZoom,
+			int zoomIntervalIndex, TileBasedDataProcessor dataStore, MapWriterConfiguration configuration,
+			WayGeometryCache wayGeometryCache, TileFingerprints.Subfile fingerprints, PreviousSubfile previousSubfile,
+			ByteBuffer indexBuffer, ByteBuffer multipleTilesBuffer, long startSubfileOffset,
+			double amountOfTilesInPercentStep, int[] remainingTilesOfRow, RandomAccessFile randomAccessFile)
+			throws IOException {
+		int amountTiles = lengthX * lengthY;
+		int threadPoolSize = configuration.getThreadPoolSize();
+		int maximumPendingBatches = threadPoolSize * PENDING_BATCHES_PER_THREAD;
+		ExecutorService executorService = Executors.newFixedThreadPool(threadPoolSize);
+		Deque<Future<TileBatch>> pendingBatches = new ArrayDeque<Future<TileBatch>>();
+		PerformanceReport performanceReport = configuration.getPerformanceReport();
+
+		long currentSubfileOffset = startSubfileOffset;
+		int processedTiles = 0;
+		int submittedTiles = 0;
+		try {
+			while (processedTiles < amountTiles) {
+				// keep a limited number of batches in flight to bound the memory consumption
+				while (submittedTiles < amountTiles && pendingBatches.size() < maximumPendingBatches) {
+					int batchSize = Math.min(TILES_PER_BATCH, amountTiles - submittedTiles);
+					pendingBatches.add(executorService.submit(new TileBatch(configuration, dataStore,
+							zoomIntervalIndex, wayGeometryCache, fingerprints, previousSubfile, upperLeft, lengthX,
+							lengthY, baseZoom, submittedTiles, batchSize)));
+					submittedTiles += batchSize;
+				}
+
+				TileBatch tileBatch = getTileBatch(pendingBatches.poll());
+				int tileOffset = 0;
+				for (int i = 0; i < tileBatch.tileSizes.length; ++i) {
+					int tileSize = tileBatch.tileSizes[i];
+					TileCoordinate tileCoordinate = tileBatch.getTileCoordinate(i);
+					processIndexEntry(tileCoordinate, indexBuffer, currentSubfileOffset);
+					if (tileSize == TileBatch.UNCHANGED_TILE) {
+						byte[] tile = readPreviousTile(previousSubfile, processedTiles, performanceReport);
+						currentSubfileOffset += tile.length;
+						writeTile(multipleTilesBuffer, tile, 0, tile.length, randomAccessFile, performanceReport);
+					} else {
+						currentSubfileOffset += tileSize;
+						writeTile(multipleTilesBuffer, tileBatch.data, tileOffset, tileSize, randomAccessFile,
+								performanceReport);
+						tileOffset += tileSize;
+					}
+
+					logProgress(++processedTiles, amountTiles, amountOfTilesInPercentStep, zoomIntervalIndex);
+
+					// all batches with tiles of a completed row have been processed
+					if (--remainingTilesOfRow[tileCoordinate.getY() - upperLeft.getY()] == 0) {
+						synchronized (dataStore) {
+							dataStore.releaseTileRow(zoomIntervalIndex, tileCoordinate.getY());
+						}
+					}
+				}
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		return currentSubfileOffset;
+	}
+
+	private static TileBatch getTileBatch(Future<TileBatch> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while processing tiles", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException("could not process tiles", e.getCause());
+		}
+	}
+
+	private static void logProgress(int processedTiles, int amountTiles, double amountOfTilesInPercentStep,
+			int zoomIntervalIndex) {
+		if (processedTiles % amountOfTilesInPercentStep == 0) {
+			if (processedTiles == amountTiles) {
+				LOGGER.info("written 100% of sub file for zoom interval index " + zoomIntervalIndex);
+			} else {
+				LOGGER.info("written " + (processedTiles / amountOfTilesInPercentStep) * PROGRESS_PERCENT_STEP
+						+ "% of sub file for zoom interval index " + zoomIntervalIndex);
+			}
+		}
+	}
+
+	private static byte[] readPreviousTile(PreviousSubfile previousSubfile, int tileIndex,
+			PerformanceReport performanceReport) throws IOException {
+		long startTime = System.nanoTime();
+		byte[] tile = previousSubfile.readTile(tileIndex);
+		performanceReport.addTime(PerformanceReport.Stage.IO, System.nanoTime() - startTime);
+		return tile;
+	}
+
+	private static void writeTile(ByteBuffer multipleTilesBuffer, byte[] tile, int offset, int length,
+			RandomAccessFile randomAccessFile, PerformanceReport performanceReport) throws IOException {
 		// add tile to tiles buffer
-		multipleTilesBuffer.put(tileBuffer.array(), 0, tileBuffer.position());
+		multipleTilesBuffer.put(tile, offset, length);
 
 		// if necessary, allocate new buffer
 		if (multipleTilesBuffer.remaining() < MIN_TILE_BUFFER_SIZE) {
+			long startTime = System.nanoTime();
 			randomAccessFile.write(multipleTilesBuffer.array(), 0, multipleTilesBuffer.position());
+			performanceReport.addTime(PerformanceReport.Stage.IO, System.nanoTime() - startTime);
 			multipleTilesBuffer.clear();
 		}
 	}
@@ -406,16 +690,26 @@ public final class MapFileWriter {
 		indexBuffer.put(indexBytes);
 	}
 
-	private static void processTile(MapWriterConfiguration configuration, TileCoordinate tileCoordinate,
-			TileBasedDataProcessor dataProcessor, int zoomIntervalIndex, ByteBuffer tileBuffer, ByteBuffer poiBuffer,
-			ByteBuffer wayBuffer) {
+	/**
+	 * Encodes a tile into the tile buffer unless its fingerprint equals the one of the previous map file.
+	 * 
+	 * @return true if the tile has been encoded, false if it must be copied from the previous map file
+	 */
+	private static boolean processTile(MapWriterConfiguration configuration, TileCoordinate tileCoordinate,
+			TileBasedDataProcessor dataProcessor, int zoomIntervalIndex, WayGeometryCache wayGeometryCache,
+			TileFingerprints.Subfile fingerprints, PreviousSubfile previousSubfile, int tileIndex,
+			ByteBuffer tileBuffer, ByteBuffer poiBuffer, ByteBuffer wayBuffer) {
+		long startTime = System.nanoTime();
 
 		tileBuffer.clear();
 		poiBuffer.clear();
 		wayBuffer.clear();
 
-		final TileData currentTile = dataProcessor.getTile(zoomIntervalIndex, tileCoordinate.getX(),
-				tileCoordinate.getY());
+		// the data processors are not thread-safe, only the preprocessing of the ways runs in parallel
+		final TileData currentTile;
+		synchronized (dataProcessor) {
+			currentTile = dataProcessor.getTile(zoomIntervalIndex, tileCoordinate.getX(), tileCoordinate.getY());
+		}
 
 		final int currentTileLat = GeoCoordinate.doubleToInt(MercatorProjection.tileYToLatitude(tileCoordinate.getY(),
 				tileCoordinate.getZoomlevel()));
@@ -431,6 +725,20 @@ public final class MapFileWriter {
 		Map<Byte, List<TDWay>> waysByZoomlevel = currentTile.waysByZoomlevel(minZoomCurrentInterval,
 				maxZoomCurrentInterval);
 
+		if (fingerprints != null) {
+			TLongSet junctionNodes = configuration.getZoomSimplification() == null ? null : dataProcessor
+					.getJunctionNodes();
+			long fingerprint = TileFingerprints.fingerprintTile(poisByZoomlevel, waysByZoomlevel,
+					minZoomCurrentInterval, maxZoomCurrentInterval, dataProcessor, junctionNodes);
+			fingerprints.fingerprints[tileIndex] = fingerprint;
+			if (previousSubfile != null && previousSubfile.fingerprints[tileIndex] == fingerprint) {
+				return false;
+			}
+		}
+
+		long preprocessingTime = 0;
+		int amountPois = 0;
+		int amountWays = 0;
 		if (!poisByZoomlevel.isEmpty() || !waysByZoomlevel.isEmpty()) {
 			if (configuration.isDebugStrings()) {
 				writeTileSignature(tileCoordinate, tileBuffer);
@@ -451,6 +759,7 @@ public final class MapFileWriter {
 					}
 					// increment count of POIs on this zoom level
 					entitiesPerZoomLevel[indexEntitiesPerZoomLevelTable][0] += pois.size();
+					amountPois += pois.size();
 				}
 			}
 			// ADD POI BUFFER TO TILE BUFFER
@@ -465,8 +774,12 @@ public final class MapFileWriter {
 
 				List<TDWay> ways = waysByZoomlevel.get(Byte.valueOf(zoomlevel));
 				if (ways != null) {
+					amountWays += ways.size();
 					for (TDWay way : ways) {
-						WayPreprocessingResult wpr = preprocessWay(way, tileCoordinate, dataProcessor, configuration);
+						long preprocessingStartTime = System.nanoTime();
+						WayPreprocessingResult wpr = preprocessWay(way, tileCoordinate, zoomIntervalIndex,
+								dataProcessor, configuration, wayGeometryCache);
+						preprocessingTime += System.nanoTime() - preprocessingStartTime;
 						if (wpr != null) {
 							wayBuffer.clear();
 							// increment count of ways on this zoom level
@@ -489,6 +802,22 @@ public final class MapFileWriter {
 			writeZoomLevelTable(zoomLevelTablePosition, entitiesPerZoomLevel, tileBuffer);
 
 		}
+
+		long compressionTime = 0;
+		if (configuration.getBlockCompression() != BlockCompression.NONE) {
+			long compressionStartTime = System.nanoTime();
+			BLOCK_COMPRESSORS.get().compressBlock(tileBuffer);
+			compressionTime = System.nanoTime() - compressionStartTime;
+		}
+
+		long tileTime = System.nanoTime() - startTime;
+		PerformanceReport performanceReport = configuration.getPerformanceReport();
+		performanceReport.addTime(PerformanceReport.Stage.PREPROCESSING, preprocessingTime);
+		performanceReport.addTime(PerformanceReport.Stage.COMPRESSION, compressionTime);
+		performanceReport.addTime(PerformanceReport.Stage.SERIALIZATION, tileTime - preprocessingTime
+				- compressionTime);
+		performanceReport.addTile(tileCoordinate, tileTime, amountPois, amountWays);
+		return true;
 	}
 
 	private static void writeTileSignature(TileCoordinate tileCoordinate, ByteBuffer tileBuffer) {
@@ -693,8 +1022,8 @@ public final class MapFileWriter {
 		}
 	}
 
-	private static WayPreprocessingResult preprocessWay(TDWay way, TileCoordinate tile,
-			TileBasedDataProcessor dataStore, MapWriterConfiguration configuration) {
+	private static WayPreprocessingResult preprocessWay(TDWay way, TileCoordinate tile, int zoomIntervalIndex,
+			TileBasedDataProcessor dataStore, MapWriterConfiguration configuration, WayGeometryCache wayGeometryCache) {
 
 		// TODO more sophisticated clipping of polygons needed
 		// we have a problem when clipping polygons which border needs to be
@@ -710,12 +1039,39 @@ public final class MapFileWriter {
 		// polygons that represent a border must be clipped as simple ways and
 		// not as polygons
 
-		List<TDWay> innerways = dataStore.getInnerWaysOfMultipolygon(way.getId());
-		// wayDataBlockList = GeoUtils.preprocessWay(way, null, clipPolygons,
-		// simplify, clipWays, tile,
-		// bboxEnlargement);
-		Geometry geometry = GeoUtils.preprocessWay(way, innerways, configuration.isPolygonClipping(),
-				configuration.isWayClipping(), configuration.getSimplification(), tile,
+		// the simplified geometry of a way is independent of the tile, reuse it for all tiles of the sub file
+		Geometry wayGeometry;
+		PreparedGeometry preparedGeometry = null;
+		WayGeometryCache.Entry entry = wayGeometryCache.get(way.getId());
+		if (entry != null) {
+			wayGeometry = entry.geometry;
+			preparedGeometry = entry.preparedGeometry;
+		} else {
+			List<TDWay> innerways;
+			synchronized (dataStore) {
+				innerways = dataStore.getInnerWaysOfMultipolygon(way.getId());
+			}
+			double[] zoomSimplification = configuration.getZoomSimplification();
+			if (zoomSimplification == null) {
+				wayGeometry = GeoUtils.prepareWay(way, innerways, configuration.getSimplification(),
+						tile.getZoomlevel());
+			} else {
+				wayGeometry = GeoUtils.prepareWay(way, innerways, zoomSimplification[zoomIntervalIndex],
+						dataStore.getJunctionNodes());
+			}
+			// ways that lie within a single tile are not needed again
+			if (wayGeometry == null || !GeoUtils.coveredByTile(wayGeometry, tile, configuration.getBboxEnlargement())) {
+				entry = new WayGeometryCache.Entry(wayGeometry, hasLabel(way));
+				preparedGeometry = entry.preparedGeometry;
+				wayGeometryCache.put(way.getId(), entry);
+			}
+		}
+		if (wayGeometry == null) {
+			return null;
+		}
+
+		Geometry geometry = GeoUtils.clipToTile(way, wayGeometry, preparedGeometry,
+				configuration.isPolygonClipping(), configuration.isWayClipping(), tile,
 				configuration.getBboxEnlargement());
 		List<WayDataBlock> blocks = GeoUtils.toWayDataBlockList(geometry);
 		if (blocks == null) {
@@ -727,13 +1083,19 @@ public final class MapFileWriter {
 		}
 		short subtileMask = GeoUtils.computeBitmask(geometry, tile, configuration.getBboxEnlargement());
 
-		// check if the polygon is completely contained in the current tile
-		// in that case clipped polygon equals the original polygon
-		// as a consequence we do not try to compute a label position
-		// this is left to the renderer for more flexibility
-		GeoCoordinate centroid = null;
-		if (GeoUtils.coveredByTile(geometry, tile, configuration.getBboxEnlargement())) {
-			centroid = GeoUtils.computeCentroid(geometry);
+		// the label position of a labelled area is computed once from the whole area and stored in all of its tiles, so
+		// that the renderer does not need to compute it and the label is at the same position in all tiles
+		GeoCoordinate labelPosition;
+		if (entry != null) {
+			labelPosition = entry.labelPosition;
+		} else if (hasLabel(way)) {
+			labelPosition = GeoUtils.computeLabelPosition(wayGeometry);
+		} else {
+			labelPosition = null;
+		}
+		// other ways only get a label position if they are completely contained in the current tile
+		if (labelPosition == null && GeoUtils.coveredByTile(geometry, tile, configuration.getBboxEnlargement())) {
+			labelPosition = GeoUtils.computeCentroid(geometry);
 		}
 
 		switch (configuration.getEncodingChoice()) {
@@ -744,19 +1106,26 @@ public final class MapFileWriter {
 				blocks = DeltaEncoder.encode(blocks, Encoding.DOUBLE_DELTA);
 				break;
 			case AUTO:
-				List<WayDataBlock> blocksDelta = DeltaEncoder.encode(blocks, Encoding.DELTA);
-				List<WayDataBlock> blocksDoubleDelta = DeltaEncoder.encode(blocks, Encoding.DOUBLE_DELTA);
-				int simDelta = DeltaEncoder.simulateSerialization(blocksDelta);
-				int simDoubleDelta = DeltaEncoder.simulateSerialization(blocksDoubleDelta);
+				long startTime = System.nanoTime();
+				// only the smaller encoding is materialized
+				long sizes = DeltaEncoder.simulateDeltaSerializations(blocks);
+				int simDelta = DeltaEncoder.getDeltaSize(sizes);
+				int simDoubleDelta = DeltaEncoder.getDoubleDeltaSize(sizes);
 				if (simDelta <= simDoubleDelta) {
-					blocks = blocksDelta;
+					blocks = DeltaEncoder.encode(blocks, Encoding.DELTA);
 				} else {
-					blocks = blocksDoubleDelta;
+					blocks = DeltaEncoder.encode(blocks, Encoding.DOUBLE_DELTA);
 				}
+				configuration.getPerformanceReport().addAutoEncoding(System.nanoTime() - startTime, simDelta,
+						simDoubleDelta);
 				break;
 		}
 
-		return new WayPreprocessingResult(blocks, centroid, subtileMask);
+		return new WayPreprocessingResult(blocks, labelPosition, subtileMask);
+	}
+
+	private static boolean hasLabel(TDWay way) {
+		return way.getName() != null || way.getHouseNumber() != null || way.getRef() != null;
 	}
 
 	private static int mappedWayTagID(short original) {
@@ -802,6 +1171,13 @@ public final class MapFileWriter {
 
 		infoByte |= BITMAP_CREATED_WITH;
 
+		if (configuration.getBlockCompression() != BlockCompression.NONE) {
+			infoByte |= BITMAP_BLOCK_COMPRESSION;
+		}
+		if (configuration.getBlockLayout() == BlockLayout.Z_ORDER) {
+			infoByte |= BITMAP_BLOCK_LAYOUT_Z_ORDER;
+		}
+
 		return infoByte;
 	}
 
@@ -849,6 +1225,54 @@ public final class MapFileWriter {
 		return infoByte;
 	}
 
+	/**
+	 * The tiles of a sub file of the previous map file, a tile is copied if its fingerprint has not changed.
+	 */
+	private static class PreviousSubfile {
+
+		final long[] fingerprints;
+		int copiedTiles;
+		private final byte[] index;
+		private final RandomAccessFile randomAccessFile;
+		private final TileFingerprints.Subfile subfile;
+
+		PreviousSubfile(RandomAccessFile randomAccessFile, TileFingerprints.Subfile subfile, boolean debugStrings)
+				throws IOException {
+			this.randomAccessFile = randomAccessFile;
+			this.subfile = subfile;
+			this.fingerprints = subfile.fingerprints;
+			this.index = new byte[subfile.fingerprints.length * BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE];
+			randomAccessFile.seek(subfile.startAddress
+					+ (debugStrings ? DEBUG_INDEX_START_STRING.getBytes().length : 0));
+			randomAccessFile.readFully(this.index);
+		}
+
+		/**
+		 * Reads the data of a tile, the tiles must be read by only one thread.
+		 */
+		byte[] readTile(int tileIndex) throws IOException {
+			long tileOffset = getTileOffset(tileIndex);
+			long nextTileOffset = tileIndex + 1 < this.fingerprints.length ? getTileOffset(tileIndex + 1)
+					: this.subfile.size;
+			byte[] tile = new byte[(int) (nextTileOffset - tileOffset)];
+			this.randomAccessFile.seek(this.subfile.startAddress + tileOffset);
+			this.randomAccessFile.readFully(tile);
+			++this.copiedTiles;
+			return tile;
+		}
+
+		private long getTileOffset(int tileIndex) {
+			int position = tileIndex * BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE;
+			// the highest bit marks water tiles
+			long tileOffset = this.index[position] & ~BITMAP_INDEX_ENTRY_WATER & 0xff;
+			for (int i = 1; i < BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE; ++i) {
+				tileOffset = tileOffset << 8 | this.index[position + i] & 0xff;
+			}
+			return tileOffset;
+		}
+
+	}
+
 	private static class WayPreprocessingResult {
 
 		final List<WayDataBlock> wayDataBlocks;
@@ -876,4 +1300,70 @@ public final class MapFileWriter {
 
 	}
 
+	/**
+	 * A number of consecutive tiles of a sub file in row-major order which are serialized into one byte array.
+	 */
+	private static class TileBatch implements Callable<TileBatch> {
+		// the size of a tile that is copied from the previous map file
+		static final int UNCHANGED_TILE = -1;
+
+		final MapWriterConfiguration configuration;
+		final TileBasedDataProcessor dataProcessor;
+		final int zoomIntervalIndex;
+		final WayGeometryCache wayGeometryCache;
+		final TileFingerprints.Subfile fingerprints;
+		final PreviousSubfile previousSubfile;
+		final TileCoordinate upperLeft;
+		final int lengthX;
+		final int lengthY;
+		final byte baseZoom;
+		final int firstTile;
+		final int[] tileSizes;
+		byte[] data;
+
+		TileBatch(MapWriterConfiguration configuration, TileBasedDataProcessor dataProcessor, int zoomIntervalIndex,
+				WayGeometryCache wayGeometryCache, TileFingerprints.Subfile fingerprints,
+				PreviousSubfile previousSubfile, TileCoordinate upperLeft, int lengthX, int lengthY, byte baseZoom,
+				int firstTile, int amountTiles) {
+			this.configuration = configuration;
+			this.dataProcessor = dataProcessor;
+			this.zoomIntervalIndex = zoomIntervalIndex;
+			this.wayGeometryCache = wayGeometryCache;
+			this.fingerprints = fingerprints;
+			this.previousSubfile = previousSubfile;
+			this.upperLeft = upperLeft;
+			this.lengthX = lengthX;
+			this.lengthY = lengthY;
+			this.baseZoom = baseZoom;
+			this.firstTile = firstTile;
+			this.tileSizes = new int[amountTiles];
+		}
+
+		@Override
+		public TileBatch call() {
+			ByteBuffer[] buffers = BATCH_BUFFERS.get();
+			ByteBuffer tileBuffer = buffers[0];
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			for (int i = 0; i < this.tileSizes.length; ++i) {
+				if (processTile(this.configuration, getTileCoordinate(i), this.dataProcessor, this.zoomIntervalIndex,
+						this.wayGeometryCache, this.fingerprints, this.previousSubfile, this.firstTile + i,
+						tileBuffer, buffers[1], buffers[2])) {
+					this.tileSizes[i] = tileBuffer.position();
+					outputStream.write(tileBuffer.array(), 0, tileBuffer.position());
+				} else {
+					this.tileSizes[i] = UNCHANGED_TILE;
+				}
+			}
+			this.data = outputStream.toByteArray();
+			return this;
+		}
+
+		TileCoordinate getTileCoordinate(int i) {
+			int tile = this.configuration.getBlockLayout().getTileIndex(this.firstTile + i, this.lengthX, this.lengthY);
+			return new TileCoordinate(this.upperLeft.getX() + tile % this.lengthX, this.upperLeft.getY() + tile
+					/ this.lengthX, this.baseZoom);
+		}
+
+	}
+
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.function.TLongFunction;
+import gnu.trove.map.hash.TLongLongHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A map from long keys to long values which is stored outside of the Java heap in a memory mapped temporary file. Each
+ * entry takes 16 bytes, the key followed by the value. Keys are expected in ascending order as the ids in OSM files,
+ * which allows lookups by binary search. The few keys that break the order are kept in a hash map on the heap.
+ */
+final class MappedLongMap {
+	/**
+	 * The value that is returned for keys which are not contained in the map.
+	 */
+	static final long NO_ENTRY_VALUE = Long.MIN_VALUE;
+
+	private static final int DEFAULT_ENTRIES_PER_CHUNK = 0x100000;
+	private static final int ENTRY_SIZE = 16;
+	private static final Logger LOGGER = Logger.getLogger(MappedLongMap.class.getName());
+
+	private final List<MappedByteBuffer> chunks;
+	private final int entriesPerChunk;
+	private File file;
+	private FileChannel fileChannel;
+	private long lastKey;
+	private long size;
+	private final TLongLongHashMap unsortedEntries;
+
+	/**
+	 * @param name
+	 *            the prefix of the temporary file
+	 */
+	MappedLongMap(String name) {
+		this(name, DEFAULT_ENTRIES_PER_CHUNK);
+	}
+
+	/**
+	 * @param name
+	 *            the prefix of the temporary file
+	 * @param entriesPerChunk
+	 *            the number of entries per mapped region of the file
+	 * @throws IllegalArgumentException
+	 *             if a mapped region cannot hold the given number of entries
+	 */
+	MappedLongMap(String name, int entriesPerChunk) {
+		if (entriesPerChunk <= 0 || entriesPerChunk > Integer.MAX_VALUE / ENTRY_SIZE) {
+			throw new IllegalArgumentException("entriesPerChunk must be between 1 and "
+					+ Integer.MAX_VALUE / ENTRY_SIZE + ": " + entriesPerChunk);
+		}
+		this.entriesPerChunk = entriesPerChunk;
+		this.chunks = new ArrayList<MappedByteBuffer>();
+		this.lastKey = Long.MIN_VALUE;
+		this.unsortedEntries = new TLongLongHashMap();
+		try {
+			this.file = File.createTempFile(name, ".bin");
+			this.file.deleteOnExit();
+			this.fileChannel = new RandomAccessFile(this.file, "rw").getChannel();
+		} catch (IOException e) {
+			throw new RuntimeException("could not create temporary store " + name, e);
+		}
+	}
+
+	/**
+	 * @param key
+	 *            the key
+	 * @return the value of the key, {@link #NO_ENTRY_VALUE} if the map does not contain the key
+	 */
+	long get(long key) {
+		if (!this.unsortedEntries.isEmpty() && this.unsortedEntries.containsKey(key)) {
+			return this.unsortedEntries.get(key);
+		}
+
+		long index = indexOf(key, 0, this.size - 1);
+		return index < 0 ? NO_ENTRY_VALUE : getValue(index);
+	}
+
+	/**
+	 * Looks up many keys at once. The keys must be sorted in ascending order, so that the file is read from the
+	 * beginning to the end instead of at random positions.
+	 * 
+	 * @param sortedKeys
+	 *            the keys in ascending order
+	 * @param values
+	 *            the array that receives the values, {@link #NO_ENTRY_VALUE} for keys which are not contained
+	 */
+	void get(long[] sortedKeys, long[] values) {
+		long low = 0;
+		for (int i = 0; i < sortedKeys.length; ++i) {
+			long key = sortedKeys[i];
+			if (!this.unsortedEntries.isEmpty() && this.unsortedEntries.containsKey(key)) {
+				values[i] = this.unsortedEntries.get(key);
+				continue;
+			}
+
+			// search exponentially from the position of the previous key to stay close to it in the file
+			long bound = 1;
+			while (low + bound < this.size && getKey(low + bound) < key) {
+				bound <<= 1;
+			}
+			long index = indexOf(key, low + (bound >> 1), Math.min(low + bound, this.size - 1));
+			if (index < 0) {
+				values[i] = NO_ENTRY_VALUE;
+				low = Math.min(-index - 1, this.size);
+			} else {
+				values[i] = getValue(index);
+				low = index;
+			}
+		}
+	}
+
+	/**
+	 * Adds a new entry or replaces the value of an existing key.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 */
+	void put(long key, long value) {
+		if (key <= this.lastKey) {
+			long index = indexOf(key, 0, this.size - 1);
+			if (index < 0) {
+				this.unsortedEntries.put(key, value);
+			} else {
+				setValue(index, value);
+			}
+			return;
+		}
+
+		int chunkIndex = (int) (this.size / this.entriesPerChunk);
+		if (chunkIndex == this.chunks.size()) {
+			long chunkSize = (long) this.entriesPerChunk * ENTRY_SIZE;
+			try {
+				this.chunks.add(this.fileChannel.map(FileChannel.MapMode.READ_WRITE, chunkIndex * chunkSize,
+						chunkSize));
+			} catch (IOException e) {
+				throw new RuntimeException("could not extend temporary store " + this.file, e);
+			}
+		}
+
+		MappedByteBuffer chunk = this.chunks.get(chunkIndex);
+		int offset = getOffset(this.size);
+		chunk.putLong(offset, key);
+		chunk.putLong(offset + 8, value);
+		this.lastKey = key;
+		++this.size;
+	}
+
+	/**
+	 * Releases the memory mapped file, the map must not be used afterwards.
+	 */
+	void release() {
+		if (this.fileChannel == null) {
+			return;
+		}
+
+		this.chunks.clear();
+		this.size = 0;
+		this.unsortedEntries.clear();
+		try {
+			this.fileChannel.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "could not close temporary store " + this.file, e);
+		}
+		this.fileChannel = null;
+		if (!this.file.delete()) {
+			LOGGER.fine("temporary store is deleted on exit: " + this.file);
+		}
+	}
+
+	/**
+	 * @return the number of entries in the map
+	 */
+	long size() {
+		return this.size + this.unsortedEntries.size();
+	}
+
+	/**
+	 * Replaces all values of the map by the result of the function. The entries are visited in ascending order of
+	 * their keys, except for those which have been added out of order.
+	 * 
+	 * @param function
+	 *            the function to apply to the values
+	 */
+	void transformValues(TLongFunction function) {
+		for (long i = 0; i < this.size; ++i) {
+			setValue(i, function.execute(getValue(i)));
+		}
+		this.unsortedEntries.transformValues(function);
+	}
+
+	/**
+	 * @return the mapped region of the file which contains the entry with the given index
+	 * @throws IndexOutOfBoundsException
+	 *             if the index does not refer to an entry in the file
+	 */
+	private MappedByteBuffer getChunk(long index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("index " + index + " is out of range, temporary store " + this.file
+					+ " contains " + this.size + " sorted entries");
+		}
+		return this.chunks.get((int) (index / this.entriesPerChunk));
+	}
+
+	private long getKey(long index) {
+		return getChunk(index).getLong(getOffset(index));
+	}
+
+	/**
+	 * @return the position of the entry with the given index within its mapped region
+	 */
+	private int getOffset(long index) {
+		return (int) (index % this.entriesPerChunk) * ENTRY_SIZE;
+	}
+
+	private long getValue(long index) {
+		return getChunk(index).getLong(getOffset(index) + 8);
+	}
+
+	/**
+	 * @return the index of the key, (-(insertion point) - 1) if the key is not contained in the given range
+	 */
+	private long indexOf(long key, long fromIndex, long toIndex) {
+		long low = fromIndex;
+		long high = toIndex;
+		while (low <= high) {
+			long middle = (low + high) >>> 1;
+			long middleKey = getKey(middle);
+			if (middleKey < key) {
+				low = middle + 1;
+			} else if (middleKey > key) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private void setValue(long index, long value) {
+		getChunk(index).putLong(getOffset(index) + 8, value);
+	}
+}
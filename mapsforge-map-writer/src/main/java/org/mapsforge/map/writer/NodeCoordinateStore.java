@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import org.mapsforge.map.writer.model.TDNode;
+
+/**
+ * Stores the coordinates of nodes outside of the Java heap in a {@link MappedLongMap}. The latitude and the longitude
+ * of a node are packed into a single long value, so that each node takes 16 bytes including its id.
+ */
+final class NodeCoordinateStore {
+	private static long pack(int latitude, int longitude) {
+		return ((long) latitude << 32) | (longitude & 0xffffffffL);
+	}
+
+	private static TDNode toNode(long id, long coordinates) {
+		if (coordinates == MappedLongMap.NO_ENTRY_VALUE) {
+			return null;
+		}
+		return new TDNode(id, (int) (coordinates >> 32), (int) coordinates, (short) 0, (byte) 0, null, null);
+	}
+
+	private final MappedLongMap coordinates;
+
+	NodeCoordinateStore() {
+		this.coordinates = new MappedLongMap("mapsforge-nodes");
+	}
+
+	/**
+	 * @param entriesPerChunk
+	 *            the number of nodes per mapped region of the file
+	 */
+	NodeCoordinateStore(int entriesPerChunk) {
+		this.coordinates = new MappedLongMap("mapsforge-nodes", entriesPerChunk);
+	}
+
+	/**
+	 * Adds a node to the store.
+	 * 
+	 * @param id
+	 *            the id of the node
+	 * @param latitude
+	 *            the latitude in microdegrees
+	 * @param longitude
+	 *            the longitude in microdegrees
+	 */
+	void add(long id, int latitude, int longitude) {
+		this.coordinates.put(id, pack(latitude, longitude));
+	}
+
+	/**
+	 * @param id
+	 *            the id of the node
+	 * @return a node which consists only of the id and the coordinates, null if the store does not contain the node
+	 */
+	TDNode get(long id) {
+		return toNode(id, this.coordinates.get(id));
+	}
+
+	/**
+	 * Looks up many nodes at once in the order of the file.
+	 * 
+	 * @param sortedIds
+	 *            the ids of the nodes in ascending order
+	 * @return the nodes which consist only of the ids and the coordinates, null for nodes which are not contained
+	 */
+	TDNode[] get(long[] sortedIds) {
+		long[] values = new long[sortedIds.length];
+		this.coordinates.get(sortedIds, values);
+		TDNode[] nodes = new TDNode[sortedIds.length];
+		for (int i = 0; i < sortedIds.length; ++i) {
+			nodes[i] = toNode(sortedIds[i], values[i]);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Releases the memory mapped file, the store must not be used afterwards.
+	 */
+	void release() {
+		this.coordinates.release();
+	}
+
+	/**
+	 * @return the number of nodes in the store
+	 */
+	long size() {
+		return this.coordinates.size();
+	}
+}
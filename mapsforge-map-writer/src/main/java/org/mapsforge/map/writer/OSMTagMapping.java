@@ -14,8 +14,6 @@
  */
 package org.mapsforge.map.writer;
 
-import gnu.trove.map.hash.TShortIntHashMap;
-import gnu.trove.procedure.TShortIntProcedure;
 import gnu.trove.set.hash.TShortHashSet;
 
 import java.io.IOException;
@@ -23,10 +21,12 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -447,124 +447,76 @@ public final class OSMTagMapping {
 	 * @param histogram
 	 *            a histogram that represents the frequencies of tags
 	 */
-	public void optimizePoiOrdering(TShortIntHashMap histogram) {
-		this.optimizedPoiIds.clear();
-		final TreeSet<HistogramEntry> poiOrdering = new TreeSet<OSMTagMapping.HistogramEntry>();
-
-		histogram.forEachEntry(new TShortIntProcedure() {
-			@Override
-			public boolean execute(short tag, int amount) {
-				poiOrdering.add(new HistogramEntry(tag, amount));
-				return true;
-			}
-		});
-
-		short tmpPoiID = 0;
-
-		OSMTag currentTag = null;
-		for (HistogramEntry histogramEntry : poiOrdering.descendingSet()) {
-			currentTag = this.idToPoiTag.get(Short.valueOf(histogramEntry.id));
-			this.optimizedPoiIds.put(Short.valueOf(histogramEntry.id), Short.valueOf(tmpPoiID));
-			LOGGER.finer("adding poi tag: " + currentTag.tagKey() + " id:" + tmpPoiID + " amount: "
-					+ histogramEntry.amount);
-			tmpPoiID++;
-		}
+	public void optimizePoiOrdering(TagHistogram histogram) {
+		optimizeOrdering(histogram, this.idToPoiTag, this.optimizedPoiIds, "poi");
 	}
 
 	/**
 	 * @param histogram
 	 *            a histogram that represents the frequencies of tags
 	 */
-	public void optimizeWayOrdering(TShortIntHashMap histogram) {
-		this.optimizedWayIds.clear();
-		final TreeSet<HistogramEntry> wayOrdering = new TreeSet<OSMTagMapping.HistogramEntry>();
-
-		histogram.forEachEntry(new TShortIntProcedure() {
-			@Override
-			public boolean execute(short tag, int amount) {
-				wayOrdering.add(new HistogramEntry(tag, amount));
-				return true;
-			}
-		});
-		short tmpWayID = 0;
-
-		OSMTag currentTag = null;
-		for (HistogramEntry histogramEntry : wayOrdering.descendingSet()) {
-			currentTag = this.idToWayTag.get(Short.valueOf(histogramEntry.id));
-			this.optimizedWayIds.put(Short.valueOf(histogramEntry.id), Short.valueOf(tmpWayID));
-			LOGGER.finer("adding way tag: " + currentTag.tagKey() + " id:" + tmpWayID + " amount: "
-					+ histogramEntry.amount);
-			tmpWayID++;
-		}
+	public void optimizeWayOrdering(TagHistogram histogram) {
+		optimizeOrdering(histogram, this.idToWayTag, this.optimizedWayIds, "way");
 	}
 
-	private class HistogramEntry implements Comparable<HistogramEntry> {
-
-		final short id;
-		final int amount;
-
-		public HistogramEntry(short id, int amount) {
-			super();
-			this.id = id;
-			this.amount = amount;
-		}
-
-		/**
-		 * First order: amount Second order: id (reversed order).
-		 */
-		@Override
-		public int compareTo(HistogramEntry o) {
-			if (this.amount > o.amount) {
-				return 1;
-			} else if (this.amount < o.amount) {
-				return -1;
-			} else {
-				if (this.id < o.id) {
-					return 1;
-				} else if (this.id > o.id) {
-					return -1;
-				} else {
-					return 0;
-				}
+	// the most frequent tag gets the smallest id, tags with the same frequency keep the order of their ids
+	private static void optimizeOrdering(TagHistogram histogram, Map<Short, OSMTag> idToTag,
+			Map<Short, Short> optimizedIds, String type) {
+		optimizedIds.clear();
+		short optimizedId = 0;
+		for (short tag : histogram.getTagsByFrequency()) {
+			optimizedIds.put(Short.valueOf(tag), Short.valueOf(optimizedId));
+			if (LOGGER.isLoggable(Level.FINER)) {
+				LOGGER.finer("adding " + type + " tag: " + idToTag.get(Short.valueOf(tag)).tagKey() + " id:"
+						+ optimizedId + " amount: " + histogram.get(tag));
 			}
+			optimizedId++;
 		}
+	}
 
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + getOuterType().hashCode();
-			result = prime * result + this.amount;
-			result = prime * result + this.id;
-			return result;
-		}
+	/**
+	 * Moves the given POI tags to the front of the optimized ordering, so that the tag ids of a previously written map
+	 * file remain valid. The other tags keep their order behind them.
+	 * 
+	 * @param tagKeys
+	 *            the keys of the tags in their previous order, see {@link OSMTag#tagKey()}
+	 * @return true if the ordering has been retained, false if a tag is unknown and the ordering is left unchanged
+	 */
+	public boolean retainPoiOrdering(List<String> tagKeys) {
+		return retainOrdering(tagKeys, this.stringToPoiTag, this.optimizedPoiIds);
+	}
 
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj) {
-				return true;
-			}
-			if (obj == null) {
-				return false;
-			}
-			if (getClass() != obj.getClass()) {
-				return false;
-			}
-			HistogramEntry other = (HistogramEntry) obj;
-			if (!getOuterType().equals(other.getOuterType())) {
-				return false;
-			}
-			if (this.amount != other.amount) {
-				return false;
-			}
-			if (this.id != other.id) {
+	/**
+	 * Moves the given way tags to the front of the optimized ordering, so that the tag ids of a previously written map
+	 * file remain valid. The other tags keep their order behind them.
+	 * 
+	 * @param tagKeys
+	 *            the keys of the tags in their previous order, see {@link OSMTag#tagKey()}
+	 * @return true if the ordering has been retained, false if a tag is unknown and the ordering is left unchanged
+	 */
+	public boolean retainWayOrdering(List<String> tagKeys) {
+		return retainOrdering(tagKeys, this.stringToWayTag, this.optimizedWayIds);
+	}
+
+	private static boolean retainOrdering(List<String> tagKeys, Map<String, OSMTag> stringToTag,
+			Map<Short, Short> optimizedIds) {
+		Set<Short> ordering = new LinkedHashSet<Short>();
+		for (String tagKey : tagKeys) {
+			OSMTag tag = stringToTag.get(tagKey);
+			if (tag == null) {
+				LOGGER.fine("tag of previous ordering is not contained in the tag mapping: " + tagKey);
 				return false;
 			}
-			return true;
+			ordering.add(Short.valueOf(tag.getId()));
 		}
+		// tags which are no longer used keep their id as well, new tags are appended
+		ordering.addAll(optimizedIds.keySet());
 
-		private OSMTagMapping getOuterType() {
-			return OSMTagMapping.this;
+		optimizedIds.clear();
+		short optimizedId = 0;
+		for (Short id : ordering) {
+			optimizedIds.put(id, Short.valueOf(optimizedId++));
 		}
+		return true;
 	}
 }
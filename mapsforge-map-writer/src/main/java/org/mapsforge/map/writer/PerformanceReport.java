@@ -0,0 +1,318 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.TileCoordinate;
+
+/**
+ * Collects the time spent in the stages of the map file writer, the slowest tiles and the size of the sub files. All
+ * methods are thread-safe, the report is written as JSON once the map file has been written.
+ */
+public final class PerformanceReport {
+	/**
+	 * The stages of the map file writer.
+	 */
+	public enum Stage {
+		/**
+		 * Reading the input and converting the entities until all entities have been added.
+		 */
+		INGEST,
+		/**
+		 * Completing the data processor, this includes the polygonization of the relations.
+		 */
+		COMPLETE,
+		/**
+		 * Building polygons from the members of the multipolygon relations, summed over all threads.
+		 */
+		POLYGONIZATION,
+		/**
+		 * Simplifying, clipping and delta encoding the ways of the tiles, summed over all threads.
+		 */
+		PREPROCESSING,
+		/**
+		 * Encoding the tiles without the preprocessing of the ways and the compression, summed over all threads.
+		 */
+		SERIALIZATION,
+		/**
+		 * Compressing the tile blocks, summed over all threads.
+		 */
+		COMPRESSION,
+		/**
+		 * Reading and writing map files.
+		 */
+		IO,
+		/**
+		 * Writing the map file, this includes the preprocessing, the serialization, the compression and the IO.
+		 */
+		WRITING;
+	}
+
+	private static final class SlowTile {
+		final long nanos;
+		final int pois;
+		final TileCoordinate tileCoordinate;
+		final int ways;
+
+		SlowTile(TileCoordinate tileCoordinate, long nanos, int pois, int ways) {
+			this.tileCoordinate = tileCoordinate;
+			this.nanos = nanos;
+			this.pois = pois;
+			this.ways = ways;
+		}
+	}
+
+	private static final class Subfile {
+		final byte baseZoom;
+		final long bytes;
+		final int copiedTiles;
+		final long nanos;
+		final int tiles;
+
+		Subfile(byte baseZoom, int tiles, int copiedTiles, long bytes, long nanos) {
+			this.baseZoom = baseZoom;
+			this.tiles = tiles;
+			this.copiedTiles = copiedTiles;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+	}
+
+	private static final int AUTO_ENCODED_WAYS = 0;
+	private static final int AUTO_ENCODING_NANOS = 1;
+	private static final int DELTA_BYTES = 2;
+	private static final int DOUBLE_DELTA_BYTES = 3;
+	private static final int DOUBLE_DELTA_WAYS = 4;
+	private static final double NANOS_PER_MILLI = 1000000d;
+	private static final int SLOWEST_TILES = 10;
+	private static final Comparator<SlowTile> SLOW_TILE_COMPARATOR = new Comparator<SlowTile>() {
+		@Override
+		public int compare(SlowTile tile1, SlowTile tile2) {
+			return tile1.nanos < tile2.nanos ? -1 : tile1.nanos == tile2.nanos ? 0 : 1;
+		}
+	};
+
+	private static void appendMillis(Writer writer, long nanos) throws IOException {
+		writer.write(String.valueOf(Math.round(nanos / NANOS_PER_MILLI * 10) / 10d));
+	}
+
+	private static void appendString(Writer writer, String string) throws IOException {
+		if (string == null) {
+			writer.write("null");
+			return;
+		}
+		writer.write('"');
+		for (int i = 0; i < string.length(); ++i) {
+			char c = string.charAt(i);
+			if (c == '"' || c == '\\') {
+				writer.write('\\');
+				writer.write(c);
+			} else if (c < 0x20) {
+				writer.write(String.format("\\u%04x", Integer.valueOf(c)));
+			} else {
+				writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+
+	private final AtomicLongArray autoEncoding;
+	// the fastest of the slowest tiles is at the head
+	private final PriorityQueue<SlowTile> slowestTiles;
+	private final AtomicLongArray stages;
+	private final List<Subfile> subfiles;
+
+	/**
+	 * Creates an empty report.
+	 */
+	public PerformanceReport() {
+		this.autoEncoding = new AtomicLongArray(DOUBLE_DELTA_WAYS + 1);
+		this.slowestTiles = new PriorityQueue<SlowTile>(SLOWEST_TILES + 1, SLOW_TILE_COMPARATOR);
+		this.stages = new AtomicLongArray(Stage.values().length);
+		this.subfiles = new ArrayList<Subfile>();
+	}
+
+	/**
+	 * Records a way whose coordinates have been encoded with both delta encodings to choose the smaller one.
+	 * 
+	 * @param nanos
+	 *            the time spent for both encodings and the choice between them
+	 * @param deltaBytes
+	 *            the size of the coordinates with the single delta encoding
+	 * @param doubleDeltaBytes
+	 *            the size of the coordinates with the double delta encoding
+	 */
+	public void addAutoEncoding(long nanos, int deltaBytes, int doubleDeltaBytes) {
+		this.autoEncoding.incrementAndGet(AUTO_ENCODED_WAYS);
+		this.autoEncoding.addAndGet(AUTO_ENCODING_NANOS, nanos);
+		this.autoEncoding.addAndGet(DELTA_BYTES, deltaBytes);
+		this.autoEncoding.addAndGet(DOUBLE_DELTA_BYTES, doubleDeltaBytes);
+		if (doubleDeltaBytes < deltaBytes) {
+			this.autoEncoding.incrementAndGet(DOUBLE_DELTA_WAYS);
+		}
+	}
+
+	/**
+	 * @param baseZoom
+	 *            the base zoom level of the sub file
+	 * @param tiles
+	 *            the number of tiles of the sub file
+	 * @param copiedTiles
+	 *            the number of tiles which have been copied from the previous map file
+	 * @param bytes
+	 *            the size of the sub file in bytes
+	 * @param nanos
+	 *            the time spent for writing the sub file
+	 */
+	public synchronized void addSubfile(byte baseZoom, int tiles, int copiedTiles, long bytes, long nanos) {
+		this.subfiles.add(new Subfile(baseZoom, tiles, copiedTiles, bytes, nanos));
+	}
+
+	/**
+	 * Records an encoded tile, only the slowest tiles are retained.
+	 * 
+	 * @param tileCoordinate
+	 *            the coordinate of the tile
+	 * @param nanos
+	 *            the time spent for encoding the tile
+	 * @param pois
+	 *            the number of POIs of the tile
+	 * @param ways
+	 *            the number of ways of the tile
+	 */
+	public void addTile(TileCoordinate tileCoordinate, long nanos, int pois, int ways) {
+		synchronized (this.slowestTiles) {
+			if (this.slowestTiles.size() < SLOWEST_TILES || this.slowestTiles.peek().nanos < nanos) {
+				this.slowestTiles.add(new SlowTile(tileCoordinate, nanos, pois, ways));
+				if (this.slowestTiles.size() > SLOWEST_TILES) {
+					this.slowestTiles.poll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param stage
+	 *            the stage
+	 * @param nanos
+	 *            the time to add to the stage
+	 */
+	public void addTime(Stage stage, long nanos) {
+		this.stages.addAndGet(stage.ordinal(), nanos);
+	}
+
+	/**
+	 * @param stage
+	 *            the stage
+	 * @return the time spent in the stage in nanoseconds
+	 */
+	public long getTime(Stage stage) {
+		return this.stages.get(stage.ordinal());
+	}
+
+	/**
+	 * Writes the report as JSON.
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * @param configuration
+	 *            the configuration of the map file writer
+	 * @param mapFileSize
+	 *            the size of the map file in bytes
+	 * @throws IOException
+	 *             thrown if any IO error occurs
+	 */
+	public void write(File file, MapWriterConfiguration configuration, long mapFileSize) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			write(writer, configuration, mapFileSize);
+		} finally {
+			writer.close();
+		}
+	}
+
+	synchronized void write(Writer writer, MapWriterConfiguration configuration, long mapFileSize)
+			throws IOException {
+		writer.write("{\n  \"outputFile\": ");
+		appendString(writer, configuration.getOutputFile() == null ? null : configuration.getOutputFile().getPath());
+		writer.write(",\n  \"writerVersion\": ");
+		appendString(writer, configuration.getWriterVersion());
+		writer.write(",\n  \"dataProcessorType\": ");
+		appendString(writer, configuration.getDataProcessorType());
+		writer.write(",\n  \"encoding\": ");
+		appendString(writer, String.valueOf(configuration.getEncodingChoice()));
+		writer.write(",\n  \"blockCompression\": ");
+		appendString(writer, configuration.getBlockCompression().name());
+		writer.write(",\n  \"blockLayout\": ");
+		appendString(writer, configuration.getBlockLayout().name());
+		writer.write(",\n  \"threadPoolSize\": " + configuration.getThreadPoolSize());
+		writer.write(",\n  \"mapFileSize\": " + mapFileSize);
+
+		writer.write(",\n  \"stagesMillis\": {");
+		Stage[] values = Stage.values();
+		for (int i = 0; i < values.length; ++i) {
+			writer.write(i == 0 ? "\n    " : ",\n    ");
+			appendString(writer, values[i].name().toLowerCase());
+			writer.write(": ");
+			appendMillis(writer, getTime(values[i]));
+		}
+
+		writer.write("\n  },\n  \"subfiles\": [");
+		for (int i = 0; i < this.subfiles.size(); ++i) {
+			Subfile subfile = this.subfiles.get(i);
+			writer.write(i == 0 ? "\n    " : ",\n    ");
+			writer.write("{ \"baseZoom\": " + subfile.baseZoom + ", \"tiles\": " + subfile.tiles
+					+ ", \"copiedTiles\": " + subfile.copiedTiles + ", \"bytes\": " + subfile.bytes + ", \"millis\": ");
+			appendMillis(writer, subfile.nanos);
+			writer.write(" }");
+		}
+
+		List<SlowTile> tiles;
+		synchronized (this.slowestTiles) {
+			tiles = new ArrayList<SlowTile>(this.slowestTiles);
+		}
+		Collections.sort(tiles, Collections.reverseOrder(SLOW_TILE_COMPARATOR));
+		writer.write("\n  ],\n  \"slowestTiles\": [");
+		for (int i = 0; i < tiles.size(); ++i) {
+			SlowTile tile = tiles.get(i);
+			writer.write(i == 0 ? "\n    " : ",\n    ");
+			writer.write("{ \"zoom\": " + tile.tileCoordinate.getZoomlevel() + ", \"x\": "
+					+ tile.tileCoordinate.getX() + ", \"y\": " + tile.tileCoordinate.getY() + ", \"pois\": "
+					+ tile.pois + ", \"ways\": " + tile.ways + ", \"millis\": ");
+			appendMillis(writer, tile.nanos);
+			writer.write(" }");
+		}
+
+		writer.write("\n  ],\n  \"autoEncoding\": {\n    \"ways\": " + this.autoEncoding.get(AUTO_ENCODED_WAYS)
+				+ ",\n    \"doubleDeltaWays\": " + this.autoEncoding.get(DOUBLE_DELTA_WAYS)
+				+ ",\n    \"deltaBytes\": " + this.autoEncoding.get(DELTA_BYTES) + ",\n    \"doubleDeltaBytes\": "
+				+ this.autoEncoding.get(DOUBLE_DELTA_BYTES) + ",\n    \"millis\": ");
+		appendMillis(writer, this.autoEncoding.get(AUTO_ENCODING_NANOS));
+		writer.write("\n  }\n}\n");
+	}
+}
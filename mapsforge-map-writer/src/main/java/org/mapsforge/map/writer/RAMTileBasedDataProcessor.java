@@ -45,7 +45,8 @@ import org.openstreetmap.osmosis.core.domain.v0_6.Way;
  * @author bross
  */
 public final class RAMTileBasedDataProcessor extends BaseTileBasedDataProcessor {
-	private final TLongObjectHashMap<TDNode> nodes;
+	// the coordinates of all nodes to resolve the way nodes, the POIs themselves are kept by the tiles
+	private final NodeCoordinateStore nodes;
 	final TLongObjectHashMap<TDWay> ways;
 	private final TLongObjectHashMap<TDRelation> multipolygons;
 
@@ -53,7 +54,7 @@ public final class RAMTileBasedDataProcessor extends BaseTileBasedDataProcessor
 
 	private RAMTileBasedDataProcessor(MapWriterConfiguration configuration) {
 		super(configuration);
-		this.nodes = new TLongObjectHashMap<TDNode>();
+		this.nodes = new NodeCoordinateStore();
 		this.ways = new TLongObjectHashMap<TDWay>();
 		this.multipolygons = new TLongObjectHashMap<TDRelation>();
 		this.tileData = new RAMTileData[this.zoomIntervalConfiguration.getNumberOfZoomIntervals()][][];
@@ -97,14 +98,23 @@ public final class RAMTileBasedDataProcessor extends BaseTileBasedDataProcessor
 
 	@Override
 	public void addNode(Node node) {
-		TDNode tdNode = TDNode.fromNode(node, this.preferredLanguage);
-		this.nodes.put(tdNode.getId(), tdNode);
+		addNode(node, convertNode(node));
+	}
+
+	@Override
+	public void addNode(Node node, TDNode tdNode) {
+		this.nodes.add(tdNode.getId(), tdNode.getLatitude(), tdNode.getLongitude());
 		addPOI(tdNode);
 	}
 
 	@Override
 	public void addWay(Way way) {
-		TDWay tdWay = TDWay.fromWay(way, this, this.preferredLanguage);
+		addWay(way, convertWay(way));
+	}
+
+	@Override
+	public void addWay(Way way, TDWay tdWay) {
+		addJunctionNodes(way);
 		if (tdWay == null) {
 			return;
 		}
@@ -125,6 +135,16 @@ public final class RAMTileBasedDataProcessor extends BaseTileBasedDataProcessor
 		}
 	}
 
+	@Override
+	public TDNode convertNode(Node node) {
+		return TDNode.fromNode(node, this.preferredLanguage);
+	}
+
+	@Override
+	public TDWay convertWay(Way way) {
+		return TDWay.fromWay(way, this, this.preferredLanguage);
+	}
+
 	@Override
 	public void addRelation(Relation relation) {
 		TDRelation tdRelation = TDRelation.fromRelation(relation, this, this.preferredLanguage);
@@ -135,15 +155,24 @@ public final class RAMTileBasedDataProcessor extends BaseTileBasedDataProcessor
 
 	@Override
 	public void complete() {
+		completeJunctionNodes();
+
 		// Polygonize multipolygon
 		RelationHandler relationHandler = new RelationHandler();
-		this.multipolygons.forEachValue(relationHandler);
+		try {
+			this.multipolygons.forEachValue(relationHandler);
+			relationHandler.finish();
+		} finally {
+			relationHandler.release();
+		}
 
 		WayHandler wayHandler = new WayHandler();
 		this.ways.forEachValue(wayHandler);
 
-		OSMTagMapping.getInstance().optimizePoiOrdering(this.histogramPoiTags);
-		OSMTagMapping.getInstance().optimizeWayOrdering(this.histogramWayTags);
+		// all ways have been resolved
+		this.nodes.release();
+
+		optimizeTagOrdering();
 	}
 
 	@Override
@@ -170,6 +199,18 @@ public final class RAMTileBasedDataProcessor extends BaseTileBasedDataProcessor
 		return td;
 	}
 
+	@Override
+	public void releaseTileRow(int baseZoomIndex, int tileCoordinateY) {
+		int tileCoordinateYIndex = tileCoordinateY - this.tileGridLayouts[baseZoomIndex].getUpperLeft().getY();
+		if (tileCoordinateYIndex < 0 || tileCoordinateYIndex >= this.tileGridLayouts[baseZoomIndex]
+				.getAmountTilesVertical()) {
+			return;
+		}
+		for (RAMTileData[] column : this.tileData[baseZoomIndex]) {
+			column[tileCoordinateYIndex] = null;
+		}
+	}
+
 	@Override
 	public Set<TDWay> getCoastLines(TileCoordinate tc) {
 		if (tc.getZoomlevel() <= TileInfo.TILE_INFO_ZOOMLEVEL) {
@@ -198,7 +239,7 @@ public final class RAMTileBasedDataProcessor extends BaseTileBasedDataProcessor
 
 	@Override
 	public void release() {
-		// nothing to do here
+		this.nodes.release();
 	}
 
 	@Override
@@ -130,6 +130,27 @@ public final class Serializer {
 		}
 	}
 
+	/**
+	 * Computes the length of a signed int as variable length byte array without creating the array.
+	 * 
+	 * @param value
+	 *            the int value.
+	 * @return the number of bytes of {@link #getVariableByteSigned(int)}, between 1 and 5.
+	 */
+	public static int getVariableByteSignedLength(int value) {
+		long absValue = Math.abs((long) value);
+		if (absValue < 64) { // 2^6
+			return 1;
+		} else if (absValue < 8192) { // 2^13
+			return 2;
+		} else if (absValue < 1048576) { // 2^20
+			return 3;
+		} else if (absValue < 134217728) { // 2^27
+			return 4;
+		}
+		return 5;
+	}
+
 	/**
 	 * Converts an unsigned int to a variable length byte array.
 	 * <p>
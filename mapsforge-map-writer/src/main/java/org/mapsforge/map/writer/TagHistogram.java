@@ -0,0 +1,268 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mapsforge.map.writer.model.OSMTag;
+
+/**
+ * Counts the frequencies of tag ids. Each thread counts into its own stripe, so counting does not need any
+ * synchronization. The stripes are merged when the frequencies are queried, which must happen after all counting
+ * threads have finished.
+ * <p>
+ * The frequencies of the POI and way tags of a region can be stored in a file, see
+ * {@link #writeFile(File, TagHistogram, TagHistogram, OSMTagMapping)}, so that the optimized ordering of the tag ids
+ * can be reused by later builds.
+ */
+public final class TagHistogram {
+	private static final class Stripe {
+		int[] counts = new int[INITIAL_STRIPE_SIZE];
+
+		Stripe() {
+			// only instantiated by the thread that counts into it
+		}
+
+		void add(short tag, int amount) {
+			if (tag >= this.counts.length) {
+				this.counts = Arrays.copyOf(this.counts, Math.max(tag + 1, 2 * this.counts.length));
+			}
+			this.counts[tag] += amount;
+		}
+	}
+
+	private static final String CHARSET = "UTF-8";
+	private static final int INITIAL_STRIPE_SIZE = 256;
+	private static final String SEPARATOR = "\t";
+	private static final String TYPE_POI = "poi";
+	private static final String TYPE_WAY = "way";
+
+	/**
+	 * Reads the frequencies of POI and way tags from a file which has been written by
+	 * {@link #writeFile(File, TagHistogram, TagHistogram, OSMTagMapping)}.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param poiTags
+	 *            the histogram to which the frequencies of the POI tags are added
+	 * @param wayTags
+	 *            the histogram to which the frequencies of the way tags are added
+	 * @param tagMapping
+	 *            the tag mapping which maps the tags of the file to their ids
+	 * @return true if the file has been read completely, false if it contains a tag which is not part of the tag
+	 *         mapping
+	 * @throws IOException
+	 *             if the file cannot be read or has an invalid format
+	 */
+	public static boolean readFile(File file, TagHistogram poiTags, TagHistogram wayTags, OSMTagMapping tagMapping)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// type, frequency, key and value, the value may contain the separator
+				String[] fields = line.split(SEPARATOR, 4);
+				if (fields.length != 4) {
+					throw new IOException("invalid line in tag histogram file " + file + ": " + line);
+				}
+				int amount;
+				try {
+					amount = Integer.parseInt(fields[1]);
+				} catch (NumberFormatException e) {
+					throw new IOException("invalid frequency in tag histogram file " + file + ": " + line);
+				}
+
+				OSMTag tag;
+				TagHistogram histogram;
+				if (TYPE_POI.equals(fields[0])) {
+					tag = tagMapping.getPoiTag(fields[2], fields[3]);
+					histogram = poiTags;
+				} else if (TYPE_WAY.equals(fields[0])) {
+					tag = tagMapping.getWayTag(fields[2], fields[3]);
+					histogram = wayTags;
+				} else {
+					throw new IOException("invalid tag type in tag histogram file " + file + ": " + line);
+				}
+				if (tag == null) {
+					return false;
+				}
+				histogram.add(tag.getId(), amount);
+			}
+			return true;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes the frequencies of POI and way tags to a file, the tags are identified by their keys and values, so that
+	 * the file remains valid if the ids of the tag mapping change.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param poiTags
+	 *            the frequencies of the POI tags
+	 * @param wayTags
+	 *            the frequencies of the way tags
+	 * @param tagMapping
+	 *            the tag mapping which maps the tag ids to their keys
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void writeFile(File file, TagHistogram poiTags, TagHistogram wayTags, OSMTagMapping tagMapping)
+			throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CHARSET));
+		try {
+			int[] poiCounts = poiTags.merge();
+			for (short tag : poiTags.getTagsByFrequency()) {
+				writeLine(writer, TYPE_POI, poiCounts[tag], tagMapping.getPoiTag(tag));
+			}
+			int[] wayCounts = wayTags.merge();
+			for (short tag : wayTags.getTagsByFrequency()) {
+				writeLine(writer, TYPE_WAY, wayCounts[tag], tagMapping.getWayTag(tag));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void writeLine(Writer writer, String type, int amount, OSMTag tag) throws IOException {
+		writer.write(type);
+		writer.write(SEPARATOR);
+		writer.write(Integer.toString(amount));
+		writer.write(SEPARATOR);
+		writer.write(tag.getKey());
+		writer.write(SEPARATOR);
+		writer.write(tag.getValue());
+		writer.write('\n');
+	}
+
+	private final ThreadLocal<Stripe> stripe;
+	private final List<Stripe> stripes;
+
+	/**
+	 * Creates an empty histogram.
+	 */
+	public TagHistogram() {
+		this.stripes = new ArrayList<Stripe>();
+		this.stripe = new ThreadLocal<Stripe>() {
+			@Override
+			protected Stripe initialValue() {
+				Stripe newStripe = new Stripe();
+				synchronized (TagHistogram.this.stripes) {
+					TagHistogram.this.stripes.add(newStripe);
+				}
+				return newStripe;
+			}
+		};
+	}
+
+	/**
+	 * Counts one occurrence of a tag.
+	 * 
+	 * @param tag
+	 *            the id of the tag
+	 */
+	public void add(short tag) {
+		this.stripe.get().add(tag, 1);
+	}
+
+	/**
+	 * @param tag
+	 *            the id of the tag
+	 * @param amount
+	 *            the number of occurrences of the tag
+	 */
+	public void add(short tag, int amount) {
+		this.stripe.get().add(tag, amount);
+	}
+
+	/**
+	 * Counts one occurrence of each tag.
+	 * 
+	 * @param tags
+	 *            the ids of the tags, may be null
+	 */
+	public void addAll(short[] tags) {
+		if (tags == null) {
+			return;
+		}
+		Stripe currentStripe = this.stripe.get();
+		for (short tag : tags) {
+			currentStripe.add(tag, 1);
+		}
+	}
+
+	/**
+	 * @param tag
+	 *            the id of the tag
+	 * @return the number of occurrences of the tag
+	 */
+	public int get(short tag) {
+		int[] counts = merge();
+		return tag < counts.length ? counts[tag] : 0;
+	}
+
+	/**
+	 * @return the ids of all tags which occurred at least once, the most frequent tag first and tags with the same
+	 *         frequency in ascending order of their ids
+	 */
+	public short[] getTagsByFrequency() {
+		int[] counts = merge();
+		// the frequency in the upper bits and the inverted id in the lower bits, so that the order is unique
+		long[] entries = new long[counts.length];
+		int numberOfEntries = 0;
+		for (int tag = 0; tag < counts.length; ++tag) {
+			if (counts[tag] > 0) {
+				entries[numberOfEntries++] = (long) counts[tag] << Short.SIZE | Short.MAX_VALUE - tag;
+			}
+		}
+		Arrays.sort(entries, 0, numberOfEntries);
+
+		short[] tags = new short[numberOfEntries];
+		for (int i = 0; i < numberOfEntries; ++i) {
+			tags[i] = (short) (Short.MAX_VALUE - (entries[numberOfEntries - 1 - i] & 0xffff));
+		}
+		return tags;
+	}
+
+	// sums up the counts of all stripes
+	private int[] merge() {
+		synchronized (this.stripes) {
+			int length = 0;
+			for (Stripe s : this.stripes) {
+				length = Math.max(length, s.counts.length);
+			}
+			int[] counts = new int[length];
+			for (Stripe s : this.stripes) {
+				for (int tag = 0; tag < s.counts.length; ++tag) {
+					counts[tag] += s.counts[tag];
+				}
+			}
+			return counts;
+		}
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.map.writer.model.BlockLayout;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileDataAppender;
+import org.mapsforge.map.writer.model.TileGridLayout;
+
+/**
+ * Stores the ids of the POIs and ways of the tiles of one zoom interval in temporary files, one file per band of tile
+ * rows. Only the band that is currently written is loaded into memory, so the memory consumption depends on the size
+ * of a band instead of the size of the whole map.
+ * <p>
+ * A band consists of consecutive tiles in the order of the block layout, for the row-major layout these are whole
+ * rows.
+ */
+final class TileBandStore {
+	/**
+	 * Appends the POIs and ways of a tile to the file of its band.
+	 */
+	final class TileAppender implements TileDataAppender {
+		private final int tileIndex;
+		private final int band;
+
+		TileAppender(int band, int tileIndex) {
+			this.band = band;
+			this.tileIndex = tileIndex;
+		}
+
+		@Override
+		public void addPOI(TDNode poi) {
+			append(this.band, this.tileIndex << 1 | TYPE_POI, poi.getId());
+		}
+
+		@Override
+		public void addWay(TDWay way) {
+			append(this.band, this.tileIndex << 1 | TYPE_WAY, way.getId());
+		}
+	}
+
+	private static final int BUFFER_SIZE = 0x4000;
+	private static final Logger LOGGER = Logger.getLogger(TileBandStore.class.getName());
+	private static final int MAXIMUM_NUMBER_OF_BANDS = 64;
+	// the tile index within a band must leave one bit for the type flag
+	private static final int MAXIMUM_TILES_PER_BAND = 1 << 30;
+	// each entry consists of the tile index within the band including the type flag and the id
+	private static final int ENTRY_SIZE = 12;
+	private static final int TYPE_POI = 0;
+	private static final int TYPE_WAY = 1;
+
+	private static void close(DataOutputStream dataOutputStream) {
+		try {
+			dataOutputStream.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "could not close temporary tile band", e);
+		}
+	}
+
+	private final BlockLayout blockLayout;
+	private final File[] files;
+	private final int lengthX;
+	private final int lengthY;
+	// the previous band is kept as the tiles at the border of two bands may be requested alternately
+	private HDTileData[] loadedTiles;
+	private int loadedBand;
+	private HDTileData[] previousTiles;
+	private int previousBand;
+	private final DataOutputStream[] outputs;
+	private final boolean[] released;
+	private final int rowsPerBand;
+	private final int tilesPerBand;
+	private final int upperLeftX;
+	private final int upperLeftY;
+
+	/**
+	 * @param tileGridLayout
+	 *            the tile grid of the zoom interval
+	 * @param blockLayout
+	 *            the order in which the tiles are written
+	 */
+	TileBandStore(TileGridLayout tileGridLayout, BlockLayout blockLayout) {
+		this.blockLayout = blockLayout;
+		this.upperLeftX = tileGridLayout.getUpperLeft().getX();
+		this.upperLeftY = tileGridLayout.getUpperLeft().getY();
+		this.lengthX = tileGridLayout.getAmountTilesHorizontal();
+		this.lengthY = tileGridLayout.getAmountTilesVertical();
+		this.rowsPerBand = Math.max(1, Math.min((this.lengthY + MAXIMUM_NUMBER_OF_BANDS - 1)
+				/ MAXIMUM_NUMBER_OF_BANDS, MAXIMUM_TILES_PER_BAND / this.lengthX));
+		this.tilesPerBand = this.rowsPerBand * this.lengthX;
+		int numberOfBands = (this.lengthY + this.rowsPerBand - 1) / this.rowsPerBand;
+		this.files = new File[numberOfBands];
+		this.outputs = new DataOutputStream[numberOfBands];
+		this.released = new boolean[numberOfBands];
+		this.loadedBand = -1;
+		this.previousBand = -1;
+	}
+
+	/**
+	 * @param tileX
+	 *            the x coordinate of the tile
+	 * @param tileY
+	 *            the y coordinate of the tile
+	 * @return an object which appends the POIs and ways that are added to it, null if the tile is outside of the grid
+	 */
+	TileDataAppender getAppender(int tileX, int tileY) {
+		int x = tileX - this.upperLeftX;
+		int y = tileY - this.upperLeftY;
+		if (x < 0 || y < 0 || x >= this.lengthX || y >= this.lengthY) {
+			return null;
+		}
+		int position = this.blockLayout.getPosition(x, y, this.lengthX, this.lengthY);
+		return new TileAppender(position / this.tilesPerBand, position % this.tilesPerBand);
+	}
+
+	/**
+	 * Returns the ids of the POIs and ways of a tile, the band of the tile is loaded if necessary.
+	 * 
+	 * @param tileX
+	 *            the x coordinate of the tile
+	 * @param tileY
+	 *            the y coordinate of the tile
+	 * @return the tile, null if the tile is outside of the grid
+	 * @throws IllegalStateException
+	 *             if the band of the tile has already been released
+	 */
+	HDTileData getTile(int tileX, int tileY) {
+		int x = tileX - this.upperLeftX;
+		int y = tileY - this.upperLeftY;
+		if (x < 0 || y < 0 || x >= this.lengthX || y >= this.lengthY) {
+			return null;
+		}
+
+		int position = this.blockLayout.getPosition(x, y, this.lengthX, this.lengthY);
+		int band = position / this.tilesPerBand;
+		if (band != this.loadedBand) {
+			HDTileData[] tiles = band == this.previousBand ? this.previousTiles : load(band);
+			this.previousTiles = this.loadedTiles;
+			this.previousBand = this.loadedBand;
+			this.loadedTiles = tiles;
+			this.loadedBand = band;
+		}
+
+		int tileIndex = position % this.tilesPerBand;
+		HDTileData tile = this.loadedTiles[tileIndex];
+		if (tile == null) {
+			tile = new HDTileData();
+			this.loadedTiles[tileIndex] = tile;
+		}
+		return tile;
+	}
+
+	/**
+	 * Deletes all temporary files.
+	 */
+	void release() {
+		for (int band = 0; band < this.files.length; ++band) {
+			releaseBand(band);
+		}
+	}
+
+	/**
+	 * Signals that a row of tiles has been written, the band of the row is released after its last row. Rows are
+	 * completed in ascending order, in Z-order however the bands are only completed with the last row.
+	 * 
+	 * @param tileY
+	 *            the y coordinate of the row
+	 */
+	void releaseRow(int tileY) {
+		int y = tileY - this.upperLeftY;
+		if (y < 0 || y >= this.lengthY) {
+			return;
+		}
+		if (this.blockLayout != BlockLayout.ROW_MAJOR) {
+			if (y == this.lengthY - 1) {
+				release();
+			}
+		} else if (y % this.rowsPerBand == this.rowsPerBand - 1 || y == this.lengthY - 1) {
+			releaseBand(y / this.rowsPerBand);
+		}
+	}
+
+	/**
+	 * @return the way ids of all non-empty tiles in the order of the block layout, the bands are loaded one after
+	 *         another
+	 */
+	Iterator<TLongArrayList> wayIterator() {
+		return new Iterator<TLongArrayList>() {
+			private int band = -1;
+			private TLongArrayList next;
+			private HDTileData[] tiles;
+			private int tileIndex;
+
+			@Override
+			public boolean hasNext() {
+				if (this.band == TileBandStore.this.files.length) {
+					return false;
+				}
+				while (this.next == null) {
+					if (this.tiles == null || ++this.tileIndex == this.tiles.length) {
+						if (++this.band == TileBandStore.this.files.length) {
+							return false;
+						}
+						this.tiles = load(this.band);
+						this.tileIndex = 0;
+					}
+					HDTileData tile = this.tiles[this.tileIndex];
+					if (tile != null && !tile.getWays().isEmpty()) {
+						this.next = tile.getWays();
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public TLongArrayList next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				TLongArrayList ways = this.next;
+				this.next = null;
+				return ways;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private void append(int band, int tileIndex, long id) {
+		checkNotReleased(band);
+		try {
+			if (this.outputs[band] == null) {
+				if (this.files[band] == null) {
+					this.files[band] = File.createTempFile("mapsforge-band", ".bin");
+					this.files[band].deleteOnExit();
+				}
+				this.outputs[band] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+						this.files[band], true), BUFFER_SIZE));
+			}
+			this.outputs[band].writeInt(tileIndex);
+			this.outputs[band].writeLong(id);
+		} catch (IOException e) {
+			throw new RuntimeException("could not write temporary tile band", e);
+		}
+	}
+
+	private void checkNotReleased(int band) {
+		if (this.released[band]) {
+			throw new IllegalStateException("tile band " + band + " has already been released");
+		}
+	}
+
+	private HDTileData[] load(int band) {
+		checkNotReleased(band);
+		HDTileData[] tiles = new HDTileData[Math.min(this.tilesPerBand, this.lengthX * this.lengthY - band
+				* this.tilesPerBand)];
+		if (this.outputs[band] != null) {
+			close(this.outputs[band]);
+			this.outputs[band] = null;
+		}
+		if (this.files[band] == null) {
+			return tiles;
+		}
+
+		DataInputStream dataInputStream = null;
+		try {
+			dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(this.files[band]),
+					BUFFER_SIZE));
+			for (long i = this.files[band].length() / ENTRY_SIZE; i > 0; --i) {
+				int tileIndex = dataInputStream.readInt();
+				long id = dataInputStream.readLong();
+				HDTileData tile = tiles[tileIndex >> 1];
+				if (tile == null) {
+					tile = new HDTileData();
+					tiles[tileIndex >> 1] = tile;
+				}
+				if ((tileIndex & 1) == TYPE_WAY) {
+					tile.getWays().add(id);
+				} else {
+					tile.getPois().add(id);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("could not read temporary tile band", e);
+		} finally {
+			if (dataInputStream != null) {
+				try {
+					dataInputStream.close();
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "could not close temporary tile band", e);
+				}
+			}
+		}
+		return tiles;
+	}
+
+	private void releaseBand(int band) {
+		this.released[band] = true;
+		if (band == this.loadedBand) {
+			this.loadedTiles = null;
+			this.loadedBand = -1;
+		} else if (band == this.previousBand) {
+			this.previousTiles = null;
+			this.previousBand = -1;
+		}
+		if (this.outputs[band] != null) {
+			close(this.outputs[band]);
+			this.outputs[band] = null;
+		}
+		if (this.files[band] != null) {
+			if (!this.files[band].delete()) {
+				LOGGER.fine("temporary tile band is deleted on exit: " + this.files[band]);
+			}
+			this.files[band] = null;
+		}
+	}
+}
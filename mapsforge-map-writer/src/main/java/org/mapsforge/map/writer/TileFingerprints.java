@@ -0,0 +1,417 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import gnu.trove.set.TLongSet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.map.writer.model.BlockCompression;
+import org.mapsforge.map.writer.model.BlockLayout;
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.mapsforge.map.writer.model.TileGridLayout;
+
+/**
+ * The fingerprints of the tiles of a map file, they are stored in a file next to the map file. The fingerprint of a
+ * tile covers all data the encoding of the tile depends on, so a tile whose fingerprint has not changed can be copied
+ * from the previous version of the map file instead of being encoded again.
+ */
+final class TileFingerprints {
+	/**
+	 * The fingerprints of the tiles of one sub file in row-major order.
+	 */
+	static final class Subfile {
+		final byte baseZoom;
+		final long[] fingerprints;
+		final int lengthX;
+		final int lengthY;
+		final byte maxZoom;
+		final byte minZoom;
+		long size;
+		long startAddress;
+		final int upperLeftX;
+		final int upperLeftY;
+
+		Subfile(byte baseZoom, byte minZoom, byte maxZoom, int upperLeftX, int upperLeftY, int lengthX, int lengthY) {
+			this.baseZoom = baseZoom;
+			this.minZoom = minZoom;
+			this.maxZoom = maxZoom;
+			this.upperLeftX = upperLeftX;
+			this.upperLeftY = upperLeftY;
+			this.lengthX = lengthX;
+			this.lengthY = lengthY;
+			this.fingerprints = new long[lengthX * lengthY];
+		}
+
+		Subfile(byte baseZoom, byte minZoom, byte maxZoom, TileGridLayout tileGridLayout) {
+			this(baseZoom, minZoom, maxZoom, tileGridLayout.getUpperLeft().getX(), tileGridLayout.getUpperLeft()
+					.getY(), tileGridLayout.getAmountTilesHorizontal(), tileGridLayout.getAmountTilesVertical());
+		}
+
+		/**
+		 * @param other
+		 *            the other sub file
+		 * @return true if both sub files consist of the same tiles
+		 */
+		boolean hasSameTiles(Subfile other) {
+			return this.baseZoom == other.baseZoom && this.minZoom == other.minZoom && this.maxZoom == other.maxZoom
+					&& this.upperLeftX == other.upperLeftX && this.upperLeftY == other.upperLeftY
+					&& this.lengthX == other.lengthX && this.lengthY == other.lengthY;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 0x10000;
+	private static final String FILE_EXTENSION = ".fingerprints";
+	private static final Logger LOGGER = Logger.getLogger(TileFingerprints.class.getName());
+	private static final String MAGIC = "mapsforge tile fingerprints";
+	private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+	// version 2 stores the label positions of areas in all of their tiles
+	// version 3 covers the junction nodes of ways which are simplified per zoom interval
+	// version 4 stores the label positions of labelled areas only
+	private static final int VERSION = 4;
+
+	/**
+	 * @param configuration
+	 *            the configuration
+	 * @return a fingerprint of all options which influence the encoding of the tiles
+	 */
+	static long fingerprintConfiguration(MapWriterConfiguration configuration) {
+		long fingerprint = update(0, VERSION);
+		fingerprint = update(fingerprint, configuration.getFileSpecificationVersion());
+		fingerprint = update(fingerprint, configuration.getWriterVersion());
+		fingerprint = update(fingerprint, configuration.isDebugStrings() ? 1 : 0);
+		fingerprint = update(fingerprint, configuration.isPolygonClipping() ? 1 : 0);
+		fingerprint = update(fingerprint, configuration.isWayClipping() ? 1 : 0);
+		fingerprint = update(fingerprint, Double.doubleToLongBits(configuration.getSimplification()));
+		if (configuration.getZoomSimplification() != null) {
+			for (double simplification : configuration.getZoomSimplification()) {
+				fingerprint = update(fingerprint, Double.doubleToLongBits(simplification));
+			}
+		}
+		fingerprint = update(fingerprint, configuration.getBboxEnlargement());
+		fingerprint = update(fingerprint, String.valueOf(configuration.getEncodingChoice()));
+		// the fingerprints of uncompressed map files in row-major order remain valid
+		if (configuration.getBlockCompression() != BlockCompression.NONE) {
+			fingerprint = update(fingerprint, configuration.getBlockCompression().getId());
+		}
+		if (configuration.getBlockLayout() != BlockLayout.ROW_MAJOR) {
+			fingerprint = update(fingerprint, configuration.getBlockLayout().name());
+		}
+		return update(fingerprint, configuration.getPreferredLanguage());
+	}
+
+	/**
+	 * Computes the fingerprint of a tile from the POIs and ways in the order in which they are encoded.
+	 * 
+	 * @param poisByZoomlevel
+	 *            the POIs of the tile
+	 * @param waysByZoomlevel
+	 *            the ways of the tile
+	 * @param minZoom
+	 *            the minimum zoom level of the sub file
+	 * @param maxZoom
+	 *            the maximum zoom level of the sub file
+	 * @param dataProcessor
+	 *            the data processor which provides the inner ways of multipolygons
+	 * @param junctionNodes
+	 *            the junction nodes of all ways if ways are simplified per zoom interval, null otherwise
+	 * @return the fingerprint of the tile
+	 */
+	static long fingerprintTile(Map<Byte, List<TDNode>> poisByZoomlevel, Map<Byte, List<TDWay>> waysByZoomlevel,
+			byte minZoom, byte maxZoom, TileBasedDataProcessor dataProcessor, TLongSet junctionNodes) {
+		long fingerprint = 0;
+		for (byte zoomlevel = minZoom; zoomlevel <= maxZoom; zoomlevel++) {
+			List<TDNode> pois = poisByZoomlevel.get(Byte.valueOf(zoomlevel));
+			if (pois != null) {
+				fingerprint = update(fingerprint, zoomlevel);
+				for (TDNode poi : pois) {
+					fingerprint = update(fingerprint, poi.getId());
+					fingerprint = update(fingerprint, poi.getLatitude());
+					fingerprint = update(fingerprint, poi.getLongitude());
+					fingerprint = update(fingerprint, poi.getElevation());
+					fingerprint = update(fingerprint, poi.getLayer());
+					fingerprint = update(fingerprint, poi.getName());
+					fingerprint = update(fingerprint, poi.getHouseNumber());
+					fingerprint = update(fingerprint, poi.getTags(), true);
+				}
+			}
+		}
+
+		for (byte zoomlevel = minZoom; zoomlevel <= maxZoom; zoomlevel++) {
+			List<TDWay> ways = waysByZoomlevel.get(Byte.valueOf(zoomlevel));
+			if (ways != null) {
+				fingerprint = update(fingerprint, -zoomlevel);
+				for (TDWay way : ways) {
+					fingerprint = update(fingerprint, way, junctionNodes);
+					fingerprint = update(fingerprint, way.isReversedInRelation() ? 1 : 0);
+					List<TDWay> innerWays;
+					synchronized (dataProcessor) {
+						innerWays = dataProcessor.getInnerWaysOfMultipolygon(way.getId());
+					}
+					if (innerWays != null) {
+						for (TDWay innerWay : innerWays) {
+							fingerprint = update(fingerprint, innerWay, junctionNodes);
+						}
+					}
+				}
+			}
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @param mapFile
+	 *            the map file
+	 * @return the file which contains the fingerprints of the map file
+	 */
+	static File getFile(File mapFile) {
+		return new File(mapFile.getPath() + FILE_EXTENSION);
+	}
+
+	/**
+	 * @param mapFile
+	 *            the map file
+	 * @return the fingerprints of the map file, null if they do not exist or cannot be read
+	 */
+	static TileFingerprints read(File mapFile) {
+		File file = getFile(mapFile);
+		if (!file.isFile()) {
+			return null;
+		}
+
+		DataInputStream dataInputStream = null;
+		try {
+			dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+			if (!MAGIC.equals(dataInputStream.readUTF()) || dataInputStream.readInt() != VERSION) {
+				LOGGER.warning("unsupported fingerprint file: " + file);
+				return null;
+			}
+
+			long configuration = dataInputStream.readLong();
+			long mapFileSize = dataInputStream.readLong();
+			long creationDate = dataInputStream.readLong();
+			List<String> poiTags = readStrings(dataInputStream);
+			List<String> wayTags = readStrings(dataInputStream);
+			TileFingerprints tileFingerprints = new TileFingerprints(configuration, poiTags, wayTags,
+					dataInputStream.readByte());
+			tileFingerprints.mapFileSize = mapFileSize;
+			tileFingerprints.creationDate = creationDate;
+
+			for (int i = 0; i < tileFingerprints.subfiles.length; ++i) {
+				Subfile subfile = new Subfile(dataInputStream.readByte(), dataInputStream.readByte(),
+						dataInputStream.readByte(), dataInputStream.readInt(), dataInputStream.readInt(),
+						dataInputStream.readInt(), dataInputStream.readInt());
+				subfile.startAddress = dataInputStream.readLong();
+				subfile.size = dataInputStream.readLong();
+				for (int j = 0; j < subfile.fingerprints.length; ++j) {
+					subfile.fingerprints[j] = dataInputStream.readLong();
+				}
+				tileFingerprints.subfiles[i] = subfile;
+			}
+			return tileFingerprints;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "could not read fingerprint file: " + file, e);
+			return null;
+		} finally {
+			if (dataInputStream != null) {
+				try {
+					dataInputStream.close();
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "could not close fingerprint file", e);
+				}
+			}
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream dataInputStream) throws IOException {
+		int size = dataInputStream.readInt();
+		List<String> strings = new ArrayList<String>(size);
+		for (int i = 0; i < size; ++i) {
+			strings.add(dataInputStream.readUTF());
+		}
+		return strings;
+	}
+
+	private static List<String> poiTagKeys(OSMTagMapping tagMapping) {
+		List<String> tagKeys = new ArrayList<String>(tagMapping.getOptimizedPoiIds().size());
+		for (Short id : tagMapping.getOptimizedPoiIds().keySet()) {
+			tagKeys.add(tagMapping.getPoiTag(id.shortValue()).tagKey());
+		}
+		return tagKeys;
+	}
+
+	private static long update(long fingerprint, long value) {
+		long result = (fingerprint ^ value) * MULTIPLIER;
+		return result ^ result >>> 29;
+	}
+
+	private static long update(long fingerprint, short[] tags, boolean poiTags) {
+		if (tags == null) {
+			return update(fingerprint, -1);
+		}
+		OSMTagMapping tagMapping = OSMTagMapping.getInstance();
+		Map<Short, Short> optimizedIds = poiTags ? tagMapping.getOptimizedPoiIds() : tagMapping.getOptimizedWayIds();
+		long result = update(fingerprint, tags.length);
+		for (short tag : tags) {
+			result = update(result, optimizedIds.get(Short.valueOf(tag)).shortValue());
+		}
+		return result;
+	}
+
+	private static long update(long fingerprint, String string) {
+		if (string == null) {
+			return update(fingerprint, -1);
+		}
+		long result = update(fingerprint, string.length());
+		for (int i = 0; i < string.length(); ++i) {
+			result = update(result, string.charAt(i));
+		}
+		return result;
+	}
+
+	private static long update(long fingerprint, TDWay way, TLongSet junctionNodes) {
+		long result = update(fingerprint, way.getId());
+		result = update(result, way.getLayer());
+		result = update(result, way.getShape());
+		result = update(result, way.isForcePolygonLine() ? 1 : 0);
+		result = update(result, way.getName());
+		result = update(result, way.getHouseNumber());
+		result = update(result, way.getRef());
+		result = update(result, way.getTags(), false);
+		result = update(result, way.getWayNodeCount());
+		for (int i = 0; i < way.getWayNodeCount(); ++i) {
+			result = update(result, way.getWayNodeId(i));
+			result = update(result, way.getWayNodeLatitude(i));
+			result = update(result, way.getWayNodeLongitude(i));
+			// the simplification keeps the junction nodes, which depend on the neighbouring ways
+			if (junctionNodes != null) {
+				result = update(result, junctionNodes.contains(way.getWayNodeId(i)) ? 1 : 0);
+			}
+		}
+		return result;
+	}
+
+	private static List<String> wayTagKeys(OSMTagMapping tagMapping) {
+		List<String> tagKeys = new ArrayList<String>(tagMapping.getOptimizedWayIds().size());
+		for (Short id : tagMapping.getOptimizedWayIds().keySet()) {
+			tagKeys.add(tagMapping.getWayTag(id.shortValue()).tagKey());
+		}
+		return tagKeys;
+	}
+
+	private static void writeStrings(DataOutputStream dataOutputStream, List<String> strings) throws IOException {
+		dataOutputStream.writeInt(strings.size());
+		for (String string : strings) {
+			dataOutputStream.writeUTF(string);
+		}
+	}
+
+	final long configuration;
+	long creationDate;
+	long mapFileSize;
+	final List<String> poiTags;
+	final Subfile[] subfiles;
+	final List<String> wayTags;
+
+	/**
+	 * Creates empty fingerprints for a map file that is written with the given configuration. The tag ordering must
+	 * already be final.
+	 * 
+	 * @param configuration
+	 *            the configuration
+	 * @param numberOfSubfiles
+	 *            the number of sub files
+	 */
+	TileFingerprints(MapWriterConfiguration configuration, int numberOfSubfiles) {
+		this(fingerprintConfiguration(configuration), poiTagKeys(configuration.getTagMapping()),
+				wayTagKeys(configuration.getTagMapping()), numberOfSubfiles);
+	}
+
+	/**
+	 * @param configuration
+	 *            the fingerprint of the configuration
+	 * @param poiTags
+	 *            the keys of the POI tags in the order of their optimized ids
+	 * @param wayTags
+	 *            the keys of the way tags in the order of their optimized ids
+	 * @param numberOfSubfiles
+	 *            the number of sub files
+	 */
+	TileFingerprints(long configuration, List<String> poiTags, List<String> wayTags, int numberOfSubfiles) {
+		this.configuration = configuration;
+		this.poiTags = poiTags;
+		this.wayTags = wayTags;
+		this.subfiles = new Subfile[numberOfSubfiles];
+	}
+
+	/**
+	 * Writes the fingerprints next to the map file.
+	 * 
+	 * @param mapFile
+	 *            the map file which has been written completely
+	 * @param mapCreationDate
+	 *            the date of creation in the header of the map file
+	 * @throws IOException
+	 *             thrown if any IO error occurs
+	 */
+	void write(File mapFile, long mapCreationDate) throws IOException {
+		this.mapFileSize = mapFile.length();
+		this.creationDate = mapCreationDate;
+
+		DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				getFile(mapFile)), BUFFER_SIZE));
+		try {
+			dataOutputStream.writeUTF(MAGIC);
+			dataOutputStream.writeInt(VERSION);
+			dataOutputStream.writeLong(this.configuration);
+			dataOutputStream.writeLong(this.mapFileSize);
+			dataOutputStream.writeLong(this.creationDate);
+			writeStrings(dataOutputStream, this.poiTags);
+			writeStrings(dataOutputStream, this.wayTags);
+			dataOutputStream.writeByte(this.subfiles.length);
+			for (Subfile subfile : this.subfiles) {
+				dataOutputStream.writeByte(subfile.baseZoom);
+				dataOutputStream.writeByte(subfile.minZoom);
+				dataOutputStream.writeByte(subfile.maxZoom);
+				dataOutputStream.writeInt(subfile.upperLeftX);
+				dataOutputStream.writeInt(subfile.upperLeftY);
+				dataOutputStream.writeInt(subfile.lengthX);
+				dataOutputStream.writeInt(subfile.lengthY);
+				dataOutputStream.writeLong(subfile.startAddress);
+				dataOutputStream.writeLong(subfile.size);
+				for (long fingerprint : subfile.fingerprints) {
+					dataOutputStream.writeLong(fingerprint);
+				}
+			}
+		} finally {
+			dataOutputStream.close();
+		}
+	}
+}
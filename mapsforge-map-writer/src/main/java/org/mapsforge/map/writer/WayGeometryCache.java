@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mapsforge.map.writer.model.GeoCoordinate;
+import org.mapsforge.map.writer.util.GeoUtils;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * A bounded LRU cache of prepared way geometries of one sub file. Ways that span many base zoom tiles are created,
+ * simplified and prepared only once instead of once per tile. The size of the cache is limited by the total number
+ * of coordinates of the cached geometries.
+ */
+final class WayGeometryCache {
+	/**
+	 * A prepared geometry of a way and the label position of a labelled area, the geometry is null if no valid
+	 * geometry could be created for the way.
+	 */
+	static final class Entry {
+		final Geometry geometry;
+		final GeoCoordinate labelPosition;
+		final PreparedGeometry preparedGeometry;
+		final int weight;
+
+		/**
+		 * @param geometry
+		 *            the geometry of the way, null if no valid geometry could be created
+		 * @param labelled
+		 *            true if the way has a name, a house number or a reference
+		 */
+		Entry(Geometry geometry, boolean labelled) {
+			this.geometry = geometry;
+			if (geometry == null) {
+				this.labelPosition = null;
+				this.preparedGeometry = null;
+				this.weight = 1;
+			} else {
+				this.labelPosition = labelled ? GeoUtils.computeLabelPosition(geometry) : null;
+				this.preparedGeometry = PreparedGeometryFactory.prepare(geometry);
+				this.weight = geometry.getNumPoints();
+			}
+		}
+	}
+
+	private final Map<Long, Entry> entries;
+	private long hits;
+	private long lookups;
+	private final int maximumWeight;
+	private int weight;
+
+	/**
+	 * @param maximumWeight
+	 *            the maximum number of coordinates of all cached geometries
+	 */
+	WayGeometryCache(int maximumWeight) {
+		this.maximumWeight = maximumWeight;
+		this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * @param wayId
+	 *            the id of the way
+	 * @return the cached entry of the way, null if the way is not cached
+	 */
+	synchronized Entry get(long wayId) {
+		++this.lookups;
+		Entry entry = this.entries.get(Long.valueOf(wayId));
+		if (entry != null) {
+			++this.hits;
+		}
+		return entry;
+	}
+
+	/**
+	 * @return the share of lookups that found a cached entry
+	 */
+	synchronized double getHitRate() {
+		return this.lookups == 0 ? 0 : (double) this.hits / this.lookups;
+	}
+
+	/**
+	 * @param wayId
+	 *            the id of the way
+	 * @param entry
+	 *            the entry to be cached
+	 */
+	synchronized void put(long wayId, Entry entry) {
+		if (entry.weight > this.maximumWeight) {
+			return;
+		}
+
+		Entry previous = this.entries.put(Long.valueOf(wayId), entry);
+		if (previous != null) {
+			this.weight -= previous.weight;
+		}
+		this.weight += entry.weight;
+
+		// evict the least recently used entries
+		Iterator<Entry> iterator = this.entries.values().iterator();
+		while (this.weight > this.maximumWeight && iterator.hasNext()) {
+			this.weight -= iterator.next().weight;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * @return the number of cached entries
+	 */
+	synchronized int size() {
+		return this.entries.size();
+	}
+}
@@ -14,35 +14,86 @@
  */
 package org.mapsforge.map.writer;
 
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
-import org.mapsforge.map.writer.model.TDNode;
 import org.mapsforge.map.writer.model.TDWay;
 import org.mapsforge.map.writer.util.JTSUtils;
 
+import com.vividsolutions.jts.algorithm.RayCrossingCounter;
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Location;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jts.index.strtree.STRtree;
 
 //TODO could be implemented more efficiently with graphs: each line string is an edge, use an undirected graph and search for strongly connected components
 
 class WayPolygonizer {
 
 	private static final int MIN_NODES_POLYGON = 4;
+
+	private static void addEndpoint(TLongObjectHashMap<TIntArrayList> waysByEndpoint, long wayNodeId, int way) {
+		TIntArrayList endpointWays = waysByEndpoint.get(wayNodeId);
+		if (endpointWays == null) {
+			endpointWays = new TIntArrayList(2);
+			waysByEndpoint.put(wayNodeId, endpointWays);
+		}
+		endpointWays.add(way);
+	}
+
+	// returns the first ungrouped way at or after the given position which starts or ends at the way node
+	private static int nextUngroupedWay(TLongObjectHashMap<TIntArrayList> waysByEndpoint, long wayNodeId,
+			int position, boolean[] grouped) {
+		TIntArrayList endpointWays = waysByEndpoint.get(wayNodeId);
+		if (endpointWays != null) {
+			// the ways are in ascending order
+			for (int i = 0; i < endpointWays.size(); ++i) {
+				int way = endpointWays.get(i);
+				if (way >= position && !grouped[way]) {
+					return way;
+				}
+			}
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	private static boolean isClosedPolygon(TDWay way) {
+		return way.getWayNodeId(0) == getLastWayNodeId(way);
+	}
+
+	private static long getLastWayNodeId(TDWay way) {
+		return way.getWayNodeId(way.getWayNodeCount() - 1);
+	}
+
 	private final GeometryFactory geometryFactory = new GeometryFactory();
 
 	private List<Deque<TDWay>> polygons;
 	private List<TDWay> dangling;
 	private List<TDWay> illegal;
-	private Map<Integer, List<Integer>> outerToInner;
+	private TIntArrayList outerPolygons;
+	private TIntArrayList[] innerPolygons;
+	// the ways which are merged in reverse direction, the flags of the ways are only set on request as the ways
+	// may be shared with relations which are polygonized concurrently
+	private Set<TDWay> reversed;
+
+	// the geometries of the polygons while they are related
+	private Coordinate[][] rings;
+	private Polygon[] polygonGeometries;
+	private PreparedGeometry[] preparedGeometries;
 
 	/**
 	 * Tries to merge ways to closed polygons. The ordering of waynodes is preserved during the merge process.
@@ -54,17 +105,15 @@ class WayPolygonizer {
 		this.polygons = new ArrayList<Deque<TDWay>>();
 		this.dangling = new ArrayList<TDWay>();
 		this.illegal = new ArrayList<TDWay>();
+		this.reversed = Collections.newSetFromMap(new IdentityHashMap<TDWay, Boolean>());
 
-		Deque<TDWay> ungroupedWays = new ArrayDeque<TDWay>();
+		List<TDWay> ungroupedWays = new ArrayList<TDWay>();
 
 		// initially all ways are ungrouped
 		for (TDWay tdWay : ways) {
-			// reset reversed flag, may already be set when way is part of another relation
-			tdWay.setReversedInRelation(false);
-
 			// first extract all way that are closed polygons in their own right
 			if (isClosedPolygon(tdWay)) {
-				if (tdWay.getWayNodes().length < MIN_NODES_POLYGON) {
+				if (tdWay.getWayNodeCount() < MIN_NODES_POLYGON) {
 					this.illegal.add(tdWay);
 				} else {
 					Deque<TDWay> cluster = new ArrayDeque<TDWay>();
@@ -82,10 +131,21 @@ class WayPolygonizer {
 		}
 
 		if (ungroupedWays.size() == 1) {
-			this.dangling.add(ungroupedWays.getFirst());
+			this.dangling.add(ungroupedWays.get(0));
 			return;
 		}
 
+		// index the ungrouped ways by their first and last way node, so that the ways which can be merged with the
+		// current polygon are found without scanning all ungrouped ways
+		TLongObjectHashMap<TIntArrayList> waysByEndpoint = new TLongObjectHashMap<TIntArrayList>();
+		for (int i = 0; i < ungroupedWays.size(); ++i) {
+			addEndpoint(waysByEndpoint, ungroupedWays.get(i).getWayNodeId(0), i);
+			addEndpoint(waysByEndpoint, getLastWayNodeId(ungroupedWays.get(i)), i);
+		}
+		boolean[] grouped = new boolean[ungroupedWays.size()];
+		int amountUngroupedWays = ungroupedWays.size();
+		int firstUngroupedWay = 0;
+
 		boolean startNewPolygon = true;
 
 		while (true) {
@@ -96,78 +156,84 @@ class WayPolygonizer {
 				// are still ungrouped ways left
 				Deque<TDWay> cluster = new ArrayDeque<TDWay>();
 				// get the first way of the yet ungrouped ways and form a new group
-				cluster.add(ungroupedWays.removeFirst());
+				while (grouped[firstUngroupedWay]) {
+					++firstUngroupedWay;
+				}
+				cluster.add(ungroupedWays.get(firstUngroupedWay));
+				grouped[firstUngroupedWay] = true;
+				--amountUngroupedWays;
 				this.polygons.add(cluster);
 				startNewPolygon = false;
 			}
 
-			// test if we can merge the current polygon with an ungrouped way
-			Iterator<TDWay> it = ungroupedWays.iterator();
-			while (it.hasNext()) {
-				TDWay current = it.next();
-
-				Deque<TDWay> currentPolygonSegments = this.polygons.get(this.polygons.size() - 1);
+			// test if we can merge the current polygon with an ungrouped way, the ungrouped ways are visited in
+			// their original order
+			Deque<TDWay> currentPolygonSegments = this.polygons.get(this.polygons.size() - 1);
+			int position = 0;
+			while (true) {
 				// first way in current polygon
 				TDWay c1Start = currentPolygonSegments.getFirst();
 				// last way in current polygon
 				TDWay c1End = currentPolygonSegments.getLast();
 
-				long startFirst = c1Start.isReversedInRelation() ? c1Start.getWayNodes()[c1Start.getWayNodes().length - 1]
-						.getId() : c1Start.getWayNodes()[0].getId();
+				long startFirst = isReversed(c1Start) ? getLastWayNodeId(c1Start) : c1Start.getWayNodeId(0);
 
-				long endLast = c1End.isReversedInRelation() ? c1End.getWayNodes()[0].getId()
-						: c1End.getWayNodes()[c1End.getWayNodes().length - 1].getId();
+				long endLast = isReversed(c1End) ? c1End.getWayNodeId(0) : getLastWayNodeId(c1End);
 
-				long currentFirst = current.getWayNodes()[0].getId();
-				long currentLast = current.getWayNodes()[current.getWayNodes().length - 1].getId();
+				int next = Math.min(nextUngroupedWay(waysByEndpoint, startFirst, position, grouped),
+						nextUngroupedWay(waysByEndpoint, endLast, position, grouped));
+				if (next == Integer.MAX_VALUE) {
+					break;
+				}
+				TDWay current = ungroupedWays.get(next);
+				grouped[next] = true;
+				--amountUngroupedWays;
+				merge = true;
+				position = next + 1;
+
+				long currentFirst = current.getWayNodeId(0);
+				long currentLast = getLastWayNodeId(current);
 
 				// current way end connects to the start of the current polygon (correct direction)
 				if (startFirst == currentLast) {
-					merge = true;
-					it.remove();
 					// add way to start of current polygon
 					currentPolygonSegments.offerFirst(current);
 				}
-				// // current way start connects to the start of the current polygon (reversed
-				// direction)
+				// current way start connects to the start of the current polygon (reversed direction)
 				else if (startFirst == currentFirst) {
-					current.setReversedInRelation(true);
-					merge = true;
-					it.remove();
+					this.reversed.add(current);
 					currentPolygonSegments.offerFirst(current);
 				}
 				// current way start connects to the end of the current polygon (correct direction)
 				else if (endLast == currentFirst) {
-					merge = true;
-					it.remove();
 					// add way to end of current polygon
 					currentPolygonSegments.offerLast(current);
 				}
-				// // current way end connects to the end of the current polygon (reversed direction)
-				else if (endLast == currentLast) {
-					current.setReversedInRelation(true);
-					merge = true;
-					it.remove();
+				// current way end connects to the end of the current polygon (reversed direction)
+				else {
+					this.reversed.add(current);
 					// add way to end of current polygon
 					currentPolygonSegments.offerLast(current);
-
 				}
 			}
 
-			Deque<TDWay> currentCluster = this.polygons.get(this.polygons.size() - 1);
-			boolean closed = isClosedPolygon(currentCluster);
+			boolean closed = isClosedPolygon(currentPolygonSegments);
 			// not a closed polygon and no more ways to merge
 			if (!closed) {
-				if (ungroupedWays.isEmpty() || !merge) {
-					this.dangling.addAll(this.polygons.get(this.polygons.size() - 1));
-					// may be a non operation when ungrouped is empty
-					this.dangling.addAll(ungroupedWays);
+				if (amountUngroupedWays == 0 || !merge) {
+					this.dangling.addAll(currentPolygonSegments);
+					// may be a non operation when no ungrouped ways are left
+					for (int i = firstUngroupedWay; i < ungroupedWays.size(); ++i) {
+						if (!grouped[i]) {
+							this.dangling.add(ungroupedWays.get(i));
+						}
+					}
 					this.polygons.remove(this.polygons.size() - 1);
 					return;
 				}
 			} else {
 				// built a closed polygon and no more ways left --> we are finished
-				if (ungroupedWays.isEmpty()) {
+				if (amountUngroupedWays == 0) {
 					return;
 				}
 
@@ -181,56 +247,81 @@ class WayPolygonizer {
 
 	}
 
+	/**
+	 * Relates the merged polygons to each other, a polygon which is covered by another polygon becomes an inner
+	 * polygon of it. Only pairs of polygons whose bounding boxes nest are tested for coverage.
+	 */
 	void relatePolygons() {
-		this.outerToInner = new HashMap<Integer, List<Integer>>();
+		this.outerPolygons = new TIntArrayList();
+		this.innerPolygons = new TIntArrayList[this.polygons.size()];
 		if (this.polygons.isEmpty()) {
 			return;
 		}
 
-		Polygon[] polygonGeometries = new Polygon[this.polygons.size()];
-		int i = 0;
-		for (Deque<TDWay> polygon : this.polygons) {
-			polygonGeometries[i++] = this.geometryFactory.createPolygon(
-					this.geometryFactory.createLinearRing(toCoordinates(polygon)), null);
+		int amountPolygons = this.polygons.size();
+		this.rings = new Coordinate[amountPolygons][];
+		this.polygonGeometries = new Polygon[amountPolygons];
+		this.preparedGeometries = new PreparedGeometry[amountPolygons];
+		STRtree envelopeIndex = new STRtree();
+		for (int i = 0; i < amountPolygons; ++i) {
+			this.rings[i] = toCoordinates(this.polygons.get(i));
+			this.polygonGeometries[i] = this.geometryFactory.createPolygon(
+					this.geometryFactory.createLinearRing(this.rings[i]), null);
+			envelopeIndex.insert(this.polygonGeometries[i].getEnvelopeInternal(), Integer.valueOf(i));
 		}
 
-		this.outerToInner = new HashMap<Integer, List<Integer>>();
-		HashSet<Integer> inner = new HashSet<Integer>();
-		for (int k = 0; k < polygonGeometries.length; k++) {
-			if (inner.contains(Integer.valueOf(k))) {
+		boolean[] inner = new boolean[amountPolygons];
+		boolean[] outer = new boolean[amountPolygons];
+		final TIntArrayList candidates = new TIntArrayList();
+		for (int k = 0; k < amountPolygons; k++) {
+			if (inner[k]) {
 				continue;
 			}
-			for (int l = k + 1; l < polygonGeometries.length; l++) {
-				if (inner.contains(Integer.valueOf(l))) {
+
+			// the envelopes of the candidates intersect the envelope of the current polygon, they are tested in
+			// ascending order
+			final Envelope envelope = this.polygonGeometries[k].getEnvelopeInternal();
+			candidates.resetQuick();
+			envelopeIndex.query(envelope, new ItemVisitor() {
+				@Override
+				public void visitItem(Object item) {
+					candidates.add(((Integer) item).intValue());
+				}
+			});
+			candidates.sort();
+
+			for (int i = 0; i < candidates.size(); i++) {
+				int l = candidates.get(i);
+				if (l <= k || inner[l]) {
 					continue;
 				}
 
-				if (polygonGeometries[k].covers(polygonGeometries[l])) {
-					List<Integer> inners = this.outerToInner.get(Integer.valueOf(k));
-					if (inners == null) {
-						inners = new ArrayList<Integer>();
-						this.outerToInner.put(Integer.valueOf(k), inners);
-					}
-					inners.add(Integer.valueOf(l));
-					inner.add(Integer.valueOf(l));
-				} else if (!this.outerToInner.containsKey(Integer.valueOf(k))
-						&& polygonGeometries[l].covers(polygonGeometries[k])) {
-					List<Integer> inners = this.outerToInner.get(Integer.valueOf(l));
-					if (inners == null) {
-						inners = new ArrayList<Integer>();
-						this.outerToInner.put(Integer.valueOf(l), inners);
-					}
-					inners.add(Integer.valueOf(k));
-					inner.add(Integer.valueOf(k));
+				if (covers(k, l)) {
+					addInnerPolygon(k, l);
+					outer[k] = true;
+					inner[l] = true;
+				} else if (!outer[k] && covers(l, k)) {
+					addInnerPolygon(l, k);
+					outer[l] = true;
+					inner[k] = true;
 				}
 			}
 
 			// single polygon without any inner polygons
-			if (!this.outerToInner.containsKey(Integer.valueOf(k)) && !inner.contains(Integer.valueOf(k))) {
-				this.outerToInner.put(Integer.valueOf(k), null);
+			if (!outer[k] && !inner[k]) {
+				outer[k] = true;
 			}
+		}
 
+		for (int i = 0; i < amountPolygons; i++) {
+			if (outer[i]) {
+				this.outerPolygons.add(i);
+			}
 		}
+
+		this.rings = null;
+		this.polygonGeometries = null;
+		this.preparedGeometries = null;
 	}
 
 	void polygonizeAndRelate(TDWay[] ways) {
@@ -238,6 +329,28 @@ class WayPolygonizer {
 		relatePolygons();
 	}
 
+	/**
+	 * @param way
+	 *            a way of the merged relation
+	 * @return true if the way is merged in reverse direction
+	 */
+	boolean isReversed(TDWay way) {
+		return this.reversed.contains(way);
+	}
+
+	/**
+	 * Sets the reversed flag of the ways to the direction in which they have been merged, ways which are not part of
+	 * a polygon are not reversed.
+	 * 
+	 * @param ways
+	 *            the ways which have been merged
+	 */
+	void updateReversedInRelation(TDWay[] ways) {
+		for (TDWay tdWay : ways) {
+			tdWay.setReversedInRelation(isReversed(tdWay));
+		}
+	}
+
 	List<Deque<TDWay>> getPolygons() {
 		return this.polygons;
 	}
@@ -250,35 +363,40 @@ class WayPolygonizer {
 		return this.illegal;
 	}
 
-	Map<Integer, List<Integer>> getOuterToInner() {
-		return this.outerToInner;
+	/**
+	 * @return the indices of the polygons which are not covered by another polygon in ascending order
+	 */
+	TIntArrayList getOuterPolygons() {
+		return this.outerPolygons;
+	}
+
+	/**
+	 * @param outerPolygon
+	 *            the index of an outer polygon
+	 * @return the indices of the polygons which are covered by the outer polygon, null if there are none
+	 */
+	TIntArrayList getInnerPolygons(int outerPolygon) {
+		return this.innerPolygons[outerPolygon];
 	}
 
-	private static boolean isClosedPolygon(Deque<TDWay> currentPolygonSegments) {
+	private boolean isClosedPolygon(Deque<TDWay> currentPolygonSegments) {
 		TDWay c1Start = currentPolygonSegments.getFirst();
 		TDWay c1End = currentPolygonSegments.getLast();
 
-		long startFirst = c1Start.isReversedInRelation() ? c1Start.getWayNodes()[c1Start.getWayNodes().length - 1]
-				.getId() : c1Start.getWayNodes()[0].getId();
+		long startFirst = isReversed(c1Start) ? getLastWayNodeId(c1Start) : c1Start.getWayNodeId(0);
 
-		long endLast = c1End.isReversedInRelation() ? c1End.getWayNodes()[0].getId() : c1End.getWayNodes()[c1End
-				.getWayNodes().length - 1].getId();
+		long endLast = isReversed(c1End) ? c1End.getWayNodeId(0) : getLastWayNodeId(c1End);
 
 		return startFirst == endLast;
 	}
 
-	private static boolean isClosedPolygon(TDWay way) {
-		TDNode[] waynodes = way.getWayNodes();
-		return waynodes[0].getId() == waynodes[waynodes.length - 1].getId();
-	}
-
-	private static Coordinate[] toCoordinates(Collection<TDWay> linestrings) {
+	private Coordinate[] toCoordinates(Collection<TDWay> linestrings) {
 
 		Coordinate[][] temp = new Coordinate[linestrings.size()][];
 		int i = 0;
 		int n = 0;
 		for (TDWay tdWay : linestrings) {
-			temp[i] = JTSUtils.toCoordinates(tdWay);
+			temp[i] = JTSUtils.toCoordinates(tdWay, isReversed(tdWay));
 			n += temp[i].length;
 			++i;
 		}
@@ -291,6 +409,31 @@ class WayPolygonizer {
 		return res;
 	}
 
+	private void addInnerPolygon(int outerPolygon, int innerPolygon) {
+		if (this.innerPolygons[outerPolygon] == null) {
+			this.innerPolygons[outerPolygon] = new TIntArrayList();
+		}
+		this.innerPolygons[outerPolygon].add(innerPolygon);
+	}
+
+	private boolean covers(int outerPolygon, int innerPolygon) {
+		if (!this.polygonGeometries[outerPolygon].getEnvelopeInternal().covers(
+				this.polygonGeometries[innerPolygon].getEnvelopeInternal())) {
+			return false;
+		}
+		// a polygon cannot be covered if any of its points lies outside
+		if (RayCrossingCounter.locatePointInRing(this.rings[innerPolygon][0], this.rings[outerPolygon])
+				== Location.EXTERIOR) {
+			return false;
+		}
+		// the prepared geometry indexes the segments of the outer polygon for repeated tests
+		if (this.preparedGeometries[outerPolygon] == null) {
+			this.preparedGeometries[outerPolygon] = PreparedGeometryFactory
+					.prepare(this.polygonGeometries[outerPolygon]);
+		}
+		return this.preparedGeometries[outerPolygon].covers(this.polygonGeometries[innerPolygon]);
+	}
+
 	class PolygonMergeException extends Exception {
 		private static final long serialVersionUID = 1L;
 	}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.function.TLongFunction;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.procedure.TObjectProcedure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.map.writer.model.TDWay;
+
+/**
+ * Stores ways together with the coordinates of their way nodes in a temporary file, so that reading a way does not
+ * require any node lookups. The file offset of each way is kept in a {@link MappedLongMap}. Once all ways have been
+ * added, the file can be rewritten in the order in which the tiles request the ways.
+ */
+final class WayStore {
+	private static final int BUFFER_SIZE = 0x10000;
+	private static final Logger LOGGER = Logger.getLogger(WayStore.class.getName());
+	// marks the offsets of the ways which have already been copied while the file is reordered
+	private static final long MOVED = 1L << 62;
+
+	private static void close(Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "could not close temporary way store", e);
+		}
+	}
+
+	private static File createTempFile() {
+		try {
+			File file = File.createTempFile("mapsforge-ways", ".bin");
+			file.deleteOnExit();
+			return file;
+		} catch (IOException e) {
+			throw new RuntimeException("could not create temporary way store", e);
+		}
+	}
+
+	private static TDWay readWay(DataInput dataInput) throws IOException {
+		long id = dataInput.readLong();
+		byte layer = dataInput.readByte();
+		byte shape = dataInput.readByte();
+		String name = readString(dataInput);
+		String houseNumber = readString(dataInput);
+		String ref = readString(dataInput);
+
+		short[] tags = null;
+		int numberOfTags = dataInput.readShort();
+		if (numberOfTags >= 0) {
+			tags = new short[numberOfTags];
+			for (int i = 0; i < numberOfTags; ++i) {
+				tags[i] = dataInput.readShort();
+			}
+		}
+
+		int numberOfWayNodes = dataInput.readInt();
+		long[] wayNodeIds = new long[numberOfWayNodes];
+		int[] wayNodeCoordinates = new int[numberOfWayNodes * 2];
+		for (int i = 0; i < numberOfWayNodes; ++i) {
+			wayNodeIds[i] = dataInput.readLong();
+			wayNodeCoordinates[2 * i] = dataInput.readInt();
+			wayNodeCoordinates[2 * i + 1] = dataInput.readInt();
+		}
+
+		return new TDWay(id, layer, name, houseNumber, ref, tags, shape, wayNodeIds, wayNodeCoordinates);
+	}
+
+	private static String readString(DataInput dataInput) throws IOException {
+		return dataInput.readBoolean() ? dataInput.readUTF() : null;
+	}
+
+	private static void writeString(DataOutput dataOutput, String string) throws IOException {
+		dataOutput.writeBoolean(string != null);
+		if (string != null) {
+			dataOutput.writeUTF(string);
+		}
+	}
+
+	private static void writeWay(DataOutput dataOutput, TDWay way) throws IOException {
+		dataOutput.writeLong(way.getId());
+		dataOutput.writeByte(way.getLayer());
+		dataOutput.writeByte(way.getShape());
+		writeString(dataOutput, way.getName());
+		writeString(dataOutput, way.getHouseNumber());
+		writeString(dataOutput, way.getRef());
+
+		short[] tags = way.getTags();
+		if (tags == null) {
+			dataOutput.writeShort(-1);
+		} else {
+			dataOutput.writeShort(tags.length);
+			for (short tag : tags) {
+				dataOutput.writeShort(tag);
+			}
+		}
+
+		dataOutput.writeInt(way.getWayNodeCount());
+		for (int i = 0; i < way.getWayNodeCount(); ++i) {
+			dataOutput.writeLong(way.getWayNodeId(i));
+			dataOutput.writeInt(way.getWayNodeLatitude(i));
+			dataOutput.writeInt(way.getWayNodeLongitude(i));
+		}
+	}
+
+	private File file;
+	private FileChannel fileChannel;
+	private long length;
+	private final MappedLongMap offsets;
+	private DataOutputStream output;
+	private final ByteArrayOutputStream recordBuffer;
+	private final DataOutputStream recordOutput;
+
+	WayStore() {
+		this.offsets = new MappedLongMap("mapsforge-way-offsets");
+		this.recordBuffer = new ByteArrayOutputStream();
+		this.recordOutput = new DataOutputStream(this.recordBuffer);
+		this.file = createTempFile();
+	}
+
+	/**
+	 * Adds a way to the store, ways should be added in ascending order of their ids.
+	 * 
+	 * @param way
+	 *            the way
+	 */
+	void add(TDWay way) {
+		try {
+			if (this.output == null) {
+				this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true),
+						BUFFER_SIZE));
+			}
+			this.recordBuffer.reset();
+			writeWay(this.recordOutput, way);
+			this.output.writeInt(this.recordBuffer.size());
+			this.recordBuffer.writeTo(this.output);
+		} catch (IOException e) {
+			throw new RuntimeException("could not write way to temporary store: " + way.getId(), e);
+		}
+		this.offsets.put(way.getId(), this.length);
+		this.length += 4 + this.recordBuffer.size();
+	}
+
+	/**
+	 * Calls the procedure for each way in the order of the file.
+	 * 
+	 * @param procedure
+	 *            the procedure
+	 */
+	void forEach(TObjectProcedure<TDWay> procedure) {
+		flush();
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file), BUFFER_SIZE));
+			for (long offset = 0; offset < this.length;) {
+				int recordLength = input.readInt();
+				TDWay way = readWay(input);
+				offset += 4 + recordLength;
+				if (!procedure.execute(way)) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("could not read temporary way store", e);
+		} finally {
+			close(input);
+		}
+	}
+
+	/**
+	 * @param id
+	 *            the id of the way
+	 * @return the way, null if the store does not contain the way
+	 */
+	TDWay get(long id) {
+		long offset = this.offsets.get(id);
+		if (offset == MappedLongMap.NO_ENTRY_VALUE) {
+			return null;
+		}
+
+		flush();
+		try {
+			return readWay(new DataInputStream(new ByteArrayInputStream(readRecord(offset))));
+		} catch (IOException e) {
+			throw new RuntimeException("could not read way from temporary store: " + id, e);
+		}
+	}
+
+	/**
+	 * Releases the temporary files, the store must not be used afterwards.
+	 */
+	void release() {
+		close(this.output);
+		this.output = null;
+		close(this.fileChannel);
+		this.fileChannel = null;
+		if (this.file != null && !this.file.delete()) {
+			LOGGER.fine("temporary way store is deleted on exit: " + this.file);
+		}
+		this.file = null;
+		this.offsets.release();
+	}
+
+	/**
+	 * Rewrites the file so that the ways are stored in the given order. Ways which are not contained in the order
+	 * follow in their previous order.
+	 * 
+	 * @param wayIds
+	 *            lists of way ids in the requested order, duplicate and unknown ids are ignored
+	 */
+	void reorder(Iterator<TLongArrayList> wayIds) {
+		flush();
+		final File reorderedFile = createTempFile();
+		final long[] reorderedLength = new long[1];
+		final DataOutputStream reorderedOutput;
+		try {
+			reorderedOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(reorderedFile),
+					BUFFER_SIZE));
+		} catch (IOException e) {
+			throw new RuntimeException("could not create temporary way store", e);
+		}
+
+		try {
+			while (wayIds.hasNext()) {
+				TLongArrayList list = wayIds.next();
+				for (int i = 0; i < list.size(); ++i) {
+					long id = list.get(i);
+					long offset = this.offsets.get(id);
+					if (offset != MappedLongMap.NO_ENTRY_VALUE && (offset & MOVED) == 0) {
+						this.offsets.put(id, reorderedLength[0] | MOVED);
+						reorderedLength[0] += copyRecord(offset, reorderedOutput);
+					}
+				}
+			}
+
+			// append the remaining ways and remove the marks
+			this.offsets.transformValues(new TLongFunction() {
+				@Override
+				public long execute(long value) {
+					if ((value & MOVED) != 0) {
+						return value & ~MOVED;
+					}
+					long offset = reorderedLength[0];
+					try {
+						reorderedLength[0] += copyRecord(value, reorderedOutput);
+					} catch (IOException e) {
+						throw new RuntimeException("could not reorder temporary way store", e);
+					}
+					return offset;
+				}
+			});
+			reorderedOutput.close();
+		} catch (IOException e) {
+			throw new RuntimeException("could not reorder temporary way store", e);
+		} finally {
+			close(reorderedOutput);
+		}
+
+		close(this.fileChannel);
+		this.fileChannel = null;
+		if (!this.file.delete()) {
+			LOGGER.fine("temporary way store is deleted on exit: " + this.file);
+		}
+		this.file = reorderedFile;
+		this.length = reorderedLength[0];
+	}
+
+	/**
+	 * @return the number of ways in the store
+	 */
+	long size() {
+		return this.offsets.size();
+	}
+
+	private int copyRecord(long offset, DataOutputStream dataOutputStream) throws IOException {
+		byte[] record = readRecord(offset);
+		dataOutputStream.writeInt(record.length);
+		dataOutputStream.write(record);
+		return 4 + record.length;
+	}
+
+	private void flush() {
+		if (this.output == null) {
+			return;
+		}
+		try {
+			this.output.close();
+		} catch (IOException e) {
+			throw new RuntimeException("could not write temporary way store", e);
+		}
+		this.output = null;
+	}
+
+	private void readFully(ByteBuffer byteBuffer, long position) throws IOException {
+		if (this.fileChannel == null) {
+			this.fileChannel = new RandomAccessFile(this.file, "r").getChannel();
+		}
+		while (byteBuffer.hasRemaining()) {
+			if (this.fileChannel.read(byteBuffer, position + byteBuffer.position()) < 0) {
+				throw new IOException("unexpected end of temporary way store at " + position);
+			}
+		}
+	}
+
+	private byte[] readRecord(long offset) throws IOException {
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		readFully(lengthBuffer, offset);
+		byte[] record = new byte[lengthBuffer.getInt(0)];
+		readFully(ByteBuffer.wrap(record), offset + 4);
+		return record;
+	}
+}
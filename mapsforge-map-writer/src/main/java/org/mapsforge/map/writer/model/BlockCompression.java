@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.model;
+
+/**
+ * Represents the codec which is used to compress the tile blocks of the sub files.
+ */
+public enum BlockCompression {
+	/**
+	 * The blocks are stored uncompressed, the map file can be read by all readers.
+	 */
+	NONE(0),
+	/**
+	 * Each block is compressed in the LZ4 block format.
+	 */
+	LZ4(1);
+
+	/**
+	 * Reads the block compression from a String.
+	 * 
+	 * @param blockCompression
+	 *            the block compression, either none or lz4
+	 * @return the block compression, NONE if the block compression is unknown
+	 */
+	public static BlockCompression fromString(String blockCompression) {
+		if ("lz4".equalsIgnoreCase(blockCompression)) {
+			return LZ4;
+		}
+
+		return NONE;
+	}
+
+	private final byte id;
+
+	private BlockCompression(int id) {
+		this.id = (byte) id;
+	}
+
+	/**
+	 * @return the id of the codec as stored in the sub file parameters of the map file header
+	 */
+	public byte getId() {
+		return this.id;
+	}
+}
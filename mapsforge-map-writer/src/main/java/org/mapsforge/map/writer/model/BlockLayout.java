@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.model;
+
+/**
+ * Represents the order in which the tile blocks of a sub file are stored. The position of a block in this order is
+ * its block number, which addresses its entry in the index of the sub file.
+ * <p>
+ * The Z-order visits the tiles of the smallest square of 2^k tiles that covers the grid recursively in the quadrant
+ * order upper left, upper right, lower left and lower right, tiles outside of the grid are skipped. Tiles which are
+ * close to each other are close to each other in the sub file as well, so a reader needs fewer seeks for a
+ * viewport.
+ */
+public enum BlockLayout {
+	/**
+	 * The blocks are stored row by row, the map file can be read by all readers.
+	 */
+	ROW_MAJOR,
+	/**
+	 * The blocks are stored in Z-order.
+	 */
+	Z_ORDER;
+
+	/**
+	 * Reads the block layout from a String.
+	 * 
+	 * @param blockLayout
+	 *            the block layout, either row-major or z-order
+	 * @return the block layout, ROW_MAJOR if the block layout is unknown
+	 */
+	public static BlockLayout fromString(String blockLayout) {
+		if ("z-order".equalsIgnoreCase(blockLayout)) {
+			return Z_ORDER;
+		}
+
+		return ROW_MAJOR;
+	}
+
+	// the number of quadrant levels of the smallest square of 2^k tiles which covers the grid
+	private static int getLevels(int lengthX, int lengthY) {
+		return 32 - Integer.numberOfLeadingZeros(Math.max(lengthX, lengthY) - 1);
+	}
+
+	// the number of tiles of the grid inside of a quadrant
+	private static int getAmountTiles(int quadrantX, int quadrantY, int size, int lengthX, int lengthY) {
+		int width = Math.min(quadrantX + size, lengthX) - quadrantX;
+		int height = Math.min(quadrantY + size, lengthY) - quadrantY;
+		return width > 0 && height > 0 ? width * height : 0;
+	}
+
+	/**
+	 * @param tileX
+	 *            the x coordinate of the tile relative to the upper left tile of the grid
+	 * @param tileY
+	 *            the y coordinate of the tile relative to the upper left tile of the grid
+	 * @param lengthX
+	 *            the number of tiles of the grid in horizontal direction
+	 * @param lengthY
+	 *            the number of tiles of the grid in vertical direction
+	 * @return the position of the tile in the sub file
+	 */
+	public int getPosition(int tileX, int tileY, int lengthX, int lengthY) {
+		if (this == ROW_MAJOR) {
+			return tileY * lengthX + tileX;
+		}
+
+		int position = 0;
+		int quadrantX = 0;
+		int quadrantY = 0;
+		for (int size = 1 << getLevels(lengthX, lengthY) >> 1; size > 0; size >>= 1) {
+			boolean right = tileX >= quadrantX + size;
+			boolean lower = tileY >= quadrantY + size;
+			// all tiles of the quadrants before the quadrant of the tile precede it
+			if (right || lower) {
+				position += getAmountTiles(quadrantX, quadrantY, size, lengthX, lengthY);
+			}
+			if (lower) {
+				position += getAmountTiles(quadrantX + size, quadrantY, size, lengthX, lengthY);
+				if (right) {
+					position += getAmountTiles(quadrantX, quadrantY + size, size, lengthX, lengthY);
+				}
+			}
+			quadrantX += right ? size : 0;
+			quadrantY += lower ? size : 0;
+		}
+		return position;
+	}
+
+	/**
+	 * @param position
+	 *            the position of the tile in the sub file
+	 * @param lengthX
+	 *            the number of tiles of the grid in horizontal direction
+	 * @param lengthY
+	 *            the number of tiles of the grid in vertical direction
+	 * @return the index y * lengthX + x of the tile at the given position with coordinates relative to the upper left
+	 *         tile of the grid
+	 */
+	public int getTileIndex(int position, int lengthX, int lengthY) {
+		if (this == ROW_MAJOR) {
+			return position;
+		}
+
+		int remaining = position;
+		int quadrantX = 0;
+		int quadrantY = 0;
+		for (int size = 1 << getLevels(lengthX, lengthY) >> 1; size > 0; size >>= 1) {
+			for (int quadrant = 0; quadrant < 4; ++quadrant) {
+				int x = quadrantX + (quadrant & 1) * size;
+				int y = quadrantY + (quadrant >> 1) * size;
+				int amountTiles = getAmountTiles(x, y, size, lengthX, lengthY);
+				if (remaining < amountTiles || quadrant == 3) {
+					quadrantX = x;
+					quadrantY = y;
+					break;
+				}
+				remaining -= amountTiles;
+			}
+		}
+		return quadrantY * lengthX + quadrantX;
+	}
+}
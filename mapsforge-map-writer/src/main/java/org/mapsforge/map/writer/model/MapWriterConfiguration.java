@@ -16,8 +16,10 @@ package org.mapsforge.map.writer.model;
 
 import java.io.File;
 import java.net.MalformedURLException;
+import java.util.Arrays;
 
 import org.mapsforge.map.writer.OSMTagMapping;
+import org.mapsforge.map.writer.PerformanceReport;
 
 /**
  * Configuration for the map file writer.
@@ -27,6 +29,11 @@ import org.mapsforge.map.writer.OSMTagMapping;
 public class MapWriterConfiguration {
 
 	private File outputFile;
+	private File previousFile;
+	private boolean fingerprints;
+	private final PerformanceReport performanceReport = new PerformanceReport();
+	private File reportFile;
+	private File tagHistogramFile;
 	private OSMTagMapping tagMapping;
 	private String dataProcessorType;
 
@@ -41,9 +48,14 @@ public class MapWriterConfiguration {
 	private boolean polygonClipping;
 	private boolean wayClipping;
 	private double simplification;
+	private double[] zoomSimplification;
 	private int bboxEnlargement;
+	private int threadPoolSize;
 
 	private EncodingChoice encodingChoice;
+	private BlockCompression blockCompression = BlockCompression.NONE;
+	private BlockLayout blockLayout = BlockLayout.ROW_MAJOR;
+	private Shard shard;
 
 	private GeoCoordinate mapStartPosition;
 	private int mapStartZoomLevel;
@@ -66,6 +78,75 @@ public class MapWriterConfiguration {
 		this.outputFile = outputFile;
 	}
 
+	/**
+	 * @return the previous version of the map file whose unchanged tiles are copied, null if all tiles are encoded
+	 */
+	public File getPreviousFile() {
+		return this.previousFile;
+	}
+
+	/**
+	 * @param previousFile
+	 *            the previous version of the map file, it must have been written together with its fingerprints
+	 */
+	public void setPreviousFile(File previousFile) {
+		this.previousFile = previousFile;
+	}
+
+	/**
+	 * @return true if the fingerprints of the tiles are written next to the map file, this is always the case if a
+	 *         previous file is set
+	 */
+	public boolean isFingerprints() {
+		return this.fingerprints || this.previousFile != null;
+	}
+
+	/**
+	 * @param fingerprints
+	 *            true if the fingerprints of the tiles should be written next to the map file
+	 */
+	public void setFingerprints(boolean fingerprints) {
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * @return the performance report to which the stages of the map file writer add their metrics
+	 */
+	public PerformanceReport getPerformanceReport() {
+		return this.performanceReport;
+	}
+
+	/**
+	 * @return the file to which the performance report is written, null if no report is written
+	 */
+	public File getReportFile() {
+		return this.reportFile;
+	}
+
+	/**
+	 * @param reportFile
+	 *            the file to which the performance report is written as JSON
+	 */
+	public void setReportFile(File reportFile) {
+		this.reportFile = reportFile;
+	}
+
+	/**
+	 * @return the file which caches the frequencies of the tags of the region, null if no file is used
+	 */
+	public File getTagHistogramFile() {
+		return this.tagHistogramFile;
+	}
+
+	/**
+	 * @param tagHistogramFile
+	 *            the file from which the ordering of the tag ids is computed if it exists, otherwise the frequencies of
+	 *            the tags are written to it
+	 */
+	public void setTagHistogramFile(File tagHistogramFile) {
+		this.tagHistogramFile = tagHistogramFile;
+	}
+
 	/**
 	 * @return the tagMapping
 	 */
@@ -242,6 +323,50 @@ public class MapWriterConfiguration {
 		this.simplification = simplification;
 	}
 
+	/**
+	 * @return the simplification for each zoom interval, null if the simplification is used for all zoom intervals
+	 *         with a base zoom level up to 12
+	 */
+	public double[] getZoomSimplification() {
+		return this.zoomSimplification;
+	}
+
+	/**
+	 * @param zoomSimplification
+	 *            the simplification for each zoom interval, the arcs between the junction nodes of the ways are
+	 *            simplified separately, so that ways which share an arc are simplified in the same way
+	 */
+	public void setZoomSimplification(double[] zoomSimplification) {
+		if (zoomSimplification != null) {
+			for (double simplification : zoomSimplification) {
+				if (simplification < 0) {
+					throw new IllegalArgumentException("simplification must be >= 0");
+				}
+			}
+		}
+
+		this.zoomSimplification = zoomSimplification;
+	}
+
+	/**
+	 * @return the threadPoolSize, values smaller than two mean that the input and the tiles are processed sequentially
+	 */
+	public int getThreadPoolSize() {
+		return this.threadPoolSize;
+	}
+
+	/**
+	 * @param threadPoolSize
+	 *            the number of threads used to convert the input and to process the tiles of a sub file
+	 */
+	public void setThreadPoolSize(int threadPoolSize) {
+		if (threadPoolSize < 1) {
+			throw new IllegalArgumentException("thread pool size must be >= 1");
+		}
+
+		this.threadPoolSize = threadPoolSize;
+	}
+
 	/**
 	 * @return the encodingChoice
 	 */
@@ -257,6 +382,53 @@ public class MapWriterConfiguration {
 		this.encodingChoice = encodingChoice;
 	}
 
+	/**
+	 * @return the codec which compresses the tile blocks, NONE if the blocks are stored uncompressed
+	 */
+	public BlockCompression getBlockCompression() {
+		return this.blockCompression;
+	}
+
+	/**
+	 * @param blockCompression
+	 *            the codec which compresses the tile blocks, any other value than NONE requires a reader which
+	 *            supports version 4 of the map file format
+	 */
+	public void setBlockCompression(BlockCompression blockCompression) {
+		this.blockCompression = blockCompression;
+	}
+
+	/**
+	 * @return the order in which the tile blocks of the sub files are stored
+	 */
+	public BlockLayout getBlockLayout() {
+		return this.blockLayout;
+	}
+
+	/**
+	 * @param blockLayout
+	 *            the order in which the tile blocks of the sub files are stored, any other value than ROW_MAJOR
+	 *            requires a reader which supports version 4 of the map file format
+	 */
+	public void setBlockLayout(BlockLayout blockLayout) {
+		this.blockLayout = blockLayout;
+	}
+
+	/**
+	 * @return the slice of the bounding box which is written, null if the whole bounding box is written
+	 */
+	public Shard getShard() {
+		return this.shard;
+	}
+
+	/**
+	 * @param shard
+	 *            the slice of the bounding box which is written, null to write the whole bounding box
+	 */
+	public void setShard(Shard shard) {
+		this.shard = shard;
+	}
+
 	/**
 	 * @return the mapStartPosition
 	 */
@@ -350,6 +522,67 @@ public class MapWriterConfiguration {
 		}
 	}
 
+	/**
+	 * Convenience method.
+	 * 
+	 * @param file
+	 *            the path to the previous version of the map file
+	 */
+	public void addPreviousFile(String file) {
+		if (file != null) {
+			File f = new File(file);
+			if (!f.isFile()) {
+				throw new IllegalArgumentException("previous file parameter points to a file that does not exist");
+			} else if (!f.canRead()) {
+				throw new IllegalArgumentException(
+						"previous file parameter points to a file we have no read permissions");
+			}
+
+			setPreviousFile(f);
+		}
+	}
+
+	/**
+	 * Convenience method.
+	 * 
+	 * @param file
+	 *            the path to the performance report
+	 */
+	public void addReportFile(String file) {
+		if (file != null) {
+			File f = new File(file);
+			if (f.isDirectory()) {
+				throw new IllegalArgumentException("report file parameter points to a directory, must be a file");
+			} else if (f.exists() && !f.canWrite()) {
+				throw new IllegalArgumentException(
+						"report file parameter points to a file we have no write permissions");
+			}
+
+			setReportFile(f);
+		}
+	}
+
+	/**
+	 * Convenience method.
+	 * 
+	 * @param file
+	 *            the path to the tag histogram file
+	 */
+	public void addTagHistogramFile(String file) {
+		if (file != null) {
+			File f = new File(file);
+			if (f.isDirectory()) {
+				throw new IllegalArgumentException(
+						"tag histogram file parameter points to a directory, must be a file");
+			} else if (f.exists() && !f.canRead()) {
+				throw new IllegalArgumentException(
+						"tag histogram file parameter points to a file we have no read permissions");
+			}
+
+			setTagHistogramFile(f);
+		}
+	}
+
 	/**
 	 * Convenience method.
 	 * 
@@ -452,6 +685,60 @@ public class MapWriterConfiguration {
 		}
 	}
 
+	/**
+	 * Convenience method.
+	 * 
+	 * @param blockCompression
+	 *            the compression of the tile blocks, either none or lz4 are valid parameters
+	 */
+	public void addBlockCompression(String blockCompression) {
+		if (blockCompression != null) {
+			setBlockCompression(BlockCompression.fromString(blockCompression));
+		}
+	}
+
+	/**
+	 * Convenience method.
+	 * 
+	 * @param blockLayout
+	 *            the order of the tile blocks, either row-major or z-order are valid parameters
+	 */
+	public void addBlockLayout(String blockLayout) {
+		if (blockLayout != null) {
+			setBlockLayout(BlockLayout.fromString(blockLayout));
+		}
+	}
+
+	/**
+	 * Convenience method.
+	 * 
+	 * @param shard
+	 *            the index of the shard, starting at 0, and the number of shards, e.g. 2/8
+	 */
+	public void addShard(String shard) {
+		if (shard != null) {
+			setShard(Shard.fromString(shard));
+		}
+	}
+
+	/**
+	 * Convenience method.
+	 * 
+	 * @param zoomSimplification
+	 *            the comma-separated simplification of each zoom interval in the order of the zoom interval
+	 *            configuration, e.g. 0.0002,0.00002,0
+	 */
+	public void addZoomSimplification(String zoomSimplification) {
+		if (zoomSimplification != null) {
+			String[] values = zoomSimplification.split(",");
+			double[] simplification = new double[values.length];
+			for (int i = 0; i < values.length; ++i) {
+				simplification[i] = Double.parseDouble(values[i]);
+			}
+			setZoomSimplification(simplification);
+		}
+	}
+
 	/**
 	 * Validates this configuration.
 	 * 
@@ -466,6 +753,19 @@ public class MapWriterConfiguration {
 							+ this.bboxConfiguration.toString() + " - map start position: "
 							+ this.mapStartPosition.toString());
 		}
+		if (this.shard != null && this.bboxConfiguration != null && this.zoomIntervalConfiguration != null) {
+			// fails if the bounding box cannot be split into the number of shards
+			this.shard.getBoundingBox(this.bboxConfiguration, this.zoomIntervalConfiguration);
+		}
+		if (this.zoomSimplification != null && this.zoomIntervalConfiguration != null
+				&& this.zoomSimplification.length != this.zoomIntervalConfiguration.getNumberOfZoomIntervals()) {
+			throw new IllegalArgumentException("zoom simplification must have one value for each zoom interval: "
+					+ Arrays.toString(this.zoomSimplification));
+		}
+		if (this.previousFile != null && this.outputFile != null
+				&& this.previousFile.getAbsoluteFile().equals(this.outputFile.getAbsoluteFile())) {
+			throw new IllegalArgumentException("previous file must not be the output file: " + this.previousFile);
+		}
 	}
 
 }
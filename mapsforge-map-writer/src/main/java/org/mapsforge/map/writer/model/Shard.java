@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.model;
+
+/**
+ * A slice of the bounding box of a map file which is written by a separate process. The bounding box is split into
+ * slices of whole tile columns on the lowest base zoom level, so that each tile of every sub file belongs to exactly
+ * one slice. The map files of all slices can be merged into the map file of the whole bounding box without encoding
+ * their tiles again.
+ * <p>
+ * The inner edges of a slice lie one micro degree inside of its first and last tile column. A slice must be written
+ * from the complete data of all features which intersect its tiles, the tiles are then identical to those of the
+ * map file of the whole bounding box.
+ */
+public final class Shard {
+	private static final double MICRO_DEGREES = 1000000;
+	private static final String SEPARATOR = "/";
+
+	/**
+	 * Reads a shard from a String.
+	 * 
+	 * @param shard
+	 *            the index of the shard, starting at 0, and the number of shards, e.g. 2/8
+	 * @return the shard
+	 * @throws IllegalArgumentException
+	 *             thrown if the String is not a valid shard
+	 */
+	public static Shard fromString(String shard) {
+		String[] fields = shard.split(SEPARATOR);
+		if (fields.length != 2) {
+			throw new IllegalArgumentException("shard must be given as index/count: " + shard);
+		}
+		try {
+			return new Shard(Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("shard must be given as index/count: " + shard, e);
+		}
+	}
+
+	private final int count;
+	private final int index;
+
+	/**
+	 * @param index
+	 *            the index of the shard, starting at 0
+	 * @param count
+	 *            the number of shards
+	 * @throws IllegalArgumentException
+	 *             thrown if the index is not in the range of the number of shards
+	 */
+	public Shard(int index, int count) {
+		if (count < 1 || index < 0 || index >= count) {
+			throw new IllegalArgumentException("invalid shard " + index + SEPARATOR + count
+					+ ", the index must be at least 0 and smaller than the number of shards");
+		}
+		this.index = index;
+		this.count = count;
+	}
+
+	/**
+	 * @param boundingBox
+	 *            the bounding box of the whole map file
+	 * @param zoomIntervalConfiguration
+	 *            the zoom intervals of the map file
+	 * @return the bounding box of this shard
+	 * @throws IllegalArgumentException
+	 *             thrown if the bounding box spans fewer tile columns on the lowest base zoom level than there are
+	 *             shards
+	 */
+	public Rect getBoundingBox(Rect boundingBox, ZoomIntervalConfiguration zoomIntervalConfiguration) {
+		byte baseZoom = Byte.MAX_VALUE;
+		for (int i = 0; i < zoomIntervalConfiguration.getNumberOfZoomIntervals(); ++i) {
+			baseZoom = (byte) Math.min(baseZoom, zoomIntervalConfiguration.getBaseZoom(i));
+		}
+
+		TileGridLayout tileGridLayout = TileGridLayout.fromBoundingBox(boundingBox, baseZoom);
+		long columns = tileGridLayout.getAmountTilesHorizontal();
+		if (columns < this.count) {
+			throw new IllegalArgumentException("bounding box spans " + columns + " tile columns on base zoom level "
+					+ baseZoom + ", it cannot be split into " + this.count + " shards");
+		}
+
+		long firstColumn = tileGridLayout.getUpperLeft().getX() + columns * this.index / this.count;
+		long endColumn = tileGridLayout.getUpperLeft().getX() + columns * (this.index + 1) / this.count;
+		int minLongitudeE6 = boundingBox.minLongitudeE6;
+		if (this.index > 0) {
+			minLongitudeE6 = (int) Math.floor(MercatorProjection.tileXToLongitude(firstColumn, baseZoom)
+					* MICRO_DEGREES) + 1;
+		}
+		int maxLongitudeE6 = boundingBox.maxLongitudeE6;
+		if (this.index < this.count - 1) {
+			maxLongitudeE6 = (int) Math.ceil(MercatorProjection.tileXToLongitude(endColumn, baseZoom)
+					* MICRO_DEGREES) - 1;
+		}
+		return new Rect(minLongitudeE6, maxLongitudeE6, boundingBox.minLatitudeE6, boundingBox.maxLatitudeE6);
+	}
+
+	/**
+	 * @return the number of shards
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * @return the index of the shard, starting at 0
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	@Override
+	public String toString() {
+		return this.index + SEPARATOR + this.count;
+	}
+}
@@ -54,7 +54,9 @@ public class TDWay {
 	private final String houseNumber;
 	private short[] tags; // NOPMD by bross on 25.12.11 13:04
 	private byte shape;
-	private final TDNode[] wayNodes;
+	// the way nodes are stored compactly as ids and latitude/longitude pairs
+	private final long[] wayNodeIds;
+	private final int[] wayNodeCoordinates;
 	private boolean reversedInRelation;
 
 	/**
@@ -80,14 +82,20 @@ public class TDWay {
 
 			boolean validWay = true;
 			// retrieve way nodes from data store
-			TDNode[] waynodes = new TDNode[way.getWayNodes().size()];
+			int wayNodeCount = way.getWayNodes().size();
+			long[] wayNodeIds = new long[wayNodeCount];
+			int[] wayNodeCoordinates = new int[2 * wayNodeCount];
 			int i = 0;
 			for (WayNode waynode : way.getWayNodes()) {
 				// TODO adjust interface to support a method getWayNodes()
-				waynodes[i] = resolver.getNode(waynode.getNodeId());
-				if (waynodes[i] == null) {
+				TDNode tdNode = resolver.getNode(waynode.getNodeId());
+				if (tdNode == null) {
 					validWay = false;
 					LOGGER.finer("unknown way node: " + waynode.getNodeId() + " in way " + way.getId());
+				} else {
+					wayNodeIds[i] = tdNode.getId();
+					wayNodeCoordinates[2 * i] = tdNode.getLatitude();
+					wayNodeCoordinates[2 * i + 1] = tdNode.getLongitude();
 				}
 				i++;
 			}
@@ -98,8 +106,8 @@ public class TDWay {
 				// mark the way as polygon if the first and the last way node are the same
 				// and if the way has at least 4 way nodes
 				byte shape = LINE;
-				if (waynodes[0].getId() == waynodes[waynodes.length - 1].getId()) {
-					if (waynodes.length >= GeoUtils.MIN_NODES_POLYGON) {
+				if (wayNodeIds[0] == wayNodeIds[wayNodeCount - 1]) {
+					if (wayNodeCount >= GeoUtils.MIN_NODES_POLYGON) {
 						shape = SIMPLE_POLYGON;
 					} else {
 						LOGGER.finer("Found closed polygon with fewer than 4 way nodes. Way-id: " + way.getId());
@@ -108,7 +116,7 @@ public class TDWay {
 				}
 
 				return new TDWay(way.getId(), ster.getLayer(), ster.getName(), ster.getHousenumber(), ster.getRef(),
-						knownWayTags, shape, waynodes);
+						knownWayTags, shape, wayNodeIds, wayNodeCoordinates);
 			}
 		}
 
@@ -137,7 +145,8 @@ public class TDWay {
 		this.name = name;
 		this.houseNumber = houseNumber;
 		this.ref = ref;
-		this.wayNodes = wayNodes;
+		this.wayNodeIds = toWayNodeIds(wayNodes);
+		this.wayNodeCoordinates = toWayNodeCoordinates(wayNodes);
 	}
 
 	/**
@@ -169,7 +178,66 @@ public class TDWay {
 		this.ref = ref;
 		this.tags = tags;
 		this.shape = shape;
-		this.wayNodes = wayNodes;
+		this.wayNodeIds = toWayNodeIds(wayNodes);
+		this.wayNodeCoordinates = toWayNodeCoordinates(wayNodes);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param id
+	 *            the id
+	 * @param layer
+	 *            the layer
+	 * @param name
+	 *            the name if existent
+	 * @param houseNumber
+	 *            the house number if existent
+	 * @param ref
+	 *            the ref if existent
+	 * @param tags
+	 *            the tags
+	 * @param shape
+	 *            the shape
+	 * @param wayNodeIds
+	 *            the ids of the way nodes
+	 * @param wayNodeCoordinates
+	 *            the latitude and the longitude of each way node in microdegrees
+	 */
+	public TDWay(long id, byte layer, String name, String houseNumber, String ref, short[] tags, byte shape,
+			long[] wayNodeIds, int[] wayNodeCoordinates) {
+		this.id = id;
+		this.layer = layer;
+		this.name = name;
+		this.houseNumber = houseNumber;
+		this.ref = ref;
+		this.tags = tags;
+		this.shape = shape;
+		this.wayNodeIds = wayNodeIds;
+		this.wayNodeCoordinates = wayNodeCoordinates;
+	}
+
+	private static long[] toWayNodeIds(TDNode[] wayNodes) {
+		if (wayNodes == null) {
+			return null;
+		}
+		long[] wayNodeIds = new long[wayNodes.length];
+		for (int i = 0; i < wayNodes.length; ++i) {
+			wayNodeIds[i] = wayNodes[i].getId();
+		}
+		return wayNodeIds;
+	}
+
+	private static int[] toWayNodeCoordinates(TDNode[] wayNodes) {
+		if (wayNodes == null) {
+			return null;
+		}
+		int[] wayNodeCoordinates = new int[wayNodes.length * 2];
+		for (int i = 0; i < wayNodes.length; ++i) {
+			wayNodeCoordinates[2 * i] = wayNodes[i].getLatitude();
+			wayNodeCoordinates[2 * i + 1] = wayNodes[i].getLongitude();
+		}
+		return wayNodeCoordinates;
 	}
 
 	/**
@@ -308,8 +376,8 @@ public class TDWay {
 	 * @return true, if the way has at least 4 coordinates and the first and last coordinate are equal
 	 */
 	public boolean isPolygon() {
-		return this.wayNodes != null && this.wayNodes.length >= GeoUtils.MIN_NODES_POLYGON
-				&& this.wayNodes[0].getId() == this.wayNodes[this.wayNodes.length - 1].getId();
+		return this.wayNodeIds != null && this.wayNodeIds.length >= GeoUtils.MIN_NODES_POLYGON
+				&& this.wayNodeIds[0] == this.wayNodeIds[this.wayNodeIds.length - 1];
 	}
 
 	/**
@@ -331,10 +399,52 @@ public class TDWay {
 	}
 
 	/**
+	 * Creates the way nodes of this way. The nodes only consist of the id and the coordinates, use the indexed getter
+	 * methods to avoid the creation of the objects.
+	 * 
 	 * @return the way nodes
 	 */
 	public TDNode[] getWayNodes() {
-		return this.wayNodes; // NOPMD by bross on 25.12.11 13:07
+		TDNode[] wayNodes = new TDNode[getWayNodeCount()];
+		for (int i = 0; i < wayNodes.length; ++i) {
+			wayNodes[i] = new TDNode(this.wayNodeIds[i], this.wayNodeCoordinates[2 * i],
+					this.wayNodeCoordinates[2 * i + 1], (short) 0, (byte) 0, null, null);
+		}
+		return wayNodes;
+	}
+
+	/**
+	 * @return the number of way nodes
+	 */
+	public int getWayNodeCount() {
+		return this.wayNodeIds == null ? 0 : this.wayNodeIds.length;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the way node
+	 * @return the id of the way node
+	 */
+	public long getWayNodeId(int index) {
+		return this.wayNodeIds[index];
+	}
+
+	/**
+	 * @param index
+	 *            the index of the way node
+	 * @return the latitude of the way node
+	 */
+	public int getWayNodeLatitude(int index) {
+		return this.wayNodeCoordinates[2 * index];
+	}
+
+	/**
+	 * @param index
+	 *            the index of the way node
+	 * @return the longitude of the way node
+	 */
+	public int getWayNodeLongitude(int index) {
+		return this.wayNodeCoordinates[2 * index + 1];
 	}
 
 	/**
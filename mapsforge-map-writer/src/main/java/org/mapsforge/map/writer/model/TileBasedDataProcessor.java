@@ -14,6 +14,8 @@
  */
 package org.mapsforge.map.writer.model;
 
+import gnu.trove.set.TLongSet;
+
 import java.util.List;
 import java.util.Set;
 
@@ -60,6 +62,16 @@ public interface TileBasedDataProcessor {
 	 */
 	void addNode(Node node);
 
+	/**
+	 * Add a node that has been converted by {@link #convertNode(Node)} to the data store.
+	 * 
+	 * @param node
+	 *            the node
+	 * @param tdNode
+	 *            the converted node
+	 */
+	void addNode(Node node, TDNode tdNode);
+
 	/**
 	 * Add a way to the data store.
 	 * 
@@ -68,6 +80,36 @@ public interface TileBasedDataProcessor {
 	 */
 	void addWay(Way way);
 
+	/**
+	 * Add a way that has been converted by {@link #convertWay(Way)} to the data store.
+	 * 
+	 * @param way
+	 *            the way
+	 * @param tdWay
+	 *            the converted way
+	 */
+	void addWay(Way way, TDWay tdWay);
+
+	/**
+	 * Converts a node before it is added. This method does not modify the data store, so it may be called from
+	 * several threads at once, but not while a node is added.
+	 * 
+	 * @param node
+	 *            the node
+	 * @return the converted node
+	 */
+	TDNode convertNode(Node node);
+
+	/**
+	 * Converts a way before it is added. This method does not modify the data store, so it may be called from several
+	 * threads at once once all nodes have been added, but not while a way is added.
+	 * 
+	 * @param way
+	 *            the way
+	 * @return the converted way, null if the way is invalid or if the data store converts its ways later
+	 */
+	TDWay convertWay(Way way);
+
 	/**
 	 * Add a relation to the data store.
 	 * 
@@ -98,6 +140,17 @@ public interface TileBasedDataProcessor {
 	 */
 	TileData getTile(int baseZoomIndex, int tileCoordinateX, int tileCoordinateY);
 
+	/**
+	 * Releases the data of a row of tiles after it has been written. The tiles of the row must not be retrieved
+	 * afterwards.
+	 * 
+	 * @param baseZoomIndex
+	 *            the index of the base zoom level
+	 * @param tileCoordinateY
+	 *            y coordinate of the row
+	 */
+	void releaseTileRow(int baseZoomIndex, int tileCoordinateY);
+
 	/**
 	 * Retrieve the total amount of tiles cumulated over all base zoom levels that is needed to represent the underlying
 	 * bounding box of this tile data store.
@@ -115,6 +168,15 @@ public interface TileBasedDataProcessor {
 	 */
 	Set<TDWay> getCoastLines(TileCoordinate tc);
 
+	/**
+	 * Retrieve the nodes at which ways end or part from each other, they are only known after the data store has been
+	 * completed.
+	 * 
+	 * @return the ids of the junction nodes, null if they are not tracked because the ways are not simplified per zoom
+	 *         interval
+	 */
+	TLongSet getJunctionNodes();
+
 	/**
 	 * Complete the data store, e.g. build indexes or similar.
 	 */
@@ -20,23 +20,7 @@ import java.util.Map;
 /**
  * @author bross
  */
-public abstract class TileData {
-
-	/**
-	 * Add a POI to the tile.
-	 * 
-	 * @param poi
-	 *            the POI
-	 */
-	public abstract void addPOI(TDNode poi);
-
-	/**
-	 * Add a way to the tile.
-	 * 
-	 * @param way
-	 *            the way
-	 */
-	public abstract void addWay(TDWay way);
+public abstract class TileData implements TileDataAppender {
 
 	/**
 	 * Gets all POIs of this tile that are seen in the given zoom interval.
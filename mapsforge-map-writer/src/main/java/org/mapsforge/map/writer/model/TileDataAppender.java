@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.model;
+
+/**
+ * Receives the POIs and ways of a tile while the input data is processed.
+ */
+public interface TileDataAppender {
+	/**
+	 * Add a POI to the tile.
+	 * 
+	 * @param poi
+	 *            the POI
+	 */
+	void addPOI(TDNode poi);
+
+	/**
+	 * Add a way to the tile.
+	 * 
+	 * @param way
+	 *            the way
+	 */
+	void addWay(TDWay way);
+}
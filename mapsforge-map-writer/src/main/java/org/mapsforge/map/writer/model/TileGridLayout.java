@@ -19,6 +19,25 @@ package org.mapsforge.map.writer.model;
  */
 public class TileGridLayout {
 
+	/**
+	 * @param boundingBox
+	 *            the bounding box
+	 * @param baseZoom
+	 *            the base zoom level of the tiles
+	 * @return the grid of all tiles on the base zoom level which intersect the bounding box
+	 */
+	public static TileGridLayout fromBoundingBox(Rect boundingBox, byte baseZoom) {
+		long left = MercatorProjection.longitudeToTileX(GeoCoordinate.intToDouble(boundingBox.minLongitudeE6),
+				baseZoom);
+		long right = MercatorProjection.longitudeToTileX(GeoCoordinate.intToDouble(boundingBox.maxLongitudeE6),
+				baseZoom);
+		long top = MercatorProjection.latitudeToTileY(GeoCoordinate.intToDouble(boundingBox.maxLatitudeE6), baseZoom);
+		long bottom = MercatorProjection.latitudeToTileY(GeoCoordinate.intToDouble(boundingBox.minLatitudeE6),
+				baseZoom);
+		return new TileGridLayout(new TileCoordinate((int) left, (int) top, baseZoom), (int) (right - left + 1),
+				(int) (bottom - top + 1));
+	}
+
 	private final TileCoordinate upperLeft;
 	private final int amountTilesHorizontal;
 	private final int amountTilesVertical;
@@ -61,4 +80,16 @@ public class TileGridLayout {
 		return this.amountTilesVertical;
 	}
 
+	/**
+	 * @param tileX
+	 *            the x coordinate of the tile
+	 * @param tileY
+	 *            the y coordinate of the tile
+	 * @return true if the tile is part of this grid
+	 */
+	public boolean contains(int tileX, int tileY) {
+		return tileX >= this.upperLeft.getX() && tileX < this.upperLeft.getX() + this.amountTilesHorizontal
+				&& tileY >= this.upperLeft.getY() && tileY < this.upperLeft.getY() + this.amountTilesVertical;
+	}
+
 }
@@ -15,15 +15,25 @@
 package org.mapsforge.map.writer.model;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.BitSet;
-import java.util.List;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Encapsulates the information given in the oceantiles_12.dat file. That is the information whether a given tile on
  * zoom level 12 is completely covered by water, land or is mixed.
+ * <p>
+ * The file is loaded on the first query. It is memory mapped if it is a file on the class path and read into memory
+ * otherwise, in both cases the queries are answered from its packed encoding with two bits per tile. Whether all
+ * tiles of a lower zoom level are covered by water is computed once per zoom level on its first query.
  * 
  * @author bross
  */
@@ -44,44 +54,83 @@ public final class TileInfo {
 
 	// 4096 * 4096 / 4 (2 bits for each tile)
 	private static final int N_BYTES = 0x400000;
-	// 4096 * 4096 = number of tiles on zoom level 12
-	private static final int N_BITS = 0x1000000;
+	// 4096 = number of tiles per row on zoom level 12
+	private static final int TILES_PER_ROW = 0x1000;
 
-	private final BitSet seaTileInfo = new BitSet(N_BITS);
+	private static final TileInfo INSTANCE = new TileInfo(OCEAN_TILES_FILE);
 
-	private TileInfo(String strInputFile) {
-		try {
+	/**
+	 * @return the singleton which encapsulates the oceantile_12.dat information
+	 */
+	public static TileInfo getInstance() {
+		return INSTANCE;
+	}
 
-			DataInputStream dis = new DataInputStream(TileInfo.class.getClassLoader().getResourceAsStream(strInputFile));
-			byte currentByte;
+	private static ByteBuffer load(String strInputFile) {
+		long start = System.currentTimeMillis();
+		try {
+			URL url = TileInfo.class.getClassLoader().getResource(strInputFile);
+			if (url == null) {
+				LOGGER.severe("could not find tile info file " + strInputFile);
+				return ByteBuffer.allocate(N_BYTES);
+			}
 
-			long start = System.currentTimeMillis();
-			for (int i = 0; i < N_BYTES; i++) {
-				currentByte = dis.readByte();
-				if (((currentByte >> 6) & BITMASK) == SEA) {
-					this.seaTileInfo.set(i * 4);
-				}
-				if (((currentByte >> 4) & BITMASK) == SEA) {
-					this.seaTileInfo.set(i * 4 + 1);
+			ByteBuffer oceanTiles;
+			if ("file".equals(url.getProtocol())) {
+				RandomAccessFile randomAccessFile = new RandomAccessFile(new File(url.toURI()), "r");
+				try {
+					// the mapping remains valid after the file has been closed
+					oceanTiles = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, N_BYTES);
+				} finally {
+					randomAccessFile.close();
 				}
-				if (((currentByte >> 2) & BITMASK) == SEA) {
-					this.seaTileInfo.set(i * 4 + 2);
-				}
-				if ((currentByte & BITMASK) == SEA) {
-					this.seaTileInfo.set(i * 4 + 3);
+			} else {
+				byte[] bytes = new byte[N_BYTES];
+				InputStream inputStream = url.openStream();
+				try {
+					new DataInputStream(inputStream).readFully(bytes);
+				} finally {
+					inputStream.close();
 				}
+				oceanTiles = ByteBuffer.wrap(bytes);
 			}
 			LOGGER.fine("loading of tile info data took " + (System.currentTimeMillis() - start) + " ms");
+			return oceanTiles;
 		} catch (IOException e) {
-			LOGGER.log(Level.SEVERE, "error loading tile info from file " + strInputFile);
+			LOGGER.log(Level.SEVERE, "error loading tile info from file " + strInputFile, e);
+		} catch (URISyntaxException e) {
+			LOGGER.log(Level.SEVERE, "error loading tile info from file " + strInputFile, e);
 		}
+		return ByteBuffer.allocate(N_BYTES);
+	}
+
+	private static boolean get(long[] bits, int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	// the tile index of zoom level 12 is y * 4096 + x
+	private static boolean isSea(ByteBuffer oceanTiles, int index) {
+		int shift = 6 - 2 * (index & 3);
+		return ((oceanTiles.get(index >>> 2) >> shift) & BITMASK) == SEA;
+	}
+
+	private volatile ByteBuffer oceanTiles;
+	private final String strInputFile;
+	// for each zoom level below 12 one bit per tile which is set if the tile is completely covered by water
+	private final AtomicReferenceArray<long[]> waterTilesByZoomlevel;
+
+	private TileInfo(String strInputFile) {
+		this.strInputFile = strInputFile;
+		this.waterTilesByZoomlevel = new AtomicReferenceArray<long[]>(TILE_INFO_ZOOMLEVEL);
 	}
 
 	/**
-	 * @return the singleton which encapsulates the oceantile_12.dat information
+	 * @param oceanTiles
+	 *            the content of the oceantiles_12.dat file
 	 */
-	public static TileInfo getInstance() {
-		return new TileInfo(OCEAN_TILES_FILE);
+	TileInfo(ByteBuffer oceanTiles) {
+		this((String) null);
+		this.oceanTiles = oceanTiles;
 	}
 
 	/**
@@ -94,12 +143,66 @@ public final class TileInfo {
 	 *         not completely covered by water.
 	 */
 	public boolean isWaterTile(TileCoordinate tc) {
-		List<TileCoordinate> tiles = tc.translateToZoomLevel(TILE_INFO_ZOOMLEVEL);
-		for (TileCoordinate tile : tiles) {
-			if (!this.seaTileInfo.get(tile.getY() * 4096 + tile.getX())) {
-				return false;
+		int zoomlevelDistance = tc.getZoomlevel() - TILE_INFO_ZOOMLEVEL;
+		if (zoomlevelDistance >= 0) {
+			int x = tc.getX() >>> zoomlevelDistance;
+			int y = tc.getY() >>> zoomlevelDistance;
+			return isSea(getOceanTiles(), y * TILES_PER_ROW + x);
+		}
+		return get(getWaterTiles(tc.getZoomlevel()), (tc.getY() << tc.getZoomlevel()) + tc.getX());
+	}
+
+	private ByteBuffer getOceanTiles() {
+		ByteBuffer result = this.oceanTiles;
+		if (result == null) {
+			synchronized (this) {
+				result = this.oceanTiles;
+				if (result == null) {
+					result = load(this.strInputFile);
+					this.oceanTiles = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private long[] getWaterTiles(int zoomlevel) {
+		long[] waterTiles = this.waterTilesByZoomlevel.get(zoomlevel);
+		if (waterTiles != null) {
+			return waterTiles;
+		}
+
+		synchronized (this.waterTilesByZoomlevel) {
+			waterTiles = this.waterTilesByZoomlevel.get(zoomlevel);
+			if (waterTiles == null) {
+				int tilesPerRow = 1 << zoomlevel;
+				waterTiles = new long[Math.max(1, tilesPerRow * tilesPerRow / 64)];
+				// a tile is covered by water if its four tiles on the next zoom level are covered by water
+				ByteBuffer tiles = zoomlevel + 1 == TILE_INFO_ZOOMLEVEL ? getOceanTiles() : null;
+				long[] nextTiles = tiles == null ? getWaterTiles(zoomlevel + 1) : null;
+				int nextTilesPerRow = 2 * tilesPerRow;
+				for (int y = 0; y < tilesPerRow; ++y) {
+					for (int x = 0; x < tilesPerRow; ++x) {
+						int index = 2 * y * nextTilesPerRow + 2 * x;
+						boolean water;
+						if (tiles != null) {
+							water = isSea(tiles, index) && isSea(tiles, index + 1)
+									&& isSea(tiles, index + nextTilesPerRow)
+									&& isSea(tiles, index + nextTilesPerRow + 1);
+						} else {
+							water = get(nextTiles, index) && get(nextTiles, index + 1)
+									&& get(nextTiles, index + nextTilesPerRow)
+									&& get(nextTiles, index + nextTilesPerRow + 1);
+						}
+						if (water) {
+							int tileIndex = y * tilesPerRow + x;
+							waterTiles[tileIndex >>> 6] |= 1L << tileIndex;
+						}
+					}
+				}
+				this.waterTilesByZoomlevel.set(zoomlevel, waterTiles);
 			}
+			return waterTiles;
 		}
-		return true;
 	}
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.osmosis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+
+/**
+ * Converts nodes and ways in batches on a thread pool while the input is read. Only adding the converted entities to
+ * the data processor happens in the reading thread, in the order of the input, so the result is identical to the
+ * sequential processing.
+ */
+final class ConversionPipeline {
+	private abstract static class Batch implements Callable<Batch> {
+		final TileBasedDataProcessor dataProcessor;
+
+		Batch(TileBasedDataProcessor dataProcessor) {
+			this.dataProcessor = dataProcessor;
+		}
+
+		abstract void add();
+
+		abstract int size();
+	}
+
+	private static final class NodeBatch extends Batch {
+		private final List<Node> nodes;
+		private TDNode[] tdNodes;
+
+		NodeBatch(TileBasedDataProcessor dataProcessor) {
+			super(dataProcessor);
+			this.nodes = new ArrayList<Node>(ENTITIES_PER_BATCH);
+		}
+
+		@Override
+		public Batch call() {
+			this.tdNodes = new TDNode[this.nodes.size()];
+			for (int i = 0; i < this.tdNodes.length; ++i) {
+				this.tdNodes[i] = this.dataProcessor.convertNode(this.nodes.get(i));
+			}
+			return this;
+		}
+
+		@Override
+		void add() {
+			for (int i = 0; i < this.tdNodes.length; ++i) {
+				this.dataProcessor.addNode(this.nodes.get(i), this.tdNodes[i]);
+			}
+		}
+
+		@Override
+		int size() {
+			return this.nodes.size();
+		}
+	}
+
+	private static final class WayBatch extends Batch {
+		private TDWay[] tdWays;
+		private final List<Way> ways;
+
+		WayBatch(TileBasedDataProcessor dataProcessor) {
+			super(dataProcessor);
+			this.ways = new ArrayList<Way>(ENTITIES_PER_BATCH);
+		}
+
+		@Override
+		public Batch call() {
+			this.tdWays = new TDWay[this.ways.size()];
+			for (int i = 0; i < this.tdWays.length; ++i) {
+				this.tdWays[i] = this.dataProcessor.convertWay(this.ways.get(i));
+			}
+			return this;
+		}
+
+		@Override
+		void add() {
+			for (int i = 0; i < this.tdWays.length; ++i) {
+				this.dataProcessor.addWay(this.ways.get(i), this.tdWays[i]);
+			}
+		}
+
+		@Override
+		int size() {
+			return this.ways.size();
+		}
+	}
+
+	private static final int ENTITIES_PER_BATCH = 1024;
+	private static final int PENDING_BATCHES_PER_THREAD = 4;
+
+	private final TileBasedDataProcessor dataProcessor;
+	private final ExecutorService executorService;
+	private final int maximumPendingBatches;
+	private NodeBatch nodeBatch;
+	// true if nodes have been submitted whose conversion may not have been added yet
+	private boolean pendingNodes;
+	private final Deque<Future<Batch>> pendingBatches;
+	private WayBatch wayBatch;
+
+	/**
+	 * @param dataProcessor
+	 *            the data processor which converts and stores the entities
+	 * @param threadPoolSize
+	 *            the number of threads which convert the entities
+	 */
+	ConversionPipeline(TileBasedDataProcessor dataProcessor, int threadPoolSize) {
+		this.dataProcessor = dataProcessor;
+		this.executorService = Executors.newFixedThreadPool(threadPoolSize);
+		this.maximumPendingBatches = threadPoolSize * PENDING_BATCHES_PER_THREAD;
+		this.pendingBatches = new ArrayDeque<Future<Batch>>();
+	}
+
+	/**
+	 * @param node
+	 *            the node to convert and add
+	 */
+	void addNode(Node node) {
+		if (this.wayBatch != null) {
+			submit(this.wayBatch);
+			this.wayBatch = null;
+		}
+		if (this.nodeBatch == null) {
+			this.nodeBatch = new NodeBatch(this.dataProcessor);
+		}
+		this.nodeBatch.nodes.add(node);
+		if (this.nodeBatch.size() == ENTITIES_PER_BATCH) {
+			submit(this.nodeBatch);
+			this.nodeBatch = null;
+		}
+		this.pendingNodes = true;
+	}
+
+	/**
+	 * @param way
+	 *            the way to convert and add
+	 */
+	void addWay(Way way) {
+		// the way nodes must have been added before a way can be converted
+		if (this.pendingNodes) {
+			flush();
+		}
+		if (this.wayBatch == null) {
+			this.wayBatch = new WayBatch(this.dataProcessor);
+		}
+		this.wayBatch.ways.add(way);
+		if (this.wayBatch.size() == ENTITIES_PER_BATCH) {
+			submit(this.wayBatch);
+			this.wayBatch = null;
+		}
+	}
+
+	/**
+	 * Waits until all entities have been converted and adds them to the data processor.
+	 */
+	void flush() {
+		if (this.nodeBatch != null) {
+			submit(this.nodeBatch);
+			this.nodeBatch = null;
+		}
+		if (this.wayBatch != null) {
+			submit(this.wayBatch);
+			this.wayBatch = null;
+		}
+		while (!this.pendingBatches.isEmpty()) {
+			addNextBatch();
+		}
+		this.pendingNodes = false;
+	}
+
+	/**
+	 * Stops the threads, entities which have not been flushed are discarded.
+	 */
+	void release() {
+		this.executorService.shutdownNow();
+	}
+
+	private void addNextBatch() {
+		try {
+			this.pendingBatches.poll().get().add();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while converting entities", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("could not convert entities", e.getCause());
+		}
+	}
+
+	private void submit(Batch batch) {
+		// keep a limited number of batches in flight to bound the memory consumption
+		while (this.pendingBatches.size() >= this.maximumPendingBatches) {
+			addNextBatch();
+		}
+		this.pendingBatches.add(this.executorService.submit(batch));
+	}
+}
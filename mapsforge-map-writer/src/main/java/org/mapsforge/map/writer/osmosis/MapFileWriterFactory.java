@@ -37,6 +37,7 @@ class MapFileWriterFactory extends TaskManagerFactory {
 	private static final String PARAM_DEBUG_INFO = "debug-file";
 	// private static final String PARAM_WAYNODE_COMPRESSION = "waynode-compression";
 	private static final String PARAM_SIMPLIFICATION_FACTOR = "simplification-factor";
+	private static final String PARAM_ZOOM_SIMPLIFICATION = "zoom-simplification";
 	private static final String PARAM_POLYGON_CLIPPING = "polygon-clipping";
 	private static final String PARAM_WAY_CLIPPING = "way-clipping";
 	private static final String PARAM_TYPE = "type";
@@ -44,12 +45,24 @@ class MapFileWriterFactory extends TaskManagerFactory {
 	private static final String PARAM_TAG_MAPPING_FILE = "tag-conf-file";
 	private static final String PARAM_PREFERRED_LANGUAGE = "language-preference";
 	private static final String PARAM_ENCODING = "encoding";
+	private static final String PARAM_BLOCK_COMPRESSION = "block-compression";
+	private static final String PARAM_BLOCK_LAYOUT = "block-layout";
+	private static final String PARAM_SHARD = "shard";
+	private static final String PARAM_THREAD_POOL_SIZE = "thread-pool-size";
+	private static final String PARAM_PREVIOUS_FILE = "previous-file";
+	private static final String PARAM_FINGERPRINTS = "fingerprints";
+	private static final String PARAM_REPORT_FILE = "report-file";
+	private static final String PARAM_TAG_HISTOGRAM_FILE = "tag-histogram-file";
 
 	@Override
 	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
 
 		MapWriterConfiguration configuration = new MapWriterConfiguration();
 		configuration.addOutputFile(getStringArgument(taskConfig, PARAM_OUTFILE, Constants.DEFAULT_PARAM_OUTFILE));
+		configuration.addPreviousFile(getStringArgument(taskConfig, PARAM_PREVIOUS_FILE, null));
+		configuration.setFingerprints(getBooleanArgument(taskConfig, PARAM_FINGERPRINTS, false));
+		configuration.addReportFile(getStringArgument(taskConfig, PARAM_REPORT_FILE, null));
+		configuration.addTagHistogramFile(getStringArgument(taskConfig, PARAM_TAG_HISTOGRAM_FILE, null));
 		configuration.loadTagMappingFile(getStringArgument(taskConfig, PARAM_TAG_MAPPING_FILE, null));
 
 		configuration.addMapStartPosition(getStringArgument(taskConfig, PARAM_MAP_START_POSITION, null));
@@ -65,6 +78,7 @@ class MapFileWriterFactory extends TaskManagerFactory {
 		// true);
 		configuration.setSimplification(getDoubleArgument(taskConfig, PARAM_SIMPLIFICATION_FACTOR,
 				Constants.DEFAULT_SIMPLIFICATION_FACTOR));
+		configuration.addZoomSimplification(getStringArgument(taskConfig, PARAM_ZOOM_SIMPLIFICATION, null));
 
 		configuration.setDataProcessorType(getStringArgument(taskConfig, PARAM_TYPE, Constants.DEFAULT_PARAM_TYPE));
 		configuration.setBboxEnlargement(getIntegerArgument(taskConfig, PARAM_BBOX_ENLARGEMENT,
@@ -73,6 +87,14 @@ class MapFileWriterFactory extends TaskManagerFactory {
 		configuration.setPreferredLanguage(getStringArgument(taskConfig, PARAM_PREFERRED_LANGUAGE, null));
 		configuration
 				.addEncodingChoice(getStringArgument(taskConfig, PARAM_ENCODING, Constants.DEFAULT_PARAM_ENCODING));
+		configuration.addBlockCompression(getStringArgument(taskConfig, PARAM_BLOCK_COMPRESSION,
+				Constants.DEFAULT_PARAM_BLOCK_COMPRESSION));
+		configuration.addBlockLayout(getStringArgument(taskConfig, PARAM_BLOCK_LAYOUT,
+				Constants.DEFAULT_PARAM_BLOCK_LAYOUT));
+		configuration.addShard(getStringArgument(taskConfig, PARAM_SHARD, null));
+
+		configuration.setThreadPoolSize(getIntegerArgument(taskConfig, PARAM_THREAD_POOL_SIZE,
+				Constants.DEFAULT_PARAM_THREAD_POOL_SIZE));
 
 		configuration.validate();
 
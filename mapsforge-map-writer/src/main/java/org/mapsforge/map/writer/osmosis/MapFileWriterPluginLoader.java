@@ -33,6 +33,10 @@ public class MapFileWriterPluginLoader implements PluginLoader {
 		HashMap<String, TaskManagerFactory> map = new HashMap<String, TaskManagerFactory>();
 		map.put("mapfile-writer", mapFileWriterFactory);
 		map.put("mw", mapFileWriterFactory);
+
+		TagHistogramFactory tagHistogramFactory = new TagHistogramFactory();
+		map.put("mapfile-tag-histogram", tagHistogramFactory);
+		map.put("mth", tagHistogramFactory);
 		return map;
 	}
 
@@ -22,6 +22,7 @@ import java.util.logging.Logger;
 
 import org.mapsforge.map.writer.HDTileBasedDataProcessor;
 import org.mapsforge.map.writer.MapFileWriter;
+import org.mapsforge.map.writer.PerformanceReport;
 import org.mapsforge.map.writer.RAMTileBasedDataProcessor;
 import org.mapsforge.map.writer.model.MapWriterConfiguration;
 import org.mapsforge.map.writer.model.Rect;
@@ -49,10 +50,14 @@ public class MapFileWriterTask implements Sink {
 	private int amountOfRelationsProcessed = 0;
 
 	private final MapWriterConfiguration configuration;
+	// converts the nodes and ways in parallel if several threads are configured
+	private ConversionPipeline conversionPipeline;
+	private final long startTime;
 	private TileBasedDataProcessor tileBasedGeoObjectStore;
 
 	MapFileWriterTask(MapWriterConfiguration configuration) {
 		this.configuration = configuration;
+		this.startTime = System.nanoTime();
 
 		Properties properties = new Properties();
 		try {
@@ -93,7 +98,12 @@ public class MapFileWriterTask implements Sink {
 		nfMegabyte.setMaximumFractionDigits(2);
 
 		LOGGER.info("completing read...");
+		releaseConversionPipeline();
+		PerformanceReport performanceReport = this.configuration.getPerformanceReport();
+		long completeStartTime = System.nanoTime();
+		performanceReport.addTime(PerformanceReport.Stage.INGEST, completeStartTime - this.startTime);
 		this.tileBasedGeoObjectStore.complete();
+		performanceReport.addTime(PerformanceReport.Stage.COMPLETE, System.nanoTime() - completeStartTime);
 
 		LOGGER.info("start writing file...");
 
@@ -119,6 +129,10 @@ public class MapFileWriterTask implements Sink {
 
 	@Override
 	public final void release() {
+		if (this.conversionPipeline != null) {
+			this.conversionPipeline.release();
+			this.conversionPipeline = null;
+		}
 		this.tileBasedGeoObjectStore.release();
 	}
 
@@ -157,7 +171,11 @@ public class MapFileWriterTask implements Sink {
 					throw new IllegalStateException("tile based data store not initialized, missing bounding "
 							+ "box information in input data");
 				}
-				this.tileBasedGeoObjectStore.addNode((Node) entity);
+				if (getConversionPipeline() == null) {
+					this.tileBasedGeoObjectStore.addNode((Node) entity);
+				} else {
+					this.conversionPipeline.addNode((Node) entity);
+				}
 				// hint to GC
 				entity = null;
 				this.amountOfNodesProcessed++;
@@ -167,7 +185,11 @@ public class MapFileWriterTask implements Sink {
 			// ******************* WAY PROCESSING*********************
 			// *******************************************************
 			case Way:
-				this.tileBasedGeoObjectStore.addWay((Way) entity);
+				if (getConversionPipeline() == null) {
+					this.tileBasedGeoObjectStore.addWay((Way) entity);
+				} else {
+					this.conversionPipeline.addWay((Way) entity);
+				}
 				entity = null;
 				this.amountOfWaysProcessed++;
 				break;
@@ -177,6 +199,10 @@ public class MapFileWriterTask implements Sink {
 			// *******************************************************
 			case Relation:
 				Relation currentRelation = (Relation) entity;
+				// the members of the relation must have been added before
+				if (this.conversionPipeline != null) {
+					this.conversionPipeline.flush();
+				}
 				this.tileBasedGeoObjectStore.addRelation(currentRelation);
 				this.amountOfRelationsProcessed++;
 				entity = null;
@@ -184,4 +210,20 @@ public class MapFileWriterTask implements Sink {
 		}
 
 	}
+
+	private ConversionPipeline getConversionPipeline() {
+		if (this.conversionPipeline == null && this.configuration.getThreadPoolSize() > 1) {
+			this.conversionPipeline = new ConversionPipeline(this.tileBasedGeoObjectStore,
+					this.configuration.getThreadPoolSize());
+		}
+		return this.conversionPipeline;
+	}
+
+	private void releaseConversionPipeline() {
+		if (this.conversionPipeline != null) {
+			this.conversionPipeline.flush();
+			this.conversionPipeline.release();
+			this.conversionPipeline = null;
+		}
+	}
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.osmosis;
+
+import java.io.File;
+
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.util.Constants;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManagerFactory;
+import org.openstreetmap.osmosis.core.pipeline.v0_6.SinkManager;
+
+/**
+ * Factory for the tag histogram osmosis plugin.
+ */
+class TagHistogramFactory extends TaskManagerFactory {
+	private static final String PARAM_OUTFILE = "file";
+	private static final String PARAM_TAG_MAPPING_FILE = "tag-conf-file";
+
+	@Override
+	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
+		MapWriterConfiguration configuration = new MapWriterConfiguration();
+		configuration.addTagHistogramFile(getStringArgument(taskConfig, PARAM_OUTFILE,
+				Constants.DEFAULT_PARAM_TAG_HISTOGRAM_FILE));
+		configuration.loadTagMappingFile(getStringArgument(taskConfig, PARAM_TAG_MAPPING_FILE, null));
+
+		File file = configuration.getTagHistogramFile();
+		if (file.exists() && !file.canWrite()) {
+			throw new IllegalArgumentException("tag histogram file parameter points to a file we have no write "
+					+ "permissions");
+		}
+
+		TagHistogramTask task = new TagHistogramTask(file, configuration.getTagMapping());
+		return new SinkManager(taskConfig.getId(), task, taskConfig.getPipeArgs());
+	}
+}
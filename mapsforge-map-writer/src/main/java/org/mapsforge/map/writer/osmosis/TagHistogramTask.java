@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.osmosis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.mapsforge.map.writer.OSMTagMapping;
+import org.mapsforge.map.writer.TagHistogram;
+import org.mapsforge.map.writer.model.TDRelation;
+import org.mapsforge.map.writer.util.OSMUtils;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+
+/**
+ * An Osmosis plugin that counts the frequencies of the known tags of a region without building a map file. The
+ * frequencies are written to a tag histogram file from which the map file writer computes the ordering of the tag ids
+ * in later builds of the region.
+ * <p>
+ * Each entity is counted once, the map file writer counts the tags of ways once per tile, so the frequencies
+ * approximate those of a build.
+ */
+public class TagHistogramTask implements Sink {
+	private static final Logger LOGGER = Logger.getLogger(TagHistogramTask.class.getName());
+
+	private final File file;
+	private final TagHistogram poiTags;
+	private final OSMTagMapping tagMapping;
+	private final TagHistogram wayTags;
+
+	TagHistogramTask(File file, OSMTagMapping tagMapping) {
+		this.file = file;
+		this.tagMapping = tagMapping;
+		this.poiTags = new TagHistogram();
+		this.wayTags = new TagHistogram();
+	}
+
+	@Override
+	public final void complete() {
+		try {
+			TagHistogram.writeFile(this.file, this.poiTags, this.wayTags, this.tagMapping);
+		} catch (IOException e) {
+			throw new IllegalStateException("could not write tag histogram file " + this.file, e);
+		}
+		LOGGER.info("wrote tag histogram file " + this.file.getAbsolutePath());
+	}
+
+	@Override
+	public final void process(EntityContainer entityContainer) {
+		Entity entity = entityContainer.getEntity();
+
+		switch (entity.getType()) {
+			case Node:
+				this.poiTags.addAll(OSMUtils.extractKnownPOITags(entity));
+				break;
+
+			case Way:
+				// only ways with at least 2 way nodes are valid ways
+				if (((Way) entity).getWayNodes().size() >= 2) {
+					this.wayTags.addAll(OSMUtils.extractKnownWayTags(entity));
+				}
+				break;
+
+			case Relation:
+				if (TDRelation.knownRelationType(OSMUtils.extractSpecialFields(entity, null).getType())) {
+					this.wayTags.addAll(OSMUtils.extractKnownWayTags(entity));
+				}
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	@Override
+	public final void release() {
+		// nothing to release
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import gnu.trove.set.TLongSet;
+
+import java.util.Arrays;
+
+import org.mapsforge.map.writer.model.GeoCoordinate;
+import org.mapsforge.map.writer.model.TDWay;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Simplifies ways with the Douglas-Peucker algorithm separately for each of their arcs. An arc is a part of a way
+ * between two junction nodes, at which ways end or part from each other. Each arc is simplified in the direction from
+ * its junction node with the lower id to the other one, so that an arc which is shared by several ways, e.g. the
+ * common border of two adjacent areas, is simplified to the same coordinates in all of them.
+ */
+final class ArcSimplifier {
+	// the smallest number of coordinates of a closed way that can form a ring
+	private static final int MIN_RING_SIZE = 4;
+
+	private ArcSimplifier() {
+	}
+
+	/**
+	 * @param way
+	 *            the way
+	 * @param tolerance
+	 *            the distance tolerance in degrees
+	 * @param junctionNodes
+	 *            the ids of all junction nodes
+	 * @return the coordinates of the simplified way in the direction of the way, a closed way may start at another
+	 *         node, all coordinates of the way if a closed way would not form a ring anymore
+	 */
+	static Coordinate[] simplify(TDWay way, double tolerance, TLongSet junctionNodes) {
+		int wayNodeCount = way.getWayNodeCount();
+
+		// a closed way is traversed from one of its junction nodes, so that its first node does not split an arc
+		boolean closed = wayNodeCount >= MIN_RING_SIZE && way.getWayNodeId(0) == way.getWayNodeId(wayNodeCount - 1);
+		int offset = 0;
+		if (closed) {
+			for (int i = 0; i < wayNodeCount - 1; ++i) {
+				if (junctionNodes.contains(way.getWayNodeId(i))) {
+					offset = i;
+					break;
+				}
+			}
+		}
+		long[] ids = new long[wayNodeCount];
+		double[] x = new double[wayNodeCount];
+		double[] y = new double[wayNodeCount];
+		for (int i = 0; i < wayNodeCount; ++i) {
+			int index = closed ? (offset + i) % (wayNodeCount - 1) : i;
+			ids[i] = way.getWayNodeId(index);
+			x[i] = GeoCoordinate.intToDouble(way.getWayNodeLongitude(index));
+			y[i] = GeoCoordinate.intToDouble(way.getWayNodeLatitude(index));
+		}
+
+		boolean[] keep = new boolean[wayNodeCount];
+		int arcStart = 0;
+		for (int i = 1; i < wayNodeCount; ++i) {
+			if (i == wayNodeCount - 1 || junctionNodes.contains(ids[i])) {
+				if (ids[arcStart] <= ids[i]) {
+					simplifyArc(x, y, arcStart, i, 1, tolerance * tolerance, keep);
+				} else {
+					simplifyArc(x, y, i, arcStart, -1, tolerance * tolerance, keep);
+				}
+				arcStart = i;
+			}
+		}
+
+		int keptCount = 0;
+		for (int i = 0; i < wayNodeCount; ++i) {
+			if (keep[i]) {
+				++keptCount;
+			}
+		}
+		if (closed && keptCount < MIN_RING_SIZE) {
+			keptCount = wayNodeCount;
+			Arrays.fill(keep, true);
+		}
+
+		Coordinate[] coordinates = new Coordinate[keptCount];
+		int index = 0;
+		for (int i = 0; i < wayNodeCount; ++i) {
+			if (keep[i]) {
+				coordinates[index++] = new Coordinate(x[i], y[i]);
+			}
+		}
+		return coordinates;
+	}
+
+	/*
+	 * Simplifies the arc from the first to the last index, the step is -1 if the arc is traversed against the
+	 * direction of the way. The points are visited in the order of the arc, so that ties between points of the same
+	 * distance are broken in the same way for all ways which share the arc.
+	 */
+	private static void simplifyArc(double[] x, double[] y, int first, int last, int step, double squaredTolerance,
+			boolean[] keep) {
+		keep[first] = true;
+		keep[last] = true;
+		int[] stack = new int[2 * (Math.abs(last - first) + 1)];
+		int stackSize = 0;
+		stack[stackSize++] = first;
+		stack[stackSize++] = last;
+		while (stackSize > 0) {
+			int end = stack[--stackSize];
+			int start = stack[--stackSize];
+			int farthest = -1;
+			double maxDistance = squaredTolerance;
+			for (int i = start + step; i != end; i += step) {
+				double distance = squaredSegmentDistance(x[i], y[i], x[start], y[start], x[end], y[end]);
+				if (distance > maxDistance) {
+					maxDistance = distance;
+					farthest = i;
+				}
+			}
+			if (farthest != -1) {
+				keep[farthest] = true;
+				stack[stackSize++] = start;
+				stack[stackSize++] = farthest;
+				stack[stackSize++] = farthest;
+				stack[stackSize++] = end;
+			}
+		}
+	}
+
+	private static double squaredSegmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax;
+		double dy = by - ay;
+		double squaredLength = dx * dx + dy * dy;
+		double t = 0;
+		if (squaredLength > 0) {
+			t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / squaredLength));
+		}
+		double ex = px - (ax + t * dx);
+		double ey = py - (ay + t * dy);
+		return ex * ex + ey * ey;
+	}
+
+}
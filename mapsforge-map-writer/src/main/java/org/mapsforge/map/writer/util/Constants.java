@@ -52,6 +52,10 @@ public final class Constants {
 	 * Default name for out file.
 	 */
 	public static final String DEFAULT_PARAM_OUTFILE = "mapsforge.map";
+	/**
+	 * Default name for the tag histogram file.
+	 */
+	public static final String DEFAULT_PARAM_TAG_HISTOGRAM_FILE = "tag-histogram.txt";
 	/**
 	 * Default data processor type.
 	 */
@@ -64,8 +68,20 @@ public final class Constants {
 	 * Default coordinate encoding.
 	 */
 	public static final String DEFAULT_PARAM_ENCODING = "single";
+	/**
+	 * Default compression of the tile blocks.
+	 */
+	public static final String DEFAULT_PARAM_BLOCK_COMPRESSION = "none";
+	/**
+	 * Default order of the tile blocks.
+	 */
+	public static final String DEFAULT_PARAM_BLOCK_LAYOUT = "row-major";
 	/**
 	 * Default simplification factor.
 	 */
 	public static final double DEFAULT_SIMPLIFICATION_FACTOR = 0.0000188;
+	/**
+	 * Default number of threads used to process the tiles of a sub file.
+	 */
+	public static final int DEFAULT_PARAM_THREAD_POOL_SIZE = 1;
 }
@@ -14,6 +14,8 @@
  */
 package org.mapsforge.map.writer.util;
 
+import gnu.trove.set.TLongSet;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -24,7 +26,6 @@ import java.util.logging.Logger;
 
 import org.mapsforge.map.writer.model.GeoCoordinate;
 import org.mapsforge.map.writer.model.MercatorProjection;
-import org.mapsforge.map.writer.model.TDNode;
 import org.mapsforge.map.writer.model.TDWay;
 import org.mapsforge.map.writer.model.TileCoordinate;
 import org.mapsforge.map.writer.model.WayDataBlock;
@@ -39,7 +40,9 @@ import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.Polygonal;
 import com.vividsolutions.jts.geom.TopologyException;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
 
 /**
@@ -95,23 +98,21 @@ public final class GeoUtils {
 		}
 
 		HashSet<TileCoordinate> matchedTiles = new HashSet<TileCoordinate>();
-		Geometry wayGeometry = toJTSGeometry(way, !way.isForcePolygonLine());
-		if (wayGeometry == null) {
-			LOGGER.fine("unable to create geometry from way: " + way.getId());
+		if (way.getWayNodeCount() < 2) {
+			LOGGER.fine("way has fewer than 2 nodes: " + way.getId());
 			return matchedTiles;
 		}
 
 		TileCoordinate[] bbox = getWayBoundingBox(way, baseZoomLevel, enlargementInMeter);
-		// calculate the tile coordinates and the corresponding bounding boxes
-		for (int k = bbox[0].getX(); k <= bbox[1].getX(); k++) {
-			for (int l = bbox[0].getY(); l <= bbox[1].getY(); l++) {
-				Geometry bboxGeometry = tileToJTSGeometry(k, l, baseZoomLevel, enlargementInMeter);
-				if (bboxGeometry.intersects(wayGeometry)) {
-					matchedTiles.add(new TileCoordinate(k, l, baseZoomLevel));
-				}
-			}
+		if (bbox[0].equals(bbox[1])) {
+			// the way lies completely within the tile
+			matchedTiles.add(bbox[0]);
+			return matchedTiles;
 		}
 
+		// rasterize the way on the tiles of its bounding box instead of testing each tile for intersection
+		new TileCoverage(bbox[0], bbox[1], enlargementInMeter, matchedTiles).addWay(way, !way.isForcePolygonLine());
+
 		return matchedTiles;
 	}
 
@@ -158,38 +159,142 @@ public final class GeoUtils {
 	 */
 	public static Geometry preprocessWay(final TDWay way, final List<TDWay> innerWays, boolean clipPolygons,
 			boolean clipWays, double simplificationFactor, final TileCoordinate tile, int enlargementInMeters) {
+		Geometry geometry = prepareWay(way, innerWays, simplificationFactor, tile.getZoomlevel());
+		if (geometry == null) {
+			return null;
+		}
+
+		return clipToTile(way, geometry, null, clipPolygons, clipWays, tile, enlargementInMeters);
+	}
 
-		Geometry geometry = toJtsGeometry(way, innerWays);
+	/**
+	 * Creates the geometry of a way and simplifies it. The result does not depend on a particular tile and can
+	 * therefore be reused for all tiles of the same base zoom level.
+	 * 
+	 * @param way
+	 *            the way
+	 * @param innerWays
+	 *            the inner ways if existent, null otherwise
+	 * @param simplificationFactor
+	 *            factor for simplification of geo objects
+	 * @param baseZoomLevel
+	 *            the base zoom level of the tiles the way is written to
+	 * @return a JTS {@link Geometry} object representing the given way(s), null if no geometry could be created
+	 */
+	public static Geometry prepareWay(final TDWay way, final List<TDWay> innerWays, double simplificationFactor,
+			byte baseZoomLevel) {
+		Geometry geometry = toJtsGeometry(way, innerWays, 0, null);
 		if (geometry == null) {
 			return null;
 		}
 
-		// clip geometry?
-		Geometry tileBBJTS = null;
-		if ((geometry instanceof Polygon || geometry instanceof LinearRing) && clipPolygons
-				|| geometry instanceof LineString && clipWays) {
+		if (simplificationFactor > 0 && baseZoomLevel <= Constants.MAX_SIMPLIFICATION_BASE_ZOOM) {
+			// simplify before clipping so that the parts in adjacent tiles match
+			geometry = TopologyPreservingSimplifier.simplify(geometry, simplificationFactor);
+		}
 
-			// create tile bounding box
-			tileBBJTS = tileToJTSGeometry(tile.getX(), tile.getY(), tile.getZoomlevel(), enlargementInMeters);
+		return geometry;
+	}
 
-			// clip the polygon/ring by intersection with the bounding box of the tile
-			// may throw a TopologyException
-			try {
-				// geometry = OverlayOp.overlayOp(tileBBJTS, geometry, OverlayOp.INTERSECTION);
-				geometry = tileBBJTS.intersection(geometry);
-			} catch (TopologyException e) {
-				LOGGER.log(Level.FINE, "JTS cannot clip outer way: " + way.getId(), e);
-				return null;
-			}
+	/**
+	 * Creates the geometry of a way and simplifies each arc between two junction nodes separately, so that the
+	 * borders which adjacent areas share are simplified in the same way. If the simplified geometry is not valid, the
+	 * geometry is simplified as a whole instead.
+	 * 
+	 * @param way
+	 *            the way
+	 * @param innerWays
+	 *            the inner ways if existent, null otherwise
+	 * @param simplificationFactor
+	 *            factor for simplification of geo objects
+	 * @param junctionNodes
+	 *            the ids of the nodes at which ways end or part from each other
+	 * @return a JTS {@link Geometry} object representing the given way(s), null if no geometry could be created
+	 */
+	public static Geometry prepareWay(final TDWay way, final List<TDWay> innerWays, double simplificationFactor,
+			TLongSet junctionNodes) {
+		Geometry geometry = toJtsGeometry(way, innerWays, 0, null);
+		if (geometry == null || simplificationFactor <= 0) {
+			return geometry;
+		}
 
+		Geometry simplifiedGeometry = toJtsGeometry(way, innerWays, simplificationFactor, junctionNodes);
+		// e.g. an inner way which is no longer contained in the outer way or a ring which intersects itself
+		if (simplifiedGeometry == null || simplifiedGeometry.getClass() != geometry.getClass()
+				|| countRings(simplifiedGeometry) != countRings(geometry) || !simplifiedGeometry.isValid()) {
+			return TopologyPreservingSimplifier.simplify(geometry, simplificationFactor);
 		}
+		return simplifiedGeometry;
+	}
 
-		if (simplificationFactor > 0 && tile.getZoomlevel() <= Constants.MAX_SIMPLIFICATION_BASE_ZOOM) {
-			// TODO is this the right place to simplify, is better before clipping?
-			geometry = TopologyPreservingSimplifier.simplify(geometry, simplificationFactor);
+	private static int countRings(Geometry geometry) {
+		if (geometry instanceof Polygon) {
+			return 1 + ((Polygon) geometry).getNumInteriorRing();
 		}
+		return 1;
+	}
 
-		return geometry;
+	/**
+	 * Clips a geometry that has been created by {@link #prepareWay(TDWay, List, double, byte)} to a tile.
+	 * 
+	 * @param way
+	 *            the way
+	 * @param geometry
+	 *            the prepared geometry of the way
+	 * @param preparedGeometry
+	 *            an optional {@link PreparedGeometry} of the given geometry to speed up the clipping, may be null
+	 * @param clipPolygons
+	 *            flag whether polygons should be clipped
+	 * @param clipWays
+	 *            flag whether ways should be clipped
+	 * @param tile
+	 *            the tile
+	 * @param enlargementInMeters
+	 *            the enlargement of the tile in meters
+	 * @return the part of the geometry that needs to be written to the tile, null if clipping failed
+	 */
+	public static Geometry clipToTile(final TDWay way, final Geometry geometry,
+			final PreparedGeometry preparedGeometry, boolean clipPolygons, boolean clipWays, final TileCoordinate tile,
+			int enlargementInMeters) {
+		boolean clip = (geometry instanceof Polygon || geometry instanceof LinearRing) && clipPolygons
+				|| geometry instanceof LineString && clipWays;
+		if (!clip) {
+			return geometry;
+		}
+
+		// create tile bounding box
+		Geometry tileBBJTS = tileToJTSGeometry(tile.getX(), tile.getY(), tile.getZoomlevel(), enlargementInMeters);
+
+		// nothing to clip if the geometry lies completely within the tile
+		if (tileBBJTS.getEnvelopeInternal().covers(geometry.getEnvelopeInternal())) {
+			return geometry;
+		}
+
+		if (preparedGeometry != null) {
+			synchronized (preparedGeometry) {
+				// prepared geometries build their indices lazily and are not thread-safe
+				if (!preparedGeometry.intersects(tileBBJTS)) {
+					// e.g. a tile within an inner way of a multi polygon
+					return GEOMETRY_FACTORY.createGeometryCollection(new Geometry[0]);
+				}
+				if (geometry instanceof Polygonal && preparedGeometry.contains(tileBBJTS)) {
+					// a tile inside a large area is completely filled by it
+					return tileBBJTS;
+				}
+			}
+		} else if (geometry instanceof Polygonal && geometry.contains(tileBBJTS)) {
+			return tileBBJTS;
+		}
+
+		// clip the polygon/ring by intersection with the bounding box of the tile
+		// may throw a TopologyException
+		try {
+			// geometry = OverlayOp.overlayOp(tileBBJTS, geometry, OverlayOp.INTERSECTION);
+			return tileBBJTS.intersection(geometry);
+		} catch (TopologyException e) {
+			LOGGER.log(Level.FINE, "JTS cannot clip outer way: " + way.getId(), e);
+			return null;
+		}
 	}
 
 	/**
@@ -258,6 +363,42 @@ public final class GeoUtils {
 		return null;
 	}
 
+	/**
+	 * Computes the position of the label of an area, the point inside of the area which is farthest from its
+	 * boundary. The label of a multipolygon is placed in its largest polygon.
+	 * 
+	 * @param geometry
+	 *            the JTS {@link Geometry} object of the whole area, not clipped to a tile
+	 * @return the label position, null if the geometry is not polygonal
+	 */
+	public static GeoCoordinate computeLabelPosition(Geometry geometry) {
+		Polygon polygon = null;
+		if (geometry instanceof Polygon) {
+			polygon = (Polygon) geometry;
+		} else if (geometry instanceof MultiPolygon) {
+			for (int i = 0; i < geometry.getNumGeometries(); i++) {
+				Polygon candidate = (Polygon) geometry.getGeometryN(i);
+				if (polygon == null || candidate.getArea() > polygon.getArea()) {
+					polygon = candidate;
+				}
+			}
+		}
+		if (polygon == null) {
+			return null;
+		}
+
+		Coordinate labelPosition = PoleOfInaccessibility.compute(polygon);
+		if (labelPosition == null) {
+			// degenerated polygons still get a label on their boundary
+			Point interiorPoint = polygon.getInteriorPoint();
+			if (interiorPoint == null || interiorPoint.isEmpty()) {
+				return null;
+			}
+			labelPosition = interiorPoint.getCoordinate();
+		}
+		return new GeoCoordinate(labelPosition.y, labelPosition.x);
+	}
+
 	/**
 	 * Convert a JTS Geometry to a WayDataBlock list.
 	 * 
@@ -309,9 +450,10 @@ public final class GeoUtils {
 
 	// **************** JTS CONVERSIONS *********************
 
-	private static Geometry toJtsGeometry(TDWay way, List<TDWay> innerWays) {
+	private static Geometry toJtsGeometry(TDWay way, List<TDWay> innerWays, double simplificationFactor,
+			TLongSet junctionNodes) {
 
-		Geometry wayGeometry = toJTSGeometry(way, !way.isForcePolygonLine());
+		Geometry wayGeometry = toJTSGeometry(way, !way.isForcePolygonLine(), simplificationFactor, junctionNodes);
 		if (wayGeometry == null) {
 			return null;
 		}
@@ -327,7 +469,7 @@ public final class GeoUtils {
 			for (TDWay innerWay : innerWays) {
 				// in order to build the polygon with holes, we want to create
 				// linear rings of the inner ways
-				Geometry innerWayGeometry = toJTSGeometry(innerWay, false);
+				Geometry innerWayGeometry = toJTSGeometry(innerWay, false, simplificationFactor, junctionNodes);
 				if (innerWayGeometry == null) {
 					continue;
 				}
@@ -370,19 +512,28 @@ public final class GeoUtils {
 	 *            TDway which will be converted. Null if we were not able to convert the way to a Geometry object.
 	 * @param area
 	 *            true, if the way represents an area, i.e. a polygon instead of a linear ring
+	 * @param simplificationFactor
+	 *            factor for the simplification of the arcs of the way, 0 if the way is not simplified
+	 * @param junctionNodes
+	 *            the ids of the nodes at which the arcs end, null if the way is not simplified
 	 * @return return Converted way as JTS object.
 	 */
-	private static Geometry toJTSGeometry(TDWay way, boolean area) {
-		if (way.getWayNodes().length < 2) {
+	private static Geometry toJTSGeometry(TDWay way, boolean area, double simplificationFactor,
+			TLongSet junctionNodes) {
+		if (way.getWayNodeCount() < 2) {
 			LOGGER.fine("way has fewer than 2 nodes: " + way.getId());
 			return null;
 		}
 
-		Coordinate[] coordinates = new Coordinate[way.getWayNodes().length];
-		for (int i = 0; i < coordinates.length; i++) {
-			TDNode currentNode = way.getWayNodes()[i];
-			coordinates[i] = new Coordinate(GeoCoordinate.intToDouble(currentNode.getLongitude()),
-					GeoCoordinate.intToDouble(currentNode.getLatitude()));
+		Coordinate[] coordinates;
+		if (simplificationFactor > 0 && junctionNodes != null) {
+			coordinates = ArcSimplifier.simplify(way, simplificationFactor, junctionNodes);
+		} else {
+			coordinates = new Coordinate[way.getWayNodeCount()];
+			for (int i = 0; i < coordinates.length; i++) {
+				coordinates[i] = new Coordinate(GeoCoordinate.intToDouble(way.getWayNodeLongitude(i)),
+						GeoCoordinate.intToDouble(way.getWayNodeLatitude(i)));
+			}
 		}
 
 		Geometry res = null;
@@ -471,11 +622,11 @@ public final class GeoUtils {
 
 	private static TileCoordinate[] getWayBoundingBox(final TDWay way, byte zoomlevel, int enlargementInPixel) {
 		double maxx = Double.NEGATIVE_INFINITY, maxy = Double.NEGATIVE_INFINITY, minx = Double.POSITIVE_INFINITY, miny = Double.POSITIVE_INFINITY;
-		for (TDNode coordinate : way.getWayNodes()) {
-			maxy = Math.max(maxy, GeoCoordinate.intToDouble(coordinate.getLatitude()));
-			miny = Math.min(miny, GeoCoordinate.intToDouble(coordinate.getLatitude()));
-			maxx = Math.max(maxx, GeoCoordinate.intToDouble(coordinate.getLongitude()));
-			minx = Math.min(minx, GeoCoordinate.intToDouble(coordinate.getLongitude()));
+		for (int i = 0; i < way.getWayNodeCount(); i++) {
+			maxy = Math.max(maxy, GeoCoordinate.intToDouble(way.getWayNodeLatitude(i)));
+			miny = Math.min(miny, GeoCoordinate.intToDouble(way.getWayNodeLatitude(i)));
+			maxx = Math.max(maxx, GeoCoordinate.intToDouble(way.getWayNodeLongitude(i)));
+			minx = Math.min(minx, GeoCoordinate.intToDouble(way.getWayNodeLongitude(i)));
 		}
 
 		double[] epsilonsTopLeft = computeTileEnlargement(maxy, enlargementInPixel);
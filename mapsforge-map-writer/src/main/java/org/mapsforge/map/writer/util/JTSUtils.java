@@ -51,14 +51,28 @@ public final class JTSUtils {
 	 * @return the array of coordinates
 	 */
 	public static Coordinate[] toCoordinates(TDWay way) {
-		Coordinate[] coordinates = new Coordinate[way.getWayNodes().length];
-		if (way.isReversedInRelation()) {
+		return toCoordinates(way, way.isReversedInRelation());
+	}
+
+	/**
+	 * Translates a {@link TDWay} object to an array of JTS {@link Coordinate} in the given direction.
+	 * 
+	 * @param way
+	 *            the way
+	 * @param reversed
+	 *            true if the coordinates should be in the reverse order of the way nodes
+	 * @return the array of coordinates
+	 */
+	public static Coordinate[] toCoordinates(TDWay way, boolean reversed) {
+		Coordinate[] coordinates = new Coordinate[way.getWayNodeCount()];
+		if (reversed) {
 			for (int i = 0; i < coordinates.length; i++) {
-				coordinates[coordinates.length - 1 - i] = toCoordinate(way.getWayNodes()[i]);
+				coordinates[coordinates.length - 1 - i] = toCoordinate(way.getWayNodeLatitude(i),
+						way.getWayNodeLongitude(i));
 			}
 		} else {
 			for (int i = 0; i < coordinates.length; i++) {
-				coordinates[i] = toCoordinate(way.getWayNodes()[i]);
+				coordinates[i] = toCoordinate(way.getWayNodeLatitude(i), way.getWayNodeLongitude(i));
 			}
 		}
 		return coordinates;
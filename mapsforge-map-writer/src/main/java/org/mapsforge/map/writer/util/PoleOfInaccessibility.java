@@ -0,0 +1,240 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Finds the point inside a polygon which is farthest from its boundary, the best position for a label. The bounding
+ * box of the polygon is covered with square cells which are searched best first and subdivided while they may contain
+ * a point farther from the boundary than the best point found so far.
+ * <p>
+ * Longitudes are scaled by the cosine of the mean latitude of the polygon, so that distances are approximately
+ * isotropic. The search stops once the result is within a fixed fraction of the smaller side of the bounding box of
+ * the optimum or after a maximum number of cells, which bounds the effort for large polygons.
+ */
+final class PoleOfInaccessibility {
+	private static final class Cell {
+		final double distance;
+		final double halfSize;
+		final double maxDistance;
+		final double x;
+		final double y;
+
+		Cell(double x, double y, double halfSize, double distance) {
+			this.x = x;
+			this.y = y;
+			this.halfSize = halfSize;
+			this.distance = distance;
+			// no point of the cell can be farther from the boundary than its center plus its half diagonal
+			this.maxDistance = distance + halfSize * Math.sqrt(2);
+		}
+	}
+
+	private static final Comparator<Cell> MAX_DISTANCE_DESCENDING = new Comparator<Cell>() {
+		@Override
+		public int compare(Cell cell1, Cell cell2) {
+			return Double.compare(cell2.maxDistance, cell1.maxDistance);
+		}
+	};
+	private static final int MAX_CELLS = 2000;
+	// the maximum number of initial cells along the longer side of the bounding box
+	private static final int MAX_GRID_SIZE = 64;
+	private static final double PRECISION = 0.01;
+
+	/**
+	 * @param polygon
+	 *            the polygon with longitudes as x and latitudes as y coordinates
+	 * @return the label position as longitude and latitude, null if the polygon is empty or no point inside of it has
+	 *         been found
+	 */
+	static Coordinate compute(Polygon polygon) {
+		if (polygon.isEmpty()) {
+			return null;
+		}
+		return new PoleOfInaccessibility(polygon).search();
+	}
+
+	private static double[][] toArrays(LineString ring, double scale) {
+		Coordinate[] coordinates = ring.getCoordinates();
+		double[] xs = new double[coordinates.length];
+		double[] ys = new double[coordinates.length];
+		for (int i = 0; i < coordinates.length; ++i) {
+			xs[i] = coordinates[i].x * scale;
+			ys[i] = coordinates[i].y;
+		}
+		return new double[][] { xs, ys };
+	}
+
+	private final double maxX;
+	private final double maxY;
+	private final double minX;
+	private final double minY;
+	// x and y coordinates of the exterior ring followed by the interior rings
+	private final double[][] ringXs;
+	private final double[][] ringYs;
+	private final double scale;
+
+	private PoleOfInaccessibility(Polygon polygon) {
+		double meanLatitude = polygon.getEnvelopeInternal().centre().y;
+		this.scale = Math.max(Math.cos(Math.toRadians(meanLatitude)), PRECISION);
+
+		int numberOfRings = polygon.getNumInteriorRing() + 1;
+		this.ringXs = new double[numberOfRings][];
+		this.ringYs = new double[numberOfRings][];
+		for (int i = 0; i < numberOfRings; ++i) {
+			double[][] ring = toArrays(i == 0 ? polygon.getExteriorRing() : polygon.getInteriorRingN(i - 1),
+					this.scale);
+			this.ringXs[i] = ring[0];
+			this.ringYs[i] = ring[1];
+		}
+
+		double[] exteriorXs = this.ringXs[0];
+		double[] exteriorYs = this.ringYs[0];
+		double x1 = Double.POSITIVE_INFINITY;
+		double y1 = Double.POSITIVE_INFINITY;
+		double x2 = Double.NEGATIVE_INFINITY;
+		double y2 = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < exteriorXs.length; ++i) {
+			x1 = Math.min(x1, exteriorXs[i]);
+			y1 = Math.min(y1, exteriorYs[i]);
+			x2 = Math.max(x2, exteriorXs[i]);
+			y2 = Math.max(y2, exteriorYs[i]);
+		}
+		this.minX = x1;
+		this.minY = y1;
+		this.maxX = x2;
+		this.maxY = y2;
+	}
+
+	private Cell createCell(double x, double y, double halfSize) {
+		return new Cell(x, y, halfSize, signedDistance(x, y));
+	}
+
+	private Cell createCentroidCell() {
+		// the centroid of the exterior ring is a good first guess for compact polygons
+		double[] xs = this.ringXs[0];
+		double[] ys = this.ringYs[0];
+		double area = 0;
+		double x = 0;
+		double y = 0;
+		for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+			double f = xs[i] * ys[j] - xs[j] * ys[i];
+			x += (xs[i] + xs[j]) * f;
+			y += (ys[i] + ys[j]) * f;
+			area += f * 3;
+		}
+		if (area == 0) {
+			return createCell(xs[0], ys[0], 0);
+		}
+		return createCell(x / area, y / area, 0);
+	}
+
+	private Coordinate search() {
+		double width = this.maxX - this.minX;
+		double height = this.maxY - this.minY;
+		if (width == 0 || height == 0) {
+			return null;
+		}
+		double precision = Math.min(width, height) * PRECISION;
+		double cellSize = Math.max(Math.min(width, height), Math.max(width, height) / MAX_GRID_SIZE);
+		double halfSize = cellSize / 2;
+
+		PriorityQueue<Cell> cells = new PriorityQueue<Cell>(16, MAX_DISTANCE_DESCENDING);
+		for (double x = this.minX; x < this.maxX; x += cellSize) {
+			for (double y = this.minY; y < this.maxY; y += cellSize) {
+				cells.add(createCell(x + halfSize, y + halfSize, halfSize));
+			}
+		}
+
+		Cell best = createCentroidCell();
+		Cell center = createCell(this.minX + width / 2, this.minY + height / 2, 0);
+		if (center.distance > best.distance) {
+			best = center;
+		}
+
+		int numberOfCells = cells.size();
+		while (!cells.isEmpty() && numberOfCells < MAX_CELLS) {
+			Cell cell = cells.poll();
+			if (cell.distance > best.distance) {
+				best = cell;
+			}
+			if (cell.maxDistance - best.distance <= precision) {
+				// all remaining cells are at most as promising as this one
+				break;
+			}
+
+			double quarterSize = cell.halfSize / 2;
+			cells.add(createCell(cell.x - quarterSize, cell.y - quarterSize, quarterSize));
+			cells.add(createCell(cell.x + quarterSize, cell.y - quarterSize, quarterSize));
+			cells.add(createCell(cell.x - quarterSize, cell.y + quarterSize, quarterSize));
+			cells.add(createCell(cell.x + quarterSize, cell.y + quarterSize, quarterSize));
+			numberOfCells += 4;
+		}
+
+		if (best.distance <= 0) {
+			return null;
+		}
+		return new Coordinate(best.x / this.scale, best.y);
+	}
+
+	// the distance to the nearest ring, positive inside of the polygon and negative outside
+	private double signedDistance(double x, double y) {
+		boolean inside = false;
+		double minSquaredDistance = Double.POSITIVE_INFINITY;
+
+		for (int r = 0; r < this.ringXs.length; ++r) {
+			double[] xs = this.ringXs[r];
+			double[] ys = this.ringYs[r];
+			for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+				double ax = xs[j];
+				double ay = ys[j];
+				double bx = xs[i];
+				double by = ys[i];
+
+				if ((by > y) != (ay > y) && x < (ax - bx) * (y - by) / (ay - by) + bx) {
+					inside = !inside;
+				}
+
+				// squared distance to the segment from a to b
+				double dx = bx - ax;
+				double dy = by - ay;
+				double px = ax;
+				double py = ay;
+				if (dx != 0 || dy != 0) {
+					double t = ((x - ax) * dx + (y - ay) * dy) / (dx * dx + dy * dy);
+					if (t > 1) {
+						px = bx;
+						py = by;
+					} else if (t > 0) {
+						px += dx * t;
+						py += dy * t;
+					}
+				}
+				dx = x - px;
+				dy = y - py;
+				minSquaredDistance = Math.min(minSquaredDistance, dx * dx + dy * dy);
+			}
+		}
+
+		double distance = Math.sqrt(minSquaredDistance);
+		return inside ? distance : -distance;
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+import java.util.Set;
+
+import org.mapsforge.map.writer.model.GeoCoordinate;
+import org.mapsforge.map.writer.model.MercatorProjection;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileCoordinate;
+
+/**
+ * Computes the tiles within a grid of tiles whose enlarged bounding boxes intersect a way, without creating any
+ * geometries.
+ * <p>
+ * All tiles of a row share the same latitude band, as the enlargement in degrees of latitude is constant and the
+ * enlargement in degrees of longitude only depends on the row. Each segment of the way is therefore clipped to the
+ * bands of the rows it crosses, and the tiles whose enlarged longitude range overlaps the clipped segment are added.
+ * The interior of a polygon is filled with a scanline per row which does not hit any tile boundary within the band.
+ * The result equals the intersection of the enlarged tile bounding boxes with the way in degrees.
+ */
+final class TileCoverage {
+	private final double[] columnLongitudes;
+	private final double latitudeEnlargement;
+	private final int maxX;
+	private final int maxY;
+	private final int minX;
+	private final int minY;
+	private final double[] rowLatitudes;
+	private final double[] rowLongitudeEnlargements;
+	private final Set<TileCoordinate> tiles;
+	private final byte zoom;
+
+	/**
+	 * @param upperLeft
+	 *            the upper left tile of the grid
+	 * @param lowerRight
+	 *            the lower right tile of the grid
+	 * @param enlargementInMeter
+	 *            the amount of meters by which the bounding box of each tile is enlarged
+	 * @param tiles
+	 *            the set to which the covered tiles are added
+	 */
+	TileCoverage(TileCoordinate upperLeft, TileCoordinate lowerRight, int enlargementInMeter,
+			Set<TileCoordinate> tiles) {
+		this.minX = upperLeft.getX();
+		this.minY = upperLeft.getY();
+		this.maxX = lowerRight.getX();
+		this.maxY = lowerRight.getY();
+		this.zoom = upperLeft.getZoomlevel();
+		this.tiles = tiles;
+		this.latitudeEnlargement = enlargementInMeter == 0 ? 0 : GeoCoordinate.latitudeDistance(enlargementInMeter);
+
+		this.columnLongitudes = new double[Math.max(0, this.maxX - this.minX + 2)];
+		for (int i = 0; i < this.columnLongitudes.length; ++i) {
+			this.columnLongitudes[i] = MercatorProjection.tileXToLongitude(this.minX + i, this.zoom);
+		}
+		this.rowLatitudes = new double[Math.max(0, this.maxY - this.minY + 2)];
+		for (int i = 0; i < this.rowLatitudes.length; ++i) {
+			this.rowLatitudes[i] = MercatorProjection.tileYToLatitude(this.minY + i, this.zoom);
+		}
+		this.rowLongitudeEnlargements = new double[Math.max(0, this.maxY - this.minY + 1)];
+		for (int i = 0; i < this.rowLongitudeEnlargements.length && enlargementInMeter != 0; ++i) {
+			this.rowLongitudeEnlargements[i] = GeoCoordinate.longitudeDistance(enlargementInMeter,
+					this.rowLatitudes[i]);
+		}
+	}
+
+	/**
+	 * Adds all tiles which intersect the way.
+	 * 
+	 * @param way
+	 *            the way, must consist of at least two nodes
+	 * @param area
+	 *            true if the interior of a closed way belongs to the way
+	 */
+	void addWay(TDWay way, boolean area) {
+		int numberOfNodes = way.getWayNodeCount();
+		double[] longitudes = new double[numberOfNodes];
+		double[] latitudes = new double[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; ++i) {
+			longitudes[i] = GeoCoordinate.intToDouble(way.getWayNodeLongitude(i));
+			latitudes[i] = GeoCoordinate.intToDouble(way.getWayNodeLatitude(i));
+		}
+
+		for (int i = 1; i < numberOfNodes; ++i) {
+			addSegment(longitudes[i - 1], latitudes[i - 1], longitudes[i], latitudes[i]);
+		}
+
+		// a tile in the interior which is not crossed by any segment must be surrounded by other tiles
+		if (area && way.isPolygon() && this.maxX - this.minX >= 2 && this.maxY - this.minY >= 2) {
+			fillInterior(longitudes, latitudes);
+		}
+	}
+
+	private void addInterval(int row, double minLongitude, double maxLongitude) {
+		double enlargement = this.rowLongitudeEnlargements[row];
+		int first = Math.max(0, column(minLongitude - enlargement) - 1);
+		int last = Math.min(this.maxX - this.minX, column(maxLongitude + enlargement) + 1);
+		for (int column = first; column <= last; ++column) {
+			if (this.columnLongitudes[column] - enlargement <= maxLongitude
+					&& this.columnLongitudes[column + 1] + enlargement >= minLongitude) {
+				this.tiles.add(new TileCoordinate(this.minX + column, this.minY + row, this.zoom));
+			}
+		}
+	}
+
+	private void addSegment(double longitude1, double latitude1, double longitude2, double latitude2) {
+		double minLatitude = Math.min(latitude1, latitude2);
+		double maxLatitude = Math.max(latitude1, latitude2);
+		int firstRow = firstRow(maxLatitude + this.latitudeEnlargement);
+		int lastRow = lastRow(minLatitude - this.latitudeEnlargement);
+
+		for (int row = firstRow; row <= lastRow; ++row) {
+			// the latitude band of the row including the enlargement
+			double bandMinLatitude = this.rowLatitudes[row + 1] - this.latitudeEnlargement;
+			double bandMaxLatitude = this.rowLatitudes[row] + this.latitudeEnlargement;
+			if (maxLatitude < bandMinLatitude || minLatitude > bandMaxLatitude) {
+				continue;
+			}
+
+			if (latitude1 == latitude2) {
+				addInterval(row, Math.min(longitude1, longitude2), Math.max(longitude1, longitude2));
+				continue;
+			}
+
+			// clip the segment to the band
+			double t1 = (bandMinLatitude - latitude1) / (latitude2 - latitude1);
+			double t2 = (bandMaxLatitude - latitude1) / (latitude2 - latitude1);
+			double from = Math.max(0, Math.min(t1, t2));
+			double to = Math.min(1, Math.max(t1, t2));
+			double clippedLongitude1 = from == 0 ? longitude1 : longitude1 + from * (longitude2 - longitude1);
+			double clippedLongitude2 = to == 1 ? longitude2 : longitude1 + to * (longitude2 - longitude1);
+			addInterval(row, Math.min(clippedLongitude1, clippedLongitude2),
+					Math.max(clippedLongitude1, clippedLongitude2));
+		}
+	}
+
+	private void fillInterior(double[] longitudes, double[] latitudes) {
+		// the scanline of each row runs through the middle of the row
+		double[] scanlines = new double[this.rowLongitudeEnlargements.length];
+		for (int row = 0; row < scanlines.length; ++row) {
+			scanlines[row] = (this.rowLatitudes[row] + this.rowLatitudes[row + 1]) / 2;
+		}
+
+		TDoubleArrayList[] crossings = new TDoubleArrayList[scanlines.length];
+		for (int i = 1; i < longitudes.length; ++i) {
+			double latitude1 = latitudes[i - 1];
+			double latitude2 = latitudes[i];
+			if (latitude1 == latitude2) {
+				continue;
+			}
+			int firstRow = firstRow(Math.max(latitude1, latitude2));
+			int lastRow = lastRow(Math.min(latitude1, latitude2));
+			for (int row = firstRow; row <= lastRow; ++row) {
+				double scanline = scanlines[row];
+				if (latitude1 > scanline == latitude2 > scanline) {
+					continue;
+				}
+				if (crossings[row] == null) {
+					crossings[row] = new TDoubleArrayList();
+				}
+				crossings[row].add(longitudes[i - 1] + (scanline - latitude1) * (longitudes[i] - longitudes[i - 1])
+						/ (latitude2 - latitude1));
+			}
+		}
+
+		for (int row = 0; row < crossings.length; ++row) {
+			if (crossings[row] == null) {
+				continue;
+			}
+			crossings[row].sort();
+			for (int i = 1; i < crossings[row].size(); i += 2) {
+				addInterval(row, crossings[row].get(i - 1), crossings[row].get(i));
+			}
+		}
+	}
+
+	// returns the index of the column which contains the longitude, the index may be outside of the grid
+	private int column(double longitude) {
+		int low = 0;
+		int high = this.columnLongitudes.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (this.columnLongitudes[middle] <= longitude) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	private int firstRow(double maxLatitude) {
+		return Math.max(0, row(maxLatitude) - 1);
+	}
+
+	private int lastRow(double minLatitude) {
+		return Math.min(this.maxY - this.minY, row(minLatitude) + 1);
+	}
+
+	// returns the index of the row which contains the latitude, the latitudes of the rows are descending
+	private int row(double latitude) {
+		int low = 0;
+		int high = this.rowLatitudes.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (this.rowLatitudes[middle] >= latitude) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+}
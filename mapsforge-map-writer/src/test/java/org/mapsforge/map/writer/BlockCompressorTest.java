@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link BlockCompressor} class.
+ */
+public class BlockCompressorTest {
+	// a plain LZ4 block decoder without any validation of the input
+	private static byte[] decompress(byte[] src, int srcLength, int destLength) {
+		byte[] dest = new byte[destLength];
+		int srcPosition = 0;
+		int destPosition = 0;
+		while (true) {
+			int token = src[srcPosition++] & 0xff;
+			int literalsLength = token >>> 4;
+			if (literalsLength == 0x0f) {
+				int b;
+				do {
+					b = src[srcPosition++] & 0xff;
+					literalsLength += b;
+				} while (b == 0xff);
+			}
+			System.arraycopy(src, srcPosition, dest, destPosition, literalsLength);
+			srcPosition += literalsLength;
+			destPosition += literalsLength;
+			if (srcPosition == srcLength) {
+				return dest;
+			}
+
+			int offset = (src[srcPosition++] & 0xff) | (src[srcPosition++] & 0xff) << 8;
+			int matchLength = token & 0x0f;
+			if (matchLength == 0x0f) {
+				int b;
+				do {
+					b = src[srcPosition++] & 0xff;
+					matchLength += b;
+				} while (b == 0xff);
+			}
+			matchLength += 4;
+			for (int i = 0; i < matchLength; ++i) {
+				dest[destPosition] = dest[destPosition - offset];
+				++destPosition;
+			}
+		}
+	}
+
+	private static void assertRoundTrip(BlockCompressor blockCompressor, byte[] data) {
+		byte[] compressed = new byte[BlockCompressor.maxCompressedLength(data.length)];
+		int compressedLength = blockCompressor.compress(data, 0, data.length, compressed, 0);
+		Assert.assertTrue(compressedLength <= compressed.length);
+		Assert.assertTrue(Arrays.equals(data, decompress(compressed, compressedLength, data.length)));
+	}
+
+	/**
+	 * Tests the exact output for a short repeating input.
+	 */
+	@Test
+	public void compressTest() {
+		byte[] data = "abcdabcdabcdabcdabcdabcd".getBytes();
+		byte[] compressed = new byte[BlockCompressor.maxCompressedLength(data.length)];
+		int compressedLength = new BlockCompressor().compress(data, 0, data.length, compressed, 0);
+
+		// four literals, a match of 15 bytes at offset 4 and the last five bytes as literals
+		byte[] expected = { 0x4b, 'a', 'b', 'c', 'd', 0x04, 0x00, 0x50, 'd', 'a', 'b', 'c', 'd' };
+		Assert.assertTrue(Arrays.equals(expected, Arrays.copyOf(compressed, compressedLength)));
+	}
+
+	/**
+	 * Tests that compressible and incompressible data survive the round trip, also when the compressor is reused.
+	 */
+	@Test
+	public void roundTripTest() {
+		BlockCompressor blockCompressor = new BlockCompressor();
+		Random random = new Random(1);
+
+		// incompressible data must not exceed the maximum compressed length
+		byte[] randomData = new byte[100000];
+		random.nextBytes(randomData);
+		assertRoundTrip(blockCompressor, randomData);
+
+		// data resembling tile blocks with repeated tags and small numbers
+		byte[] tileData = new byte[100000];
+		for (int i = 0; i < tileData.length; ++i) {
+			tileData[i] = (byte) (i % 37 < 20 ? i % 37 : random.nextInt(4));
+		}
+		assertRoundTrip(blockCompressor, tileData);
+
+		for (int length = 0; length < 40; ++length) {
+			byte[] shortData = new byte[length];
+			Arrays.fill(shortData, (byte) 7);
+			assertRoundTrip(blockCompressor, shortData);
+		}
+	}
+
+	/**
+	 * Tests that the compressed data of a block does not depend on the blocks compressed before by the same instance.
+	 */
+	@Test
+	public void deterministicTest() {
+		BlockCompressor reused = new BlockCompressor();
+		Random random = new Random(1);
+		// the blocks share the array like the tile buffer of the map file writer
+		byte[] data = new byte[2000];
+		for (int i = 0; i < 100; ++i) {
+			int length = 50 + random.nextInt(data.length - 50);
+			for (int j = 0; j < length; ++j) {
+				data[j] = (byte) random.nextInt(4);
+			}
+			byte[] compressed = new byte[BlockCompressor.maxCompressedLength(length)];
+			int compressedLength = reused.compress(data, 0, length, compressed, 0);
+
+			byte[] expected = new byte[BlockCompressor.maxCompressedLength(length)];
+			int expectedLength = new BlockCompressor().compress(data, 0, length, expected, 0);
+			Assert.assertTrue(Arrays.equals(Arrays.copyOf(expected, expectedLength),
+					Arrays.copyOf(compressed, compressedLength)));
+		}
+	}
+
+	/**
+	 * Tests that long runs compress well and that the block is preceded by its uncompressed length.
+	 */
+	@Test
+	public void compressBlockTest() {
+		BlockCompressor blockCompressor = new BlockCompressor();
+		ByteBuffer block = ByteBuffer.allocate(20000);
+		blockCompressor.compressBlock(block);
+		Assert.assertEquals(0, block.position());
+
+		block.put(new byte[10000]);
+		blockCompressor.compressBlock(block);
+		Assert.assertTrue(block.position() < 100);
+
+		byte[] lengthBytes = Serializer.getVariableByteUnsigned(10000);
+		for (int i = 0; i < lengthBytes.length; ++i) {
+			Assert.assertEquals(lengthBytes[i], block.get(i));
+		}
+		byte[] compressed = Arrays.copyOfRange(block.array(), lengthBytes.length, block.position());
+		Assert.assertTrue(Arrays.equals(new byte[10000], decompress(compressed, compressed.length, 10000)));
+	}
+}
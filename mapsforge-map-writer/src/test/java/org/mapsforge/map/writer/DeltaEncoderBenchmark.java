@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.mapsforge.map.writer.model.Encoding;
+import org.mapsforge.map.writer.model.WayDataBlock;
+
+/**
+ * Compares the automatic choice of the delta encoding by encoding the ways with both encodings to the choice by
+ * computing the sizes of both encodings in a single pass. This is not a unit test, it is started with the number of
+ * nodes per way as optional argument.
+ */
+public final class DeltaEncoderBenchmark {
+	private static final int AMOUNT_WAYS = 10000;
+	private static final int ROUNDS = 20;
+	private static final int WARM_UP_ROUNDS = 10;
+
+	/**
+	 * @param args
+	 *            the number of nodes per way, 20 if not given
+	 */
+	public static void main(String[] args) {
+		int amountNodes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		List<List<WayDataBlock>> ways = createWays(new Random(1), amountNodes);
+
+		long checksum = 0;
+		for (int i = 0; i < WARM_UP_ROUNDS; ++i) {
+			checksum += encodeTwice(ways) + encodeOnce(ways);
+		}
+
+		long twiceNanos = 0;
+		long onceNanos = 0;
+		for (int i = 0; i < ROUNDS; ++i) {
+			long startTime = System.nanoTime();
+			checksum += encodeTwice(ways);
+			twiceNanos += System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			checksum += encodeOnce(ways);
+			onceNanos += System.nanoTime() - startTime;
+		}
+
+		long amountEncodings = (long) ROUNDS * AMOUNT_WAYS;
+		System.out.println("nodes per way: " + amountNodes + ", checksum: " + checksum);
+		System.out.println("encoding with both encodings: " + twiceNanos / amountEncodings + " ns per way");
+		System.out.println("sizes in a single pass: " + onceNanos / amountEncodings + " ns per way");
+	}
+
+	private static List<List<WayDataBlock>> createWays(Random random, int amountNodes) {
+		List<List<WayDataBlock>> ways = new ArrayList<List<WayDataBlock>>();
+		for (int i = 0; i < AMOUNT_WAYS; ++i) {
+			List<Integer> coordinates = new ArrayList<Integer>();
+			int latitude = 52000000 + random.nextInt(1000000);
+			int longitude = 13000000 + random.nextInt(1000000);
+			for (int j = 0; j < amountNodes; ++j) {
+				coordinates.add(Integer.valueOf(latitude));
+				coordinates.add(Integer.valueOf(longitude));
+				latitude += random.nextInt(201) - 100;
+				longitude += random.nextInt(201) - 100;
+			}
+			ways.add(Collections.singletonList(new WayDataBlock(coordinates, null)));
+		}
+		return ways;
+	}
+
+	// the choice as it has been done before the single pass
+	private static long encodeTwice(List<List<WayDataBlock>> ways) {
+		long checksum = 0;
+		for (List<WayDataBlock> blocks : ways) {
+			List<WayDataBlock> blocksDelta = DeltaEncoder.encode(blocks, Encoding.DELTA);
+			List<WayDataBlock> blocksDoubleDelta = DeltaEncoder.encode(blocks, Encoding.DOUBLE_DELTA);
+			int simDelta = DeltaEncoder.simulateSerialization(blocksDelta);
+			int simDoubleDelta = DeltaEncoder.simulateSerialization(blocksDoubleDelta);
+			checksum += simDelta <= simDoubleDelta ? blocksDelta.size() : blocksDoubleDelta.size();
+		}
+		return checksum;
+	}
+
+	private static long encodeOnce(List<List<WayDataBlock>> ways) {
+		long checksum = 0;
+		for (List<WayDataBlock> blocks : ways) {
+			long sizes = DeltaEncoder.simulateDeltaSerializations(blocks);
+			int simDelta = DeltaEncoder.getDeltaSize(sizes);
+			int simDoubleDelta = DeltaEncoder.getDoubleDeltaSize(sizes);
+			checksum += DeltaEncoder.encode(blocks, simDelta <= simDoubleDelta ? Encoding.DELTA : Encoding.DOUBLE_DELTA)
+					.size();
+		}
+		return checksum;
+	}
+
+	private DeltaEncoderBenchmark() {
+		throw new IllegalStateException();
+	}
+}
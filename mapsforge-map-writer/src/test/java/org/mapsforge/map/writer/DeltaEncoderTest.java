@@ -15,18 +15,37 @@
 package org.mapsforge.map.writer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.Assert;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mapsforge.map.writer.model.Encoding;
+import org.mapsforge.map.writer.model.WayDataBlock;
 
 /**
  * @author bross
  */
 public class DeltaEncoderTest {
 
+	private static List<Integer> createWay(Random random, int amountNodes) {
+		List<Integer> coordinates = new ArrayList<Integer>();
+		int latitude = random.nextInt(180000000) - 90000000;
+		int longitude = random.nextInt(360000000) - 180000000;
+		// steps of very different lengths, so that both encodings win sometimes
+		int stepSize = 1 << random.nextInt(24);
+		for (int i = 0; i < amountNodes; ++i) {
+			coordinates.add(Integer.valueOf(latitude));
+			coordinates.add(Integer.valueOf(longitude));
+			latitude += random.nextInt(2 * stepSize + 1) - stepSize;
+			longitude += random.nextInt(2 * stepSize + 1) - stepSize;
+		}
+		return coordinates;
+	}
+
 	private List<Integer> mockCoordinates;
 
 	/**
@@ -94,4 +113,34 @@ public class DeltaEncoderTest {
 		Assert.assertEquals(Integer.valueOf(-200), ddeltaEncoded.get(11));
 	}
 
+	/**
+	 * Tests that the sizes of both encodings computed in a single pass equal the sizes of the encoded blocks.
+	 */
+	@Test
+	public void testSimulateDeltaSerializations() {
+		Random random = new Random(1);
+		for (int i = 0; i < 100; ++i) {
+			List<WayDataBlock> blocks = new ArrayList<WayDataBlock>();
+			for (int j = 0; j <= i % 3; ++j) {
+				List<List<Integer>> innerWays = new ArrayList<List<Integer>>();
+				for (int k = 0; k < j; ++k) {
+					innerWays.add(createWay(random, 1 + random.nextInt(50)));
+				}
+				blocks.add(new WayDataBlock(createWay(random, 1 + random.nextInt(50)), j == 0 ? null : innerWays));
+			}
+
+			long sizes = DeltaEncoder.simulateDeltaSerializations(blocks);
+			Assert.assertEquals(DeltaEncoder.simulateSerialization(DeltaEncoder.encode(blocks, Encoding.DELTA)),
+					DeltaEncoder.getDeltaSize(sizes));
+			Assert.assertEquals(
+					DeltaEncoder.simulateSerialization(DeltaEncoder.encode(blocks, Encoding.DOUBLE_DELTA)),
+					DeltaEncoder.getDoubleDeltaSize(sizes));
+		}
+
+		List<WayDataBlock> blocks = Collections.singletonList(new WayDataBlock(this.mockCoordinates, null));
+		long sizes = DeltaEncoder.simulateDeltaSerializations(blocks);
+		Assert.assertEquals(28, DeltaEncoder.getDeltaSize(sizes));
+		Assert.assertEquals(28, DeltaEncoder.getDoubleDeltaSize(sizes));
+	}
+
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.set.TLongSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Tests the {@link JunctionNodes} class.
+ */
+public class JunctionNodesTest {
+	private static List<WayNode> createWayNodes(long... ids) {
+		List<WayNode> wayNodes = new ArrayList<WayNode>();
+		for (long id : ids) {
+			wayNodes.add(new WayNode(id));
+		}
+		return wayNodes;
+	}
+
+	/**
+	 * Tests the junction nodes of two adjacent areas and a way which ends at one of them.
+	 */
+	@Test
+	public void junctionNodesTest() {
+		JunctionNodes junctionNodes = new JunctionNodes();
+		// the areas share the border from node 10 to node 13 in opposite directions
+		junctionNodes.add(createWayNodes(10, 11, 12, 13, 1, 2, 10));
+		junctionNodes.add(createWayNodes(12, 11, 10, 3, 4, 13, 12));
+		// the way ends at node 2
+		junctionNodes.add(createWayNodes(5, 6, 2));
+		TLongSet junctions = junctionNodes.complete();
+
+		Assert.assertEquals(4, junctions.size());
+		Assert.assertTrue(junctions.contains(10));
+		Assert.assertTrue(junctions.contains(13));
+		Assert.assertTrue(junctions.contains(5));
+		Assert.assertTrue(junctions.contains(2));
+	}
+}
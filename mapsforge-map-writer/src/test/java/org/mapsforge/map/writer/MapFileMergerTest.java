@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mapsforge.map.writer.model.BlockLayout;
+import org.mapsforge.map.writer.model.Rect;
+import org.mapsforge.map.writer.model.Shard;
+import org.mapsforge.map.writer.model.TileGridLayout;
+import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
+
+/**
+ * Tests the {@link MapFileMerger} class.
+ */
+public class MapFileMergerTest {
+	private static final Rect BOUNDING_BOX = new Rect(13.0, 13.3, 52.0, 52.1);
+	private static final int NUMBER_OF_SHARDS = 3;
+	private static final ZoomIntervalConfiguration ZOOM_INTERVAL_CONFIGURATION = ZoomIntervalConfiguration
+			.fromString("12,10,13,15,14,17");
+
+	private static void putString(String string, ByteBuffer buffer) {
+		buffer.put(Serializer.getVariableByteUnsigned(string.getBytes().length));
+		buffer.put(string.getBytes());
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			byte[] content = new byte[(int) randomAccessFile.length()];
+			randomAccessFile.readFully(content);
+			return content;
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	// writes a map file in the format of the map file writer whose blocks consist of the coordinates of their tile
+	private static void writeMapFile(File file, Rect boundingBox, BlockLayout blockLayout, boolean debug,
+			String comment, long date) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(MapFileWriter.HEADER_BUFFER_SIZE);
+		header.put(MapFileWriter.MAGIC_BYTE.getBytes());
+		header.putInt(0);
+		header.putInt(4);
+		header.putLong(0);
+		header.putLong(date);
+		header.putInt(boundingBox.minLatitudeE6);
+		header.putInt(boundingBox.minLongitudeE6);
+		header.putInt(boundingBox.maxLatitudeE6);
+		header.putInt(boundingBox.maxLongitudeE6);
+		header.putShort((short) 256);
+		putString("Mercator", header);
+		int flags = MapFileWriter.BITMAP_CREATED_WITH;
+		flags |= debug ? MapFileWriter.BITMAP_DEBUG : 0;
+		flags |= comment != null ? MapFileWriter.BITMAP_COMMENT : 0;
+		flags |= blockLayout == BlockLayout.Z_ORDER ? MapFileWriter.BITMAP_BLOCK_LAYOUT_Z_ORDER : 0;
+		header.put((byte) flags);
+		if (comment != null) {
+			putString(comment, header);
+		}
+		putString("test", header);
+		header.putShort((short) 1);
+		putString("amenity=pub", header);
+		header.putShort((short) 2);
+		putString("highway=track", header);
+		putString("natural=water", header);
+		header.put((byte) ZOOM_INTERVAL_CONFIGURATION.getNumberOfZoomIntervals());
+		int subfileTablePosition = header.position();
+		header.position(subfileTablePosition + ZOOM_INTERVAL_CONFIGURATION.getNumberOfZoomIntervals()
+				* MapFileWriter.SIZE_ZOOMINTERVAL_CONFIGURATION);
+		header.putInt(MapFileWriter.MAGIC_BYTE.length(), header.position() - MapFileWriter.MAGIC_BYTE.length() - 4);
+
+		ByteArrayOutputStream subfiles = new ByteArrayOutputStream();
+		for (int i = 0; i < ZOOM_INTERVAL_CONFIGURATION.getNumberOfZoomIntervals(); ++i) {
+			byte baseZoom = ZOOM_INTERVAL_CONFIGURATION.getBaseZoom(i);
+			TileGridLayout tileGridLayout = TileGridLayout.fromBoundingBox(boundingBox, baseZoom);
+			int lengthX = tileGridLayout.getAmountTilesHorizontal();
+			int lengthY = tileGridLayout.getAmountTilesVertical();
+
+			ByteArrayOutputStream index = new ByteArrayOutputStream();
+			if (debug) {
+				index.write(MapFileWriter.DEBUG_INDEX_START_STRING.getBytes());
+			}
+			ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+			long offset = index.size() + lengthX * lengthY * MapFileWriter.BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE;
+			for (int position = 0; position < lengthX * lengthY; ++position) {
+				int tileIndex = blockLayout.getTileIndex(position, lengthX, lengthY);
+				int tileX = tileGridLayout.getUpperLeft().getX() + tileIndex % lengthX;
+				int tileY = tileGridLayout.getUpperLeft().getY() + tileIndex / lengthX;
+				byte[] indexEntry = Serializer.getFiveBytes(offset);
+				if ((tileX + tileY) % 3 == 0) {
+					indexEntry[0] |= MapFileWriter.BITMAP_INDEX_ENTRY_WATER;
+				}
+				index.write(indexEntry);
+				// blocks of some tiles are empty
+				byte[] block = (tileX + tileY) % 5 == 0 ? new byte[0] : (baseZoom + "/" + tileX + "/" + tileY)
+						.getBytes();
+				blocks.write(block);
+				offset += block.length;
+			}
+
+			int entryPosition = subfileTablePosition + i * MapFileWriter.SIZE_ZOOMINTERVAL_CONFIGURATION;
+			header.put(entryPosition, baseZoom);
+			header.put(entryPosition + 1, ZOOM_INTERVAL_CONFIGURATION.getMinZoom(i));
+			header.put(entryPosition + 2, ZOOM_INTERVAL_CONFIGURATION.getMaxZoom(i));
+			header.putLong(entryPosition + 3, header.position() + subfiles.size());
+			header.putLong(entryPosition + 11, offset);
+			index.writeTo(subfiles);
+			blocks.writeTo(subfiles);
+		}
+		header.putLong(MapFileWriter.OFFSET_FILE_SIZE, header.position() + subfiles.size());
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(0);
+			randomAccessFile.write(header.array(), 0, header.position());
+			randomAccessFile.write(subfiles.toByteArray());
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private final List<File> files = new ArrayList<File>();
+
+	private File createFile() throws IOException {
+		File file = File.createTempFile("mapsforge-merger", ".map");
+		this.files.add(file);
+		return file;
+	}
+
+	private List<File> writeShards(BlockLayout blockLayout, boolean debug) throws IOException {
+		List<File> shardFiles = new ArrayList<File>();
+		// the order of the shards does not matter
+		for (int i = NUMBER_OF_SHARDS - 1; i >= 0; --i) {
+			File shardFile = createFile();
+			writeMapFile(shardFile, new Shard(i, NUMBER_OF_SHARDS).getBoundingBox(BOUNDING_BOX,
+					ZOOM_INTERVAL_CONFIGURATION), blockLayout, debug, "comment", i);
+			shardFiles.add(shardFile);
+		}
+		return shardFiles;
+	}
+
+	/**
+	 * Deletes the map files of the test.
+	 */
+	@After
+	public void tearDown() {
+		for (File file : this.files) {
+			Assert.assertTrue(file.delete());
+		}
+	}
+
+	/**
+	 * Tests that the merged map file equals the map file of the whole bounding box except for the date of creation.
+	 * 
+	 * @throws IOException
+	 *             thrown if any IO error occurs
+	 */
+	@Test
+	public void mergeTest() throws IOException {
+		for (BlockLayout blockLayout : BlockLayout.values()) {
+			for (boolean debug : new boolean[] { false, true }) {
+				File expectedFile = createFile();
+				writeMapFile(expectedFile, BOUNDING_BOX, blockLayout, debug, "comment", 0);
+				File mergedFile = createFile();
+				MapFileMerger.merge(writeShards(blockLayout, debug), mergedFile);
+
+				byte[] expected = readFile(expectedFile);
+				byte[] merged = readFile(mergedFile);
+				Assert.assertTrue(ByteBuffer.wrap(merged).getLong(MapFileWriter.OFFSET_DATE_OF_CREATION) > 0);
+				ByteBuffer.wrap(merged).putLong(MapFileWriter.OFFSET_DATE_OF_CREATION, 0);
+				Assert.assertTrue(blockLayout + ", debug " + debug, Arrays.equals(expected, merged));
+			}
+		}
+	}
+
+	/**
+	 * Tests that map files with different headers are not merged.
+	 * 
+	 * @throws IOException
+	 *             thrown if the map files cannot be merged
+	 */
+	@Test(expected = IOException.class)
+	public void differentHeadersTest() throws IOException {
+		List<File> shardFiles = writeShards(BlockLayout.ROW_MAJOR, false);
+		writeMapFile(shardFiles.get(1), new Shard(1, NUMBER_OF_SHARDS).getBoundingBox(BOUNDING_BOX,
+				ZOOM_INTERVAL_CONFIGURATION), BlockLayout.ROW_MAJOR, false, "other comment", 0);
+		MapFileMerger.merge(shardFiles, createFile());
+	}
+
+	/**
+	 * Tests that shards which do not cover the whole bounding box are not merged.
+	 * 
+	 * @throws IOException
+	 *             thrown if the map files cannot be merged
+	 */
+	@Test(expected = IOException.class)
+	public void missingShardTest() throws IOException {
+		List<File> shardFiles = writeShards(BlockLayout.ROW_MAJOR, false);
+		shardFiles.remove(1);
+		MapFileMerger.merge(shardFiles, createFile());
+	}
+}
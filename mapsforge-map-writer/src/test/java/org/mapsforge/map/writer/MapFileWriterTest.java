@@ -42,7 +42,8 @@ public class MapFileWriterTest {
 		// this.configuration.addOutputFile(getStringArgument(taskConfig, PARAM_OUTFILE,
 		// Constants.DEFAULT_PARAM_OUTFILE));
 		this.configuration.setWriterVersion("test");
-		this.configuration.loadTagMappingFile("src/test/resources/tag-mapping.xml");
+		// src/test/resources/tag-mapping.xml via the class path, the mapping is shared by all tests
+		this.configuration.loadTagMappingFile(null);
 		this.configuration.addMapStartPosition("52.455882,13.297244");
 		this.configuration.addMapStartZoom("14");
 		this.configuration.addBboxConfiguration("52,13,53,14");
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.map.writer.model.TDNode;
+
+/**
+ * Tests the {@link NodeCoordinateStore} class.
+ */
+public class NodeCoordinateStoreTest {
+	private static void assertNode(NodeCoordinateStore nodeCoordinateStore, long id, int latitude, int longitude) {
+		TDNode tdNode = nodeCoordinateStore.get(id);
+		Assert.assertNotNull(tdNode);
+		Assert.assertEquals(id, tdNode.getId());
+		Assert.assertEquals(latitude, tdNode.getLatitude());
+		Assert.assertEquals(longitude, tdNode.getLongitude());
+	}
+
+	/**
+	 * Tests single and batched lookups of nodes across several mapped chunks and of nodes that break the order.
+	 */
+	@Test
+	public void getTest() {
+		NodeCoordinateStore nodeCoordinateStore = new NodeCoordinateStore(4);
+		try {
+			for (int i = 1; i <= 10; ++i) {
+				nodeCoordinateStore.add(i * 10, -i * 1000000, i * 2000000);
+			}
+			nodeCoordinateStore.add(5, 52000000, -13000000);
+			nodeCoordinateStore.add(200, -90000000, 180000000);
+			Assert.assertEquals(12, nodeCoordinateStore.size());
+
+			for (int i = 1; i <= 10; ++i) {
+				assertNode(nodeCoordinateStore, i * 10, -i * 1000000, i * 2000000);
+			}
+			assertNode(nodeCoordinateStore, 5, 52000000, -13000000);
+			assertNode(nodeCoordinateStore, 200, -90000000, 180000000);
+
+			Assert.assertNull(nodeCoordinateStore.get(0));
+			Assert.assertNull(nodeCoordinateStore.get(15));
+			Assert.assertNull(nodeCoordinateStore.get(300));
+
+			TDNode[] tdNodes = nodeCoordinateStore.get(new long[] { 0, 5, 10, 10, 15, 90, 100, 200, 300 });
+			Assert.assertNull(tdNodes[0]);
+			Assert.assertEquals(52000000, tdNodes[1].getLatitude());
+			Assert.assertEquals(10, tdNodes[2].getId());
+			Assert.assertEquals(10, tdNodes[3].getId());
+			Assert.assertNull(tdNodes[4]);
+			Assert.assertEquals(-9000000, tdNodes[5].getLatitude());
+			Assert.assertEquals(20000000, tdNodes[6].getLongitude());
+			Assert.assertEquals(180000000, tdNodes[7].getLongitude());
+			Assert.assertNull(tdNodes[8]);
+		} finally {
+			nodeCoordinateStore.release();
+		}
+
+		Assert.assertEquals(0, nodeCoordinateStore.size());
+		Assert.assertNull(nodeCoordinateStore.get(10));
+		// releasing the store twice must not fail
+		nodeCoordinateStore.release();
+	}
+}
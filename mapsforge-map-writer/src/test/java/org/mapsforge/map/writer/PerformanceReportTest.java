@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.TileCoordinate;
+
+/**
+ * Tests the {@link PerformanceReport} class.
+ */
+public class PerformanceReportTest {
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	/**
+	 * Tests that the report contains the recorded metrics and only the slowest tiles.
+	 * 
+	 * @throws IOException
+	 *             thrown if any IO error occurs
+	 */
+	@Test
+	public void writeTest() throws IOException {
+		MapWriterConfiguration configuration = new MapWriterConfiguration();
+		configuration.setOutputFile(new File("a\"b\\c.map"));
+		configuration.setThreadPoolSize(4);
+		configuration.addEncodingChoice("auto");
+
+		PerformanceReport performanceReport = new PerformanceReport();
+		performanceReport.addTime(PerformanceReport.Stage.INGEST, 1500 * NANOS_PER_MILLI);
+		performanceReport.addTime(PerformanceReport.Stage.IO, 2 * NANOS_PER_MILLI);
+		performanceReport.addTime(PerformanceReport.Stage.IO, 3 * NANOS_PER_MILLI);
+		Assert.assertEquals(5 * NANOS_PER_MILLI, performanceReport.getTime(PerformanceReport.Stage.IO));
+
+		performanceReport.addSubfile((byte) 7, 20, 5, 12345, 250 * NANOS_PER_MILLI);
+		for (int i = 1; i <= 100; ++i) {
+			performanceReport.addTile(new TileCoordinate(i, 2 * i, (byte) 14), i * NANOS_PER_MILLI, i % 7, i % 13);
+		}
+		performanceReport.addAutoEncoding(NANOS_PER_MILLI, 100, 80);
+		performanceReport.addAutoEncoding(NANOS_PER_MILLI, 50, 60);
+
+		StringWriter writer = new StringWriter();
+		performanceReport.write(writer, configuration, 54321);
+		String report = writer.toString();
+
+		Assert.assertTrue(report.contains("\"outputFile\": \"a\\\"b\\\\c.map\""));
+		Assert.assertTrue(report.contains("\"encoding\": \"AUTO\""));
+		Assert.assertTrue(report.contains("\"blockCompression\": \"NONE\""));
+		Assert.assertTrue(report.contains("\"threadPoolSize\": 4"));
+		Assert.assertTrue(report.contains("\"mapFileSize\": 54321"));
+		Assert.assertTrue(report.contains("\"ingest\": 1500.0"));
+		Assert.assertTrue(report.contains("\"io\": 5.0"));
+		Assert.assertTrue(report.contains("\"polygonization\": 0.0"));
+		Assert.assertTrue(report.contains(
+				"{ \"baseZoom\": 7, \"tiles\": 20, \"copiedTiles\": 5, \"bytes\": 12345, \"millis\": 250.0 }"));
+
+		// the ten slowest tiles in descending order
+		int previousIndex = -1;
+		for (int i = 100; i > 90; --i) {
+			int index = report.indexOf("{ \"zoom\": 14, \"x\": " + i + ", \"y\": " + 2 * i + ", \"pois\": " + i % 7
+					+ ", \"ways\": " + i % 13 + ", \"millis\": " + i + ".0 }");
+			Assert.assertTrue(index > previousIndex);
+			previousIndex = index;
+		}
+		Assert.assertFalse(report.contains("\"x\": 90,"));
+
+		Assert.assertTrue(report.contains("\"ways\": 2,\n    \"doubleDeltaWays\": 1"));
+		Assert.assertTrue(report.contains("\"deltaBytes\": 150,\n    \"doubleDeltaBytes\": 140"));
+	}
+}
@@ -32,4 +32,18 @@ public class SerializerTest {
 		fiveBytes = Serializer.getFiveBytes(5);
 		Assert.assertArrayEquals(new byte[] { 0, 0, 0, 0, 5 }, fiveBytes);
 	}
+
+	/**
+	 * Tests the {@link Serializer#getVariableByteSignedLength(int)} method.
+	 */
+	@Test
+	public void getVariableByteSignedLengthTest() {
+		int[] limits = new int[] { 0, 64, 8192, 1048576, 134217728, Integer.MAX_VALUE };
+		for (int limit : limits) {
+			for (int value : new int[] { limit - 1, limit, limit + 1, -limit + 1, -limit, -limit - 1 }) {
+				Assert.assertEquals(Serializer.getVariableByteSigned(value).length,
+						Serializer.getVariableByteSignedLength(value));
+			}
+		}
+	}
 }
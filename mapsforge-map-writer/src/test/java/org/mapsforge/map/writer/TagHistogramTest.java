@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link TagHistogram} class.
+ */
+public class TagHistogramTest {
+	private static final int COUNTS_PER_THREAD = 10000;
+	private static final int THREADS = 4;
+
+	/**
+	 * Tests that the counts of several threads are merged.
+	 * 
+	 * @throws InterruptedException
+	 *             thrown if the test is interrupted
+	 */
+	@Test
+	public void concurrentCountTest() throws InterruptedException {
+		final TagHistogram histogram = new TagHistogram();
+		Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; ++i) {
+			final short threadTag = (short) (1000 + i);
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < COUNTS_PER_THREAD; ++j) {
+						histogram.addAll(new short[] { 1, threadTag });
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertEquals(THREADS * COUNTS_PER_THREAD, histogram.get((short) 1));
+		for (int i = 0; i < THREADS; ++i) {
+			Assert.assertEquals(COUNTS_PER_THREAD, histogram.get((short) (1000 + i)));
+		}
+		Assert.assertEquals(0, histogram.get((short) 2));
+		Assert.assertEquals(0, histogram.get(Short.MAX_VALUE));
+	}
+
+	/**
+	 * Tests that the tags are ordered by descending frequency and ascending ids.
+	 */
+	@Test
+	public void getTagsByFrequencyTest() {
+		TagHistogram histogram = new TagHistogram();
+		Assert.assertEquals(0, histogram.getTagsByFrequency().length);
+
+		histogram.add((short) 7, 3);
+		histogram.add((short) 0);
+		histogram.addAll(new short[] { 300, 5, 300, 5, 300 });
+		histogram.addAll(null);
+		histogram.add((short) 2, 2);
+
+		short[] expected = { 7, 300, 2, 5, 0 };
+		Assert.assertTrue(Arrays.toString(histogram.getTagsByFrequency()),
+				Arrays.equals(expected, histogram.getTagsByFrequency()));
+	}
+}
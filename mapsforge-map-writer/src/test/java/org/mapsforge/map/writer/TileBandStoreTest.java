@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.list.array.TLongArrayList;
+
+import java.util.Iterator;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.map.writer.model.BlockLayout;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileCoordinate;
+import org.mapsforge.map.writer.model.TileGridLayout;
+
+/**
+ * Tests the {@link TileBandStore} class.
+ */
+public class TileBandStoreTest {
+	private static void assertReleased(TileBandStore tileBandStore, int tileX, int tileY) {
+		try {
+			tileBandStore.getTile(tileX, tileY);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// the band of the tile has been released
+		}
+	}
+
+	private static TDWay createWay(long id) {
+		return new TDWay(id, (byte) 0, null, null, null, new TDNode[0]);
+	}
+
+	/**
+	 * Tests that the POIs and ways of the tiles are restored across several bands and that the ways are iterated in
+	 * row order.
+	 */
+	@Test
+	public void tileBandStoreTest() {
+		// 130 rows are split into 44 bands of at most three rows
+		TileBandStore tileBandStore = new TileBandStore(new TileGridLayout(new TileCoordinate(10, 20, (byte) 14), 3,
+				130), BlockLayout.ROW_MAJOR);
+		try {
+			Assert.assertNull(tileBandStore.getAppender(9, 20));
+			Assert.assertNull(tileBandStore.getAppender(10, 150));
+
+			tileBandStore.getAppender(10, 149).addWay(createWay(5));
+			tileBandStore.getAppender(11, 23).addWay(createWay(3));
+			tileBandStore.getAppender(12, 20).addWay(createWay(2));
+			tileBandStore.getAppender(12, 20).addWay(createWay(1));
+			tileBandStore.getAppender(10, 20).addPOI(new TDNode(4, 0, 0, (short) 0, (byte) 0, null, null));
+
+			Iterator<TLongArrayList> iterator = tileBandStore.wayIterator();
+			Assert.assertEquals(new TLongArrayList(new long[] { 2, 1 }), iterator.next());
+			Assert.assertEquals(new TLongArrayList(new long[] { 3 }), iterator.next());
+			Assert.assertEquals(new TLongArrayList(new long[] { 5 }), iterator.next());
+			Assert.assertFalse(iterator.hasNext());
+			Assert.assertFalse(iterator.hasNext());
+
+			HDTileData tile = tileBandStore.getTile(10, 20);
+			Assert.assertEquals(new TLongArrayList(new long[] { 4 }), tile.getPois());
+			Assert.assertTrue(tile.getWays().isEmpty());
+			Assert.assertEquals(2, tileBandStore.getTile(12, 20).getWays().size());
+			Assert.assertEquals(new TLongArrayList(new long[] { 3 }), tileBandStore.getTile(11, 23).getWays());
+			// the tiles of the previous band are still available
+			Assert.assertEquals(2, tileBandStore.getTile(12, 20).getWays().size());
+			Assert.assertEquals(new TLongArrayList(new long[] { 5 }), tileBandStore.getTile(10, 149).getWays());
+			Assert.assertNull(tileBandStore.getTile(13, 20));
+
+			// once the last row of a band has been released, its tiles cannot be requested anymore
+			tileBandStore.releaseRow(21);
+			Assert.assertEquals(2, tileBandStore.getTile(12, 20).getWays().size());
+			tileBandStore.releaseRow(22);
+			assertReleased(tileBandStore, 12, 20);
+			Assert.assertEquals(new TLongArrayList(new long[] { 5 }), tileBandStore.getTile(10, 149).getWays());
+		} finally {
+			tileBandStore.release();
+		}
+	}
+
+	/**
+	 * Tests that the ways are iterated in Z-order and that the bands are only released with the last row.
+	 */
+	@Test
+	public void zOrderTest() {
+		TileBandStore tileBandStore = new TileBandStore(new TileGridLayout(new TileCoordinate(10, 20, (byte) 14), 3,
+				130), BlockLayout.Z_ORDER);
+		try {
+			tileBandStore.getAppender(12, 20).addWay(createWay(3));
+			tileBandStore.getAppender(10, 21).addWay(createWay(2));
+			tileBandStore.getAppender(11, 20).addWay(createWay(1));
+			tileBandStore.getAppender(10, 149).addWay(createWay(4));
+
+			Iterator<TLongArrayList> iterator = tileBandStore.wayIterator();
+			Assert.assertEquals(new TLongArrayList(new long[] { 1 }), iterator.next());
+			Assert.assertEquals(new TLongArrayList(new long[] { 2 }), iterator.next());
+			Assert.assertEquals(new TLongArrayList(new long[] { 3 }), iterator.next());
+			Assert.assertEquals(new TLongArrayList(new long[] { 4 }), iterator.next());
+			Assert.assertFalse(iterator.hasNext());
+
+			Assert.assertEquals(new TLongArrayList(new long[] { 3 }), tileBandStore.getTile(12, 20).getWays());
+			Assert.assertEquals(new TLongArrayList(new long[] { 4 }), tileBandStore.getTile(10, 149).getWays());
+			tileBandStore.releaseRow(22);
+			Assert.assertEquals(new TLongArrayList(new long[] { 3 }), tileBandStore.getTile(12, 20).getWays());
+			tileBandStore.releaseRow(149);
+			assertReleased(tileBandStore, 12, 20);
+		} finally {
+			tileBandStore.release();
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.set.TLongSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Tests the {@link TileFingerprints} class.
+ */
+public class TileFingerprintsTest {
+	// tags are left out, so that the tag mapping of the other tests is not initialized
+	private static long fingerprint(TDNode poi, TDWay way, TileBasedDataProcessor dataProcessor) {
+		Map<Byte, List<TDNode>> pois = new HashMap<Byte, List<TDNode>>();
+		pois.put(Byte.valueOf((byte) 14), new ArrayList<TDNode>(Collections.singletonList(poi)));
+		Map<Byte, List<TDWay>> ways = new HashMap<Byte, List<TDWay>>();
+		ways.put(Byte.valueOf((byte) 13), new ArrayList<TDWay>(Collections.singletonList(way)));
+		return TileFingerprints.fingerprintTile(pois, ways, (byte) 12, (byte) 14, dataProcessor, null);
+	}
+
+	private static TLongSet junctionNodes(long[]... ways) {
+		JunctionNodes junctionNodes = new JunctionNodes();
+		for (long[] way : ways) {
+			List<WayNode> wayNodes = new ArrayList<WayNode>();
+			for (long id : way) {
+				wayNodes.add(new WayNode(id));
+			}
+			junctionNodes.add(wayNodes);
+		}
+		return junctionNodes.complete();
+	}
+
+	private MapWriterConfiguration configuration;
+
+	/**
+	 * Sets up the test case.
+	 */
+	@Before
+	public void setUp() {
+		this.configuration = new MapWriterConfiguration();
+		this.configuration.setWriterVersion("test");
+		this.configuration.addBboxConfiguration("52,13,53,14");
+		this.configuration.addZoomIntervalConfiguration("5,0,7,10,8,11,14,12,18");
+		this.configuration.setDataProcessorType("ram");
+		this.configuration.addEncodingChoice("auto");
+		this.configuration.validate();
+	}
+
+	/**
+	 * Tests that the fingerprint of a tile only changes if its content changes.
+	 */
+	@Test
+	public void fingerprintTileTest() {
+		TileBasedDataProcessor dataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		try {
+			TDNode poi = new TDNode(1, 52500000, 13500000, (short) 0, (byte) 5, null, "poi");
+			TDWay way = new TDWay(2, (byte) 5, "way", null, null, null, TDWay.LINE, new long[] { 3, 4 },
+					new int[] { 52100000, 13100000, 52200000, 13200000 });
+
+			long fingerprint = fingerprint(poi, way, dataProcessor);
+			Assert.assertEquals(fingerprint, fingerprint(poi, way, dataProcessor));
+
+			TDWay movedWay = new TDWay(2, (byte) 5, "way", null, null, null, TDWay.LINE, new long[] { 3, 4 },
+					new int[] { 52100000, 13100000, 52200000, 13200001 });
+			Assert.assertFalse(fingerprint == fingerprint(poi, movedWay, dataProcessor));
+
+			TDNode renamedPoi = new TDNode(1, 52500000, 13500000, (short) 0, (byte) 5, null, "renamed poi");
+			Assert.assertFalse(fingerprint == fingerprint(renamedPoi, way, dataProcessor));
+
+			// the zoom levels are part of the fingerprint
+			Map<Byte, List<TDNode>> pois = new HashMap<Byte, List<TDNode>>();
+			Map<Byte, List<TDWay>> ways = new HashMap<Byte, List<TDWay>>();
+			ways.put(Byte.valueOf((byte) 12), new ArrayList<TDWay>(Collections.singletonList(way)));
+			pois.put(Byte.valueOf((byte) 14), new ArrayList<TDNode>(Collections.singletonList(poi)));
+			Assert.assertFalse(fingerprint == TileFingerprints.fingerprintTile(pois, ways, (byte) 12, (byte) 14,
+					dataProcessor, null));
+		} finally {
+			dataProcessor.release();
+		}
+	}
+
+	/**
+	 * Tests that an incremental build with simplification per zoom interval encodes a tile again if only a
+	 * neighbouring way outside of the tile has changed the junction nodes of a way in the tile.
+	 */
+	@Test
+	public void neighbouringWayTest() {
+		TileBasedDataProcessor dataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		try {
+			Map<Byte, List<TDNode>> pois = new HashMap<Byte, List<TDNode>>();
+			Map<Byte, List<TDWay>> ways = new HashMap<Byte, List<TDWay>>();
+			TDWay way = new TDWay(2, (byte) 5, "way", null, null, null, TDWay.LINE, new long[] { 3, 4, 5, 6 },
+					new int[] { 52100000, 13100000, 52200000, 13200000, 52300000, 13100000, 52400000, 13200000 });
+			ways.put(Byte.valueOf((byte) 13), new ArrayList<TDWay>(Collections.singletonList(way)));
+
+			// the previous build, the neighbouring way does not touch the way in the tile
+			long[] wayNodes = new long[] { 3, 4, 5, 6 };
+			long previousFingerprint = TileFingerprints.fingerprintTile(pois, ways, (byte) 12, (byte) 14,
+					dataProcessor, junctionNodes(wayNodes, new long[] { 7, 8 }));
+
+			// the neighbouring way has been extended without touching the way in the tile
+			Assert.assertEquals(previousFingerprint, TileFingerprints.fingerprintTile(pois, ways, (byte) 12,
+					(byte) 14, dataProcessor, junctionNodes(wayNodes, new long[] { 7, 8, 9 })));
+
+			// the neighbouring way now ends at an inner node of the way in the tile
+			Assert.assertFalse(previousFingerprint == TileFingerprints.fingerprintTile(pois, ways, (byte) 12,
+					(byte) 14, dataProcessor, junctionNodes(wayNodes, new long[] { 7, 8, 5 })));
+		} finally {
+			dataProcessor.release();
+		}
+	}
+
+	/**
+	 * Tests that written fingerprints are read back unchanged.
+	 * 
+	 * @throws IOException
+	 *             thrown if any IO error occurs
+	 */
+	@Test
+	public void writeReadTest() throws IOException {
+		File mapFile = File.createTempFile("mapsforge-fingerprints", ".map");
+		File fingerprintFile = TileFingerprints.getFile(mapFile);
+		try {
+			Assert.assertNull(TileFingerprints.read(mapFile));
+
+			long configurationFingerprint = TileFingerprints.fingerprintConfiguration(this.configuration);
+			TileFingerprints tileFingerprints = new TileFingerprints(configurationFingerprint, Arrays.asList("amenity",
+					"shop"), Collections.singletonList("highway"), 2);
+			tileFingerprints.subfiles[0] = new TileFingerprints.Subfile((byte) 7, (byte) 5, (byte) 10, 68, 41, 1, 2);
+			tileFingerprints.subfiles[0].fingerprints[1] = -42;
+			tileFingerprints.subfiles[0].startAddress = 100;
+			tileFingerprints.subfiles[0].size = 200;
+			tileFingerprints.subfiles[1] = new TileFingerprints.Subfile((byte) 11, (byte) 11, (byte) 14, 1100, 670, 3,
+					1);
+			tileFingerprints.subfiles[1].fingerprints[2] = Long.MAX_VALUE;
+			tileFingerprints.write(mapFile, 1234);
+
+			TileFingerprints readFingerprints = TileFingerprints.read(mapFile);
+			Assert.assertNotNull(readFingerprints);
+			Assert.assertEquals(configurationFingerprint, readFingerprints.configuration);
+			Assert.assertEquals(1234, readFingerprints.creationDate);
+			Assert.assertEquals(0, readFingerprints.mapFileSize);
+			Assert.assertEquals(tileFingerprints.poiTags, readFingerprints.poiTags);
+			Assert.assertEquals(tileFingerprints.wayTags, readFingerprints.wayTags);
+			Assert.assertEquals(2, readFingerprints.subfiles.length);
+			for (int i = 0; i < 2; ++i) {
+				TileFingerprints.Subfile subfile = readFingerprints.subfiles[i];
+				Assert.assertTrue(subfile.hasSameTiles(tileFingerprints.subfiles[i]));
+				Assert.assertEquals(tileFingerprints.subfiles[i].startAddress, subfile.startAddress);
+				Assert.assertEquals(tileFingerprints.subfiles[i].size, subfile.size);
+				Assert.assertTrue(Arrays.equals(tileFingerprints.subfiles[i].fingerprints, subfile.fingerprints));
+			}
+			Assert.assertFalse(readFingerprints.subfiles[0].hasSameTiles(readFingerprints.subfiles[1]));
+		} finally {
+			Assert.assertTrue(mapFile.delete());
+			Assert.assertTrue(fingerprintFile.delete());
+		}
+	}
+}
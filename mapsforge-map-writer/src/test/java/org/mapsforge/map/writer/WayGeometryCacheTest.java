@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Tests the {@link WayGeometryCache} class.
+ */
+public class WayGeometryCacheTest {
+	private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+	private static Geometry createLineString(int numberOfPoints) {
+		Coordinate[] coordinates = new Coordinate[numberOfPoints];
+		for (int i = 0; i < numberOfPoints; ++i) {
+			coordinates[i] = new Coordinate(i, i % 2);
+		}
+		return GEOMETRY_FACTORY.createLineString(coordinates);
+	}
+
+	/**
+	 * Tests that the least recently used entries are evicted when the maximum weight is exceeded.
+	 */
+	@Test
+	public void evictionTest() {
+		WayGeometryCache wayGeometryCache = new WayGeometryCache(10);
+		wayGeometryCache.put(1, new WayGeometryCache.Entry(createLineString(4), false));
+		wayGeometryCache.put(2, new WayGeometryCache.Entry(createLineString(4), false));
+		wayGeometryCache.put(3, new WayGeometryCache.Entry(null, false));
+		Assert.assertEquals(3, wayGeometryCache.size());
+
+		// way 1 becomes the most recently used entry, so way 2 is evicted
+		Assert.assertNotNull(wayGeometryCache.get(1).preparedGeometry);
+		wayGeometryCache.put(4, new WayGeometryCache.Entry(createLineString(2), false));
+		Assert.assertNull(wayGeometryCache.get(2));
+		Assert.assertNull(wayGeometryCache.get(3).geometry);
+		Assert.assertNotNull(wayGeometryCache.get(4));
+		Assert.assertEquals(3, wayGeometryCache.size());
+
+		// geometries that exceed the maximum weight are not cached at all
+		wayGeometryCache.put(5, new WayGeometryCache.Entry(createLineString(11), false));
+		Assert.assertNull(wayGeometryCache.get(5));
+		Assert.assertEquals(3, wayGeometryCache.size());
+
+		Assert.assertEquals(3 / 5d, wayGeometryCache.getHitRate(), 0.0001);
+	}
+
+	/**
+	 * Tests that only labelled areas get a label position.
+	 */
+	@Test
+	public void labelPositionTest() {
+		Geometry area = GEOMETRY_FACTORY.createPolygon(GEOMETRY_FACTORY.createLinearRing(new Coordinate[] {
+				new Coordinate(0, 0), new Coordinate(0, 1), new Coordinate(1, 1), new Coordinate(1, 0),
+				new Coordinate(0, 0) }), null);
+		Assert.assertNotNull(new WayGeometryCache.Entry(area, true).labelPosition);
+		Assert.assertNull(new WayGeometryCache.Entry(area, false).labelPosition);
+	}
+}
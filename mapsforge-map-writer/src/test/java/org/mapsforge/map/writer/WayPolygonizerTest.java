@@ -27,6 +27,15 @@ import org.mapsforge.map.writer.model.TDWay;
  * @author bross
  */
 public class WayPolygonizerTest {
+	// creates a way from the ids and the offsets of its way nodes
+	private static TDWay createWay(long id, int[] nodeIds, int[] offsets) {
+		TDNode[] wayNodes = new TDNode[nodeIds.length];
+		for (int i = 0; i < nodeIds.length; i++) {
+			wayNodes[i] = new TDNode(nodeIds[i], 52000000 + offsets[2 * i], 13000000 + offsets[2 * i + 1], (short) 0,
+					(byte) 0, null, null);
+		}
+		return new TDWay(id, (byte) 0, null, null, null, wayNodes);
+	}
 
 	private WayPolygonizer polygonizer;
 	private TDWay[] ways;
@@ -147,4 +156,61 @@ public class WayPolygonizerTest {
 		Assert.assertTrue(this.polygonizer.getIllegal().size() == 0);
 	}
 
+	/**
+	 * Tests that polygons are related to the polygons which cover them.
+	 */
+	@Test
+	public void testRelatePolygons() {
+		TDWay separate = createWay(10, new int[] { 100, 101, 102, 103, 100 }, new int[] { 50000, 50000, 50000, 51000,
+				51000, 51000, 51000, 50000, 50000, 50000 });
+		// within the bounding box of the triangle, but outside of it
+		TDWay outside = createWay(11, new int[] { 110, 111, 112, 113, 110 }, new int[] { 8000, 8000, 8000, 9000,
+				9000, 9000, 9000, 8000, 8000, 8000 });
+		TDWay triangle = createWay(12, new int[] { 120, 121, 122, 120 }, new int[] { 0, 0, 0, 10000, 10000, 0, 0,
+				0 });
+		TDWay inner1 = createWay(13, new int[] { 130, 131, 132, 133, 130 }, new int[] { 5000, 1000, 5000, 2000, 6000,
+				2000, 6000, 1000, 5000, 1000 });
+		TDWay inner2Part1 = createWay(14, new int[] { 140, 141, 142 }, new int[] { 1000, 1000, 1000, 2000, 2000,
+				2000 });
+		TDWay inner2Part2 = createWay(15, new int[] { 140, 143, 142 }, new int[] { 1000, 1000, 2000, 1000, 2000,
+				2000 });
+
+		this.polygonizer.polygonizeAndRelate(new TDWay[] { separate, outside, inner2Part1, triangle, inner1,
+				inner2Part2 });
+		List<Deque<TDWay>> polygons = this.polygonizer.getPolygons();
+		Assert.assertEquals(5, polygons.size());
+		Assert.assertEquals(2, polygons.get(4).size());
+		Assert.assertTrue(this.polygonizer.getDangling().isEmpty());
+
+		Assert.assertArrayEquals(new int[] { 0, 1, 2 }, this.polygonizer.getOuterPolygons().toArray());
+		Assert.assertNull(this.polygonizer.getInnerPolygons(0));
+		Assert.assertNull(this.polygonizer.getInnerPolygons(1));
+		Assert.assertArrayEquals(new int[] { 3, 4 }, this.polygonizer.getInnerPolygons(2).toArray());
+	}
+
+	/**
+	 * Tests that the direction of the merged ways is only set on the ways when requested.
+	 */
+	@Test
+	public void testUpdateReversedInRelation() {
+		TDWay first = createWay(1, new int[] { 1, 2 }, new int[] { 0, 0, 0, 100 });
+		TDWay reversed = createWay(2, new int[] { 3, 2 }, new int[] { 100, 0, 0, 100 });
+		TDWay last = createWay(3, new int[] { 3, 1 }, new int[] { 100, 0, 0, 0 });
+		// left over from another relation
+		first.setReversedInRelation(true);
+
+		TDWay[] testWays = new TDWay[] { first, reversed, last };
+		this.polygonizer.polygonizeAndRelate(testWays);
+		Assert.assertEquals(1, this.polygonizer.getPolygons().size());
+		Assert.assertFalse(this.polygonizer.isReversed(first));
+		Assert.assertTrue(this.polygonizer.isReversed(reversed));
+		Assert.assertFalse(this.polygonizer.isReversed(last));
+		Assert.assertTrue(first.isReversedInRelation());
+		Assert.assertFalse(reversed.isReversedInRelation());
+
+		this.polygonizer.updateReversedInRelation(testWays);
+		Assert.assertFalse(first.isReversedInRelation());
+		Assert.assertTrue(reversed.isReversedInRelation());
+		Assert.assertFalse(last.isReversedInRelation());
+	}
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.procedure.TObjectProcedure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.map.writer.model.TDWay;
+
+/**
+ * Tests the {@link WayStore} class.
+ */
+public class WayStoreTest {
+	private static TDWay createWay(long id) {
+		long[] wayNodeIds = new long[] { id * 10, id * 10 + 1, id * 10 + 2 };
+		int[] wayNodeCoordinates = new int[] { 1, 2, 3, 4, (int) id, -(int) id };
+		String name = id % 2 == 0 ? "way " + id : null;
+		short[] tags = id % 3 == 0 ? null : new short[] { (short) id, 7 };
+		return new TDWay(id, (byte) 5, name, null, "A" + id, tags, TDWay.LINE, wayNodeIds, wayNodeCoordinates);
+	}
+
+	private static void assertWay(long id, TDWay way) {
+		TDWay expected = createWay(id);
+		Assert.assertEquals(expected.getId(), way.getId());
+		Assert.assertEquals(expected.getLayer(), way.getLayer());
+		Assert.assertEquals(expected.getShape(), way.getShape());
+		Assert.assertEquals(expected.getName(), way.getName());
+		Assert.assertNull(way.getHouseNumber());
+		Assert.assertEquals(expected.getRef(), way.getRef());
+		Assert.assertTrue(Arrays.equals(expected.getTags(), way.getTags()));
+		Assert.assertEquals(expected.getWayNodeCount(), way.getWayNodeCount());
+		for (int i = 0; i < way.getWayNodeCount(); ++i) {
+			Assert.assertEquals(expected.getWayNodeId(i), way.getWayNodeId(i));
+			Assert.assertEquals(expected.getWayNodeLatitude(i), way.getWayNodeLatitude(i));
+			Assert.assertEquals(expected.getWayNodeLongitude(i), way.getWayNodeLongitude(i));
+		}
+	}
+
+	/**
+	 * Tests that the ways can be read back before and after the file has been reordered.
+	 */
+	@Test
+	public void reorderTest() {
+		WayStore wayStore = new WayStore();
+		try {
+			for (long id = 1; id <= 6; ++id) {
+				wayStore.add(createWay(id));
+			}
+			Assert.assertEquals(6, wayStore.size());
+			assertWay(4, wayStore.get(4));
+			Assert.assertNull(wayStore.get(7));
+
+			List<TLongArrayList> wayIds = new ArrayList<TLongArrayList>();
+			wayIds.add(new TLongArrayList(new long[] { 5, 3 }));
+			wayIds.add(new TLongArrayList(new long[] { 3, 42, 1 }));
+			wayStore.reorder(wayIds.iterator());
+
+			final TLongArrayList order = new TLongArrayList();
+			wayStore.forEach(new TObjectProcedure<TDWay>() {
+				@Override
+				public boolean execute(TDWay way) {
+					order.add(way.getId());
+					return true;
+				}
+			});
+			Assert.assertEquals(new TLongArrayList(new long[] { 5, 3, 1, 2, 4, 6 }), order);
+
+			for (long id = 1; id <= 6; ++id) {
+				assertWay(id, wayStore.get(id));
+			}
+		} finally {
+			wayStore.release();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.model;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link BlockLayout} class.
+ */
+public class BlockLayoutTest {
+	private static void assertPermutation(BlockLayout blockLayout, int lengthX, int lengthY) {
+		boolean[] positions = new boolean[lengthX * lengthY];
+		for (int y = 0; y < lengthY; ++y) {
+			for (int x = 0; x < lengthX; ++x) {
+				int position = blockLayout.getPosition(x, y, lengthX, lengthY);
+				Assert.assertFalse(positions[position]);
+				positions[position] = true;
+				Assert.assertEquals(y * lengthX + x, blockLayout.getTileIndex(position, lengthX, lengthY));
+			}
+		}
+	}
+
+	/**
+	 * Tests that the positions of the tiles of a grid are a permutation and the tile index is its inverse.
+	 */
+	@Test
+	public void permutationTest() {
+		int[][] grids = { { 1, 1 }, { 2, 2 }, { 3, 5 }, { 7, 2 }, { 8, 8 }, { 13, 9 }, { 1, 17 }, { 100, 37 } };
+		for (int[] grid : grids) {
+			assertPermutation(BlockLayout.ROW_MAJOR, grid[0], grid[1]);
+			assertPermutation(BlockLayout.Z_ORDER, grid[0], grid[1]);
+		}
+	}
+
+	/**
+	 * Tests the positions of the tiles in Z-order.
+	 */
+	@Test
+	public void zOrderTest() {
+		// the quadrants of a square are visited upper left, upper right, lower left, lower right
+		Assert.assertEquals(0, BlockLayout.Z_ORDER.getPosition(0, 0, 4, 4));
+		Assert.assertEquals(1, BlockLayout.Z_ORDER.getPosition(1, 0, 4, 4));
+		Assert.assertEquals(2, BlockLayout.Z_ORDER.getPosition(0, 1, 4, 4));
+		Assert.assertEquals(3, BlockLayout.Z_ORDER.getPosition(1, 1, 4, 4));
+		Assert.assertEquals(4, BlockLayout.Z_ORDER.getPosition(2, 0, 4, 4));
+		Assert.assertEquals(8, BlockLayout.Z_ORDER.getPosition(0, 2, 4, 4));
+		Assert.assertEquals(15, BlockLayout.Z_ORDER.getPosition(3, 3, 4, 4));
+
+		// the tiles outside of a 3x3 grid are skipped
+		Assert.assertEquals(3, BlockLayout.Z_ORDER.getPosition(1, 1, 3, 3));
+		Assert.assertEquals(4, BlockLayout.Z_ORDER.getPosition(2, 0, 3, 3));
+		Assert.assertEquals(5, BlockLayout.Z_ORDER.getPosition(2, 1, 3, 3));
+		Assert.assertEquals(6, BlockLayout.Z_ORDER.getPosition(0, 2, 3, 3));
+		Assert.assertEquals(8, BlockLayout.Z_ORDER.getPosition(2, 2, 3, 3));
+
+		// a single row is stored from left to right
+		for (int x = 0; x < 5; ++x) {
+			Assert.assertEquals(x, BlockLayout.Z_ORDER.getPosition(x, 0, 5, 1));
+		}
+
+		Assert.assertEquals(BlockLayout.Z_ORDER, BlockLayout.fromString("Z-Order"));
+		Assert.assertEquals(BlockLayout.ROW_MAJOR, BlockLayout.fromString("hilbert"));
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.model;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link Shard} class.
+ */
+public class ShardTest {
+	private static final Rect BOUNDING_BOX = new Rect(13.0, 13.3, 52.0, 52.1);
+	private static final ZoomIntervalConfiguration ZOOM_INTERVAL_CONFIGURATION = ZoomIntervalConfiguration
+			.fromString("12,10,13,15,14,17");
+
+	/**
+	 * Tests that the shards cover the tiles of all sub files exactly once and have tile aligned inner edges.
+	 */
+	@Test
+	public void getBoundingBoxTest() {
+		int count = 5;
+		Rect[] boundingBoxes = new Rect[count];
+		for (int i = 0; i < count; ++i) {
+			boundingBoxes[i] = new Shard(i, count).getBoundingBox(BOUNDING_BOX, ZOOM_INTERVAL_CONFIGURATION);
+			Assert.assertEquals(BOUNDING_BOX.minLatitudeE6, boundingBoxes[i].minLatitudeE6);
+			Assert.assertEquals(BOUNDING_BOX.maxLatitudeE6, boundingBoxes[i].maxLatitudeE6);
+		}
+		Assert.assertEquals(BOUNDING_BOX.minLongitudeE6, boundingBoxes[0].minLongitudeE6);
+		Assert.assertEquals(BOUNDING_BOX.maxLongitudeE6, boundingBoxes[count - 1].maxLongitudeE6);
+
+		for (int interval = 0; interval < ZOOM_INTERVAL_CONFIGURATION.getNumberOfZoomIntervals(); ++interval) {
+			byte baseZoom = ZOOM_INTERVAL_CONFIGURATION.getBaseZoom(interval);
+			TileGridLayout tileGridLayout = TileGridLayout.fromBoundingBox(BOUNDING_BOX, baseZoom);
+			int nextColumn = tileGridLayout.getUpperLeft().getX();
+			for (int i = 0; i < count; ++i) {
+				TileGridLayout shardLayout = TileGridLayout.fromBoundingBox(boundingBoxes[i], baseZoom);
+				Assert.assertEquals(nextColumn, shardLayout.getUpperLeft().getX());
+				Assert.assertEquals(tileGridLayout.getUpperLeft().getY(), shardLayout.getUpperLeft().getY());
+				Assert.assertEquals(tileGridLayout.getAmountTilesVertical(), shardLayout.getAmountTilesVertical());
+				Assert.assertTrue(shardLayout.getAmountTilesHorizontal() > 0);
+				nextColumn += shardLayout.getAmountTilesHorizontal();
+			}
+			Assert.assertEquals(tileGridLayout.getUpperLeft().getX() + tileGridLayout.getAmountTilesHorizontal(),
+					nextColumn);
+		}
+	}
+
+	/**
+	 * Tests the parsing of shards and the rejection of invalid shards.
+	 */
+	@Test
+	public void fromStringTest() {
+		Shard shard = Shard.fromString("2/8");
+		Assert.assertEquals(2, shard.getIndex());
+		Assert.assertEquals(8, shard.getCount());
+		Assert.assertEquals("2/8", shard.toString());
+
+		String[] invalidShards = { "8/8", "-1/8", "1", "a/b", "1/2/3" };
+		for (String invalidShard : invalidShards) {
+			try {
+				Shard.fromString(invalidShard);
+				Assert.fail(invalidShard);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Tests that a bounding box cannot be split into more shards than it spans tile columns on the lowest base zoom
+	 * level.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void tooManyShardsTest() {
+		// the bounding box spans five columns on base zoom level 12
+		new Shard(5, 6).getBoundingBox(BOUNDING_BOX, ZOOM_INTERVAL_CONFIGURATION);
+	}
+}
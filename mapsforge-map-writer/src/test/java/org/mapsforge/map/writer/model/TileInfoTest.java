@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.model;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link TileInfo} class.
+ */
+public class TileInfoTest {
+	private static final int LAND = 0x1;
+	private static final int SEA = 0x2;
+
+	private static void set(ByteBuffer oceanTiles, int x, int y, int value) {
+		int index = y * 4096 + x;
+		int shift = 6 - 2 * (index & 3);
+		byte b = oceanTiles.get(index >>> 2);
+		oceanTiles.put(index >>> 2, (byte) (b & ~(0x3 << shift) | value << shift));
+	}
+
+	private static boolean isSea(ByteBuffer oceanTiles, int x, int y) {
+		int index = y * 4096 + x;
+		return (oceanTiles.get(index >>> 2) >> 6 - 2 * (index & 3) & 0x3) == SEA;
+	}
+
+	// the water tiles of all zoom levels up to zoom level 12, a tile is water if all of its four subtiles are water
+	private static BitSet[] getWaterTiles(ByteBuffer oceanTiles) {
+		BitSet[] waterTiles = new BitSet[TileInfo.TILE_INFO_ZOOMLEVEL + 1];
+		waterTiles[TileInfo.TILE_INFO_ZOOMLEVEL] = new BitSet(1 << 2 * TileInfo.TILE_INFO_ZOOMLEVEL);
+		for (int y = 0; y < 1 << TileInfo.TILE_INFO_ZOOMLEVEL; ++y) {
+			for (int x = 0; x < 1 << TileInfo.TILE_INFO_ZOOMLEVEL; ++x) {
+				if (isSea(oceanTiles, x, y)) {
+					waterTiles[TileInfo.TILE_INFO_ZOOMLEVEL].set(y << TileInfo.TILE_INFO_ZOOMLEVEL | x);
+				}
+			}
+		}
+		for (int zoom = TileInfo.TILE_INFO_ZOOMLEVEL - 1; zoom >= 0; --zoom) {
+			BitSet subtiles = waterTiles[zoom + 1];
+			waterTiles[zoom] = new BitSet(1 << 2 * zoom);
+			for (int y = 0; y < 1 << zoom; ++y) {
+				for (int x = 0; x < 1 << zoom; ++x) {
+					int upperLeft = 2 * y << zoom + 1 | 2 * x;
+					int lowerLeft = (2 * y + 1) << zoom + 1 | 2 * x;
+					if (subtiles.get(upperLeft) && subtiles.get(upperLeft + 1) && subtiles.get(lowerLeft)
+							&& subtiles.get(lowerLeft + 1)) {
+						waterTiles[zoom].set(y << zoom | x);
+					}
+				}
+			}
+		}
+		return waterTiles;
+	}
+
+	private static boolean isWaterTile(BitSet[] waterTiles, TileCoordinate tileCoordinate) {
+		int zoom = Math.min(tileCoordinate.getZoomlevel(), TileInfo.TILE_INFO_ZOOMLEVEL);
+		int shift = tileCoordinate.getZoomlevel() - zoom;
+		return waterTiles[zoom].get((tileCoordinate.getY() >> shift) << zoom | tileCoordinate.getX() >> shift);
+	}
+
+	/**
+	 * Tests the lookups on zoom levels below, at and above zoom level 12.
+	 */
+	@Test
+	public void isWaterTileTest() {
+		// the upper left quarter of the world is sea except for a single land tile and a mixed tile
+		ByteBuffer oceanTiles = ByteBuffer.allocate(0x400000);
+		for (int y = 0; y < 2048; ++y) {
+			for (int x = 0; x < 2048; ++x) {
+				set(oceanTiles, x, y, SEA);
+			}
+		}
+		set(oceanTiles, 1000, 1500, LAND);
+		set(oceanTiles, 2000, 100, 0);
+		TileInfo tileInfo = new TileInfo(oceanTiles);
+
+		Assert.assertFalse(tileInfo.isWaterTile(new TileCoordinate(0, 0, (byte) 0)));
+		Assert.assertFalse(tileInfo.isWaterTile(new TileCoordinate(0, 0, (byte) 1)));
+		Assert.assertTrue(tileInfo.isWaterTile(new TileCoordinate(0, 0, (byte) 2)));
+		Assert.assertFalse(tileInfo.isWaterTile(new TileCoordinate(1, 0, (byte) 2)));
+		Assert.assertFalse(tileInfo.isWaterTile(new TileCoordinate(0, 1, (byte) 2)));
+		Assert.assertTrue(tileInfo.isWaterTile(new TileCoordinate(999, 1500, (byte) 12)));
+		Assert.assertFalse(tileInfo.isWaterTile(new TileCoordinate(1000, 1500, (byte) 12)));
+		Assert.assertFalse(tileInfo.isWaterTile(new TileCoordinate(2000 * 4 + 3, 100 * 4, (byte) 14)));
+		Assert.assertTrue(tileInfo.isWaterTile(new TileCoordinate(2001 * 4, 100 * 4, (byte) 14)));
+
+		// the reference reduces the tiles of zoom level 12 level by level instead of visiting all subtiles per lookup
+		BitSet[] waterTiles = getWaterTiles(oceanTiles);
+		Random random = new Random(1);
+		for (byte zoom = 0; zoom <= 14; ++zoom) {
+			for (int i = 0; i < 200; ++i) {
+				// half of the tiles close to the land tile
+				int x;
+				int y;
+				if (i % 2 == 0) {
+					int maximum = (1 << zoom) - 1;
+					x = Math.max(0, Math.min(maximum, ((1000 << zoom) >> 12) + random.nextInt(5) - 2));
+					y = Math.max(0, Math.min(maximum, ((1500 << zoom) >> 12) + random.nextInt(5) - 2));
+				} else {
+					x = random.nextInt(1 << zoom);
+					y = random.nextInt(1 << zoom);
+				}
+				TileCoordinate tileCoordinate = new TileCoordinate(x, y, zoom);
+				Assert.assertEquals(tileCoordinate.toString(), isWaterTile(waterTiles, tileCoordinate),
+						tileInfo.isWaterTile(tileCoordinate));
+			}
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.osmosis;
+
+import gnu.trove.set.TLongSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.map.writer.model.Rect;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.mapsforge.map.writer.model.TileCoordinate;
+import org.mapsforge.map.writer.model.TileData;
+import org.mapsforge.map.writer.model.TileGridLayout;
+import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Tests the {@link ConversionPipeline} class.
+ */
+public class ConversionPipelineTest {
+	/**
+	 * Records the order in which the entities are added and whether ways are converted before all nodes are added.
+	 */
+	private static final class RecordingDataProcessor implements TileBasedDataProcessor {
+		final List<Long> addedIds = new ArrayList<Long>();
+		final AtomicInteger addedNodes = new AtomicInteger();
+		final AtomicInteger earlyWayConversions = new AtomicInteger();
+		private final int numberOfNodes;
+
+		RecordingDataProcessor(int numberOfNodes) {
+			this.numberOfNodes = numberOfNodes;
+		}
+
+		@Override
+		public void addNode(Node node) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addNode(Node node, TDNode tdNode) {
+			Assert.assertEquals(node.getId(), tdNode.getId());
+			this.addedIds.add(Long.valueOf(node.getId()));
+			this.addedNodes.incrementAndGet();
+		}
+
+		@Override
+		public void addRelation(Relation relation) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addWay(Way way) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addWay(Way way, TDWay tdWay) {
+			// every third way is invalid
+			Assert.assertEquals(way.getId() % 3 == 0, tdWay == null);
+			this.addedIds.add(Long.valueOf(way.getId()));
+		}
+
+		@Override
+		public void complete() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TDNode convertNode(Node node) {
+			return new TDNode(node.getId(), 0, 0, (short) 0, (byte) 0, null, null);
+		}
+
+		@Override
+		public TDWay convertWay(Way way) {
+			if (this.addedNodes.get() != this.numberOfNodes) {
+				this.earlyWayConversions.incrementAndGet();
+			}
+			if (way.getId() % 3 == 0) {
+				return null;
+			}
+			return new TDWay(way.getId(), (byte) 0, null, null, null, new TDNode[0]);
+		}
+
+		@Override
+		public long cumulatedNumberOfTiles() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Rect getBoundingBox() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Set<TDWay> getCoastLines(TileCoordinate tc) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TLongSet getJunctionNodes() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<TDWay> getInnerWaysOfMultipolygon(long outerWayID) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TileData getTile(int baseZoomIndex, int tileCoordinateX, int tileCoordinateY) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TileGridLayout getTileGridLayout(int zoomIntervalIndex) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public ZoomIntervalConfiguration getZoomIntervalConfiguration() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void release() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void releaseTileRow(int baseZoomIndex, int tileCoordinateY) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static CommonEntityData createEntityData(long id) {
+		return new CommonEntityData(id, 1, new Date(0), OsmUser.NONE, 1);
+	}
+
+	/**
+	 * Tests that all entities are added in the order of the input and that ways are only converted once all nodes have
+	 * been added.
+	 */
+	@Test
+	public void conversionPipelineTest() {
+		int numberOfNodes = 10000;
+		RecordingDataProcessor dataProcessor = new RecordingDataProcessor(numberOfNodes);
+		ConversionPipeline conversionPipeline = new ConversionPipeline(dataProcessor, 4);
+		List<Long> ids = new ArrayList<Long>();
+		try {
+			for (long id = 1; id <= numberOfNodes; ++id) {
+				conversionPipeline.addNode(new Node(createEntityData(id), 52, 13));
+				ids.add(Long.valueOf(id));
+			}
+			List<WayNode> wayNodes = Collections.singletonList(new WayNode(1));
+			for (long id = numberOfNodes + 1; id <= 3 * numberOfNodes; ++id) {
+				conversionPipeline.addWay(new Way(createEntityData(id), wayNodes));
+				ids.add(Long.valueOf(id));
+			}
+			conversionPipeline.flush();
+		} finally {
+			conversionPipeline.release();
+		}
+
+		Assert.assertEquals(ids, dataProcessor.addedIds);
+		Assert.assertEquals(0, dataProcessor.earlyWayConversions.get());
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.osmosis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Tests the {@link MapFileWriterTask} class.
+ */
+public class MapFileWriterTaskTest {
+	/**
+	 * Offset and length of the creation date in the file header.
+	 */
+	private static final int CREATION_DATE_OFFSET = 36;
+	private static final int CREATION_DATE_LENGTH = 8;
+
+	private static final int MINIMUM_FILE_SIZE = 10000;
+	private static final int NUMBER_OF_RELATIONS = 40;
+	private static final int THREAD_POOL_SIZE = 4;
+
+	private static CommonEntityData createEntityData(long id, Tag... tags) {
+		return new CommonEntityData(id, 1, new Date(0), OsmUser.NONE, 1, new ArrayList<Tag>(Arrays.asList(tags)));
+	}
+
+	/**
+	 * Creates a synthetic input with multipolygon relations whose outer ways are split into segments, inner rings,
+	 * ways shared by two relations, crossing lines and POIs. The entities are ordered nodes, ways, relations.
+	 */
+	private static List<EntityContainer> createEntities() {
+		Random random = new Random(42);
+		List<EntityContainer> nodes = new ArrayList<EntityContainer>();
+		List<EntityContainer> ways = new ArrayList<EntityContainer>();
+		List<EntityContainer> relations = new ArrayList<EntityContainer>();
+		long[] nextIds = new long[] { 1, 1 };
+
+		long[] previousSegments = null;
+		for (int k = 0; k < NUMBER_OF_RELATIONS; ++k) {
+			double latitude = 52 + random.nextDouble() * 0.1;
+			double longitude = 13 + random.nextDouble() * 0.1;
+			int numberOfNodes = 30 + random.nextInt(100);
+			long[] outer = createRing(nodes, nextIds, random, latitude, longitude, 0.005, numberOfNodes);
+			int split1 = numberOfNodes / 3;
+			int split2 = 2 * numberOfNodes / 3;
+			Tag coastline = k % 5 == 0 ? new Tag("natural", "coastline") : null;
+			long[] segments = new long[] { createWay(ways, nextIds, outer, 0, split1, false, coastline),
+					createWay(ways, nextIds, outer, split1, split2, random.nextBoolean(), null),
+					createWay(ways, nextIds, outer, split2, numberOfNodes, random.nextBoolean(), null) };
+
+			List<RelationMember> members = new ArrayList<RelationMember>();
+			for (int i = segments.length - 1; i >= 0; --i) {
+				members.add(new RelationMember(segments[i], EntityType.Way, "outer"));
+			}
+			int numberOfInnerRings = random.nextInt(4);
+			for (int i = 0; i < numberOfInnerRings; ++i) {
+				long[] inner = createRing(nodes, nextIds, random, latitude + (i - 1.5) * 0.001, longitude, 0.0004,
+						8 + random.nextInt(20));
+				long innerWay = createWay(ways, nextIds, inner, 0, inner.length - 1, random.nextBoolean(),
+						i == 0 ? new Tag("natural", "beach") : null);
+				members.add(new RelationMember(innerWay, EntityType.Way, "inner"));
+			}
+			relations.add(new RelationContainer(new Relation(createEntityData(k + 1, new Tag("type", "multipolygon"),
+					new Tag("natural", "beach"), new Tag("name", "r" + k)), members)));
+
+			// the segments of the previous relation are also used by a second relation
+			if (previousSegments != null && k % 3 == 0) {
+				List<RelationMember> sharedMembers = new ArrayList<RelationMember>();
+				for (long segment : previousSegments) {
+					sharedMembers.add(new RelationMember(segment, EntityType.Way, "outer"));
+				}
+				relations.add(new RelationContainer(new Relation(createEntityData(1000 + k, new Tag("type",
+						"multipolygon"), new Tag("natural", "beach"), new Tag("name", "s" + k)), sharedMembers)));
+			}
+			previousSegments = segments;
+
+			// a line crossing the polygon and a POI within it
+			long[] road = createRing(nodes, nextIds, random, latitude, longitude, 0.01, 6);
+			createWay(ways, nextIds, road, 0, 3, false, new Tag("natural", "coastline"));
+			nodes.add(new NodeContainer(new Node(createEntityData(nextIds[0]++, new Tag("amenity", "university"),
+					new Tag("name", "p" + k)), latitude, longitude)));
+		}
+
+		List<EntityContainer> entities = new ArrayList<EntityContainer>(nodes);
+		entities.addAll(ways);
+		entities.addAll(relations);
+		return entities;
+	}
+
+	private static long[] createRing(List<EntityContainer> nodes, long[] nextIds, Random random, double latitude,
+			double longitude, double radius, int numberOfNodes) {
+		long[] ids = new long[numberOfNodes + 1];
+		for (int i = 0; i < numberOfNodes; ++i) {
+			double angle = 2 * Math.PI * i / numberOfNodes;
+			double distance = radius * (0.8 + 0.2 * random.nextDouble());
+			ids[i] = nextIds[0]++;
+			nodes.add(new NodeContainer(new Node(createEntityData(ids[i]), latitude + distance * Math.sin(angle),
+					longitude + distance * Math.cos(angle))));
+		}
+		ids[numberOfNodes] = ids[0];
+		return ids;
+	}
+
+	private static long createWay(List<EntityContainer> ways, long[] nextIds, long[] nodeIds, int from, int to,
+			boolean reversed, Tag tag) {
+		List<WayNode> wayNodes = new ArrayList<WayNode>();
+		for (int i = from; i <= to; ++i) {
+			wayNodes.add(new WayNode(nodeIds[reversed ? to - (i - from) : i]));
+		}
+		long id = nextIds[1]++;
+		ways.add(new WayContainer(new Way(createEntityData(id, tag == null ? new Tag[0] : new Tag[] { tag }),
+				wayNodes)));
+		return id;
+	}
+
+	private static byte[] readWithoutCreationDate(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			byte[] data = new byte[(int) randomAccessFile.length()];
+			randomAccessFile.readFully(data);
+			Arrays.fill(data, CREATION_DATE_OFFSET, CREATION_DATE_OFFSET + CREATION_DATE_LENGTH, (byte) 0);
+			return data;
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private final List<File> files = new ArrayList<File>();
+
+	/**
+	 * Deletes the map files of the test.
+	 */
+	@After
+	public void tearDown() {
+		for (File file : this.files) {
+			Assert.assertTrue(file.delete());
+		}
+	}
+
+	private byte[] writeMapFile(List<EntityContainer> entities, String dataProcessorType, int threadPoolSize)
+			throws IOException {
+		File file = File.createTempFile("mapsforge-writer", ".map");
+		this.files.add(file);
+
+		MapWriterConfiguration mapWriterConfiguration = new MapWriterConfiguration();
+		// src/test/resources/tag-mapping.xml via the class path
+		mapWriterConfiguration.loadTagMappingFile(null);
+		mapWriterConfiguration.setOutputFile(file);
+		mapWriterConfiguration.addBboxConfiguration("52,13,52.1,13.1");
+		mapWriterConfiguration.addZoomIntervalConfiguration("5,0,7,10,8,11,14,12,18");
+		mapWriterConfiguration.setPolygonClipping(true);
+		mapWriterConfiguration.setWayClipping(true);
+		mapWriterConfiguration.setSimplification(0.00001);
+		mapWriterConfiguration.setDataProcessorType(dataProcessorType);
+		mapWriterConfiguration.setBboxEnlargement(10);
+		mapWriterConfiguration.addEncodingChoice("auto");
+		mapWriterConfiguration.setThreadPoolSize(threadPoolSize);
+		mapWriterConfiguration.validate();
+
+		MapFileWriterTask mapFileWriterTask = new MapFileWriterTask(mapWriterConfiguration);
+		try {
+			for (EntityContainer entityContainer : entities) {
+				mapFileWriterTask.process(entityContainer);
+			}
+			mapFileWriterTask.complete();
+		} finally {
+			mapFileWriterTask.release();
+		}
+		return readWithoutCreationDate(file);
+	}
+
+	/**
+	 * Tests that a multi-threaded write produces the same file as a single-threaded write for every data processor
+	 * type and that the HD and the streaming data processor produce the same file.
+	 * 
+	 * @throws IOException
+	 *             thrown if any IO error occurs
+	 */
+	@Test
+	public void threadPoolSizeTest() throws IOException {
+		List<EntityContainer> entities = Collections.unmodifiableList(createEntities());
+
+		for (String dataProcessorType : new String[] { "ram", "hd", "stream" }) {
+			byte[] singleThreaded = writeMapFile(entities, dataProcessorType, 1);
+			byte[] multiThreaded = writeMapFile(entities, dataProcessorType, THREAD_POOL_SIZE);
+			Assert.assertTrue(singleThreaded.length > MINIMUM_FILE_SIZE);
+			Assert.assertTrue(dataProcessorType, Arrays.equals(singleThreaded, multiThreaded));
+		}
+
+		Assert.assertTrue(Arrays.equals(writeMapFile(entities, "hd", THREAD_POOL_SIZE),
+				writeMapFile(entities, "stream", THREAD_POOL_SIZE)));
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Tests the {@link ArcSimplifier} class.
+ */
+public class ArcSimplifierTest {
+	private static final int BORDER_NODES = 21;
+	private static final double TOLERANCE = 0.0001;
+
+	// the nodes 100 to 120 form a zigzag line from west to east which rises to node 110 and falls again
+	private static TDNode[] createBorder() {
+		TDNode[] border = new TDNode[BORDER_NODES];
+		for (int i = 0; i < BORDER_NODES; ++i) {
+			int latitude = 52000000 + (i % 2) * 10 + (BORDER_NODES / 2 - Math.abs(i - BORDER_NODES / 2)) * 100;
+			border[i] = new TDNode(100 + i, latitude, 13000000 + i * 1000, (short) 0, (byte) 0, null, null);
+		}
+		return border;
+	}
+
+	private static TDNode createNode(long id, int latitude, int longitude) {
+		return new TDNode(id, latitude, longitude, (short) 0, (byte) 0, null, null);
+	}
+
+	private static TDWay createWay(long id, List<TDNode> wayNodes) {
+		return new TDWay(id, (byte) 0, null, null, null, wayNodes.toArray(new TDNode[wayNodes.size()]));
+	}
+
+	/**
+	 * Tests that the common border of two adjacent areas is simplified in the same way, although the areas traverse
+	 * it in opposite directions and start at different nodes.
+	 */
+	@Test
+	public void sharedBorderTest() {
+		TDNode[] border = createBorder();
+
+		// the northern area starts at the western end of the border
+		List<TDNode> northernNodes = new ArrayList<TDNode>(Arrays.asList(border));
+		northernNodes.add(createNode(1, 52010000, 13020000));
+		northernNodes.add(createNode(2, 52010000, 13000000));
+		northernNodes.add(border[0]);
+
+		// the southern area starts at the eastern end of the border
+		List<TDNode> southernNodes = new ArrayList<TDNode>(Arrays.asList(border));
+		Collections.reverse(southernNodes);
+		southernNodes.add(createNode(3, 51990000, 13000000));
+		southernNodes.add(createNode(4, 51990000, 13020000));
+		southernNodes.add(border[BORDER_NODES - 1]);
+
+		TLongSet junctionNodes = new TLongHashSet(new long[] { 100, 120 });
+		List<Coordinate> northern = Arrays.asList(ArcSimplifier.simplify(createWay(1, northernNodes), TOLERANCE,
+				junctionNodes));
+		List<Coordinate> southern = Arrays.asList(ArcSimplifier.simplify(createWay(2, southernNodes), TOLERANCE,
+				junctionNodes));
+
+		// the zigzag is removed, the ends and the peak of the border remain
+		Assert.assertEquals(6, northern.size());
+		List<Coordinate> northernBorder = new ArrayList<Coordinate>(northern.subList(0, 3));
+		List<Coordinate> southernBorder = new ArrayList<Coordinate>(southern.subList(0, 3));
+		Collections.reverse(southernBorder);
+		Assert.assertEquals(northernBorder, southernBorder);
+		Assert.assertEquals(52.001, northernBorder.get(1).y, 0.000001);
+	}
+
+	/**
+	 * Tests that a closed way which would collapse is not simplified and that a closed way starts at a junction node.
+	 */
+	@Test
+	public void closedWayTest() {
+		// a small triangle
+		List<TDNode> triangle = new ArrayList<TDNode>();
+		triangle.add(createNode(1, 52000000, 13000000));
+		triangle.add(createNode(2, 52000010, 13000000));
+		triangle.add(createNode(3, 52000010, 13000010));
+		triangle.add(triangle.get(0));
+		Assert.assertEquals(4, ArcSimplifier.simplify(createWay(1, triangle), TOLERANCE, new TLongHashSet()).length);
+
+		// the border and a straight way back, the junction node 119 becomes the first node
+		List<TDNode> ring = new ArrayList<TDNode>();
+		ring.add(createNode(1, 52000000, 13020000));
+		ring.addAll(Arrays.asList(createBorder()).subList(0, BORDER_NODES - 1));
+		ring.add(ring.get(0));
+		Coordinate[] coordinates = ArcSimplifier.simplify(createWay(2, ring), TOLERANCE, new TLongHashSet(
+				new long[] { 119 }));
+		Assert.assertEquals(13.019, coordinates[0].x, 0.000001);
+		Assert.assertEquals(coordinates[0], coordinates[coordinates.length - 1]);
+	}
+}
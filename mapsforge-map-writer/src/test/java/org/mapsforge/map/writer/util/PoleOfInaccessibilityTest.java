@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.map.writer.model.GeoCoordinate;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Tests the {@link PoleOfInaccessibility} class.
+ */
+public class PoleOfInaccessibilityTest {
+	private static final double DELTA = 0.0001;
+	private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+	private static Geometry read(String wellKnownText) throws ParseException {
+		return new WKTReader(GEOMETRY_FACTORY).read(wellKnownText);
+	}
+
+	/**
+	 * Tests the label position of a square close to the equator.
+	 * 
+	 * @throws ParseException
+	 *             thrown if the geometry cannot be parsed
+	 */
+	@Test
+	public void squareTest() throws ParseException {
+		Coordinate labelPosition = PoleOfInaccessibility.compute((Polygon) read(
+				"POLYGON ((0 0, 0.01 0, 0.01 0.01, 0 0.01, 0 0))"));
+		Assert.assertEquals(0.005, labelPosition.x, DELTA);
+		Assert.assertEquals(0.005, labelPosition.y, DELTA);
+	}
+
+	/**
+	 * Tests that the label of a U-shaped area, whose centroid lies outside of it, is placed inside of the area.
+	 * 
+	 * @throws ParseException
+	 *             thrown if the geometry cannot be parsed
+	 */
+	@Test
+	public void concavePolygonTest() throws ParseException {
+		Polygon polygon = (Polygon) read("POLYGON ((13 52, 13.03 52, 13.03 52.03, 13.02 52.03, 13.02 52.01, "
+				+ "13.01 52.01, 13.01 52.03, 13 52.03, 13 52))");
+		Assert.assertFalse(polygon.contains(polygon.getCentroid()));
+
+		Coordinate labelPosition = PoleOfInaccessibility.compute(polygon);
+		Assert.assertTrue(polygon.contains(GEOMETRY_FACTORY.createPoint(labelPosition)));
+	}
+
+	/**
+	 * Tests that the label is placed away from a hole and in the largest polygon of a multipolygon.
+	 * 
+	 * @throws ParseException
+	 *             thrown if the geometry cannot be parsed
+	 */
+	@Test
+	public void computeLabelPositionTest() throws ParseException {
+		Geometry multiPolygon = read("MULTIPOLYGON (((0 0, 0.001 0, 0.001 0.001, 0 0.001, 0 0)), "
+				+ "((1 0, 1.04 0, 1.04 0.04, 1 0.04, 1 0), (1.01 0.01, 1.03 0.01, 1.03 0.03, 1.01 0.03, 1.01 0.01)))");
+		GeoCoordinate labelPosition = GeoUtils.computeLabelPosition(multiPolygon);
+		Assert.assertTrue(multiPolygon.getGeometryN(1).contains(
+				GEOMETRY_FACTORY.createPoint(new Coordinate(labelPosition.getLongitude(), labelPosition
+						.getLatitude()))));
+		// the farthest points from the boundary lie in the corners of the ring around the hole, about 0.00586 away
+		double distance = multiPolygon.getGeometryN(1).getBoundary()
+				.distance(GEOMETRY_FACTORY.createPoint(new Coordinate(labelPosition.getLongitude(),
+						labelPosition.getLatitude())));
+		Assert.assertTrue(distance > 0.0055);
+
+		Assert.assertNull(GeoUtils.computeLabelPosition(read("LINESTRING (0 0, 1 1)")));
+	}
+}
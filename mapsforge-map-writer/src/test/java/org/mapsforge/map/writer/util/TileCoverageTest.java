@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.map.writer.model.GeoCoordinate;
+import org.mapsforge.map.writer.model.MercatorProjection;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileCoordinate;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Tests the {@link TileCoverage} class.
+ */
+public class TileCoverageTest {
+	private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+	private static TDWay createWay(Random random, int numberOfNodes, boolean closed, double extent) {
+		long[] ids = new long[closed ? numberOfNodes + 1 : numberOfNodes];
+		int[] coordinates = new int[ids.length * 2];
+		double latitude = 52 + random.nextDouble();
+		double longitude = 13 + random.nextDouble();
+		for (int i = 0; i < numberOfNodes; ++i) {
+			ids[i] = i + 1;
+			if (closed) {
+				// a star-shaped polygon around the start point
+				double angle = 2 * Math.PI * i / numberOfNodes;
+				double radius = extent * (0.2 + random.nextDouble());
+				coordinates[2 * i] = GeoCoordinate.doubleToInt(latitude + radius * Math.sin(angle));
+				coordinates[2 * i + 1] = GeoCoordinate.doubleToInt(longitude + radius * Math.cos(angle));
+			} else {
+				coordinates[2 * i] = GeoCoordinate.doubleToInt(latitude);
+				coordinates[2 * i + 1] = GeoCoordinate.doubleToInt(longitude);
+				latitude += (random.nextDouble() - 0.5) * extent;
+				longitude += (random.nextDouble() - 0.5) * extent;
+			}
+		}
+		if (closed) {
+			ids[numberOfNodes] = ids[0];
+			coordinates[2 * numberOfNodes] = coordinates[0];
+			coordinates[2 * numberOfNodes + 1] = coordinates[1];
+		}
+		return new TDWay(1, (byte) 0, null, null, null, null, TDWay.LINE, ids, coordinates);
+	}
+
+	// tests each tile of the bounding box for intersection with the way
+	private static Set<TileCoordinate> mapWayToTilesJTS(TDWay way, byte zoom, int enlargementInMeter) {
+		Coordinate[] coordinates = new Coordinate[way.getWayNodeCount()];
+		for (int i = 0; i < coordinates.length; i++) {
+			coordinates[i] = new Coordinate(GeoCoordinate.intToDouble(way.getWayNodeLongitude(i)),
+					GeoCoordinate.intToDouble(way.getWayNodeLatitude(i)));
+		}
+		Geometry geometry = way.isPolygon() ? GEOMETRY_FACTORY.createPolygon(
+				GEOMETRY_FACTORY.createLinearRing(coordinates), null) : GEOMETRY_FACTORY.createLineString(coordinates);
+
+		// the same bounding box as in GeoUtils
+		Envelope envelope = geometry.getEnvelopeInternal();
+		double latitudeEnlargement = GeoCoordinate.latitudeDistance(enlargementInMeter);
+		long minX = MercatorProjection.longitudeToTileX(
+				envelope.getMinX() - GeoCoordinate.longitudeDistance(enlargementInMeter, envelope.getMaxY()), zoom);
+		long maxX = MercatorProjection.longitudeToTileX(
+				envelope.getMaxX() + GeoCoordinate.longitudeDistance(enlargementInMeter, envelope.getMinY()), zoom);
+		long minY = MercatorProjection.latitudeToTileY(envelope.getMaxY() + latitudeEnlargement, zoom);
+		long maxY = MercatorProjection.latitudeToTileY(envelope.getMinY() - latitudeEnlargement, zoom);
+
+		Set<TileCoordinate> tiles = new HashSet<TileCoordinate>();
+		for (long x = minX; x <= maxX; ++x) {
+			for (long y = minY; y <= maxY; ++y) {
+				double enlargement = GeoCoordinate.longitudeDistance(enlargementInMeter,
+						MercatorProjection.tileYToLatitude(y, zoom));
+				Envelope tile = new Envelope(MercatorProjection.tileXToLongitude(x, zoom) - enlargement,
+						MercatorProjection.tileXToLongitude(x + 1, zoom) + enlargement,
+						MercatorProjection.tileYToLatitude(y + 1, zoom) - latitudeEnlargement,
+						MercatorProjection.tileYToLatitude(y, zoom) + latitudeEnlargement);
+				if (GEOMETRY_FACTORY.toGeometry(tile).intersects(geometry)) {
+					tiles.add(new TileCoordinate((int) x, (int) y, zoom));
+				}
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Tests that the tiles of random lines and polygons equal the tiles whose enlarged bounding boxes intersect the
+	 * way.
+	 */
+	@Test
+	public void mapWayToTilesTest() {
+		Random random = new Random(1);
+		for (int i = 0; i < 400; ++i) {
+			boolean closed = i % 2 == 1;
+			byte zoom = (byte) (12 + i % 3);
+			int enlargementInMeter = i % 4 < 2 ? 0 : 20;
+			TDWay way = createWay(random, 2 + random.nextInt(30), closed, 0.01 + random.nextDouble() * 0.2);
+			Assert.assertEquals(mapWayToTilesJTS(way, zoom, enlargementInMeter),
+					GeoUtils.mapWayToTiles(way, zoom, enlargementInMeter));
+		}
+	}
+
+	/**
+	 * Tests that the tiles in the interior of a polygon are covered even if no segment intersects them.
+	 */
+	@Test
+	public void polygonInteriorTest() {
+		byte zoom = 14;
+		// a square which contains four tiles completely and crosses the twelve tiles around them
+		TileCoordinate tile = new TileCoordinate(8800, 5370, zoom);
+		double latitudeOffset = (MercatorProjection.tileYToLatitude(tile.getY(), zoom) - MercatorProjection
+				.tileYToLatitude(tile.getY() + 1, zoom)) / 2;
+		double longitudeOffset = (MercatorProjection.tileXToLongitude(tile.getX() + 1, zoom) - MercatorProjection
+				.tileXToLongitude(tile.getX(), zoom)) / 2;
+		double minLatitude = MercatorProjection.tileYToLatitude(tile.getY() + 4, zoom) + latitudeOffset;
+		double maxLatitude = MercatorProjection.tileYToLatitude(tile.getY(), zoom) - latitudeOffset;
+		double minLongitude = MercatorProjection.tileXToLongitude(tile.getX(), zoom) + longitudeOffset;
+		double maxLongitude = MercatorProjection.tileXToLongitude(tile.getX() + 4, zoom) - longitudeOffset;
+		int[] coordinates = new int[] { GeoCoordinate.doubleToInt(minLatitude), GeoCoordinate.doubleToInt(minLongitude),
+				GeoCoordinate.doubleToInt(maxLatitude), GeoCoordinate.doubleToInt(minLongitude),
+				GeoCoordinate.doubleToInt(maxLatitude), GeoCoordinate.doubleToInt(maxLongitude),
+				GeoCoordinate.doubleToInt(minLatitude), GeoCoordinate.doubleToInt(maxLongitude),
+				GeoCoordinate.doubleToInt(minLatitude), GeoCoordinate.doubleToInt(minLongitude) };
+		TDWay way = new TDWay(1, (byte) 0, null, null, null, null, TDWay.LINE, new long[] { 1, 2, 3, 4, 1 },
+				coordinates);
+
+		Set<TileCoordinate> tiles = GeoUtils.mapWayToTiles(way, zoom, 0);
+		Assert.assertEquals(16, tiles.size());
+		for (int x = 0; x < 4; ++x) {
+			for (int y = 0; y < 4; ++y) {
+				Assert.assertTrue(tiles.contains(new TileCoordinate(tile.getX() + x, tile.getY() + y, zoom)));
+			}
+		}
+	}
+}
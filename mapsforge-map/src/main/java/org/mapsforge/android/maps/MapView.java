@@ -32,6 +32,7 @@ import org.mapsforge.android.maps.mapgenerator.MapGenerator;
 import org.mapsforge.android.maps.mapgenerator.MapGeneratorFactory;
 import org.mapsforge.android.maps.mapgenerator.MapGeneratorJob;
 import org.mapsforge.android.maps.mapgenerator.MapWorker;
+import org.mapsforge.android.maps.mapgenerator.RenderMetrics;
 import org.mapsforge.android.maps.mapgenerator.TileCache;
 import org.mapsforge.android.maps.mapgenerator.databaserenderer.DatabaseRenderer;
 import org.mapsforge.android.maps.mapgenerator.databaserenderer.ExternalRenderTheme;
@@ -98,6 +99,7 @@ public class MapView extends ViewGroup {
 	private final MapZoomControls mapZoomControls;
 	private final List<Overlay> overlays;
 	private final Projection projection;
+	private final RenderMetrics renderMetrics;
 	private final TouchEventHandler touchEventHandler;
 	private final ZoomAnimator zoomAnimator;
 
@@ -154,6 +156,7 @@ public class MapView extends ViewGroup {
 		this.frameBuffer = new FrameBuffer(this);
 		this.inMemoryTileCache = new InMemoryTileCache(DEFAULT_TILE_CACHE_SIZE_IN_MEMORY);
 		this.jobParameters = new JobParameters(DEFAULT_RENDER_THEME, DEFAULT_TEXT_SCALE);
+		this.renderMetrics = new RenderMetrics();
 		this.jobQueue = new JobQueue(this);
 		this.mapController = new MapController(this);
 		this.mapDatabase = new MapDatabase();
@@ -281,6 +284,13 @@ public class MapView extends ViewGroup {
 		return this.mapViewPosition;
 	}
 
+	/**
+	 * @return the render metrics which measure the generation of map tiles in this MapView.
+	 */
+	public RenderMetrics getRenderMetrics() {
+		return this.renderMetrics;
+	}
+
 	/**
 	 * @return the scale bar which is used in this MapView.
 	 */
@@ -385,20 +395,26 @@ public class MapView extends ViewGroup {
 						this.debugSettings);
 
 				if (this.inMemoryTileCache.containsKey(mapGeneratorJob)) {
+					this.renderMetrics.countMemoryCacheLookup(true);
 					Bitmap bitmap = this.inMemoryTileCache.get(mapGeneratorJob);
 					this.frameBuffer.drawBitmap(mapGeneratorJob.tile, bitmap);
 				} else if (this.fileSystemTileCache.containsKey(mapGeneratorJob)) {
+					this.renderMetrics.countMemoryCacheLookup(false);
 					Bitmap bitmap = this.fileSystemTileCache.get(mapGeneratorJob);
 
 					if (bitmap != null) {
+						this.renderMetrics.countFileSystemCacheLookup(true);
 						this.frameBuffer.drawBitmap(mapGeneratorJob.tile, bitmap);
 						this.inMemoryTileCache.put(mapGeneratorJob, bitmap);
 					} else {
 						// the image data could not be read from the cache
+						this.renderMetrics.countFileSystemCacheLookup(false);
 						this.jobQueue.addJob(mapGeneratorJob);
 					}
 				} else {
 					// cache miss
+					this.renderMetrics.countMemoryCacheLookup(false);
+					this.renderMetrics.countFileSystemCacheLookup(false);
 					this.jobQueue.addJob(mapGeneratorJob);
 				}
 			}
@@ -45,6 +45,7 @@ public class JobQueue {
 	 */
 	public synchronized void addJob(MapGeneratorJob mapGeneratorJob) {
 		if (!this.priorityQueue.contains(mapGeneratorJob)) {
+			mapGeneratorJob.setEnqueueTime(System.nanoTime());
 			this.priorityQueue.offer(mapGeneratorJob);
 		}
 	}
@@ -53,6 +54,7 @@ public class JobQueue {
 	 * Removes all jobs from this queue.
 	 */
 	public synchronized void clear() {
+		this.mapView.getRenderMetrics().countJobsDropped(this.priorityQueue.size());
 		this.priorityQueue.clear();
 	}
 
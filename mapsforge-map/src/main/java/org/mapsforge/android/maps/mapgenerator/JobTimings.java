@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import org.mapsforge.core.Tile;
+
+/**
+ * JobTimings stores the durations of all {@link RenderStage RenderStages} of a single {@link MapGeneratorJob}. A
+ * {@link MapGenerator} can access the timings of the current job via {@link MapGeneratorJob#getJobTimings()}.
+ */
+public class JobTimings {
+	private static final int NUMBER_OF_STAGES = RenderStage.values().length;
+
+	private final long[] durations;
+	private boolean successful;
+	private final Tile tile;
+
+	/**
+	 * @param tile
+	 *            the tile of the measured job.
+	 */
+	public JobTimings(Tile tile) {
+		this.tile = tile;
+		this.durations = new long[NUMBER_OF_STAGES];
+	}
+
+	/**
+	 * Adds the given time to the duration of a stage.
+	 * 
+	 * @param renderStage
+	 *            the stage which has been executed.
+	 * @param nanoseconds
+	 *            the duration of the stage in nanoseconds.
+	 */
+	public synchronized void add(RenderStage renderStage, long nanoseconds) {
+		this.durations[renderStage.ordinal()] += nanoseconds;
+	}
+
+	/**
+	 * @param renderStage
+	 *            the stage whose duration should be returned.
+	 * @return the duration of the given stage in nanoseconds.
+	 */
+	public synchronized long getDuration(RenderStage renderStage) {
+		return this.durations[renderStage.ordinal()];
+	}
+
+	/**
+	 * @return the tile of the measured job.
+	 */
+	public Tile getTile() {
+		return this.tile;
+	}
+
+	/**
+	 * @return the sum of all stage durations in nanoseconds.
+	 */
+	public synchronized long getTotalDuration() {
+		long totalDuration = 0;
+		for (int i = 0; i < NUMBER_OF_STAGES; ++i) {
+			totalDuration += this.durations[i];
+		}
+		return totalDuration;
+	}
+
+	/**
+	 * @return true if the job has been executed successfully, false otherwise.
+	 */
+	public synchronized boolean isSuccessful() {
+		return this.successful;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("JobTimings [tile=").append(this.tile);
+		stringBuilder.append(", successful=").append(this.successful);
+		for (RenderStage renderStage : RenderStage.values()) {
+			stringBuilder.append(", ").append(renderStage).append('=')
+					.append(this.durations[renderStage.ordinal()] / 1000).append("us");
+		}
+		stringBuilder.append(']');
+		return stringBuilder.toString();
+	}
+
+	synchronized void setSuccessful(boolean successful) {
+		this.successful = successful;
+	}
+}
@@ -43,7 +43,9 @@ public class MapGeneratorJob implements Comparable<MapGeneratorJob>, Serializabl
 	 */
 	public final Tile tile;
 
+	private transient long enqueueTime;
 	private transient int hashCodeValue;
+	private transient JobTimings jobTimings;
 	private final MapGenerator mapGenerator;
 	private transient double priority;
 
@@ -114,6 +116,13 @@ public class MapGeneratorJob implements Comparable<MapGeneratorJob>, Serializabl
 		return true;
 	}
 
+	/**
+	 * @return the timings of this job or null, if the {@link RenderMetrics} are disabled.
+	 */
+	public JobTimings getJobTimings() {
+		return this.jobTimings;
+	}
+
 	@Override
 	public int hashCode() {
 		return this.hashCodeValue;
@@ -143,6 +152,18 @@ public class MapGeneratorJob implements Comparable<MapGeneratorJob>, Serializabl
 		calculateTransientValues();
 	}
 
+	long getEnqueueTime() {
+		return this.enqueueTime;
+	}
+
+	void setEnqueueTime(long enqueueTime) {
+		this.enqueueTime = enqueueTime;
+	}
+
+	void setJobTimings(JobTimings jobTimings) {
+		this.jobTimings = jobTimings;
+	}
+
 	void setPriority(double priority) {
 		this.priority = priority;
 	}
@@ -14,8 +14,15 @@
  */
 package org.mapsforge.android.maps.mapgenerator;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.mapsforge.android.maps.MapView;
 import org.mapsforge.android.maps.PausableThread;
+import org.mapsforge.android.maps.mapgenerator.tiledownloader.TileDownloader;
 import org.mapsforge.core.Tile;
 
 import android.graphics.Bitmap;
@@ -23,15 +30,49 @@ import android.graphics.Bitmap;
 /**
  * A MapWorker uses a {@link MapGenerator} to generate map tiles. It runs in a separate thread to avoid blocking the UI
  * thread.
+ * <p>
+ * Jobs for a {@link TileDownloader} are passed on to a bounded pool of download threads, so that several tiles can be
+ * downloaded at the same time. All other jobs are executed sequentially in the MapWorker thread.
  */
 public class MapWorker extends PausableThread {
+	private static final long DOWNLOAD_TERMINATION_TIMEOUT = 30;
 	private static final String THREAD_NAME = "MapWorker";
 
+	/**
+	 * Finishes the given job if its tile is already in one of the caches, so that it is neither generated again nor
+	 * missing from the render metrics.
+	 * 
+	 * @return true if the tile has been found in one of the caches, false otherwise.
+	 */
+	static boolean finishIfCached(MapGeneratorJob mapGeneratorJob, TileCache inMemoryTileCache,
+			TileCache fileSystemTileCache, RenderMetrics renderMetrics, long startTime) {
+		boolean cached = inMemoryTileCache.containsKey(mapGeneratorJob)
+				|| fileSystemTileCache.containsKey(mapGeneratorJob);
+
+		JobTimings jobTimings = mapGeneratorJob.getJobTimings();
+		if (jobTimings != null) {
+			jobTimings.add(RenderStage.CACHE_GET, System.nanoTime() - startTime);
+		}
+
+		if (cached) {
+			// the tile is available without executing the job
+			renderMetrics.countJobsDropped(1);
+			if (jobTimings != null) {
+				renderMetrics.jobFinished(jobTimings, true);
+			}
+		}
+		return cached;
+	}
+
+	private BlockingQueue<Bitmap> downloadBitmaps;
+	private ExecutorService downloadExecutor;
+	private int downloadPoolSize;
 	private final TileCache fileSystemTileCache;
 	private final TileCache inMemoryTileCache;
 	private final JobQueue jobQueue;
-	private MapGenerator mapGenerator;
+	private volatile MapGenerator mapGenerator;
 	private final MapView mapView;
+	private final RenderMetrics renderMetrics;
 	private final Bitmap tileBitmap;
 
 	/**
@@ -44,6 +85,7 @@ public class MapWorker extends PausableThread {
 		this.jobQueue = mapView.getJobQueue();
 		this.inMemoryTileCache = mapView.getInMemoryTileCache();
 		this.fileSystemTileCache = mapView.getFileSystemTileCache();
+		this.renderMetrics = mapView.getRenderMetrics();
 		this.tileBitmap = Bitmap.createBitmap(Tile.TILE_SIZE, Tile.TILE_SIZE, Bitmap.Config.RGB_565);
 	}
 
@@ -57,28 +99,36 @@ public class MapWorker extends PausableThread {
 
 	@Override
 	protected void afterRun() {
+		shutdownDownloads();
 		this.tileBitmap.recycle();
 	}
 
 	@Override
-	protected void doWork() {
+	protected void doWork() throws InterruptedException {
 		MapGeneratorJob mapGeneratorJob = this.jobQueue.poll();
 
-		if (this.inMemoryTileCache.containsKey(mapGeneratorJob)) {
-			return;
-		} else if (this.fileSystemTileCache.containsKey(mapGeneratorJob)) {
-			return;
+		JobTimings jobTimings = null;
+		long startTime = 0;
+		if (this.renderMetrics.isEnabled()) {
+			startTime = System.nanoTime();
+			jobTimings = new JobTimings(mapGeneratorJob.tile);
+			jobTimings.add(RenderStage.QUEUE_WAIT, startTime - mapGeneratorJob.getEnqueueTime());
+			mapGeneratorJob.setJobTimings(jobTimings);
 		}
 
-		boolean success = this.mapGenerator.executeJob(mapGeneratorJob, this.tileBitmap);
+		if (finishIfCached(mapGeneratorJob, this.inMemoryTileCache, this.fileSystemTileCache, this.renderMetrics,
+				startTime)) {
+			return;
+		}
 
-		if (!isInterrupted() && success) {
-			if (this.mapView.getFrameBuffer().drawBitmap(mapGeneratorJob.tile, this.tileBitmap)) {
-				this.inMemoryTileCache.put(mapGeneratorJob, this.tileBitmap);
-			}
-			this.mapView.postInvalidate();
-			this.fileSystemTileCache.put(mapGeneratorJob, this.tileBitmap);
+		MapGenerator currentMapGenerator = this.mapGenerator;
+		if (currentMapGenerator instanceof TileDownloader) {
+			submitDownload(mapGeneratorJob, (TileDownloader) currentMapGenerator);
+			return;
 		}
+
+		boolean success = currentMapGenerator.executeJob(mapGeneratorJob, this.tileBitmap);
+		finishJob(mapGeneratorJob, this.tileBitmap, success, !isInterrupted());
 	}
 
 	@Override
@@ -95,4 +145,94 @@ public class MapWorker extends PausableThread {
 	protected boolean hasWork() {
 		return !this.jobQueue.isEmpty();
 	}
+
+	/**
+	 * Publishes the generated tile if the job was successful and updates the render metrics.
+	 */
+	private void finishJob(MapGeneratorJob mapGeneratorJob, Bitmap bitmap, boolean success, boolean publish) {
+		JobTimings jobTimings = mapGeneratorJob.getJobTimings();
+		if (success && publish) {
+			long startTime = System.nanoTime();
+			publishTile(mapGeneratorJob, bitmap);
+			if (jobTimings != null) {
+				jobTimings.add(RenderStage.CACHE_PUT, System.nanoTime() - startTime);
+			}
+		} else if (success) {
+			// the result is not needed anymore
+			this.renderMetrics.countJobsDropped(1);
+		}
+
+		if (jobTimings != null) {
+			this.renderMetrics.jobFinished(jobTimings, success);
+		}
+	}
+
+	private void publishTile(MapGeneratorJob mapGeneratorJob, Bitmap bitmap) {
+		if (this.mapView.getFrameBuffer().drawBitmap(mapGeneratorJob.tile, bitmap)) {
+			this.inMemoryTileCache.put(mapGeneratorJob, bitmap);
+		}
+		this.mapView.postInvalidate();
+		this.fileSystemTileCache.put(mapGeneratorJob, bitmap);
+	}
+
+	/**
+	 * Stops all download threads and recycles their bitmaps. Pending downloads are finished first.
+	 */
+	private void shutdownDownloads() {
+		if (this.downloadExecutor == null) {
+			return;
+		}
+
+		this.downloadExecutor.shutdown();
+		try {
+			if (!this.downloadExecutor.awaitTermination(DOWNLOAD_TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+				this.downloadExecutor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			this.downloadExecutor.shutdownNow();
+			// restore the interrupted status
+			Thread.currentThread().interrupt();
+		}
+
+		for (Bitmap bitmap : this.downloadBitmaps) {
+			bitmap.recycle();
+		}
+		this.downloadBitmaps = null;
+		this.downloadExecutor = null;
+	}
+
+	/**
+	 * Executes the given job in one of the download threads. Blocks until a download thread and its bitmap are
+	 * available, so that the priorities of the job queue are still respected.
+	 */
+	private void submitDownload(final MapGeneratorJob mapGeneratorJob, final TileDownloader tileDownloader)
+			throws InterruptedException {
+		int poolSize = Math.max(1, tileDownloader.getMaximumConcurrentDownloads());
+		if (this.downloadExecutor != null && this.downloadPoolSize != poolSize) {
+			shutdownDownloads();
+		}
+		if (this.downloadExecutor == null) {
+			this.downloadPoolSize = poolSize;
+			this.downloadBitmaps = new ArrayBlockingQueue<Bitmap>(poolSize);
+			for (int i = 0; i < poolSize; ++i) {
+				this.downloadBitmaps.add(Bitmap.createBitmap(Tile.TILE_SIZE, Tile.TILE_SIZE, Bitmap.Config.RGB_565));
+			}
+			this.downloadExecutor = Executors.newFixedThreadPool(poolSize);
+		}
+
+		final BlockingQueue<Bitmap> bitmaps = this.downloadBitmaps;
+		final Bitmap bitmap = bitmaps.take();
+		this.downloadExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					boolean success = tileDownloader.executeJob(mapGeneratorJob, bitmap);
+					finishJob(mapGeneratorJob, bitmap, success, !isInterrupted()
+							&& MapWorker.this.mapGenerator == tileDownloader);
+				} finally {
+					bitmaps.add(bitmap);
+				}
+			}
+		});
+	}
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * RenderMetrics collects the durations of all {@link RenderStage RenderStages} of the executed jobs together with
+ * counters for cache hits and dropped jobs. The collected values can be read via {@link #getSnapshot()}, the timings of
+ * each single job are passed to all registered {@link RenderMetricsListener RenderMetricsListeners}.
+ * <p>
+ * The metrics are disabled by default, so that no time is spent on measurements. This class is thread-safe.
+ */
+public class RenderMetrics {
+	static final int FILE_SYSTEM_CACHE_HITS = 0;
+	static final int FILE_SYSTEM_CACHE_MISSES = 1;
+	static final int JOBS_DROPPED = 2;
+	static final int JOBS_FAILED = 3;
+	static final int JOBS_SUCCEEDED = 4;
+	static final int MEMORY_CACHE_HITS = 5;
+	static final int MEMORY_CACHE_MISSES = 6;
+	private static final int NUMBER_OF_COUNTERS = 7;
+	private static final int NUMBER_OF_SLOWEST_JOBS = 10;
+	private static final int NUMBER_OF_STAGES = RenderStage.values().length;
+
+	private final long[] counters;
+	private volatile boolean enabled;
+	private final List<RenderMetricsListener> renderMetricsListeners;
+	private final List<JobTimings> slowestJobs;
+	private final long[] stageCounts;
+	private final long[] stageMaximumDurations;
+	private final long[] stageTotalDurations;
+
+	/**
+	 * Constructs new RenderMetrics which are disabled.
+	 */
+	public RenderMetrics() {
+		this.counters = new long[NUMBER_OF_COUNTERS];
+		this.renderMetricsListeners = new CopyOnWriteArrayList<RenderMetricsListener>();
+		this.slowestJobs = new ArrayList<JobTimings>(NUMBER_OF_SLOWEST_JOBS + 1);
+		this.stageCounts = new long[NUMBER_OF_STAGES];
+		this.stageMaximumDurations = new long[NUMBER_OF_STAGES];
+		this.stageTotalDurations = new long[NUMBER_OF_STAGES];
+	}
+
+	/**
+	 * @param renderMetricsListener
+	 *            the listener which should be notified about each executed job.
+	 */
+	public void addListener(RenderMetricsListener renderMetricsListener) {
+		this.renderMetricsListeners.add(renderMetricsListener);
+	}
+
+	/**
+	 * Counts a lookup in the file system cache.
+	 * 
+	 * @param hit
+	 *            true if the tile has been found in the cache, false otherwise.
+	 */
+	public void countFileSystemCacheLookup(boolean hit) {
+		if (this.enabled) {
+			increment(hit ? FILE_SYSTEM_CACHE_HITS : FILE_SYSTEM_CACHE_MISSES, 1);
+		}
+	}
+
+	/**
+	 * Counts jobs which have been dropped before or after their execution.
+	 * 
+	 * @param jobs
+	 *            the number of dropped jobs.
+	 */
+	public void countJobsDropped(int jobs) {
+		if (this.enabled && jobs > 0) {
+			increment(JOBS_DROPPED, jobs);
+		}
+	}
+
+	/**
+	 * Counts a lookup in the in-memory cache.
+	 * 
+	 * @param hit
+	 *            true if the tile has been found in the cache, false otherwise.
+	 */
+	public void countMemoryCacheLookup(boolean hit) {
+		if (this.enabled) {
+			increment(hit ? MEMORY_CACHE_HITS : MEMORY_CACHE_MISSES, 1);
+		}
+	}
+
+	/**
+	 * @return a copy of all values which have been collected so far.
+	 */
+	public synchronized RenderMetricsSnapshot getSnapshot() {
+		return new RenderMetricsSnapshot(this.counters.clone(), this.stageCounts.clone(),
+				this.stageTotalDurations.clone(), this.stageMaximumDurations.clone(), new ArrayList<JobTimings>(
+						this.slowestJobs));
+	}
+
+	/**
+	 * @return true if the metrics are enabled, false otherwise.
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * @param renderMetricsListener
+	 *            the listener which should not be notified anymore.
+	 */
+	public void removeListener(RenderMetricsListener renderMetricsListener) {
+		this.renderMetricsListeners.remove(renderMetricsListener);
+	}
+
+	/**
+	 * Resets all collected values to zero.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < NUMBER_OF_COUNTERS; ++i) {
+			this.counters[i] = 0;
+		}
+		for (int i = 0; i < NUMBER_OF_STAGES; ++i) {
+			this.stageCounts[i] = 0;
+			this.stageMaximumDurations[i] = 0;
+			this.stageTotalDurations[i] = 0;
+		}
+		this.slowestJobs.clear();
+	}
+
+	/**
+	 * @param enabled
+	 *            true if the metrics should be collected, false otherwise.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Adds the timings of an executed job to the collected values and notifies all listeners.
+	 * 
+	 * @param jobTimings
+	 *            the timings of the executed job.
+	 * @param successful
+	 *            true if the job has been executed successfully, false otherwise.
+	 */
+	void jobFinished(JobTimings jobTimings, boolean successful) {
+		jobTimings.setSuccessful(successful);
+		synchronized (this) {
+			++this.counters[successful ? JOBS_SUCCEEDED : JOBS_FAILED];
+			for (RenderStage renderStage : RenderStage.values()) {
+				long duration = jobTimings.getDuration(renderStage);
+				if (duration > 0) {
+					int stage = renderStage.ordinal();
+					++this.stageCounts[stage];
+					this.stageTotalDurations[stage] += duration;
+					this.stageMaximumDurations[stage] = Math.max(this.stageMaximumDurations[stage], duration);
+				}
+			}
+			updateSlowestJobs(jobTimings);
+		}
+
+		for (RenderMetricsListener renderMetricsListener : this.renderMetricsListeners) {
+			renderMetricsListener.onJobFinished(jobTimings);
+		}
+	}
+
+	private synchronized void increment(int counter, int value) {
+		this.counters[counter] += value;
+	}
+
+	private void updateSlowestJobs(JobTimings jobTimings) {
+		long totalDuration = jobTimings.getTotalDuration();
+		int index = this.slowestJobs.size();
+		while (index > 0 && this.slowestJobs.get(index - 1).getTotalDuration() < totalDuration) {
+			--index;
+		}
+		if (index < NUMBER_OF_SLOWEST_JOBS) {
+			this.slowestJobs.add(index, jobTimings);
+			if (this.slowestJobs.size() > NUMBER_OF_SLOWEST_JOBS) {
+				this.slowestJobs.remove(NUMBER_OF_SLOWEST_JOBS);
+			}
+		}
+	}
+}
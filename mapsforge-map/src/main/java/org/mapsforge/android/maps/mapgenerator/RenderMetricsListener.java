@@ -0,0 +1,28 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+/**
+ * Callback interface which is notified by the {@link RenderMetrics} whenever a job has been executed.
+ */
+public interface RenderMetricsListener {
+	/**
+	 * Called in the worker thread after a job has been executed. Implementations should return quickly.
+	 * 
+	 * @param jobTimings
+	 *            the timings of the executed job.
+	 */
+	void onJobFinished(JobTimings jobTimings);
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of all values which have been collected by the {@link RenderMetrics} up to a point in time.
+ */
+public class RenderMetricsSnapshot {
+	private final long fileSystemCacheHits;
+	private final long fileSystemCacheMisses;
+	private final long jobsDropped;
+	private final long jobsFailed;
+	private final long jobsSucceeded;
+	private final long memoryCacheHits;
+	private final long memoryCacheMisses;
+	private final List<JobTimings> slowestJobs;
+	private final long[] stageCounts;
+	private final long[] stageMaximumDurations;
+	private final long[] stageTotalDurations;
+
+	RenderMetricsSnapshot(long[] counters, long[] stageCounts, long[] stageTotalDurations,
+			long[] stageMaximumDurations, List<JobTimings> slowestJobs) {
+		this.memoryCacheHits = counters[RenderMetrics.MEMORY_CACHE_HITS];
+		this.memoryCacheMisses = counters[RenderMetrics.MEMORY_CACHE_MISSES];
+		this.fileSystemCacheHits = counters[RenderMetrics.FILE_SYSTEM_CACHE_HITS];
+		this.fileSystemCacheMisses = counters[RenderMetrics.FILE_SYSTEM_CACHE_MISSES];
+		this.jobsSucceeded = counters[RenderMetrics.JOBS_SUCCEEDED];
+		this.jobsFailed = counters[RenderMetrics.JOBS_FAILED];
+		this.jobsDropped = counters[RenderMetrics.JOBS_DROPPED];
+		this.stageCounts = stageCounts;
+		this.stageTotalDurations = stageTotalDurations;
+		this.stageMaximumDurations = stageMaximumDurations;
+		this.slowestJobs = Collections.unmodifiableList(slowestJobs);
+	}
+
+	/**
+	 * @param renderStage
+	 *            the stage whose average duration should be returned.
+	 * @return the average duration of the given stage in nanoseconds or 0, if the stage has never been executed.
+	 */
+	public long getAverageDuration(RenderStage renderStage) {
+		long count = this.stageCounts[renderStage.ordinal()];
+		return count == 0 ? 0 : this.stageTotalDurations[renderStage.ordinal()] / count;
+	}
+
+	/**
+	 * @return the ratio of all cache lookups which have been answered by the in-memory or the file system cache.
+	 */
+	public double getCacheHitRate() {
+		// every file system cache lookup follows a miss of the in-memory cache
+		long lookups = this.memoryCacheHits + this.memoryCacheMisses;
+		return lookups == 0 ? 0 : (double) (this.memoryCacheHits + this.fileSystemCacheHits) / lookups;
+	}
+
+	/**
+	 * @return the number of tiles which have been found in the file system cache.
+	 */
+	public long getFileSystemCacheHits() {
+		return this.fileSystemCacheHits;
+	}
+
+	/**
+	 * @return the number of tiles which have not been found in the file system cache.
+	 */
+	public long getFileSystemCacheMisses() {
+		return this.fileSystemCacheMisses;
+	}
+
+	/**
+	 * @return the number of jobs which have been removed from the queue or whose result has been discarded.
+	 */
+	public long getJobsDropped() {
+		return this.jobsDropped;
+	}
+
+	/**
+	 * @return the number of jobs which have been executed without success.
+	 */
+	public long getJobsFailed() {
+		return this.jobsFailed;
+	}
+
+	/**
+	 * @return the number of jobs which have been executed successfully.
+	 */
+	public long getJobsSucceeded() {
+		return this.jobsSucceeded;
+	}
+
+	/**
+	 * @param renderStage
+	 *            the stage whose maximum duration should be returned.
+	 * @return the maximum duration of the given stage in nanoseconds.
+	 */
+	public long getMaximumDuration(RenderStage renderStage) {
+		return this.stageMaximumDurations[renderStage.ordinal()];
+	}
+
+	/**
+	 * @return the number of tiles which have been found in the in-memory cache.
+	 */
+	public long getMemoryCacheHits() {
+		return this.memoryCacheHits;
+	}
+
+	/**
+	 * @return the number of tiles which have not been found in the in-memory cache.
+	 */
+	public long getMemoryCacheMisses() {
+		return this.memoryCacheMisses;
+	}
+
+	/**
+	 * @return the timings of the slowest jobs, ordered by their total duration in descending order.
+	 */
+	public List<JobTimings> getSlowestJobs() {
+		return this.slowestJobs;
+	}
+
+	/**
+	 * @param renderStage
+	 *            the stage whose number of executions should be returned.
+	 * @return the number of jobs in which the given stage has been executed.
+	 */
+	public long getStageCount(RenderStage renderStage) {
+		return this.stageCounts[renderStage.ordinal()];
+	}
+
+	/**
+	 * @param renderStage
+	 *            the stage whose total duration should be returned.
+	 * @return the total duration of the given stage in nanoseconds.
+	 */
+	public long getTotalDuration(RenderStage renderStage) {
+		return this.stageTotalDurations[renderStage.ordinal()];
+	}
+}
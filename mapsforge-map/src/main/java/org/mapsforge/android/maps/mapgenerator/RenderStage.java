@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+/**
+ * Enumeration of all stages in the life of a {@link MapGeneratorJob} whose duration is measured by the
+ * {@link RenderMetrics}.
+ */
+public enum RenderStage {
+	/**
+	 * Time between adding the job to the {@link JobQueue} and its execution.
+	 */
+	QUEUE_WAIT,
+
+	/**
+	 * Lookup of the tile in the tile caches before the job is executed.
+	 */
+	CACHE_GET,
+
+	/**
+	 * Reading the map data from the map file, excluding the theme matching.
+	 */
+	DATABASE_QUERY,
+
+	/**
+	 * Matching the map data against the rules of the render theme.
+	 */
+	THEME_MATCHING,
+
+	/**
+	 * Placement of labels and symbols.
+	 */
+	LABEL_PLACEMENT,
+
+	/**
+	 * Drawing of the map tile.
+	 */
+	RASTERIZATION,
+
+	/**
+	 * Download and decoding of a tile image.
+	 */
+	DOWNLOAD,
+
+	/**
+	 * Storing the generated tile in the frame buffer and the tile caches.
+	 */
+	CACHE_PUT;
+}
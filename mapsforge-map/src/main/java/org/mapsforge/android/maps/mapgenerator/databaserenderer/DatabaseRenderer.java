@@ -24,8 +24,10 @@ import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.mapsforge.android.maps.mapgenerator.JobTheme;
+import org.mapsforge.android.maps.mapgenerator.JobTimings;
 import org.mapsforge.android.maps.mapgenerator.MapGenerator;
 import org.mapsforge.android.maps.mapgenerator.MapGeneratorJob;
+import org.mapsforge.android.maps.mapgenerator.RenderStage;
 import org.mapsforge.android.maps.rendertheme.RenderCallback;
 import org.mapsforge.android.maps.rendertheme.RenderTheme;
 import org.mapsforge.android.maps.rendertheme.RenderThemeHandler;
@@ -95,6 +97,7 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 	private float[][] coordinates;
 	private Tile currentTile;
 	private List<List<ShapePaintContainer>> drawingLayer;
+	private JobTimings jobTimings;
 	private final LabelPlacement labelPlacement;
 	private MapDatabase mapDatabase;
 	private List<PointTextContainer> nodes;
@@ -107,6 +110,7 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 	private RenderTheme renderTheme;
 	private ShapeContainer shapeContainer;
 	private final List<Tag> tagList;
+	private long themeMatchingTime;
 	private final List<WayTextContainer> wayNames;
 	private final List<List<List<ShapePaintContainer>>> ways;
 	private final List<SymbolContainer> waySymbols;
@@ -165,11 +169,17 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 			this.previousTextScale = textScale;
 		}
 
+		this.jobTimings = mapGeneratorJob.getJobTimings();
+		this.themeMatchingTime = 0;
+		long startTime = System.nanoTime();
+
 		if (this.mapDatabase != null) {
 			this.mapDatabase.executeQuery(this.currentTile, this);
 		}
 
+		long queryTime = System.nanoTime();
 		this.nodes = this.labelPlacement.placeLabels(this.nodes, this.pointSymbols, this.areaLabels, this.currentTile);
+		long labelPlacementTime = System.nanoTime();
 
 		this.canvasRasterer.setCanvasBitmap(bitmap);
 		this.canvasRasterer.fill(this.renderTheme.getMapBackground());
@@ -188,6 +198,14 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 			this.canvasRasterer.drawTileCoordinates(this.currentTile);
 		}
 
+		if (this.jobTimings != null) {
+			this.jobTimings.add(RenderStage.DATABASE_QUERY, queryTime - startTime - this.themeMatchingTime);
+			this.jobTimings.add(RenderStage.THEME_MATCHING, this.themeMatchingTime);
+			this.jobTimings.add(RenderStage.LABEL_PLACEMENT, labelPlacementTime - queryTime);
+			this.jobTimings.add(RenderStage.RASTERIZATION, System.nanoTime() - labelPlacementTime);
+			this.jobTimings = null;
+		}
+
 		clearLists();
 
 		return true;
@@ -247,7 +265,9 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		this.drawingLayer = this.ways.get(getValidLayer(layer));
 		this.poiX = scaleLongitude(longitude);
 		this.poiY = scaleLatitude(latitude);
+		long startTime = startThemeMatching();
 		this.renderTheme.matchNode(this, tags, this.currentTile.zoomLevel);
+		stopThemeMatching(startTime);
 	}
 
 	@Override
@@ -272,7 +292,9 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		this.tagList.clear();
 		this.tagList.add(TAG_NATURAL_WATER);
 		this.coordinates = WATER_TILE_COORDINATES;
+		long startTime = startThemeMatching();
 		this.renderTheme.matchClosedWay(this, this.tagList, this.currentTile.zoomLevel);
+		stopThemeMatching(startTime);
 	}
 
 	@Override
@@ -289,11 +311,13 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		}
 		this.shapeContainer = new WayContainer(this.coordinates);
 
+		long startTime = startThemeMatching();
 		if (GeometryUtils.isClosedWay(this.coordinates[0])) {
 			this.renderTheme.matchClosedWay(this, tags, this.currentTile.zoomLevel);
 		} else {
 			this.renderTheme.matchLinearWay(this, tags, this.currentTile.zoomLevel);
 		}
+		stopThemeMatching(startTime);
 	}
 
 	@Override
@@ -386,4 +410,23 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		int zoomLevelDiff = Math.max(zoomLevel - STROKE_MIN_ZOOM_LEVEL, 0);
 		this.renderTheme.scaleStrokeWidth((float) Math.pow(STROKE_INCREASE, zoomLevelDiff));
 	}
+
+	/**
+	 * @return the start time of the theme matching or 0, if the current job is not measured.
+	 */
+	private long startThemeMatching() {
+		return this.jobTimings == null ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Adds the time since the given start time to the theme matching time of the current job.
+	 * 
+	 * @param startTime
+	 *            the start time which has been returned by {@link #startThemeMatching()}.
+	 */
+	private void stopThemeMatching(long startTime) {
+		if (this.jobTimings != null) {
+			this.themeMatchingTime += System.nanoTime() - startTime;
+		}
+	}
 }
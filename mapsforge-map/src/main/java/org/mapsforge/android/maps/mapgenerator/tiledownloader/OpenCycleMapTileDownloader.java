@@ -24,14 +24,11 @@ public class OpenCycleMapTileDownloader extends TileDownloader {
 	private static final String PROTOCOL = "http";
 	private static final byte ZOOM_MAX = 18;
 
-	private final StringBuilder stringBuilder;
-
 	/**
 	 * Constructs a new OpenCycleMapTileDownloader.
 	 */
 	public OpenCycleMapTileDownloader() {
 		super();
-		this.stringBuilder = new StringBuilder();
 	}
 
 	@Override
@@ -46,16 +43,16 @@ public class OpenCycleMapTileDownloader extends TileDownloader {
 
 	@Override
 	public String getTilePath(Tile tile) {
-		this.stringBuilder.setLength(0);
-		this.stringBuilder.append("/cycle/");
-		this.stringBuilder.append(tile.zoomLevel);
-		this.stringBuilder.append('/');
-		this.stringBuilder.append(tile.tileX);
-		this.stringBuilder.append('/');
-		this.stringBuilder.append(tile.tileY);
-		this.stringBuilder.append(".png");
-
-		return this.stringBuilder.toString();
+		StringBuilder stringBuilder = new StringBuilder(32);
+		stringBuilder.append("/cycle/");
+		stringBuilder.append(tile.zoomLevel);
+		stringBuilder.append('/');
+		stringBuilder.append(tile.tileX);
+		stringBuilder.append('/');
+		stringBuilder.append(tile.tileY);
+		stringBuilder.append(".png");
+
+		return stringBuilder.toString();
 	}
 
 	@Override
@@ -24,14 +24,11 @@ public class OsmarenderTileDownloader extends TileDownloader {
 	private static final String PROTOCOL = "http";
 	private static final byte ZOOM_MAX = 17;
 
-	private final StringBuilder stringBuilder;
-
 	/**
 	 * Constructs a new OsmarenderTileDownloader.
 	 */
 	public OsmarenderTileDownloader() {
 		super();
-		this.stringBuilder = new StringBuilder();
 	}
 
 	@Override
@@ -46,16 +43,16 @@ public class OsmarenderTileDownloader extends TileDownloader {
 
 	@Override
 	public String getTilePath(Tile tile) {
-		this.stringBuilder.setLength(0);
-		this.stringBuilder.append("/Tiles/tile/");
-		this.stringBuilder.append(tile.zoomLevel);
-		this.stringBuilder.append('/');
-		this.stringBuilder.append(tile.tileX);
-		this.stringBuilder.append('/');
-		this.stringBuilder.append(tile.tileY);
-		this.stringBuilder.append(".png");
-
-		return this.stringBuilder.toString();
+		StringBuilder stringBuilder = new StringBuilder(32);
+		stringBuilder.append("/Tiles/tile/");
+		stringBuilder.append(tile.zoomLevel);
+		stringBuilder.append('/');
+		stringBuilder.append(tile.tileX);
+		stringBuilder.append('/');
+		stringBuilder.append(tile.tileY);
+		stringBuilder.append(".png");
+
+		return stringBuilder.toString();
 	}
 
 	@Override
@@ -15,14 +15,14 @@
 package org.mapsforge.android.maps.mapgenerator.tiledownloader;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
-import java.net.UnknownHostException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.mapsforge.android.maps.mapgenerator.JobTimings;
 import org.mapsforge.android.maps.mapgenerator.MapGenerator;
 import org.mapsforge.android.maps.mapgenerator.MapGeneratorJob;
+import org.mapsforge.android.maps.mapgenerator.RenderStage;
 import org.mapsforge.core.GeoPoint;
 import org.mapsforge.core.Tile;
 
@@ -30,7 +30,8 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
 /**
- * Abstract base class for downloading map tiles from a server.
+ * Abstract base class for downloading map tiles from a server. All downloads are executed by a {@link TileHttpClient},
+ * which makes it safe to call {@link #executeJob(MapGeneratorJob, Bitmap)} from several threads at the same time.
  */
 public abstract class TileDownloader implements MapGenerator {
 	private static final Logger LOG = Logger.getLogger(TileDownloader.class.getName());
@@ -38,12 +39,22 @@ public abstract class TileDownloader implements MapGenerator {
 	private static final Byte START_ZOOM_LEVEL = Byte.valueOf((byte) 5);
 
 	private final int[] pixels;
+	private final TileHttpClient tileHttpClient;
 
 	/**
 	 * Default constructor that must be called by subclasses.
 	 */
 	protected TileDownloader() {
+		this(new TileHttpClient());
+	}
+
+	/**
+	 * @param tileHttpClient
+	 *            the HTTP client which is used for all downloads.
+	 */
+	protected TileDownloader(TileHttpClient tileHttpClient) {
 		this.pixels = new int[Tile.TILE_SIZE * Tile.TILE_SIZE];
+		this.tileHttpClient = tileHttpClient;
 	}
 
 	@Override
@@ -53,31 +64,43 @@ public abstract class TileDownloader implements MapGenerator {
 
 	@Override
 	public final boolean executeJob(MapGeneratorJob mapGeneratorJob, Bitmap bitmap) {
+		long startTime = System.nanoTime();
 		try {
 			Tile tile = mapGeneratorJob.tile;
 			URL url = new URL(getProtocol(), getHostName(), getTilePath(tile));
-			InputStream inputStream = url.openStream();
-			Bitmap decodedBitmap = BitmapFactory.decodeStream(inputStream);
-			inputStream.close();
+			byte[] data = this.tileHttpClient.download(url);
+			if (data == null) {
+				return false;
+			}
 
-			// check if the input stream could be decoded into a bitmap
+			Bitmap decodedBitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+
+			// check if the downloaded data could be decoded into a bitmap
 			if (decodedBitmap == null) {
 				return false;
 			}
 
-			// copy all pixels from the decoded bitmap to the color array
-			decodedBitmap.getPixels(this.pixels, 0, Tile.TILE_SIZE, 0, 0, Tile.TILE_SIZE, Tile.TILE_SIZE);
-			decodedBitmap.recycle();
+			synchronized (this.pixels) {
+				// copy all pixels from the decoded bitmap to the color array
+				decodedBitmap.getPixels(this.pixels, 0, Tile.TILE_SIZE, 0, 0, Tile.TILE_SIZE, Tile.TILE_SIZE);
 
-			// copy all pixels from the color array to the tile bitmap
-			bitmap.setPixels(this.pixels, 0, Tile.TILE_SIZE, 0, 0, Tile.TILE_SIZE, Tile.TILE_SIZE);
+				// copy all pixels from the color array to the tile bitmap
+				bitmap.setPixels(this.pixels, 0, Tile.TILE_SIZE, 0, 0, Tile.TILE_SIZE, Tile.TILE_SIZE);
+			}
+			decodedBitmap.recycle();
 			return true;
-		} catch (UnknownHostException e) {
-			LOG.log(Level.SEVERE, null, e);
-			return false;
 		} catch (IOException e) {
 			LOG.log(Level.SEVERE, null, e);
 			return false;
+		} catch (InterruptedException e) {
+			// restore the interrupted status
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			JobTimings jobTimings = mapGeneratorJob.getJobTimings();
+			if (jobTimings != null) {
+				jobTimings.add(RenderStage.DOWNLOAD, System.nanoTime() - startTime);
+			}
 		}
 	}
 
@@ -86,6 +109,13 @@ public abstract class TileDownloader implements MapGenerator {
 	 */
 	public abstract String getHostName();
 
+	/**
+	 * @return the maximum number of tiles which should be downloaded at the same time.
+	 */
+	public int getMaximumConcurrentDownloads() {
+		return this.tileHttpClient.getMaximumConnectionsPerHost();
+	}
+
 	/**
 	 * @return the protocol which is used to connect to the server.
 	 */
@@ -108,6 +138,13 @@ public abstract class TileDownloader implements MapGenerator {
 	 */
 	public abstract String getTilePath(Tile tile);
 
+	/**
+	 * @return the HTTP client which is used for all downloads.
+	 */
+	public final TileHttpClient getTileHttpClient() {
+		return this.tileHttpClient;
+	}
+
 	@Override
 	public final boolean requiresInternetConnection() {
 		return true;
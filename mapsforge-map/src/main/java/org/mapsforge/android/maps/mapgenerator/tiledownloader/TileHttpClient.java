@@ -0,0 +1,324 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator.tiledownloader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A thread-safe HTTP client for downloading tile images. It limits the number of concurrent requests per host, retries
+ * requests after transient failures with an exponential backoff and revalidates cached tiles with conditional requests.
+ * Permanent failures, for example an unknown host or a client error, are not retried.
+ * <p>
+ * Responses are always read completely before the connection is closed, so that the underlying keep-alive connections
+ * of {@link HttpURLConnection} can be reused for subsequent requests to the same host.
+ */
+public class TileHttpClient {
+	private static final int BUFFER_SIZE = 8192;
+	private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	private static final int DEFAULT_INITIAL_BACKOFF = 250;
+	private static final int DEFAULT_MAXIMUM_CONNECTIONS_PER_HOST = 2;
+	private static final int DEFAULT_MAXIMUM_RETRIES = 3;
+	private static final int DEFAULT_READ_TIMEOUT = 20000;
+	private static final Logger LOG = Logger.getLogger(TileHttpClient.class.getName());
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+
+	private static byte[] readFully(InputStream inputStream) throws IOException {
+		try {
+			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(BUFFER_SIZE);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				byteArrayOutputStream.write(buffer, 0, bytesRead);
+			}
+			return byteArrayOutputStream.toByteArray();
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Drains and closes the error stream of a failed request, which is required for connection reuse.
+	 */
+	private static void discardErrorStream(HttpURLConnection httpURLConnection) {
+		InputStream errorStream = httpURLConnection.getErrorStream();
+		if (errorStream != null) {
+			try {
+				readFully(errorStream);
+			} catch (IOException e) {
+				// the connection will not be reused
+			}
+		}
+	}
+
+	private static long getExpiration(HttpURLConnection httpURLConnection, long currentTime) {
+		String cacheControl = httpURLConnection.getHeaderField("Cache-Control");
+		if (cacheControl != null) {
+			for (String directive : cacheControl.split(",")) {
+				directive = directive.trim();
+				if ("no-cache".equals(directive) || "no-store".equals(directive)) {
+					return 0;
+				} else if (directive.startsWith("max-age=")) {
+					try {
+						return currentTime + Long.parseLong(directive.substring(8)) * 1000;
+					} catch (NumberFormatException e) {
+						return 0;
+					}
+				}
+			}
+		}
+		return httpURLConnection.getExpiration();
+	}
+
+	private static boolean isRetryable(int responseCode) {
+		return responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR || responseCode == SC_TOO_MANY_REQUESTS;
+	}
+
+	/**
+	 * @return true if the request may succeed when it is repeated, that is after a server error, a timeout or a
+	 *         connection failure such as a reset.
+	 */
+	private static boolean isTransient(IOException e) {
+		return e instanceof RetryableException || e instanceof SocketTimeoutException || e instanceof SocketException;
+	}
+
+	private int connectTimeout;
+	private final Map<String, Semaphore> hostPermits;
+	private int initialBackoff;
+	private final int maximumConnectionsPerHost;
+	private int maximumRetries;
+	private int readTimeout;
+	private TileResponseCache tileResponseCache;
+	private String userAgent;
+
+	/**
+	 * Constructs a new TileHttpClient with the default number of concurrent connections per host.
+	 */
+	public TileHttpClient() {
+		this(DEFAULT_MAXIMUM_CONNECTIONS_PER_HOST);
+	}
+
+	/**
+	 * @param maximumConnectionsPerHost
+	 *            the maximum number of concurrent requests to a single host.
+	 * @throws IllegalArgumentException
+	 *             if the maximum number of connections is not positive.
+	 */
+	public TileHttpClient(int maximumConnectionsPerHost) {
+		if (maximumConnectionsPerHost <= 0) {
+			throw new IllegalArgumentException("maximumConnectionsPerHost must be positive: "
+					+ maximumConnectionsPerHost);
+		}
+		this.maximumConnectionsPerHost = maximumConnectionsPerHost;
+		this.hostPermits = new HashMap<String, Semaphore>();
+		this.connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+		this.readTimeout = DEFAULT_READ_TIMEOUT;
+		this.initialBackoff = DEFAULT_INITIAL_BACKOFF;
+		this.maximumRetries = DEFAULT_MAXIMUM_RETRIES;
+	}
+
+	/**
+	 * Downloads the content of the given URL. If a response cache is set, fresh cached responses are returned without
+	 * a request and stale ones are revalidated with the server.
+	 *
+	 * @param url
+	 *            the URL of the tile image.
+	 * @return the raw content of the response or null, if the server answered with a client error.
+	 * @throws IOException
+	 *             if the download failed permanently or after all retries.
+	 * @throws InterruptedException
+	 *             if the calling thread has been interrupted while waiting.
+	 */
+	public byte[] download(URL url) throws IOException, InterruptedException {
+		String key = url.toExternalForm();
+		TileResponseCache responseCache = getTileResponseCache();
+		TileResponseCache.Entry cachedEntry = responseCache == null ? null : responseCache.get(key);
+		if (cachedEntry != null && cachedEntry.isFresh(System.currentTimeMillis())) {
+			return cachedEntry.data;
+		}
+
+		Semaphore semaphore = getHostPermits(url.getHost());
+		semaphore.acquire();
+		try {
+			long backoff = getInitialBackoff();
+			for (int attempt = 0;; ++attempt) {
+				try {
+					return executeRequest(url, key, cachedEntry, responseCache);
+				} catch (IOException e) {
+					if (attempt >= getMaximumRetries() || !isTransient(e)) {
+						throw e;
+					}
+					LOG.log(Level.FINE, "retrying " + url + " in " + backoff + " ms", e);
+				}
+				Thread.sleep(backoff);
+				backoff <<= 1;
+			}
+		} finally {
+			semaphore.release();
+		}
+	}
+
+	/**
+	 * @return the maximum number of concurrent requests to a single host.
+	 */
+	public int getMaximumConnectionsPerHost() {
+		return this.maximumConnectionsPerHost;
+	}
+
+	/**
+	 * @return the response cache of this client (may be null).
+	 */
+	public synchronized TileResponseCache getTileResponseCache() {
+		return this.tileResponseCache;
+	}
+
+	/**
+	 * @param connectTimeout
+	 *            the connect timeout in milliseconds.
+	 * @param readTimeout
+	 *            the read timeout in milliseconds.
+	 */
+	public synchronized void setTimeouts(int connectTimeout, int readTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * @param maximumRetries
+	 *            the maximum number of retries of a request after a transient failure.
+	 * @param initialBackoff
+	 *            the delay in milliseconds before the first retry, which is doubled with every further retry.
+	 */
+	public synchronized void setRetryPolicy(int maximumRetries, int initialBackoff) {
+		if (maximumRetries < 0) {
+			throw new IllegalArgumentException("maximumRetries must not be negative: " + maximumRetries);
+		} else if (initialBackoff < 0) {
+			throw new IllegalArgumentException("initialBackoff must not be negative: " + initialBackoff);
+		}
+		this.maximumRetries = maximumRetries;
+		this.initialBackoff = initialBackoff;
+	}
+
+	/**
+	 * @param tileResponseCache
+	 *            the response cache which should be used for revalidation (may be null).
+	 */
+	public synchronized void setTileResponseCache(TileResponseCache tileResponseCache) {
+		this.tileResponseCache = tileResponseCache;
+	}
+
+	/**
+	 * @param userAgent
+	 *            the value of the User-Agent header (may be null).
+	 */
+	public synchronized void setUserAgent(String userAgent) {
+		this.userAgent = userAgent;
+	}
+
+	private byte[] executeRequest(URL url, String key, TileResponseCache.Entry cachedEntry,
+			TileResponseCache responseCache) throws IOException {
+		HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
+		try {
+			// the connection is not disconnected on success to keep it alive for the next request
+			synchronized (this) {
+				httpURLConnection.setConnectTimeout(this.connectTimeout);
+				httpURLConnection.setReadTimeout(this.readTimeout);
+				if (this.userAgent != null) {
+					httpURLConnection.setRequestProperty("User-Agent", this.userAgent);
+				}
+			}
+			httpURLConnection.setUseCaches(false);
+
+			if (cachedEntry != null) {
+				if (cachedEntry.eTag != null) {
+					httpURLConnection.setRequestProperty("If-None-Match", cachedEntry.eTag);
+				}
+				if (cachedEntry.lastModified != null) {
+					httpURLConnection.setRequestProperty("If-Modified-Since", cachedEntry.lastModified);
+				}
+			}
+
+			int responseCode = httpURLConnection.getResponseCode();
+			long currentTime = System.currentTimeMillis();
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedEntry != null) {
+				discardErrorStream(httpURLConnection);
+				TileResponseCache.Entry entry = new TileResponseCache.Entry(cachedEntry.data, cachedEntry.eTag,
+						cachedEntry.lastModified, getExpiration(httpURLConnection, currentTime));
+				responseCache.put(key, entry);
+				return cachedEntry.data;
+			} else if (responseCode == HttpURLConnection.HTTP_OK) {
+				byte[] data = readFully(httpURLConnection.getInputStream());
+				if (responseCache != null) {
+					TileResponseCache.Entry entry = new TileResponseCache.Entry(data,
+							httpURLConnection.getHeaderField("ETag"),
+							httpURLConnection.getHeaderField("Last-Modified"), getExpiration(httpURLConnection,
+									currentTime));
+					if (entry.isRevalidatable() || entry.isFresh(currentTime)) {
+						responseCache.put(key, entry);
+					}
+				}
+				return data;
+			}
+
+			discardErrorStream(httpURLConnection);
+			if (isRetryable(responseCode)) {
+				throw new RetryableException("HTTP " + responseCode + " for " + url);
+			}
+			LOG.warning("HTTP " + responseCode + " for " + url);
+			return null;
+		} catch (IOException e) {
+			httpURLConnection.disconnect();
+			throw e;
+		}
+	}
+
+	private synchronized Semaphore getHostPermits(String host) {
+		Semaphore semaphore = this.hostPermits.get(host);
+		if (semaphore == null) {
+			semaphore = new Semaphore(this.maximumConnectionsPerHost, true);
+			this.hostPermits.put(host, semaphore);
+		}
+		return semaphore;
+	}
+
+	private synchronized int getInitialBackoff() {
+		return this.initialBackoff;
+	}
+
+	private synchronized int getMaximumRetries() {
+		return this.maximumRetries;
+	}
+
+	/**
+	 * Signals a server error after which the request may be repeated.
+	 */
+	private static final class RetryableException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		RetryableException(String message) {
+			super(message);
+		}
+	}
+}
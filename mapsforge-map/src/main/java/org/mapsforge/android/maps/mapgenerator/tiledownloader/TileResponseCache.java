@@ -0,0 +1,302 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator.tiledownloader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A thread-safe file cache for downloaded tile images together with their HTTP cache validators. The cached entries
+ * are used by the {@link TileHttpClient} to revalidate tiles with conditional requests, so that unchanged tiles do not
+ * have to be transferred again.
+ */
+public class TileResponseCache {
+	/**
+	 * A single cached HTTP response.
+	 */
+	public static final class Entry {
+		/**
+		 * The raw image data of the response.
+		 */
+		public final byte[] data;
+
+		/**
+		 * The value of the ETag header or null, if the server did not send one.
+		 */
+		public final String eTag;
+
+		/**
+		 * The time in milliseconds since January 1, 1970 UTC after which the entry must be revalidated.
+		 */
+		public final long expires;
+
+		/**
+		 * The value of the Last-Modified header or null, if the server did not send one.
+		 */
+		public final String lastModified;
+
+		/**
+		 * @param data
+		 *            the raw image data of the response.
+		 * @param eTag
+		 *            the value of the ETag header (may be null).
+		 * @param lastModified
+		 *            the value of the Last-Modified header (may be null).
+		 * @param expires
+		 *            the expiration time of the response.
+		 */
+		public Entry(byte[] data, String eTag, String lastModified, long expires) {
+			this.data = data;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.expires = expires;
+		}
+
+		/**
+		 * @param currentTime
+		 *            the current time in milliseconds since January 1, 1970 UTC.
+		 * @return true if this entry may be used without revalidation, false otherwise.
+		 */
+		public boolean isFresh(long currentTime) {
+			return currentTime < this.expires;
+		}
+
+		/**
+		 * @return true if this entry carries at least one validator for a conditional request, false otherwise.
+		 */
+		public boolean isRevalidatable() {
+			return this.eTag != null || this.lastModified != null;
+		}
+	}
+
+	private static final class ResponseFileNameFilter implements FilenameFilter {
+		static final FilenameFilter INSTANCE = new ResponseFileNameFilter();
+
+		private ResponseFileNameFilter() {
+			// do nothing
+		}
+
+		@Override
+		public boolean accept(File directory, String fileName) {
+			return fileName.endsWith(RESPONSE_FILE_NAME_EXTENSION);
+		}
+	}
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Algorithm of the digest which is used to map response keys to file names.
+	 */
+	private static final String KEY_DIGEST_ALGORITHM = "SHA-1";
+
+	private static final Charset KEY_CHARSET = Charset.forName("UTF-8");
+
+	private static final Logger LOG = Logger.getLogger(TileResponseCache.class.getName());
+
+	/**
+	 * Load factor of the internal HashMap.
+	 */
+	private static final float LOAD_FACTOR = 0.6f;
+
+	/**
+	 * File name extension for cached responses.
+	 */
+	private static final String RESPONSE_FILE_NAME_EXTENSION = ".response";
+
+	private static Map<String, File> createMap(final int mapCapacity) {
+		int initialCapacity = (int) (mapCapacity / LOAD_FACTOR) + 2;
+
+		return new LinkedHashMap<String, File>(initialCapacity, LOAD_FACTOR, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, File> eldestEntry) {
+				if (size() > mapCapacity) {
+					remove(eldestEntry.getKey());
+					deleteFile(eldestEntry.getValue());
+				}
+				return false;
+			}
+		};
+	}
+
+	static void deleteFile(File file) {
+		if (!file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Maps the given key to the hex encoded digest of the full key, so that distinct URLs never share a file.
+	 */
+	static String getFileName(String key) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance(KEY_DIGEST_ALGORITHM).digest(key.getBytes(KEY_CHARSET));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		StringBuilder stringBuilder = new StringBuilder(digest.length * 2 + RESPONSE_FILE_NAME_EXTENSION.length());
+		for (byte b : digest) {
+			stringBuilder.append(HEX_DIGITS[(b >> 4) & 0xf]);
+			stringBuilder.append(HEX_DIGITS[b & 0xf]);
+		}
+		stringBuilder.append(RESPONSE_FILE_NAME_EXTENSION);
+		return stringBuilder.toString();
+	}
+
+	private static Entry readEntry(File file) throws IOException {
+		DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			String eTag = dataInputStream.readBoolean() ? dataInputStream.readUTF() : null;
+			String lastModified = dataInputStream.readBoolean() ? dataInputStream.readUTF() : null;
+			long expires = dataInputStream.readLong();
+			byte[] data = new byte[dataInputStream.readInt()];
+			dataInputStream.readFully(data);
+			return new Entry(data, eTag, lastModified, expires);
+		} finally {
+			dataInputStream.close();
+		}
+	}
+
+	private static void writeEntry(File file, Entry entry) throws IOException {
+		DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			writeOptionalString(dataOutputStream, entry.eTag);
+			writeOptionalString(dataOutputStream, entry.lastModified);
+			dataOutputStream.writeLong(entry.expires);
+			dataOutputStream.writeInt(entry.data.length);
+			dataOutputStream.write(entry.data);
+		} finally {
+			dataOutputStream.close();
+		}
+	}
+
+	private static void writeOptionalString(DataOutputStream dataOutputStream, String string) throws IOException {
+		dataOutputStream.writeBoolean(string != null);
+		if (string != null) {
+			dataOutputStream.writeUTF(string);
+		}
+	}
+
+	private final File cacheDirectory;
+	private final Map<String, File> map;
+
+	/**
+	 * Creates a new response cache in the given directory. Responses which have been stored in the directory by a
+	 * previous instance are reused.
+	 *
+	 * @param cacheDirectory
+	 *            the directory in which the responses are stored.
+	 * @param capacity
+	 *            the maximum number of responses in this cache.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative or the directory cannot be used.
+	 */
+	public TileResponseCache(File cacheDirectory, int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		} else if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+			throw new IllegalArgumentException("could not create directory: " + cacheDirectory);
+		} else if (!cacheDirectory.isDirectory()) {
+			throw new IllegalArgumentException("not a directory: " + cacheDirectory);
+		}
+
+		this.cacheDirectory = cacheDirectory;
+		this.map = createMap(capacity);
+
+		File[] files = cacheDirectory.listFiles(ResponseFileNameFilter.INSTANCE);
+		if (files != null) {
+			for (File file : files) {
+				this.map.put(file.getName(), file);
+			}
+		}
+	}
+
+	/**
+	 * Removes all responses from this cache and deletes their files.
+	 */
+	public synchronized void clear() {
+		for (File file : this.map.values()) {
+			deleteFile(file);
+		}
+		this.map.clear();
+	}
+
+	/**
+	 * @param key
+	 *            the key of the response, usually its URL.
+	 * @return the cached response for the given key or null, if this cache contains no response for the key.
+	 */
+	public synchronized Entry get(String key) {
+		String fileName = getFileName(key);
+		File file = this.map.get(fileName);
+		if (file == null) {
+			return null;
+		}
+
+		try {
+			return readEntry(file);
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, null, e);
+			this.map.remove(fileName);
+			deleteFile(file);
+			return null;
+		}
+	}
+
+	/**
+	 * Adds or replaces the response for the given key.
+	 *
+	 * @param key
+	 *            the key of the response, usually its URL.
+	 * @param entry
+	 *            the response to be stored.
+	 */
+	public synchronized void put(String key, Entry entry) {
+		String fileName = getFileName(key);
+		File file = new File(this.cacheDirectory, fileName);
+		try {
+			writeEntry(file, entry);
+			this.map.put(fileName, file);
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, null, e);
+			this.map.remove(fileName);
+			deleteFile(file);
+		}
+	}
+
+	/**
+	 * @return the number of responses in this cache.
+	 */
+	public synchronized int size() {
+		return this.map.size();
+	}
+}
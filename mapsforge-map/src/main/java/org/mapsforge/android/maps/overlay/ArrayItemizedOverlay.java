@@ -59,10 +59,12 @@ public class ArrayItemizedOverlay extends ItemizedOverlay<OverlayItem> {
 	 *            the item that should be added to the overlay.
 	 */
 	public void addItem(OverlayItem overlayItem) {
+		int index;
 		synchronized (this.overlayItems) {
+			index = this.overlayItems.size();
 			this.overlayItems.add(overlayItem);
 		}
-		populate();
+		populate(index);
 	}
 
 	/**
@@ -72,10 +74,12 @@ public class ArrayItemizedOverlay extends ItemizedOverlay<OverlayItem> {
 	 *            collection whose items should be added to the overlay.
 	 */
 	public void addItems(Collection<? extends OverlayItem> c) {
+		int index;
 		synchronized (this.overlayItems) {
+			index = this.overlayItems.size();
 			this.overlayItems.addAll(c);
 		}
-		populate();
+		populate(index);
 	}
 
 	/**
@@ -100,10 +104,15 @@ public class ArrayItemizedOverlay extends ItemizedOverlay<OverlayItem> {
 	 *            the item that should be removed from the overlay.
 	 */
 	public void removeItem(OverlayItem overlayItem) {
+		int index;
 		synchronized (this.overlayItems) {
-			this.overlayItems.remove(overlayItem);
+			index = this.overlayItems.indexOf(overlayItem);
+			if (index < 0) {
+				return;
+			}
+			this.overlayItems.remove(index);
 		}
-		populate();
+		populate(index);
 	}
 
 	@Override
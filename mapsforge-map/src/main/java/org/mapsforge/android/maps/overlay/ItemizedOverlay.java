@@ -20,8 +20,11 @@ import java.util.List;
 import org.mapsforge.android.maps.MapView;
 import org.mapsforge.android.maps.Projection;
 import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MercatorProjection;
 
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
@@ -30,11 +33,38 @@ import android.graphics.drawable.Drawable;
  * ItemizedOverlay is an abstract base class to display {@link OverlayItem OverlayItems}. The class defines some methods
  * to access the backing data structure of deriving subclasses. Besides organizing the redrawing process it handles long
  * press and tap events and calls {@link #onLongPress(int)} and {@link #onTap(int)} respectively.
+ * <p>
+ * The positions of all items are kept in a spatial index, so that a redraw only projects and draws the items near the
+ * visible area. The index is rebuilt after {@link #populate()} has been called or an item has been changed.
+ * <p>
+ * If clustering has been enabled via {@link #enableClustering(Drawable, int, byte)}, nearby items are aggregated into
+ * clusters on low zoom levels. Each cluster is drawn as a single marker with the number of its items and tap or long
+ * press events on a cluster are passed to {@link #onClusterTap(int[])} and {@link #onClusterLongPress(int[])}.
  * 
  * @param <Item>
  *            the type of items handled by this overlay.
  */
 public abstract class ItemizedOverlay<Item extends OverlayItem> extends Overlay {
+	/**
+	 * A cluster which has been drawn during the last redraw.
+	 */
+	private static final class VisibleCluster {
+		final OverlayClusterIndex.Cluster cluster;
+		final OverlayClusterIndex clusterIndex;
+		final GeoPoint geoPoint;
+		final Rect markerBounds;
+
+		VisibleCluster(OverlayClusterIndex clusterIndex, OverlayClusterIndex.Cluster cluster, GeoPoint geoPoint,
+				Rect markerBounds) {
+			this.clusterIndex = clusterIndex;
+			this.cluster = cluster;
+			this.geoPoint = geoPoint;
+			this.markerBounds = markerBounds;
+		}
+	}
+
+	private static final int CLUSTER_RADIUS = 16;
+	private static final int CLUSTER_TEXT_SIZE = 14;
 	private static final int INITIAL_CAPACITY = 8;
 	private static final String THREAD_NAME = "ItemizedOverlay";
 
@@ -64,13 +94,39 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends Overlay
 		return balloon;
 	}
 
+	private static int getMarkerExtent(Drawable marker) {
+		return getMarkerExtent(marker.getBounds());
+	}
+
+	private static int getMarkerExtent(Rect bounds) {
+		return Math.max(Math.max(Math.abs(bounds.left), Math.abs(bounds.right)),
+				Math.max(Math.abs(bounds.top), Math.abs(bounds.bottom)));
+	}
+
+	private static void removeFromClusters(OverlayClusterIndex overlayClusterIndex, Integer itemIndex) {
+		if (overlayClusterIndex != null) {
+			overlayClusterIndex.remove(itemIndex);
+		}
+	}
+
 	private int bottom;
+	private volatile OverlayClusterIndex clusterIndex;
+	private volatile Drawable clusterMarker;
+	private final Paint clusterPaint;
+	private final Paint clusterTextPaint;
 	private final Drawable defaultMarker;
+	private int firstChangedItem;
+	private OverlayClusterIndex indexedClusterIndex;
+	private int indexedGeometryVersion;
 	private Drawable itemMarker;
+	private final OverlayGridIndex itemIndex;
 	private final Point itemPosition;
 	private int left;
+	private int markerExtent;
 	private int right;
 	private int top;
+	private List<VisibleCluster> visibleClusters;
+	private List<VisibleCluster> visibleClustersRedraw;
 	private List<Integer> visibleItems;
 	private List<Integer> visibleItemsRedraw;
 
@@ -81,11 +137,50 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends Overlay
 	public ItemizedOverlay(Drawable defaultMarker) {
 		super();
 		this.defaultMarker = defaultMarker;
+		this.clusterPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		this.clusterPaint.setColor(Color.argb(192, 0, 0, 192));
+		this.clusterTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		this.clusterTextPaint.setColor(Color.WHITE);
+		this.clusterTextPaint.setTextAlign(Paint.Align.CENTER);
+		this.clusterTextPaint.setTextSize(CLUSTER_TEXT_SIZE);
+		this.itemIndex = new OverlayGridIndex();
+		this.firstChangedItem = 0;
 		this.itemPosition = new Point();
+		this.visibleClusters = new ArrayList<VisibleCluster>(INITIAL_CAPACITY);
+		this.visibleClustersRedraw = new ArrayList<VisibleCluster>(INITIAL_CAPACITY);
 		this.visibleItems = new ArrayList<Integer>(INITIAL_CAPACITY);
 		this.visibleItemsRedraw = new ArrayList<Integer>(INITIAL_CAPACITY);
 	}
 
+	/**
+	 * Disables the clustering of items.
+	 */
+	public void disableClustering() {
+		this.clusterIndex = null;
+		super.requestRedraw();
+	}
+
+	/**
+	 * Enables the clustering of items on low zoom levels. The map is divided into a grid of square cells with the given
+	 * size and all items within a cell are drawn as a single cluster marker at their center.
+	 * 
+	 * @param marker
+	 *            the marker of a cluster (may be null). If null, the default marker or a circle is drawn instead.
+	 * @param clusterSize
+	 *            the size of a grid cell in pixels.
+	 * @param maximumZoomLevel
+	 *            the highest zoom level on which items are clustered.
+	 * @throws IllegalArgumentException
+	 *             if the cluster size is not positive, the zoom level is negative or the zoom level is too large
+	 *             for the cluster size.
+	 */
+	public void enableClustering(Drawable marker, int clusterSize, byte maximumZoomLevel) {
+		OverlayClusterIndex overlayClusterIndex = new OverlayClusterIndex(clusterSize, maximumZoomLevel);
+		this.clusterMarker = marker;
+		this.clusterIndex = overlayClusterIndex;
+		super.requestRedraw();
+	}
+
 	/**
 	 * Checks whether an item has been long pressed.
 	 */
@@ -189,6 +284,44 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends Overlay
 					}
 				}
 			}
+
+			// iterate over all visible clusters
+			for (int i = this.visibleClusters.size() - 1; i >= 0; --i) {
+				VisibleCluster visibleCluster = this.visibleClusters.get(i);
+				checkItemPoint = projection.toPixels(visibleCluster.geoPoint, checkItemPoint);
+				// check if the translation to pixel coordinates has failed
+				if (checkItemPoint == null) {
+					continue;
+				}
+
+				// check if the event position is within the bounds of the cluster marker
+				Rect checkMarkerBounds = visibleCluster.markerBounds;
+				if (checkItemPoint.x + checkMarkerBounds.right < eventPosition.x
+						|| checkItemPoint.x + checkMarkerBounds.left > eventPosition.x
+						|| checkItemPoint.y + checkMarkerBounds.bottom < eventPosition.y
+						|| checkItemPoint.y + checkMarkerBounds.top > eventPosition.y) {
+					continue;
+				}
+
+				int[] clusterItems = getItemIndices(visibleCluster);
+				if (clusterItems.length == 0) {
+					continue;
+				}
+
+				switch (eventType) {
+					case LONG_PRESS:
+						if (onClusterLongPress(clusterItems)) {
+							return true;
+						}
+						break;
+
+					case TAP:
+						if (onClusterTap(clusterItems)) {
+							return true;
+						}
+						break;
+				}
+			}
 		}
 
 		// no hit
@@ -206,82 +339,32 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends Overlay
 
 	@Override
 	protected void drawOverlayBitmap(Canvas canvas, Point drawPosition, Projection projection, byte drawZoomLevel) {
-		// erase the list of visible items
+		// erase the lists of visible items and clusters
 		this.visibleItemsRedraw.clear();
+		this.visibleClustersRedraw.clear();
 
-		int numberOfItems = size();
-		for (int itemIndex = 0; itemIndex < numberOfItems; ++itemIndex) {
-			if (isInterrupted() || sizeHasChanged()) {
+		OverlayClusterIndex overlayClusterIndex = this.clusterIndex;
+		updateItemIndex(overlayClusterIndex);
+
+		if (overlayClusterIndex != null && drawZoomLevel <= overlayClusterIndex.getMaximumZoomLevel()) {
+			if (!drawClusters(canvas, drawPosition, drawZoomLevel, overlayClusterIndex)) {
 				// stop working
 				return;
 			}
-
-			// get the current item
-			Item overlayItem = createItem(itemIndex);
-			if (overlayItem == null) {
-				continue;
-			}
-
-			synchronized (overlayItem) {
-				// make sure that the current item has a position
-				if (overlayItem.getPoint() == null) {
-					continue;
-				}
-
-				// make sure that the cached item position is valid
-				if (drawZoomLevel != overlayItem.cachedZoomLevel) {
-					overlayItem.cachedMapPosition = projection.toPoint(overlayItem.getPoint(),
-							overlayItem.cachedMapPosition, drawZoomLevel);
-					overlayItem.cachedZoomLevel = drawZoomLevel;
-				}
-
-				// calculate the relative item position on the canvas
-				this.itemPosition.x = overlayItem.cachedMapPosition.x - drawPosition.x;
-				this.itemPosition.y = overlayItem.cachedMapPosition.y - drawPosition.y;
-
-				// get the correct marker for the item
-				if (overlayItem.getMarker() == null) {
-					if (this.defaultMarker == null) {
-						// no marker to draw the item
-						continue;
-					}
-					this.itemMarker = this.defaultMarker;
-				} else {
-					this.itemMarker = overlayItem.getMarker();
-				}
-
-				// get the position of the marker
-				Rect markerBounds = this.itemMarker.copyBounds();
-
-				// calculate the bounding box of the marker
-				this.left = this.itemPosition.x + markerBounds.left;
-				this.right = this.itemPosition.x + markerBounds.right;
-				this.top = this.itemPosition.y + markerBounds.top;
-				this.bottom = this.itemPosition.y + markerBounds.bottom;
-
-				// check if the bounding box of the marker intersects with the canvas
-				if (this.right >= 0 && this.left <= canvas.getWidth() && this.bottom >= 0
-						&& this.top <= canvas.getHeight()) {
-					// set the position of the marker
-					this.itemMarker.setBounds(this.left, this.top, this.right, this.bottom);
-
-					// draw the item marker on the canvas
-					this.itemMarker.draw(canvas);
-
-					// restore the position of the marker
-					this.itemMarker.setBounds(markerBounds);
-
-					// add the current item index to the list of visible items
-					this.visibleItemsRedraw.add(Integer.valueOf(itemIndex));
-				}
-			}
+		} else if (!drawItems(canvas, drawPosition, drawZoomLevel)) {
+			// stop working
+			return;
 		}
 
-		// swap the two visible item lists
+		// swap the two visible item lists and the two visible cluster lists
 		synchronized (this.visibleItems) {
 			List<Integer> visibleItemsTemp = this.visibleItems;
 			this.visibleItems = this.visibleItemsRedraw;
 			this.visibleItemsRedraw = visibleItemsTemp;
+
+			List<VisibleCluster> visibleClustersTemp = this.visibleClusters;
+			this.visibleClusters = this.visibleClustersRedraw;
+			this.visibleClustersRedraw = visibleClustersTemp;
 		}
 	}
 
@@ -290,6 +373,32 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends Overlay
 		return THREAD_NAME;
 	}
 
+	/**
+	 * Handles a long press event on a cluster of items.
+	 * <p>
+	 * The default implementation of this method does nothing and returns false.
+	 * 
+	 * @param indices
+	 *            the indices of all items in the cluster that has been long pressed.
+	 * @return true if the event was handled, false otherwise.
+	 */
+	protected boolean onClusterLongPress(int[] indices) {
+		return false;
+	}
+
+	/**
+	 * Handles a tap event on a cluster of items.
+	 * <p>
+	 * The default implementation of this method does nothing and returns false.
+	 * 
+	 * @param indices
+	 *            the indices of all items in the cluster that has been tapped.
+	 * @return true if the event was handled, false otherwise.
+	 */
+	protected boolean onClusterTap(int[] indices) {
+		return false;
+	}
+
 	/**
 	 * Handles a long press event.
 	 * <p>
@@ -320,6 +429,270 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends Overlay
 	 * This method should be called after items have been added to the overlay.
 	 */
 	protected final void populate() {
+		populate(0);
+	}
+
+	/**
+	 * This method should be called after items have been added to or removed from the overlay if all items before the
+	 * given index are unchanged, for example after items have been appended. Only the changed items are indexed again.
+	 * 
+	 * @param index
+	 *            the index of the first item that has been added, removed or replaced.
+	 */
+	protected final void populate(int index) {
+		synchronized (this.itemIndex) {
+			this.firstChangedItem = Math.min(this.firstChangedItem, index);
+		}
 		super.requestRedraw();
 	}
+
+	/**
+	 * Draws the clusters of items which are visible on the given zoom level.
+	 * 
+	 * @return false if the drawing has been stopped, true otherwise.
+	 */
+	private boolean drawClusters(Canvas canvas, Point drawPosition, byte drawZoomLevel,
+			OverlayClusterIndex overlayClusterIndex) {
+		Drawable marker = this.clusterMarker;
+		if (marker == null) {
+			marker = this.defaultMarker;
+		}
+		Rect clusterBounds = marker == null ? new Rect(-CLUSTER_RADIUS, -CLUSTER_RADIUS, CLUSTER_RADIUS,
+				CLUSTER_RADIUS) : marker.copyBounds();
+		int margin = Math.max(this.markerExtent, getMarkerExtent(clusterBounds));
+
+		// find all clusters whose marker may intersect with the canvas
+		double scale = 1L << drawZoomLevel;
+		List<OverlayClusterIndex.Cluster> clusters = overlayClusterIndex.getClusters(drawZoomLevel,
+				(drawPosition.x - margin) / scale, (drawPosition.y - margin) / scale,
+				(drawPosition.x + canvas.getWidth() + margin) / scale, (drawPosition.y + canvas.getHeight() + margin)
+						/ scale);
+		int numberOfItems = size();
+
+		for (int i = 0; i < clusters.size(); ++i) {
+			if (isInterrupted() || sizeHasChanged()) {
+				return false;
+			}
+
+			OverlayClusterIndex.Cluster cluster = clusters.get(i);
+			int x = (int) (cluster.getCenterX() * scale) - drawPosition.x;
+			int y = (int) (cluster.getCenterY() * scale) - drawPosition.y;
+
+			if (cluster.size() == 1) {
+				// a single item is drawn with its own marker
+				Integer itemIndex = (Integer) cluster.getFirstItem();
+				if (itemIndex.intValue() >= numberOfItems) {
+					// the item has been removed in the meantime
+					continue;
+				}
+				Item overlayItem = createItem(itemIndex.intValue());
+				if (overlayItem == null) {
+					continue;
+				}
+				synchronized (overlayItem) {
+					Drawable itemMarker = overlayItem.getMarker() == null ? this.defaultMarker : overlayItem
+							.getMarker();
+					if (itemMarker != null && drawMarker(canvas, itemMarker, x, y)) {
+						this.visibleItemsRedraw.add(itemIndex);
+					}
+				}
+				continue;
+			}
+
+			// check if the bounding box of the cluster marker intersects with the canvas
+			if (x + clusterBounds.right < 0 || x + clusterBounds.left > canvas.getWidth()
+					|| y + clusterBounds.bottom < 0 || y + clusterBounds.top > canvas.getHeight()) {
+				continue;
+			}
+
+			if (marker == null) {
+				canvas.drawCircle(x, y, CLUSTER_RADIUS, this.clusterPaint);
+			} else {
+				drawMarker(canvas, marker, x, y);
+			}
+
+			// draw the number of items at the center of the cluster marker
+			float textX = x + (clusterBounds.left + clusterBounds.right) / 2f;
+			float textY = y + (clusterBounds.top + clusterBounds.bottom) / 2f
+					- (this.clusterTextPaint.ascent() + this.clusterTextPaint.descent()) / 2;
+			canvas.drawText(Integer.toString(cluster.size()), textX, textY, this.clusterTextPaint);
+
+			GeoPoint geoPoint = new GeoPoint(MercatorProjection.pixelYToLatitude(cluster.getCenterY(), (byte) 0),
+					MercatorProjection.pixelXToLongitude(cluster.getCenterX(), (byte) 0));
+			this.visibleClustersRedraw.add(new VisibleCluster(overlayClusterIndex, cluster, geoPoint, clusterBounds));
+		}
+		return true;
+	}
+
+	/**
+	 * Draws all items which are visible on the given zoom level.
+	 * 
+	 * @return false if the drawing has been stopped, true otherwise.
+	 */
+	private boolean drawItems(Canvas canvas, Point drawPosition, byte drawZoomLevel) {
+		// find all items whose marker may intersect with the canvas
+		double scale = 1L << drawZoomLevel;
+		int[] candidateItems = this.itemIndex.query((drawPosition.x - this.markerExtent) / scale,
+				(drawPosition.y - this.markerExtent) / scale, (drawPosition.x + canvas.getWidth() + this.markerExtent)
+						/ scale, (drawPosition.y + canvas.getHeight() + this.markerExtent) / scale);
+
+		for (int candidateIndex = 0; candidateIndex < candidateItems.length; ++candidateIndex) {
+			if (isInterrupted() || sizeHasChanged()) {
+				return false;
+			}
+
+			// get the current item
+			int itemIndex = candidateItems[candidateIndex];
+			Item overlayItem = createItem(itemIndex);
+			if (overlayItem == null) {
+				continue;
+			}
+
+			synchronized (overlayItem) {
+				// make sure that the current item has a position
+				if (overlayItem.getPoint() == null) {
+					continue;
+				}
+
+				// calculate the relative item position on the canvas
+				this.itemPosition.x = this.itemIndex.getPixelX(itemIndex, drawZoomLevel) - drawPosition.x;
+				this.itemPosition.y = this.itemIndex.getPixelY(itemIndex, drawZoomLevel) - drawPosition.y;
+
+				// get the correct marker for the item
+				if (overlayItem.getMarker() == null) {
+					if (this.defaultMarker == null) {
+						// no marker to draw the item
+						continue;
+					}
+					this.itemMarker = this.defaultMarker;
+				} else {
+					this.itemMarker = overlayItem.getMarker();
+				}
+
+				if (drawMarker(canvas, this.itemMarker, this.itemPosition.x, this.itemPosition.y)) {
+					// add the current item index to the list of visible items
+					this.visibleItemsRedraw.add(Integer.valueOf(itemIndex));
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Draws the given marker at the given position if its bounding box intersects with the canvas.
+	 * 
+	 * @return true if the marker has been drawn, false otherwise.
+	 */
+	private boolean drawMarker(Canvas canvas, Drawable marker, int x, int y) {
+		// get the position of the marker
+		Rect markerBounds = marker.copyBounds();
+
+		// calculate the bounding box of the marker
+		this.left = x + markerBounds.left;
+		this.right = x + markerBounds.right;
+		this.top = y + markerBounds.top;
+		this.bottom = y + markerBounds.bottom;
+
+		// check if the bounding box of the marker intersects with the canvas
+		if (this.right >= 0 && this.left <= canvas.getWidth() && this.bottom >= 0 && this.top <= canvas.getHeight()) {
+			// set the position of the marker
+			marker.setBounds(this.left, this.top, this.right, this.bottom);
+
+			// draw the marker on the canvas
+			marker.draw(canvas);
+
+			// restore the position of the marker
+			marker.setBounds(markerBounds);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the indices of all items in the given cluster.
+	 */
+	private int[] getItemIndices(VisibleCluster visibleCluster) {
+		List<Object> items = visibleCluster.clusterIndex.getItems(visibleCluster.cluster);
+		int numberOfItems = size();
+		int[] result = new int[items.size()];
+		int count = 0;
+		for (int i = 0; i < items.size(); ++i) {
+			int index = ((Integer) items.get(i)).intValue();
+			if (index < numberOfItems) {
+				result[count++] = index;
+			}
+		}
+		if (count < result.length) {
+			int[] trimmedResult = new int[count];
+			System.arraycopy(result, 0, trimmedResult, 0, count);
+			return trimmedResult;
+		}
+		return result;
+	}
+
+	/**
+	 * Updates the spatial index of the items if items have been added, removed or changed since the last redraw. Only
+	 * the items from the first item passed to {@link #populate(int)} on are created and projected again and the given
+	 * cluster index is updated incrementally, so that only the clusters of these items are touched. The clusters are
+	 * keyed by item index, so that overlays which create a new item object for each call to {@link #createItem(int)}
+	 * are supported.
+	 */
+	private void updateItemIndex(OverlayClusterIndex overlayClusterIndex) {
+		int firstItem;
+		synchronized (this.itemIndex) {
+			firstItem = this.firstChangedItem;
+			this.firstChangedItem = Integer.MAX_VALUE;
+		}
+		int geometryVersion = this.itemIndex.getGeometryVersion();
+		if (geometryVersion != this.indexedGeometryVersion || overlayClusterIndex != this.indexedClusterIndex) {
+			// the changed items are unknown
+			firstItem = 0;
+		}
+		int numberOfItems = size();
+		int indexedItems = this.itemIndex.size();
+		firstItem = Math.min(firstItem, Math.min(numberOfItems, indexedItems));
+		if (firstItem == numberOfItems && numberOfItems == indexedItems) {
+			return;
+		}
+		this.indexedGeometryVersion = geometryVersion;
+		this.indexedClusterIndex = overlayClusterIndex;
+
+		if (firstItem == 0) {
+			this.markerExtent = this.defaultMarker == null ? 0 : getMarkerExtent(this.defaultMarker);
+		}
+		this.itemIndex.reset(firstItem, numberOfItems);
+		for (int itemIndex = firstItem; itemIndex < numberOfItems; ++itemIndex) {
+			Integer key = Integer.valueOf(itemIndex);
+			Item overlayItem = createItem(itemIndex);
+			if (overlayItem == null) {
+				removeFromClusters(overlayClusterIndex, key);
+				continue;
+			}
+
+			synchronized (overlayItem) {
+				overlayItem.register(this.itemIndex);
+				GeoPoint geoPoint = overlayItem.getPoint();
+				if (geoPoint == null) {
+					removeFromClusters(overlayClusterIndex, key);
+					continue;
+				}
+				double pixelX = OverlayGridIndex.toPixelX(geoPoint);
+				double pixelY = OverlayGridIndex.toPixelY(geoPoint);
+				this.itemIndex.set(itemIndex, pixelX, pixelY, pixelX, pixelY);
+				if (overlayClusterIndex != null) {
+					overlayClusterIndex.add(key, pixelX, pixelY);
+				}
+
+				if (overlayItem.getMarker() != null) {
+					this.markerExtent = Math.max(this.markerExtent, getMarkerExtent(overlayItem.getMarker()));
+				}
+			}
+		}
+		this.itemIndex.build();
+
+		// remove the clusters of items which have been removed from the end
+		for (int itemIndex = numberOfItems; itemIndex < indexedItems; ++itemIndex) {
+			removeFromClusters(overlayClusterIndex, Integer.valueOf(itemIndex));
+		}
+	}
 }
@@ -25,15 +25,16 @@ import android.graphics.Matrix;
 import android.graphics.Point;
 
 /**
- * Overlay is the abstract base class for all types of overlays. It handles the lifecycle of the overlay thread and
+ * Overlay is the abstract base class for all types of overlays. It schedules the redrawing of the overlay and
  * implements those parts of the redrawing process which all overlays have in common.
  * <p>
  * To add an overlay to a <code>MapView</code>, create a subclass of this class and add an instance to the list returned
- * by {@link MapView#getOverlays()}. When an overlay gets removed from the list, the corresponding thread is
- * automatically interrupted and all its resources are freed. Re-adding a previously removed overlay to the list will
- * therefore cause an {@link IllegalThreadStateException}.
+ * by {@link MapView#getOverlays()}. Overlays are redrawn by a small pool of worker threads which is shared by all
+ * overlays, with at most one redraw of the same overlay in progress at any time. When an overlay gets removed from the
+ * list, it is destroyed and all its resources are freed. Re-adding a previously removed overlay to the list will
+ * therefore cause an {@link IllegalStateException}.
  */
-public abstract class Overlay extends Thread {
+public abstract class Overlay {
 	/**
 	 * Enumeration of all types of events.
 	 */
@@ -58,7 +59,12 @@ public abstract class Overlay extends Thread {
 	/**
 	 * Flag which is set whenever the MapView dimensions have been changed.
 	 */
-	private boolean changedSize;
+	private volatile boolean changedSize;
+
+	/**
+	 * Flag to indicate if the overlay has been removed from its MapView.
+	 */
+	private volatile boolean destroyed;
 
 	/**
 	 * Flag to indicate if the overlay has a positive width and height.
@@ -108,7 +114,17 @@ public abstract class Overlay extends Thread {
 	/**
 	 * Flag to indicate if the overlay should redraw itself.
 	 */
-	private boolean redraw;
+	private volatile boolean redraw;
+
+	/**
+	 * Task which performs all pending work of the overlay in a worker thread.
+	 */
+	private final Runnable redrawTask;
+
+	/**
+	 * Flag to indicate if the redraw task has been passed to the worker pool and has not finished yet.
+	 */
+	private boolean scheduled;
 
 	/**
 	 * Reference to the MapView instance.
@@ -119,12 +135,17 @@ public abstract class Overlay extends Thread {
 	 * Default constructor which must be called by all subclasses.
 	 */
 	protected Overlay() {
-		super();
 		this.overlayCanvas = new Canvas();
 		this.matrix = new Matrix();
 		this.point = new Point();
 		this.positionBeforeDraw = new Point();
 		this.positionAfterDraw = new Point();
+		this.redrawTask = new Runnable() {
+			@Override
+			public void run() {
+				processPendingWork();
+			}
+		};
 	}
 
 	/**
@@ -191,7 +212,7 @@ public abstract class Overlay extends Thread {
 	public final void onSizeChanged() {
 		synchronized (this) {
 			this.changedSize = true;
-			notify();
+			schedule();
 		}
 	}
 
@@ -218,61 +239,85 @@ public abstract class Overlay extends Thread {
 	public final void requestRedraw() {
 		synchronized (this) {
 			this.redraw = true;
-			notify();
+			schedule();
 		}
 	}
 
-	@Override
-	public final void run() {
-		setName(getThreadName());
-
-		while (!isInterrupted()) {
-			synchronized (this) {
-				while (!isInterrupted() && !this.changedSize && !this.redraw) {
-					try {
-						wait();
-					} catch (InterruptedException e) {
-						// restore the interrupted status
-						interrupt();
+	/**
+	 * This method is called by the MapView once on each new overlay.
+	 * 
+	 * @param mapView
+	 *            the calling MapView.
+	 * @throws IllegalStateException
+	 *             if this overlay has already been destroyed.
+	 */
+	public final void setupOverlay(MapView mapView) {
+		if (this.destroyed) {
+			throw new IllegalStateException("overlay already destroyed");
+		}
+		this.internalMapView = mapView;
+		onSizeChanged();
+	}
+
+	/**
+	 * Performs all pending size changes and redraws until no more work is left. Called only by the redraw task, so that
+	 * no two threads work on the same overlay at the same time.
+	 */
+	private void processPendingWork() {
+		String workerThreadName = Thread.currentThread().getName();
+		Thread.currentThread().setName(getThreadName());
+		try {
+			while (true) {
+				synchronized (this) {
+					if (this.destroyed || (!this.changedSize && !this.redraw)) {
+						this.scheduled = false;
+						break;
 					}
 				}
-			}
-
-			if (isInterrupted()) {
-				break;
-			}
 
-			if (this.changedSize) {
-				changeSize();
-			}
+				if (this.changedSize) {
+					changeSize();
+				}
 
-			if (this.redraw) {
-				redrawOverlay();
+				if (this.redraw) {
+					redrawOverlay();
+				}
 			}
+		} finally {
+			Thread.currentThread().setName(workerThreadName);
 		}
 
-		// free the overlay bitmaps memory
-		if (this.overlayBitmap1 != null) {
-			this.overlayBitmap1.recycle();
+		if (this.destroyed) {
+			recycleBitmaps();
 		}
+	}
 
-		if (this.overlayBitmap2 != null) {
-			this.overlayBitmap2.recycle();
+	/**
+	 * Frees the memory of the overlay bitmaps.
+	 */
+	private void recycleBitmaps() {
+		synchronized (this.matrix) {
+			if (this.overlayBitmap1 != null) {
+				this.overlayBitmap1.recycle();
+				this.overlayBitmap1 = null;
+			}
+
+			if (this.overlayBitmap2 != null) {
+				this.overlayBitmap2.recycle();
+				this.overlayBitmap2 = null;
+			}
 		}
 	}
 
 	/**
-	 * This method is called by the MapView once on each new overlay.
-	 * 
-	 * @param mapView
-	 *            the calling MapView.
+	 * Passes the redraw task to the worker pool unless it is already waiting or running. Must be called while holding
+	 * the lock of this overlay.
 	 */
-	public final void setupOverlay(MapView mapView) {
-		if (isInterrupted() || !isAlive()) {
-			throw new IllegalThreadStateException("overlay thread already destroyed");
+	private void schedule() {
+		if (!this.scheduled && !this.destroyed && this.internalMapView != null) {
+			this.scheduled = true;
+			OverlayWorkerPool.execute(this.redrawTask);
 		}
-		this.internalMapView = mapView;
-		onSizeChanged();
 	}
 
 	private void redrawOverlay() {
@@ -380,8 +425,8 @@ public abstract class Overlay extends Thread {
 			byte drawZoomLevel);
 
 	/**
-	 * Returns the name of the overlay implementation. It will be used as the name for the overlay thread. Subclasses
-	 * should override this method to provide a more specific name.
+	 * Returns the name of the overlay implementation. It will be used as the name of the worker thread while it redraws
+	 * this overlay. Subclasses should override this method to provide a more specific name.
 	 * 
 	 * @return the name of the overlay implementation.
 	 */
@@ -389,27 +434,35 @@ public abstract class Overlay extends Thread {
 		return THREAD_NAME;
 	}
 
+	/**
+	 * Subclasses should check this method regularly while drawing and stop working as soon as it returns true.
+	 * 
+	 * @return true if this overlay has been removed from its MapView, false otherwise.
+	 */
+	protected final boolean isInterrupted() {
+		return this.destroyed;
+	}
+
 	/**
 	 * Changes the size of the overlay according to the MapView dimensions.
 	 */
 	final void changeSize() {
 		this.changedSize = false;
 
-		// check if the previous overlay bitmaps must be recycled
-		if (this.overlayBitmap1 != null) {
-			this.overlayBitmap1.recycle();
-		}
-		if (this.overlayBitmap2 != null) {
-			this.overlayBitmap2.recycle();
-		}
+		// recycle the previous overlay bitmaps
+		recycleBitmaps();
 
 		// check if the new dimensions are positive
 		if (this.internalMapView.getWidth() > 0 && this.internalMapView.getHeight() > 0) {
 			// create the two overlay bitmaps with the correct dimensions
-			this.overlayBitmap1 = Bitmap.createBitmap(this.internalMapView.getWidth(),
-					this.internalMapView.getHeight(), Bitmap.Config.ARGB_8888);
-			this.overlayBitmap2 = Bitmap.createBitmap(this.internalMapView.getWidth(),
-					this.internalMapView.getHeight(), Bitmap.Config.ARGB_8888);
+			Bitmap bitmap1 = Bitmap.createBitmap(this.internalMapView.getWidth(), this.internalMapView.getHeight(),
+					Bitmap.Config.ARGB_8888);
+			Bitmap bitmap2 = Bitmap.createBitmap(this.internalMapView.getWidth(), this.internalMapView.getHeight(),
+					Bitmap.Config.ARGB_8888);
+			synchronized (this.matrix) {
+				this.overlayBitmap1 = bitmap1;
+				this.overlayBitmap2 = bitmap2;
+			}
 			this.redraw = true;
 			this.hasValidDimensions = true;
 		} else {
@@ -417,6 +470,23 @@ public abstract class Overlay extends Thread {
 		}
 	}
 
+	/**
+	 * Removes this overlay from its MapView and frees all resources as soon as a running redraw has stopped.
+	 */
+	final void destroy() {
+		synchronized (this) {
+			if (this.destroyed) {
+				return;
+			}
+			this.destroyed = true;
+			if (this.scheduled) {
+				// the redraw task frees the resources when it stops
+				return;
+			}
+		}
+		recycleBitmaps();
+	}
+
 	/**
 	 * @return true if the dimensions of the overlay have changed, false otherwise.
 	 */
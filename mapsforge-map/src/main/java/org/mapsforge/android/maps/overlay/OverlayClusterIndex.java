@@ -0,0 +1,309 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.overlay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapsforge.core.Tile;
+
+/**
+ * A hierarchy of grid-based clusters of overlay items, one level per zoom level. The grid cells of each zoom level
+ * have a fixed size in screen pixels and are aligned so that every cell contains exactly four cells of the next zoom
+ * level. A cluster therefore is the union of at most four clusters of the next zoom level and an item can be added or
+ * removed by updating a single cluster on each level.
+ * <p>
+ * Items are compared via {@link Object#equals(Object)}, so that for example the indices of overlay items can be used
+ * as items. All coordinates are pixel coordinates on the world map at zoom level 0. This class is thread-safe.
+ */
+final class OverlayClusterIndex {
+	/**
+	 * A cluster of items on a single zoom level.
+	 */
+	static final class Cluster {
+		private final long cell;
+		private final List<Cluster> children;
+		private int count;
+		private final List<Object> items;
+		private final Cluster parent;
+		private double sumX;
+		private double sumY;
+
+		Cluster(Cluster parent, long cell, boolean leaf) {
+			this.parent = parent;
+			this.cell = cell;
+			this.children = leaf ? null : new ArrayList<Cluster>(4);
+			this.items = leaf ? new ArrayList<Object>(1) : null;
+		}
+
+		/**
+		 * @return the horizontal pixel coordinate of the center of all items at zoom level 0.
+		 */
+		double getCenterX() {
+			return this.sumX / this.count;
+		}
+
+		/**
+		 * @return the vertical pixel coordinate of the center of all items at zoom level 0.
+		 */
+		double getCenterY() {
+			return this.sumY / this.count;
+		}
+
+		/**
+		 * @return the number of items in this cluster.
+		 */
+		int size() {
+			return this.count;
+		}
+
+		void collectItems(List<Object> result) {
+			if (this.items != null) {
+				result.addAll(this.items);
+				return;
+			}
+			for (int i = 0; i < this.children.size(); ++i) {
+				this.children.get(i).collectItems(result);
+			}
+		}
+
+		Object getFirstItem() {
+			Cluster cluster = this;
+			while (cluster.items == null) {
+				cluster = cluster.children.get(0);
+			}
+			return cluster.items.get(0);
+		}
+	}
+
+	private static final class Position {
+		final double x;
+		final double y;
+
+		Position(double x, double y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	private static void addIfInside(List<Cluster> result, Cluster cluster, double left, double top, double right,
+			double bottom) {
+		double centerX = cluster.getCenterX();
+		double centerY = cluster.getCenterY();
+		if (centerX >= left && centerX <= right && centerY >= top && centerY <= bottom) {
+			result.add(cluster);
+		}
+	}
+
+	private static long getCellKey(int cellX, int cellY) {
+		return ((long) cellX << 32) | (cellY & 0xffffffffL);
+	}
+
+	private final int clusterSize;
+	private final List<Map<Long, Cluster>> levels;
+	private final byte maximumZoomLevel;
+	private final Map<Object, Position> positions;
+
+	/**
+	 * @param clusterSize
+	 *            the size of a grid cell in screen pixels.
+	 * @param maximumZoomLevel
+	 *            the highest zoom level on which items are clustered.
+	 * @throws IllegalArgumentException
+	 *             if the cluster size is not positive, the zoom level is negative or the grid cells of the zoom level
+	 *             cannot be addressed with int coordinates.
+	 */
+	OverlayClusterIndex(int clusterSize, byte maximumZoomLevel) {
+		if (clusterSize <= 0) {
+			throw new IllegalArgumentException("clusterSize must be positive: " + clusterSize);
+		} else if (maximumZoomLevel < 0) {
+			throw new IllegalArgumentException("maximumZoomLevel must not be negative: " + maximumZoomLevel);
+		} else if (Tile.TILE_SIZE * Math.pow(2, maximumZoomLevel) / clusterSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("maximumZoomLevel is too large for clusterSize " + clusterSize + ": "
+					+ maximumZoomLevel);
+		}
+		this.clusterSize = clusterSize;
+		this.maximumZoomLevel = maximumZoomLevel;
+		this.levels = new ArrayList<Map<Long, Cluster>>(maximumZoomLevel + 1);
+		for (int i = 0; i <= maximumZoomLevel; ++i) {
+			this.levels.add(new HashMap<Long, Cluster>());
+		}
+		this.positions = new HashMap<Object, Position>();
+	}
+
+	/**
+	 * Adds an item to the index or moves it to the given position if it has been added before.
+	 *
+	 * @param item
+	 *            the item to add.
+	 * @param x
+	 *            the horizontal pixel coordinate of the item at zoom level 0.
+	 * @param y
+	 *            the vertical pixel coordinate of the item at zoom level 0.
+	 */
+	synchronized void add(Object item, double x, double y) {
+		Position position = this.positions.get(item);
+		if (position != null) {
+			if (position.x == x && position.y == y) {
+				return;
+			}
+			remove(item);
+		}
+		this.positions.put(item, new Position(x, y));
+
+		double scale = (double) (1L << this.maximumZoomLevel) / this.clusterSize;
+		int leafCellX = (int) Math.floor(x * scale);
+		int leafCellY = (int) Math.floor(y * scale);
+
+		Cluster parent = null;
+		for (int zoomLevel = 0; zoomLevel <= this.maximumZoomLevel; ++zoomLevel) {
+			int shift = this.maximumZoomLevel - zoomLevel;
+			long cell = getCellKey(leafCellX >> shift, leafCellY >> shift);
+			Long key = Long.valueOf(cell);
+			Cluster cluster = this.levels.get(zoomLevel).get(key);
+			if (cluster == null) {
+				cluster = new Cluster(parent, cell, zoomLevel == this.maximumZoomLevel);
+				this.levels.get(zoomLevel).put(key, cluster);
+				if (parent != null) {
+					parent.children.add(cluster);
+				}
+			}
+			++cluster.count;
+			cluster.sumX += x;
+			cluster.sumY += y;
+			parent = cluster;
+		}
+		parent.items.add(item);
+	}
+
+	/**
+	 * Removes all items from the index.
+	 */
+	synchronized void clear() {
+		for (int i = 0; i < this.levels.size(); ++i) {
+			this.levels.get(i).clear();
+		}
+		this.positions.clear();
+	}
+
+	/**
+	 * @param zoomLevel
+	 *            the zoom level of the clusters.
+	 * @param left
+	 *            the left border of the area at zoom level 0.
+	 * @param top
+	 *            the top border of the area at zoom level 0.
+	 * @param right
+	 *            the right border of the area at zoom level 0.
+	 * @param bottom
+	 *            the bottom border of the area at zoom level 0.
+	 * @return all clusters on the given zoom level whose center is within the given area.
+	 */
+	synchronized List<Cluster> getClusters(byte zoomLevel, double left, double top, double right, double bottom) {
+		Map<Long, Cluster> level = this.levels.get(zoomLevel);
+		List<Cluster> result = new ArrayList<Cluster>();
+		if (level.isEmpty()) {
+			return result;
+		}
+
+		double scale = (double) (1L << zoomLevel) / this.clusterSize;
+		int cellLeft = (int) Math.floor(left * scale);
+		int cellTop = (int) Math.floor(top * scale);
+		int cellRight = (int) Math.floor(right * scale);
+		int cellBottom = (int) Math.floor(bottom * scale);
+
+		if ((long) (cellRight - cellLeft + 1) * (cellBottom - cellTop + 1) > level.size()) {
+			// the area covers more cells than there are clusters
+			for (Cluster cluster : level.values()) {
+				addIfInside(result, cluster, left, top, right, bottom);
+			}
+			return result;
+		}
+
+		for (int cellY = cellTop; cellY <= cellBottom; ++cellY) {
+			for (int cellX = cellLeft; cellX <= cellRight; ++cellX) {
+				Cluster cluster = level.get(Long.valueOf(getCellKey(cellX, cellY)));
+				if (cluster != null) {
+					addIfInside(result, cluster, left, top, right, bottom);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param cluster
+	 *            the cluster whose items should be returned.
+	 * @return all items of the given cluster, empty if the cluster has been removed in the meantime.
+	 */
+	synchronized List<Object> getItems(Cluster cluster) {
+		List<Object> result = new ArrayList<Object>(cluster.count);
+		if (cluster.count > 0) {
+			cluster.collectItems(result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the highest zoom level on which items are clustered.
+	 */
+	byte getMaximumZoomLevel() {
+		return this.maximumZoomLevel;
+	}
+
+	/**
+	 * Removes an item from the index.
+	 *
+	 * @param item
+	 *            the item to remove.
+	 * @return true if the item has been removed, false if it was not in the index.
+	 */
+	synchronized boolean remove(Object item) {
+		Position position = this.positions.remove(item);
+		if (position == null) {
+			return false;
+		}
+
+		double scale = (double) (1L << this.maximumZoomLevel) / this.clusterSize;
+		long leafCell = getCellKey((int) Math.floor(position.x * scale), (int) Math.floor(position.y * scale));
+		Cluster cluster = this.levels.get(this.maximumZoomLevel).get(Long.valueOf(leafCell));
+		cluster.items.remove(item);
+
+		int zoomLevel = this.maximumZoomLevel;
+		while (cluster != null) {
+			--cluster.count;
+			cluster.sumX -= position.x;
+			cluster.sumY -= position.y;
+			if (cluster.count == 0) {
+				this.levels.get(zoomLevel).remove(Long.valueOf(cluster.cell));
+				if (cluster.parent != null) {
+					cluster.parent.children.remove(cluster);
+				}
+			}
+			cluster = cluster.parent;
+			--zoomLevel;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of items in this index.
+	 */
+	synchronized int size() {
+		return this.positions.size();
+	}
+}
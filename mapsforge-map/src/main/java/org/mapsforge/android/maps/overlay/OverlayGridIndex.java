@@ -0,0 +1,398 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.overlay;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MercatorProjection;
+
+/**
+ * A uniform grid over the bounding boxes of overlay elements. The grid covers the bounding box of all entries and is
+ * stored in a compact array layout, so that a query only touches the entries of the cells which intersect the visible
+ * area.
+ * <p>
+ * All coordinates are pixel coordinates on the world map at zoom level 0. Pixel coordinates on any other zoom level are
+ * derived by a multiplication and cached per zoom level for point entries.
+ */
+final class OverlayGridIndex {
+	/**
+	 * The geometry versions of an overlay element which has not been added to any index.
+	 */
+	static final AtomicInteger[] NO_GEOMETRY_VERSIONS = new AtomicInteger[0];
+
+	/**
+	 * Average number of entries per grid cell.
+	 */
+	private static final int ENTRIES_PER_CELL = 4;
+
+	/**
+	 * Maximum number of grid cells along each axis.
+	 */
+	private static final int MAXIMUM_CELLS_PER_AXIS = 256;
+
+	/**
+	 * Number of supported zoom levels for the pixel cache.
+	 */
+	private static final int ZOOM_LEVELS = Byte.MAX_VALUE + 1;
+
+	/**
+	 * Marks a pixel coordinate which has not been calculated yet.
+	 */
+	private static final int UNCACHED = Integer.MIN_VALUE;
+
+	/**
+	 * Signals to all indices of an overlay element that its coordinates have been changed.
+	 *
+	 * @param geometryVersions
+	 *            the geometry versions of the indices which contain the element.
+	 */
+	static void geometryChanged(AtomicInteger[] geometryVersions) {
+		for (int i = 0; i < geometryVersions.length; ++i) {
+			geometryVersions[i].incrementAndGet();
+		}
+	}
+
+	/**
+	 * @param geoPoint
+	 *            the geographical point to convert.
+	 * @return the horizontal pixel coordinate of the given point at zoom level 0.
+	 */
+	static double toPixelX(GeoPoint geoPoint) {
+		return MercatorProjection.longitudeToPixelX(geoPoint.getLongitude(), (byte) 0);
+	}
+
+	/**
+	 * @param geoPoint
+	 *            the geographical point to convert.
+	 * @return the vertical pixel coordinate of the given point at zoom level 0.
+	 */
+	static double toPixelY(GeoPoint geoPoint) {
+		return MercatorProjection.latitudeToPixelY(geoPoint.getLatitude(), (byte) 0);
+	}
+
+	private int[] cellEntries;
+	private double cellHeight;
+	private int[] cellStart;
+	private double cellWidth;
+	private final AtomicInteger geometryVersion;
+	private int cellsX;
+	private int cellsY;
+	private double gridMinX;
+	private double gridMinY;
+	private double[] maxX;
+	private double[] maxY;
+	private double[] minX;
+	private double[] minY;
+	private final int[][] pixelCacheX;
+	private final int[][] pixelCacheY;
+	private int size;
+
+	OverlayGridIndex() {
+		this.geometryVersion = new AtomicInteger();
+		this.pixelCacheX = new int[ZOOM_LEVELS][];
+		this.pixelCacheY = new int[ZOOM_LEVELS][];
+		reset(0);
+		build();
+	}
+
+	/**
+	 * Builds the grid from the bounding boxes which have been set since the last call to {@link #reset(int)}.
+	 */
+	void build() {
+		double boundsMinX = Double.POSITIVE_INFINITY;
+		double boundsMinY = Double.POSITIVE_INFINITY;
+		double boundsMaxX = Double.NEGATIVE_INFINITY;
+		double boundsMaxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < this.size; ++i) {
+			if (isEmpty(i)) {
+				continue;
+			}
+			boundsMinX = Math.min(boundsMinX, this.minX[i]);
+			boundsMinY = Math.min(boundsMinY, this.minY[i]);
+			boundsMaxX = Math.max(boundsMaxX, this.maxX[i]);
+			boundsMaxY = Math.max(boundsMaxY, this.maxY[i]);
+		}
+
+		if (boundsMinX > boundsMaxX) {
+			// no entry has a position
+			this.cellsX = 0;
+			this.cellsY = 0;
+			this.cellStart = new int[1];
+			this.cellEntries = new int[0];
+			return;
+		}
+
+		int cellsPerAxis = (int) Math.ceil(Math.sqrt((double) this.size / ENTRIES_PER_CELL));
+		cellsPerAxis = Math.max(1, Math.min(MAXIMUM_CELLS_PER_AXIS, cellsPerAxis));
+		this.cellsX = cellsPerAxis;
+		this.cellsY = cellsPerAxis;
+		this.gridMinX = boundsMinX;
+		this.gridMinY = boundsMinY;
+		this.cellWidth = Math.max(Double.MIN_VALUE, (boundsMaxX - boundsMinX) / this.cellsX);
+		this.cellHeight = Math.max(Double.MIN_VALUE, (boundsMaxY - boundsMinY) / this.cellsY);
+
+		// first pass: count the entries of each cell
+		this.cellStart = new int[this.cellsX * this.cellsY + 1];
+		for (int i = 0; i < this.size; ++i) {
+			if (isEmpty(i)) {
+				continue;
+			}
+			int cellLeft = getCellX(this.minX[i]);
+			int cellRight = getCellX(this.maxX[i]);
+			int cellTop = getCellY(this.minY[i]);
+			int cellBottom = getCellY(this.maxY[i]);
+			for (int cellY = cellTop; cellY <= cellBottom; ++cellY) {
+				for (int cellX = cellLeft; cellX <= cellRight; ++cellX) {
+					++this.cellStart[cellY * this.cellsX + cellX + 1];
+				}
+			}
+		}
+		for (int i = 1; i < this.cellStart.length; ++i) {
+			this.cellStart[i] += this.cellStart[i - 1];
+		}
+
+		// second pass: fill the cells
+		this.cellEntries = new int[this.cellStart[this.cellStart.length - 1]];
+		int[] cellFill = new int[this.cellsX * this.cellsY];
+		for (int i = 0; i < this.size; ++i) {
+			if (isEmpty(i)) {
+				continue;
+			}
+			int cellLeft = getCellX(this.minX[i]);
+			int cellRight = getCellX(this.maxX[i]);
+			int cellTop = getCellY(this.minY[i]);
+			int cellBottom = getCellY(this.maxY[i]);
+			for (int cellY = cellTop; cellY <= cellBottom; ++cellY) {
+				for (int cellX = cellLeft; cellX <= cellRight; ++cellX) {
+					int cell = cellY * this.cellsX + cellX;
+					this.cellEntries[this.cellStart[cell] + cellFill[cell]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the geometry version of this index, which is incremented whenever the coordinates of a registered overlay
+	 *         element change.
+	 */
+	int getGeometryVersion() {
+		return this.geometryVersion.get();
+	}
+
+	/**
+	 * @param entry
+	 *            the index of the entry.
+	 * @param zoomLevel
+	 *            the zoom level of the pixel coordinate.
+	 * @return the horizontal pixel coordinate of the top-left corner of the entry at the given zoom level.
+	 */
+	int getPixelX(int entry, byte zoomLevel) {
+		int[] cache = getPixelCache(this.pixelCacheX, zoomLevel);
+		if (cache[entry] == UNCACHED) {
+			cache[entry] = (int) (this.minX[entry] * (1L << zoomLevel));
+		}
+		return cache[entry];
+	}
+
+	/**
+	 * @param entry
+	 *            the index of the entry.
+	 * @param zoomLevel
+	 *            the zoom level of the pixel coordinate.
+	 * @return the vertical pixel coordinate of the top-left corner of the entry at the given zoom level.
+	 */
+	int getPixelY(int entry, byte zoomLevel) {
+		int[] cache = getPixelCache(this.pixelCacheY, zoomLevel);
+		if (cache[entry] == UNCACHED) {
+			cache[entry] = (int) (this.minY[entry] * (1L << zoomLevel));
+		}
+		return cache[entry];
+	}
+
+	/**
+	 * @param entry
+	 *            the index of the entry.
+	 * @return true if the given entry has no position, false otherwise.
+	 */
+	boolean isEmpty(int entry) {
+		return Double.isNaN(this.minX[entry]);
+	}
+
+	/**
+	 * Finds all entries whose bounding box intersects the given rectangle. The result is sorted in ascending order and
+	 * contains no duplicates.
+	 *
+	 * @param left
+	 *            the left border of the rectangle at zoom level 0.
+	 * @param top
+	 *            the top border of the rectangle at zoom level 0.
+	 * @param right
+	 *            the right border of the rectangle at zoom level 0.
+	 * @param bottom
+	 *            the bottom border of the rectangle at zoom level 0.
+	 * @return the indices of all intersecting entries.
+	 */
+	int[] query(double left, double top, double right, double bottom) {
+		if (this.cellsX == 0) {
+			return new int[0];
+		}
+
+		int cellLeft = getCellX(left);
+		int cellRight = getCellX(right);
+		int cellTop = getCellY(top);
+		int cellBottom = getCellY(bottom);
+
+		int candidates = 0;
+		for (int cellY = cellTop; cellY <= cellBottom; ++cellY) {
+			int rowStart = cellY * this.cellsX;
+			candidates += this.cellStart[rowStart + cellRight + 1] - this.cellStart[rowStart + cellLeft];
+		}
+
+		int[] result = new int[candidates];
+		int count = 0;
+		for (int cellY = cellTop; cellY <= cellBottom; ++cellY) {
+			int rowStart = cellY * this.cellsX;
+			int end = this.cellStart[rowStart + cellRight + 1];
+			for (int i = this.cellStart[rowStart + cellLeft]; i < end; ++i) {
+				int entry = this.cellEntries[i];
+				if (this.maxX[entry] >= left && this.minX[entry] <= right && this.maxY[entry] >= top
+						&& this.minY[entry] <= bottom) {
+					result[count++] = entry;
+				}
+			}
+		}
+
+		// sort the result to keep the original drawing order and remove duplicates of entries in several cells
+		Arrays.sort(result, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; ++i) {
+			if (unique == 0 || result[unique - 1] != result[i]) {
+				result[unique++] = result[i];
+			}
+		}
+		return unique == result.length ? result : Arrays.copyOf(result, unique);
+	}
+
+	/**
+	 * Registers this index for the geometry changes of an overlay element, so that only changes of the elements of this
+	 * index increment its geometry version.
+	 *
+	 * @param geometryVersions
+	 *            the geometry versions of the indices which already contain the element.
+	 * @return the geometry versions of the indices which contain the element, including this index.
+	 */
+	AtomicInteger[] register(AtomicInteger[] geometryVersions) {
+		for (int i = 0; i < geometryVersions.length; ++i) {
+			if (geometryVersions[i] == this.geometryVersion) {
+				return geometryVersions;
+			}
+		}
+		AtomicInteger[] result = Arrays.copyOf(geometryVersions, geometryVersions.length + 1);
+		result[geometryVersions.length] = this.geometryVersion;
+		return result;
+	}
+
+	/**
+	 * Discards all entries and prepares the index for the given number of entries. All entries have no position until
+	 * their bounding box is set.
+	 *
+	 * @param numberOfEntries
+	 *            the new number of entries.
+	 */
+	void reset(int numberOfEntries) {
+		reset(0, numberOfEntries);
+	}
+
+	/**
+	 * Discards all entries from the given entry on and prepares the index for the given number of entries. The
+	 * bounding boxes of the preceding entries are kept, all other entries have no position until their bounding box is
+	 * set.
+	 *
+	 * @param firstEntry
+	 *            the index of the first entry to discard.
+	 * @param numberOfEntries
+	 *            the new number of entries.
+	 */
+	void reset(int firstEntry, int numberOfEntries) {
+		if (this.minX == null) {
+			this.minX = new double[numberOfEntries];
+			this.minY = new double[numberOfEntries];
+			this.maxX = new double[numberOfEntries];
+			this.maxY = new double[numberOfEntries];
+		} else if (this.minX.length < numberOfEntries) {
+			int capacity = Math.max(numberOfEntries, this.minX.length * 2);
+			this.minX = Arrays.copyOf(this.minX, capacity);
+			this.minY = Arrays.copyOf(this.minY, capacity);
+			this.maxX = Arrays.copyOf(this.maxX, capacity);
+			this.maxY = Arrays.copyOf(this.maxY, capacity);
+		}
+		if (firstEntry < numberOfEntries) {
+			Arrays.fill(this.minX, firstEntry, numberOfEntries, Double.NaN);
+		}
+		this.size = numberOfEntries;
+		Arrays.fill(this.pixelCacheX, null);
+		Arrays.fill(this.pixelCacheY, null);
+	}
+
+	/**
+	 * Sets the bounding box of an entry.
+	 *
+	 * @param entry
+	 *            the index of the entry.
+	 * @param left
+	 *            the left border of the bounding box at zoom level 0.
+	 * @param top
+	 *            the top border of the bounding box at zoom level 0.
+	 * @param right
+	 *            the right border of the bounding box at zoom level 0.
+	 * @param bottom
+	 *            the bottom border of the bounding box at zoom level 0.
+	 */
+	void set(int entry, double left, double top, double right, double bottom) {
+		this.minX[entry] = left;
+		this.minY[entry] = top;
+		this.maxX[entry] = right;
+		this.maxY[entry] = bottom;
+	}
+
+	/**
+	 * @return the number of entries in this index.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	private int getCellX(double x) {
+		int cellX = (int) Math.floor((x - this.gridMinX) / this.cellWidth);
+		return Math.max(0, Math.min(this.cellsX - 1, cellX));
+	}
+
+	private int getCellY(double y) {
+		int cellY = (int) Math.floor((y - this.gridMinY) / this.cellHeight);
+		return Math.max(0, Math.min(this.cellsY - 1, cellY));
+	}
+
+	private int[] getPixelCache(int[][] pixelCaches, byte zoomLevel) {
+		int[] cache = pixelCaches[zoomLevel];
+		if (cache == null) {
+			cache = new int[this.size];
+			Arrays.fill(cache, UNCACHED);
+			pixelCaches[zoomLevel] = cache;
+		}
+		return cache;
+	}
+}
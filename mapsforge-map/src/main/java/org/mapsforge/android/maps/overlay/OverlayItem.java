@@ -14,9 +14,10 @@
  */
 package org.mapsforge.android.maps.overlay;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.mapsforge.core.GeoPoint;
 
-import android.graphics.Point;
 import android.graphics.drawable.Drawable;
 
 /**
@@ -45,20 +46,15 @@ public class OverlayItem {
 	protected String title;
 
 	/**
-	 * Cached position of the item on the map.
+	 * Geometry versions of the spatial indices which contain the item.
 	 */
-	Point cachedMapPosition;
-
-	/**
-	 * Zoom level of the cached map position.
-	 */
-	byte cachedZoomLevel;
+	private AtomicInteger[] geometryVersions = OverlayGridIndex.NO_GEOMETRY_VERSIONS;
 
 	/**
 	 * Constructs a new OverlayItem.
 	 */
 	public OverlayItem() {
-		this.cachedZoomLevel = Byte.MIN_VALUE;
+		// do nothing
 	}
 
 	/**
@@ -73,7 +69,6 @@ public class OverlayItem {
 		this.point = point;
 		this.title = title;
 		this.snippet = snippet;
-		this.cachedZoomLevel = Byte.MIN_VALUE;
 	}
 
 	/**
@@ -92,7 +87,6 @@ public class OverlayItem {
 		this.title = title;
 		this.snippet = snippet;
 		this.marker = marker;
-		this.cachedZoomLevel = Byte.MIN_VALUE;
 	}
 
 	/**
@@ -137,6 +131,7 @@ public class OverlayItem {
 	 */
 	public synchronized void setMarker(Drawable marker) {
 		this.marker = marker;
+		OverlayGridIndex.geometryChanged(this.geometryVersions);
 	}
 
 	/**
@@ -149,7 +144,7 @@ public class OverlayItem {
 	 */
 	public synchronized void setPoint(GeoPoint point) {
 		this.point = point;
-		this.cachedZoomLevel = Byte.MIN_VALUE;
+		OverlayGridIndex.geometryChanged(this.geometryVersions);
 	}
 
 	/**
@@ -171,4 +166,15 @@ public class OverlayItem {
 	public synchronized void setTitle(String title) {
 		this.title = title;
 	}
+
+	/**
+	 * Registers the given spatial index for changes of the position or marker of this item. Must be called while
+	 * holding the lock of this item.
+	 * 
+	 * @param overlayGridIndex
+	 *            the index which contains this item.
+	 */
+	void register(OverlayGridIndex overlayGridIndex) {
+		this.geometryVersions = overlayGridIndex.register(this.geometryVersions);
+	}
 }
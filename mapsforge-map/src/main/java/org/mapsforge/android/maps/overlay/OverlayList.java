@@ -73,7 +73,7 @@ public class OverlayList implements List<Overlay>, RandomAccess {
 	@Override
 	public void clear() {
 		for (int i = size() - 1; i >= 0; --i) {
-			get(i).interrupt();
+			get(i).destroy();
 		}
 		this.list.clear();
 		this.mapView.invalidateOnUiThread();
@@ -127,7 +127,7 @@ public class OverlayList implements List<Overlay>, RandomAccess {
 	@Override
 	public Overlay remove(int index) {
 		Overlay removedElement = this.list.remove(index);
-		removedElement.interrupt();
+		removedElement.destroy();
 		this.mapView.invalidateOnUiThread();
 		return removedElement;
 	}
@@ -136,7 +136,7 @@ public class OverlayList implements List<Overlay>, RandomAccess {
 	public boolean remove(Object object) {
 		boolean listChanged = this.list.remove(object);
 		if (object instanceof Overlay) {
-			((Overlay) object).interrupt();
+			((Overlay) object).destroy();
 		}
 		this.mapView.invalidateOnUiThread();
 		return listChanged;
@@ -147,7 +147,7 @@ public class OverlayList implements List<Overlay>, RandomAccess {
 		boolean listChanged = this.list.removeAll(collection);
 		for (Object object : collection) {
 			if (object instanceof Overlay) {
-				((Overlay) object).interrupt();
+				((Overlay) object).destroy();
 			}
 		}
 		this.mapView.invalidateOnUiThread();
@@ -163,7 +163,7 @@ public class OverlayList implements List<Overlay>, RandomAccess {
 	public Overlay set(int index, Overlay overlay) {
 		setupOverlay(overlay);
 		Overlay previousElement = this.list.set(index, overlay);
-		previousElement.interrupt();
+		previousElement.destroy();
 		this.mapView.invalidateOnUiThread();
 		return previousElement;
 	}
@@ -189,9 +189,6 @@ public class OverlayList implements List<Overlay>, RandomAccess {
 	}
 
 	private void setupOverlay(Overlay overlay) {
-		if (!overlay.isAlive()) {
-			overlay.start();
-		}
 		overlay.setupOverlay(this.mapView);
 	}
 }
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.overlay;
+
+import java.util.Arrays;
+
+import org.mapsforge.core.GeoPoint;
+
+import android.graphics.Path;
+
+/**
+ * A growable sequence of way nodes with simplified versions for each zoom level. The nodes are split into blocks of a
+ * fixed size which share their first and last node with the neighbouring blocks. The bounding box and the
+ * Douglas-Peucker simplification of a complete block are calculated only once, so that appending a node takes
+ * amortised constant time and a redraw only simplifies the last, incomplete block again.
+ * <p>
+ * All coordinates are pixel coordinates on the world map at zoom level 0. This class is not thread-safe.
+ */
+final class OverlayPolyline {
+	/**
+	 * Marks a simplification which keeps all nodes of a block.
+	 */
+	private static final int[] ALL_NODES = new int[0];
+
+	/**
+	 * Number of segments per block.
+	 */
+	static final int BLOCK_SIZE = 128;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Maximum distance in pixels between a removed node and the simplified line.
+	 */
+	private static final double TOLERANCE = 0.5;
+
+	private static final int ZOOM_LEVELS = Byte.MAX_VALUE + 1;
+
+	private static double getSquaredSegmentDistance(double x, double y, double startX, double startY, double endX,
+			double endY) {
+		double dx = endX - startX;
+		double dy = endY - startY;
+		double lengthSquared = dx * dx + dy * dy;
+		if (lengthSquared > 0) {
+			double t = ((x - startX) * dx + (y - startY) * dy) / lengthSquared;
+			if (t >= 1) {
+				startX = endX;
+				startY = endY;
+			} else if (t > 0) {
+				startX += t * dx;
+				startY += t * dy;
+			}
+		}
+		dx = x - startX;
+		dy = y - startY;
+		return dx * dx + dy * dy;
+	}
+
+	private double[] blockBounds;
+	private int[][][] blockSimplifications;
+	private GeoPoint[] geoPoints;
+	private double maxX;
+	private double maxY;
+	private double minX;
+	private double minY;
+	private int size;
+	private double[] x;
+	private double[] y;
+
+	/**
+	 * @param geoPoints
+	 *            the initial way nodes, must not contain null elements.
+	 */
+	OverlayPolyline(GeoPoint[] geoPoints) {
+		int capacity = Math.max(INITIAL_CAPACITY, geoPoints.length);
+		this.geoPoints = new GeoPoint[capacity];
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.blockBounds = new double[0];
+		this.blockSimplifications = new int[0][][];
+		this.minX = Double.POSITIVE_INFINITY;
+		this.minY = Double.POSITIVE_INFINITY;
+		this.maxX = Double.NEGATIVE_INFINITY;
+		this.maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < geoPoints.length; ++i) {
+			add(geoPoints[i]);
+		}
+	}
+
+	/**
+	 * Appends a way node to this polyline.
+	 *
+	 * @param geoPoint
+	 *            the way node to append.
+	 */
+	void add(GeoPoint geoPoint) {
+		if (this.size == this.x.length) {
+			int capacity = this.size << 1;
+			this.geoPoints = Arrays.copyOf(this.geoPoints, capacity);
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+		}
+		double pixelX = OverlayGridIndex.toPixelX(geoPoint);
+		double pixelY = OverlayGridIndex.toPixelY(geoPoint);
+		this.geoPoints[this.size] = geoPoint;
+		this.x[this.size] = pixelX;
+		this.y[this.size] = pixelY;
+		++this.size;
+
+		this.minX = Math.min(this.minX, pixelX);
+		this.minY = Math.min(this.minY, pixelY);
+		this.maxX = Math.max(this.maxX, pixelX);
+		this.maxY = Math.max(this.maxY, pixelY);
+	}
+
+	/**
+	 * Appends the simplified polyline for the given zoom level to a path. If clipping is enabled, segments outside of
+	 * the clipping rectangle are skipped and the path is continued with a move to the next visible segment.
+	 *
+	 * @param path
+	 *            the path to which the polyline should be appended.
+	 * @param zoomLevel
+	 *            the zoom level for which the polyline should be simplified and projected.
+	 * @param originX
+	 *            the horizontal pixel coordinate of the path origin at the given zoom level.
+	 * @param originY
+	 *            the vertical pixel coordinate of the path origin at the given zoom level.
+	 * @param clip
+	 *            the clipping rectangle at zoom level 0 as left, top, right, bottom or null to draw all segments.
+	 */
+	void appendToPath(Path path, byte zoomLevel, int originX, int originY, double[] clip) {
+		if (this.size < 2) {
+			return;
+		}
+
+		double scale = 1L << zoomLevel;
+		boolean penDown = false;
+		int previous = 0;
+		int blocks = getNumberOfBlocks();
+		for (int block = 0; block < blocks; ++block) {
+			int blockStart = block * BLOCK_SIZE;
+			int blockEnd = Math.min(blockStart + BLOCK_SIZE, this.size - 1);
+
+			if (clip != null) {
+				double[] bounds = getBlockBounds(block);
+				if (bounds[0] > clip[2] || bounds[2] < clip[0] || bounds[1] > clip[3] || bounds[3] < clip[1]) {
+					// all segments of this block are invisible
+					penDown = false;
+					previous = blockEnd;
+					continue;
+				}
+			}
+
+			int[] simplification = getBlockSimplification(block, zoomLevel);
+			int nodes = simplification == ALL_NODES ? blockEnd - blockStart + 1 : simplification.length;
+			// the first node of a block is the last node of the previous block
+			for (int i = 1; i < nodes; ++i) {
+				int current = simplification == ALL_NODES ? blockStart + i : blockStart + simplification[i];
+				if (clip != null && isOutside(previous, current, clip)) {
+					penDown = false;
+				} else {
+					if (!penDown) {
+						path.moveTo((float) (this.x[previous] * scale - originX),
+								(float) (this.y[previous] * scale - originY));
+						penDown = true;
+					}
+					path.lineTo((float) (this.x[current] * scale - originX),
+							(float) (this.y[current] * scale - originY));
+				}
+				previous = current;
+			}
+		}
+	}
+
+	/**
+	 * @return a copy of all way nodes of this polyline.
+	 */
+	GeoPoint[] getGeoPoints() {
+		return Arrays.copyOf(this.geoPoints, this.size);
+	}
+
+	/**
+	 * @return the right border of the bounding box at zoom level 0.
+	 */
+	double getMaxX() {
+		return this.maxX;
+	}
+
+	/**
+	 * @return the bottom border of the bounding box at zoom level 0.
+	 */
+	double getMaxY() {
+		return this.maxY;
+	}
+
+	/**
+	 * @return the left border of the bounding box at zoom level 0.
+	 */
+	double getMinX() {
+		return this.minX;
+	}
+
+	/**
+	 * @return the top border of the bounding box at zoom level 0.
+	 */
+	double getMinY() {
+		return this.minY;
+	}
+
+	/**
+	 * @param zoomLevel
+	 *            the zoom level of the simplification.
+	 * @return the indices of all way nodes which remain after the simplification for the given zoom level.
+	 */
+	int[] simplify(byte zoomLevel) {
+		if (this.size < 2) {
+			return this.size == 0 ? new int[0] : new int[] { 0 };
+		}
+
+		int[] result = new int[this.size];
+		int count = 1;
+		int blocks = getNumberOfBlocks();
+		for (int block = 0; block < blocks; ++block) {
+			int blockStart = block * BLOCK_SIZE;
+			int blockEnd = Math.min(blockStart + BLOCK_SIZE, this.size - 1);
+			int[] simplification = getBlockSimplification(block, zoomLevel);
+			int nodes = simplification == ALL_NODES ? blockEnd - blockStart + 1 : simplification.length;
+			for (int i = 1; i < nodes; ++i) {
+				result[count++] = simplification == ALL_NODES ? blockStart + i : blockStart + simplification[i];
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * @return the number of way nodes in this polyline.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	private double[] calculateBlockBounds(int block) {
+		int blockStart = block * BLOCK_SIZE;
+		int blockEnd = Math.min(blockStart + BLOCK_SIZE, this.size - 1);
+		double[] bounds = new double[] { this.x[blockStart], this.y[blockStart], this.x[blockStart],
+				this.y[blockStart] };
+		for (int i = blockStart + 1; i <= blockEnd; ++i) {
+			bounds[0] = Math.min(bounds[0], this.x[i]);
+			bounds[1] = Math.min(bounds[1], this.y[i]);
+			bounds[2] = Math.max(bounds[2], this.x[i]);
+			bounds[3] = Math.max(bounds[3], this.y[i]);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Simplifies a block with the Douglas-Peucker algorithm.
+	 *
+	 * @return the indices of the remaining nodes relative to the start of the block.
+	 */
+	private int[] calculateBlockSimplification(int block, byte zoomLevel) {
+		int blockStart = block * BLOCK_SIZE;
+		int blockEnd = Math.min(blockStart + BLOCK_SIZE, this.size - 1);
+		int nodes = blockEnd - blockStart + 1;
+		double tolerance = TOLERANCE / (1L << zoomLevel);
+		double toleranceSquared = tolerance * tolerance;
+
+		boolean[] keep = new boolean[nodes];
+		keep[0] = true;
+		keep[nodes - 1] = true;
+		int kept = 2;
+
+		// process the ranges with an explicit stack to avoid a deep recursion
+		int[] stack = new int[nodes * 2];
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		stack[stackSize++] = nodes - 1;
+		while (stackSize > 0) {
+			int last = stack[--stackSize];
+			int first = stack[--stackSize];
+			double startX = this.x[blockStart + first];
+			double startY = this.y[blockStart + first];
+			double endX = this.x[blockStart + last];
+			double endY = this.y[blockStart + last];
+
+			double maximumDistance = toleranceSquared;
+			int farthest = -1;
+			for (int i = first + 1; i < last; ++i) {
+				double distance = getSquaredSegmentDistance(this.x[blockStart + i], this.y[blockStart + i], startX,
+						startY, endX, endY);
+				if (distance > maximumDistance) {
+					maximumDistance = distance;
+					farthest = i;
+				}
+			}
+
+			if (farthest != -1) {
+				keep[farthest] = true;
+				++kept;
+				stack[stackSize++] = first;
+				stack[stackSize++] = farthest;
+				stack[stackSize++] = farthest;
+				stack[stackSize++] = last;
+			}
+		}
+
+		if (kept == nodes) {
+			return ALL_NODES;
+		}
+		int[] result = new int[kept];
+		int count = 0;
+		for (int i = 0; i < nodes; ++i) {
+			if (keep[i]) {
+				result[count++] = i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the bounding box of the given block as left, top, right, bottom.
+	 */
+	private double[] getBlockBounds(int block) {
+		if (!isComplete(block)) {
+			return calculateBlockBounds(block);
+		}
+		if (block * 4 >= this.blockBounds.length) {
+			int length = this.blockBounds.length;
+			this.blockBounds = Arrays.copyOf(this.blockBounds, (block + 1) * 8);
+			Arrays.fill(this.blockBounds, length, this.blockBounds.length, Double.NaN);
+		}
+		if (Double.isNaN(this.blockBounds[block * 4])) {
+			System.arraycopy(calculateBlockBounds(block), 0, this.blockBounds, block * 4, 4);
+		}
+		double[] bounds = new double[4];
+		System.arraycopy(this.blockBounds, block * 4, bounds, 0, 4);
+		return bounds;
+	}
+
+	private int[] getBlockSimplification(int block, byte zoomLevel) {
+		if (!isComplete(block)) {
+			return calculateBlockSimplification(block, zoomLevel);
+		}
+		if (block >= this.blockSimplifications.length) {
+			this.blockSimplifications = Arrays.copyOf(this.blockSimplifications, (block + 1) * 2);
+		}
+		if (this.blockSimplifications[block] == null) {
+			this.blockSimplifications[block] = new int[ZOOM_LEVELS][];
+		}
+		int[] simplification = this.blockSimplifications[block][zoomLevel];
+		if (simplification == null) {
+			simplification = calculateBlockSimplification(block, zoomLevel);
+			this.blockSimplifications[block][zoomLevel] = simplification;
+		}
+		return simplification;
+	}
+
+	private int getNumberOfBlocks() {
+		return (this.size - 2) / BLOCK_SIZE + 1;
+	}
+
+	/**
+	 * @return true if no more nodes can be appended to the given block, false otherwise.
+	 */
+	private boolean isComplete(int block) {
+		return (block + 1) * BLOCK_SIZE <= this.size - 1;
+	}
+
+	/**
+	 * @return true if the segment between the given nodes is completely on one side of the clipping rectangle.
+	 */
+	private boolean isOutside(int start, int end, double[] clip) {
+		double startX = this.x[start];
+		double startY = this.y[start];
+		double endX = this.x[end];
+		double endY = this.y[end];
+		return (startX < clip[0] && endX < clip[0]) || (startX > clip[2] && endX > clip[2])
+				|| (startY < clip[1] && endY < clip[1]) || (startY > clip[3] && endY > clip[3]);
+	}
+}
@@ -14,10 +14,11 @@
  */
 package org.mapsforge.android.maps.overlay;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.mapsforge.core.GeoPoint;
 
 import android.graphics.Paint;
-import android.graphics.Point;
 
 /**
  * OverlayWay holds all parameters of a single way on a {@link WayOverlay}. All rendering parameters like color, stroke
@@ -28,29 +29,12 @@ import android.graphics.Point;
  * The way data is represented as a two-dimensional array in order to support multi-polygons. A multi-polygon consists
  * of several polygons and can for example be used to draw a polygon with holes. Each array element on the first level
  * stores on the second level the coordinates of one polygon.
+ * <p>
+ * Way nodes can be appended one by one via {@link #addWayNode(GeoPoint)}, for example to display a live track. The way
+ * is drawn with a simplified version of its way nodes for the current zoom level and the simplification of older way
+ * nodes is calculated only once, so that even tracks with many thousands of nodes can be updated smoothly.
  */
 public class OverlayWay {
-	/**
-	 * Checks whether the given arrays have the same lengths on each dimension.
-	 * 
-	 * @param array1
-	 *            the first array to check.
-	 * @param array2
-	 *            the second array to check.
-	 * @return true if the arrays have the same length on each dimension, false otherwise.
-	 */
-	private static boolean arrayLengthsEqual(Object[][] array1, Object[][] array2) {
-		if (array1.length != array2.length) {
-			return false;
-		}
-		for (int i = array1.length - 1; i >= 0; --i) {
-			if (array1[i].length != array2[i].length) {
-				return false;
-			}
-		}
-		return true;
-	}
-
 	/**
 	 * Checks the given way nodes for null elements.
 	 * 
@@ -83,24 +67,30 @@ public class OverlayWay {
 	protected Paint paintOutline;
 
 	/**
-	 * Geographical coordinates of the way nodes.
+	 * Geographical coordinates of the way nodes. Way nodes which have been appended via {@link #addWayNode(GeoPoint)}
+	 * are only included after {@link #getWayNodes()} has been called.
 	 */
 	protected GeoPoint[][] wayNodes;
 
 	/**
-	 * Cached way positions of the way nodes on the map.
+	 * Flag to indicate if at least one paint is set for this way.
 	 */
-	Point[][] cachedWayPositions;
+	boolean hasPaint;
 
 	/**
-	 * Zoom level of the cached way node positions.
+	 * Projected and simplified way nodes, one polyline per polygon.
 	 */
-	byte cachedZoomLevel;
+	OverlayPolyline[] polylines;
 
 	/**
-	 * Flag to indicate if at least one paint is set for this way.
+	 * Geometry versions of the spatial indices which contain the way.
 	 */
-	boolean hasPaint;
+	private AtomicInteger[] geometryVersions = OverlayGridIndex.NO_GEOMETRY_VERSIONS;
+
+	/**
+	 * Flag to indicate if way nodes have been appended since the way node array has been updated.
+	 */
+	private boolean wayNodesOutdated;
 
 	/**
 	 * Constructs a new OverlayWay.
@@ -130,8 +120,6 @@ public class OverlayWay {
 	 *             if the way nodes contain at least one null element.
 	 */
 	public OverlayWay(GeoPoint[][] wayNodes, Paint paintFill, Paint paintOutline) {
-		this.cachedWayPositions = new Point[0][0];
-		this.cachedZoomLevel = Byte.MIN_VALUE;
 		setWayNodesInternal(wayNodes);
 		setPaintInternal(paintFill, paintOutline);
 	}
@@ -148,10 +136,40 @@ public class OverlayWay {
 		this(null, paintFill, paintOutline);
 	}
 
+	/**
+	 * Appends a way node to the last polygon of this way. If the way has no way nodes yet, a new polygon is created.
+	 * This method takes amortised constant time.
+	 * <p>
+	 * Changes might not become visible until {@link Overlay#requestRedraw()} is called.
+	 * 
+	 * @param wayNode
+	 *            the geographical coordinates of the way node.
+	 * @throws IllegalArgumentException
+	 *             if the way node is null.
+	 */
+	public synchronized void addWayNode(GeoPoint wayNode) {
+		if (wayNode == null) {
+			throw new IllegalArgumentException("way node must not be null");
+		}
+		if (this.polylines.length == 0) {
+			this.polylines = new OverlayPolyline[] { new OverlayPolyline(new GeoPoint[0]) };
+		}
+		this.polylines[this.polylines.length - 1].add(wayNode);
+		this.wayNodesOutdated = true;
+		OverlayGridIndex.geometryChanged(this.geometryVersions);
+	}
+
 	/**
 	 * @return a copy of the way nodes of this way.
 	 */
 	public synchronized GeoPoint[][] getWayNodes() {
+		if (this.wayNodesOutdated) {
+			this.wayNodes = new GeoPoint[this.polylines.length][];
+			for (int i = 0; i < this.polylines.length; ++i) {
+				this.wayNodes[i] = this.polylines[i].getGeoPoints();
+			}
+			this.wayNodesOutdated = false;
+		}
 		return this.wayNodes.clone();
 	}
 
@@ -183,10 +201,22 @@ public class OverlayWay {
 		setWayNodesInternal(wayNodes);
 	}
 
+	/**
+	 * Registers the given spatial index for changes of the way nodes or paints of this way. Must be called while
+	 * holding the lock of this way.
+	 * 
+	 * @param overlayGridIndex
+	 *            the index which contains this way.
+	 */
+	void register(OverlayGridIndex overlayGridIndex) {
+		this.geometryVersions = overlayGridIndex.register(this.geometryVersions);
+	}
+
 	private void setPaintInternal(Paint paintFill, Paint paintOutline) {
 		this.paintFill = paintFill;
 		this.paintOutline = paintOutline;
 		this.hasPaint = paintFill != null || paintOutline != null;
+		OverlayGridIndex.geometryChanged(this.geometryVersions);
 	}
 
 	private void setWayNodesInternal(GeoPoint[][] wayNodes) {
@@ -199,13 +229,14 @@ public class OverlayWay {
 		}
 
 		if (this.wayNodes == null) {
-			this.cachedWayPositions = new Point[0][0];
-		} else if (!arrayLengthsEqual(this.wayNodes, this.cachedWayPositions)) {
-			this.cachedWayPositions = new Point[this.wayNodes.length][];
-			for (int i = this.wayNodes.length - 1; i >= 0; --i) {
-				this.cachedWayPositions[i] = new Point[this.wayNodes[i].length];
+			this.polylines = new OverlayPolyline[0];
+		} else {
+			this.polylines = new OverlayPolyline[this.wayNodes.length];
+			for (int i = 0; i < this.wayNodes.length; ++i) {
+				this.polylines[i] = new OverlayPolyline(this.wayNodes[i]);
 			}
 		}
-		this.cachedZoomLevel = Byte.MIN_VALUE;
+		this.wayNodesOutdated = false;
+		OverlayGridIndex.geometryChanged(this.geometryVersions);
 	}
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.overlay;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pool of worker threads which is shared by all overlays of all MapViews. Idle worker threads are terminated after
+ * a short time, so the pool does not need to be shut down explicitly.
+ */
+final class OverlayWorkerPool {
+	private static final class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		WorkerThreadFactory() {
+			// do nothing
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, THREAD_NAME + this.threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority((Thread.NORM_PRIORITY + Thread.MIN_PRIORITY) / 2);
+			return thread;
+		}
+	}
+
+	private static final long KEEP_ALIVE_TIME = 5;
+	private static final int MAXIMUM_POOL_SIZE = 4;
+	private static final int POOL_SIZE = Math.max(1,
+			Math.min(MAXIMUM_POOL_SIZE, Runtime.getRuntime().availableProcessors()));
+	private static final String THREAD_NAME = "OverlayWorker-";
+
+	private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+	/**
+	 * Executes the given task in one of the shared worker threads.
+	 *
+	 * @param task
+	 *            the task to be executed.
+	 */
+	static void execute(Runnable task) {
+		EXECUTOR.execute(task);
+	}
+
+	private static ThreadPoolExecutor createExecutor() {
+		ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_TIME,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+		threadPoolExecutor.allowCoreThreadTimeOut(true);
+		return threadPoolExecutor;
+	}
+
+	private OverlayWorkerPool() {
+		throw new IllegalStateException();
+	}
+}
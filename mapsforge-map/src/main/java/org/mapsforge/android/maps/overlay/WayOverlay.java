@@ -28,6 +28,10 @@ import android.graphics.Point;
  * The overlay may be used to show additional ways such as calculated routes. Closed polygons, for example buildings or
  * areas, are also supported. A way node sequence is considered as a closed polygon if the first and the last way node
  * are equal.
+ * <p>
+ * The bounding boxes of all ways are kept in a spatial index, so that a redraw only projects and draws the ways which
+ * intersect the visible area. Each way is drawn with a version of its way nodes which is simplified for the current
+ * zoom level. Segments of ways without a fill are clipped to the visible area before they are projected.
  * 
  * @param <Way>
  *            the type of ways handled by this overlay.
@@ -35,9 +39,17 @@ import android.graphics.Point;
 public abstract class WayOverlay<Way extends OverlayWay> extends Overlay {
 	private static final String THREAD_NAME = "WayOverlay";
 
+	private static int getStrokeExtent(Paint paint) {
+		return paint == null ? 0 : (int) Math.ceil(paint.getStrokeWidth() / 2);
+	}
+
 	private final Paint defaultPaintFill;
 	private final Paint defaultPaintOutline;
+	private int indexedGeometryVersion;
+	private volatile boolean indexOutdated;
 	private final Path path;
+	private int strokeExtent;
+	private final OverlayGridIndex wayIndex;
 
 	/**
 	 * @param defaultPaintFill
@@ -51,6 +63,8 @@ public abstract class WayOverlay<Way extends OverlayWay> extends Overlay {
 		this.defaultPaintOutline = defaultPaintOutline;
 		this.path = new Path();
 		this.path.setFillType(Path.FillType.EVEN_ODD);
+		this.wayIndex = new OverlayGridIndex();
+		this.indexOutdated = true;
 	}
 
 	/**
@@ -58,15 +72,10 @@ public abstract class WayOverlay<Way extends OverlayWay> extends Overlay {
 	 */
 	public abstract int size();
 
-	private void assemblePath(Point drawPosition, Way overlayWay) {
+	private void assemblePath(Point drawPosition, byte drawZoomLevel, Way overlayWay, double[] clip) {
 		this.path.reset();
-		for (int i = 0; i < overlayWay.cachedWayPositions.length; ++i) {
-			this.path.moveTo(overlayWay.cachedWayPositions[i][0].x - drawPosition.x,
-					overlayWay.cachedWayPositions[i][0].y - drawPosition.y);
-			for (int j = 1; j < overlayWay.cachedWayPositions[i].length; ++j) {
-				this.path.lineTo(overlayWay.cachedWayPositions[i][j].x - drawPosition.x,
-						overlayWay.cachedWayPositions[i][j].y - drawPosition.y);
-			}
+		for (int i = 0; i < overlayWay.polylines.length; ++i) {
+			overlayWay.polylines[i].appendToPath(this.path, drawZoomLevel, drawPosition.x, drawPosition.y, clip);
 		}
 	}
 
@@ -101,37 +110,37 @@ public abstract class WayOverlay<Way extends OverlayWay> extends Overlay {
 
 	@Override
 	protected void drawOverlayBitmap(Canvas canvas, Point drawPosition, Projection projection, byte drawZoomLevel) {
-		int numberOfWays = size();
-		for (int wayIndex = 0; wayIndex < numberOfWays; ++wayIndex) {
+		updateWayIndex();
+
+		// find all ways whose bounding box intersects with the canvas
+		double scale = 1L << drawZoomLevel;
+		double[] clip = new double[] { (drawPosition.x - this.strokeExtent) / scale,
+				(drawPosition.y - this.strokeExtent) / scale,
+				(drawPosition.x + canvas.getWidth() + this.strokeExtent) / scale,
+				(drawPosition.y + canvas.getHeight() + this.strokeExtent) / scale };
+		int[] candidateWays = this.wayIndex.query(clip[0], clip[1], clip[2], clip[3]);
+
+		for (int candidateIndex = 0; candidateIndex < candidateWays.length; ++candidateIndex) {
 			if (isInterrupted() || sizeHasChanged()) {
 				// stop working
 				return;
 			}
 
 			// get the current way
-			Way overlayWay = createWay(wayIndex);
+			Way overlayWay = createWay(candidateWays[candidateIndex]);
 			if (overlayWay == null) {
 				continue;
 			}
 
 			synchronized (overlayWay) {
 				// make sure that the current way has way nodes
-				if (overlayWay.wayNodes == null || overlayWay.wayNodes.length == 0) {
+				if (overlayWay.polylines.length == 0) {
 					continue;
 				}
 
-				// make sure that the cached way node positions are valid
-				if (drawZoomLevel != overlayWay.cachedZoomLevel) {
-					for (int i = 0; i < overlayWay.cachedWayPositions.length; ++i) {
-						for (int j = 0; j < overlayWay.cachedWayPositions[i].length; ++j) {
-							overlayWay.cachedWayPositions[i][j] = projection.toPoint(overlayWay.wayNodes[i][j],
-									overlayWay.cachedWayPositions[i][j], drawZoomLevel);
-						}
-					}
-					overlayWay.cachedZoomLevel = drawZoomLevel;
-				}
-
-				assemblePath(drawPosition, overlayWay);
+				// clipping would change the shape of filled areas
+				Paint paintFill = overlayWay.hasPaint ? overlayWay.paintFill : this.defaultPaintFill;
+				assemblePath(drawPosition, drawZoomLevel, overlayWay, paintFill == null ? clip : null);
 				drawPathOnCanvas(canvas, overlayWay);
 			}
 		}
@@ -146,6 +155,53 @@ public abstract class WayOverlay<Way extends OverlayWay> extends Overlay {
 	 * This method should be called after ways have been added to the overlay.
 	 */
 	protected final void populate() {
+		this.indexOutdated = true;
 		super.requestRedraw();
 	}
+
+	/**
+	 * Rebuilds the spatial index of the ways if ways have been added, removed or changed since the last redraw.
+	 */
+	private void updateWayIndex() {
+		int geometryVersion = this.wayIndex.getGeometryVersion();
+		int numberOfWays = size();
+		if (!this.indexOutdated && geometryVersion == this.indexedGeometryVersion
+				&& numberOfWays == this.wayIndex.size()) {
+			return;
+		}
+		this.indexOutdated = false;
+		this.indexedGeometryVersion = geometryVersion;
+
+		this.strokeExtent = getStrokeExtent(this.defaultPaintOutline);
+		this.wayIndex.reset(numberOfWays);
+		for (int wayIndex = 0; wayIndex < numberOfWays; ++wayIndex) {
+			Way overlayWay = createWay(wayIndex);
+			if (overlayWay == null) {
+				continue;
+			}
+
+			synchronized (overlayWay) {
+				overlayWay.register(this.wayIndex);
+				double left = Double.POSITIVE_INFINITY;
+				double top = Double.POSITIVE_INFINITY;
+				double right = Double.NEGATIVE_INFINITY;
+				double bottom = Double.NEGATIVE_INFINITY;
+				for (int i = 0; i < overlayWay.polylines.length; ++i) {
+					OverlayPolyline polyline = overlayWay.polylines[i];
+					left = Math.min(left, polyline.getMinX());
+					top = Math.min(top, polyline.getMinY());
+					right = Math.max(right, polyline.getMaxX());
+					bottom = Math.max(bottom, polyline.getMaxY());
+				}
+				if (left <= right) {
+					this.wayIndex.set(wayIndex, left, top, right, bottom);
+				}
+
+				if (overlayWay.hasPaint) {
+					this.strokeExtent = Math.max(this.strokeExtent, getStrokeExtent(overlayWay.paintOutline));
+				}
+			}
+		}
+		this.wayIndex.build();
+	}
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.core.Tile;
+
+import android.graphics.Bitmap;
+
+/**
+ * Tests the {@link MapWorker} class.
+ */
+public class MapWorkerTest {
+	/**
+	 * A cache which only knows the keys of its tiles.
+	 */
+	private static final class KeyTileCache implements TileCache {
+		final Set<MapGeneratorJob> keys = new HashSet<MapGeneratorJob>();
+
+		KeyTileCache() {
+			// do nothing
+		}
+
+		@Override
+		public boolean containsKey(MapGeneratorJob mapGeneratorJob) {
+			return this.keys.contains(mapGeneratorJob);
+		}
+
+		@Override
+		public void destroy() {
+			this.keys.clear();
+		}
+
+		@Override
+		public Bitmap get(MapGeneratorJob mapGeneratorJob) {
+			return null;
+		}
+
+		@Override
+		public int getCapacity() {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public boolean isPersistent() {
+			return false;
+		}
+
+		@Override
+		public void put(MapGeneratorJob mapGeneratorJob, Bitmap bitmap) {
+			this.keys.add(mapGeneratorJob);
+		}
+
+		@Override
+		public void setCapacity(int capacity) {
+			// do nothing
+		}
+
+		@Override
+		public void setPersistent(boolean persistent) {
+			// do nothing
+		}
+	}
+
+	private static MapGeneratorJob createMapGeneratorJob(long tileX) {
+		MapGeneratorJob mapGeneratorJob = new MapGeneratorJob(new Tile(tileX, 0, (byte) 10), null, null, null);
+		mapGeneratorJob.setJobTimings(new JobTimings(mapGeneratorJob.tile));
+		return mapGeneratorJob;
+	}
+
+	/**
+	 * Tests that jobs whose tiles are already cached are recorded in the render metrics.
+	 */
+	@Test
+	public void cacheHitTest() {
+		RenderMetrics renderMetrics = new RenderMetrics();
+		renderMetrics.setEnabled(true);
+		final List<JobTimings> finishedJobs = new ArrayList<JobTimings>();
+		renderMetrics.addListener(new RenderMetricsListener() {
+			@Override
+			public void onJobFinished(JobTimings jobTimings) {
+				finishedJobs.add(jobTimings);
+			}
+		});
+
+		KeyTileCache inMemoryTileCache = new KeyTileCache();
+		KeyTileCache fileSystemTileCache = new KeyTileCache();
+		MapGeneratorJob inMemoryJob = createMapGeneratorJob(1);
+		MapGeneratorJob fileSystemJob = createMapGeneratorJob(2);
+		MapGeneratorJob uncachedJob = createMapGeneratorJob(3);
+		inMemoryTileCache.put(inMemoryJob, null);
+		fileSystemTileCache.put(fileSystemJob, null);
+
+		long startTime = System.nanoTime() - 1000;
+		Assert.assertTrue(MapWorker.finishIfCached(inMemoryJob, inMemoryTileCache, fileSystemTileCache,
+				renderMetrics, startTime));
+		Assert.assertTrue(MapWorker.finishIfCached(fileSystemJob, inMemoryTileCache, fileSystemTileCache,
+				renderMetrics, startTime));
+		Assert.assertFalse(MapWorker.finishIfCached(uncachedJob, inMemoryTileCache, fileSystemTileCache,
+				renderMetrics, startTime));
+
+		// the uncached job is finished later by its generator
+		Assert.assertEquals(2, finishedJobs.size());
+		Assert.assertSame(inMemoryJob.getJobTimings(), finishedJobs.get(0));
+		Assert.assertSame(fileSystemJob.getJobTimings(), finishedJobs.get(1));
+		Assert.assertTrue(uncachedJob.getJobTimings().getDuration(RenderStage.CACHE_GET) >= 1000);
+
+		RenderMetricsSnapshot renderMetricsSnapshot = renderMetrics.getSnapshot();
+		Assert.assertEquals(2, renderMetricsSnapshot.getJobsDropped());
+		Assert.assertEquals(2, renderMetricsSnapshot.getJobsSucceeded());
+		Assert.assertEquals(2, renderMetricsSnapshot.getStageCount(RenderStage.CACHE_GET));
+		Assert.assertTrue(renderMetricsSnapshot.getTotalDuration(RenderStage.CACHE_GET) >= 2000);
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.core.Tile;
+
+/**
+ * Tests the {@link RenderMetrics} class.
+ */
+public class RenderMetricsTest {
+	private static JobTimings createJobTimings(long tileX, long rasterization) {
+		JobTimings jobTimings = new JobTimings(new Tile(tileX, 0, (byte) 10));
+		jobTimings.add(RenderStage.DATABASE_QUERY, 100);
+		jobTimings.add(RenderStage.RASTERIZATION, rasterization);
+		return jobTimings;
+	}
+
+	/**
+	 * Tests the aggregation of job timings and counters.
+	 */
+	@Test
+	public void snapshotTest() {
+		RenderMetrics renderMetrics = new RenderMetrics();
+		final List<JobTimings> finishedJobs = new ArrayList<JobTimings>();
+		renderMetrics.addListener(new RenderMetricsListener() {
+			@Override
+			public void onJobFinished(JobTimings jobTimings) {
+				finishedJobs.add(jobTimings);
+			}
+		});
+
+		// nothing is counted while the metrics are disabled
+		renderMetrics.countMemoryCacheLookup(true);
+		Assert.assertEquals(0, renderMetrics.getSnapshot().getMemoryCacheHits());
+
+		renderMetrics.setEnabled(true);
+		renderMetrics.countMemoryCacheLookup(true);
+		renderMetrics.countMemoryCacheLookup(false);
+		renderMetrics.countFileSystemCacheLookup(true);
+		renderMetrics.countMemoryCacheLookup(false);
+		renderMetrics.countFileSystemCacheLookup(false);
+		renderMetrics.countJobsDropped(3);
+
+		for (int i = 0; i < 15; ++i) {
+			renderMetrics.jobFinished(createJobTimings(i, i * 10), i != 0);
+		}
+
+		RenderMetricsSnapshot renderMetricsSnapshot = renderMetrics.getSnapshot();
+		Assert.assertEquals(1, renderMetricsSnapshot.getMemoryCacheHits());
+		Assert.assertEquals(2, renderMetricsSnapshot.getMemoryCacheMisses());
+		Assert.assertEquals(1, renderMetricsSnapshot.getFileSystemCacheHits());
+		Assert.assertEquals(1, renderMetricsSnapshot.getFileSystemCacheMisses());
+		Assert.assertEquals(2 / 3d, renderMetricsSnapshot.getCacheHitRate(), 0.0001);
+		Assert.assertEquals(3, renderMetricsSnapshot.getJobsDropped());
+		Assert.assertEquals(1, renderMetricsSnapshot.getJobsFailed());
+		Assert.assertEquals(14, renderMetricsSnapshot.getJobsSucceeded());
+
+		Assert.assertEquals(15, renderMetricsSnapshot.getStageCount(RenderStage.DATABASE_QUERY));
+		Assert.assertEquals(100, renderMetricsSnapshot.getAverageDuration(RenderStage.DATABASE_QUERY));
+		// the first job has no rasterization time
+		Assert.assertEquals(14, renderMetricsSnapshot.getStageCount(RenderStage.RASTERIZATION));
+		Assert.assertEquals(1050, renderMetricsSnapshot.getTotalDuration(RenderStage.RASTERIZATION));
+		Assert.assertEquals(140, renderMetricsSnapshot.getMaximumDuration(RenderStage.RASTERIZATION));
+		Assert.assertEquals(0, renderMetricsSnapshot.getAverageDuration(RenderStage.QUEUE_WAIT));
+
+		List<JobTimings> slowestJobs = renderMetricsSnapshot.getSlowestJobs();
+		Assert.assertEquals(10, slowestJobs.size());
+		Assert.assertEquals(14, slowestJobs.get(0).getTile().tileX);
+		Assert.assertEquals(5, slowestJobs.get(9).getTile().tileX);
+
+		Assert.assertEquals(15, finishedJobs.size());
+		Assert.assertFalse(finishedJobs.get(0).isSuccessful());
+		Assert.assertTrue(finishedJobs.get(1).isSuccessful());
+
+		renderMetrics.reset();
+		renderMetricsSnapshot = renderMetrics.getSnapshot();
+		Assert.assertEquals(0, renderMetricsSnapshot.getJobsSucceeded());
+		Assert.assertEquals(0, renderMetricsSnapshot.getSlowestJobs().size());
+		Assert.assertEquals(0, renderMetricsSnapshot.getCacheHitRate(), 0);
+	}
+}
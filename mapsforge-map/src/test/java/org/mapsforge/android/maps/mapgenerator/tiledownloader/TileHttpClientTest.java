@@ -0,0 +1,285 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator.tiledownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link TileHttpClient} class against a local HTTP stub server.
+ */
+public class TileHttpClientTest {
+	private static final byte[] CONTENT = new byte[] { 1, 2, 3, 4, 5 };
+	private static final String ETAG = "\"tile-1\"";
+	private static final int PERMANENT_FAILURE_BACKOFF = 5000;
+
+	private static void send(HttpExchange httpExchange, int responseCode, byte[] body) throws IOException {
+		httpExchange.sendResponseHeaders(responseCode, body == null ? -1 : body.length);
+		OutputStream outputStream = httpExchange.getResponseBody();
+		if (body != null) {
+			outputStream.write(body);
+		}
+		outputStream.close();
+	}
+
+	private File cacheDirectory;
+	private final AtomicInteger concurrentRequests = new AtomicInteger();
+	private final AtomicInteger failuresBeforeSuccess = new AtomicInteger();
+	private HttpServer httpServer;
+	private final AtomicInteger maximumConcurrentRequests = new AtomicInteger();
+	private final AtomicInteger notModifiedResponses = new AtomicInteger();
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * Starts the stub server.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be started.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.cacheDirectory = File.createTempFile("tileResponseCache", "");
+		Assert.assertTrue(this.cacheDirectory.delete());
+
+		this.httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.httpServer.setExecutor(Executors.newCachedThreadPool());
+		this.httpServer.createContext("/tile", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange httpExchange) throws IOException {
+				TileHttpClientTest.this.requests.incrementAndGet();
+				if (ETAG.equals(httpExchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					TileHttpClientTest.this.notModifiedResponses.incrementAndGet();
+					send(httpExchange, 304, null);
+					return;
+				}
+				httpExchange.getResponseHeaders().set("ETag", ETAG);
+				send(httpExchange, 200, CONTENT);
+			}
+		});
+		this.httpServer.createContext("/flaky", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange httpExchange) throws IOException {
+				TileHttpClientTest.this.requests.incrementAndGet();
+				if (TileHttpClientTest.this.failuresBeforeSuccess.getAndDecrement() > 0) {
+					send(httpExchange, 503, new byte[] { 0 });
+					return;
+				}
+				send(httpExchange, 200, CONTENT);
+			}
+		});
+		this.httpServer.createContext("/missing", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange httpExchange) throws IOException {
+				TileHttpClientTest.this.requests.incrementAndGet();
+				send(httpExchange, 404, new byte[] { 0 });
+			}
+		});
+		this.httpServer.createContext("/redirect", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange httpExchange) throws IOException {
+				TileHttpClientTest.this.requests.incrementAndGet();
+				httpExchange.getResponseHeaders().set("Location", "/redirect");
+				send(httpExchange, 302, null);
+			}
+		});
+		this.httpServer.createContext("/slow", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange httpExchange) throws IOException {
+				int current = TileHttpClientTest.this.concurrentRequests.incrementAndGet();
+				synchronized (TileHttpClientTest.this.maximumConcurrentRequests) {
+					if (current > TileHttpClientTest.this.maximumConcurrentRequests.get()) {
+						TileHttpClientTest.this.maximumConcurrentRequests.set(current);
+					}
+				}
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				TileHttpClientTest.this.concurrentRequests.decrementAndGet();
+				send(httpExchange, 200, CONTENT);
+			}
+		});
+		this.httpServer.start();
+	}
+
+	/**
+	 * Stops the stub server and deletes the cache directory.
+	 */
+	@After
+	public void tearDown() {
+		this.httpServer.stop(0);
+		File[] files = this.cacheDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				Assert.assertTrue(file.delete());
+			}
+		}
+		this.cacheDirectory.delete();
+	}
+
+	/**
+	 * Tests that cached tiles are revalidated with their ETag.
+	 *
+	 * @throws Exception
+	 *             if the download fails.
+	 */
+	@Test
+	public void revalidationTest() throws Exception {
+		TileHttpClient tileHttpClient = new TileHttpClient();
+		TileResponseCache tileResponseCache = new TileResponseCache(this.cacheDirectory, 10);
+		tileHttpClient.setTileResponseCache(tileResponseCache);
+
+		URL url = getUrl("/tile/1/2/3.png");
+		assertContent(tileHttpClient.download(url));
+		Assert.assertEquals(1, tileResponseCache.size());
+		Assert.assertEquals(0, this.notModifiedResponses.get());
+
+		assertContent(tileHttpClient.download(url));
+		Assert.assertEquals(2, this.requests.get());
+		Assert.assertEquals(1, this.notModifiedResponses.get());
+
+		// a new cache instance must reuse the responses which are stored in the directory
+		tileHttpClient.setTileResponseCache(new TileResponseCache(this.cacheDirectory, 10));
+		assertContent(tileHttpClient.download(url));
+		Assert.assertEquals(2, this.notModifiedResponses.get());
+	}
+
+	/**
+	 * Tests that server errors are retried and client errors are not.
+	 *
+	 * @throws Exception
+	 *             if the download fails.
+	 */
+	@Test
+	public void retryTest() throws Exception {
+		TileHttpClient tileHttpClient = new TileHttpClient();
+		tileHttpClient.setRetryPolicy(2, 1);
+
+		this.failuresBeforeSuccess.set(2);
+		assertContent(tileHttpClient.download(getUrl("/flaky")));
+		Assert.assertEquals(3, this.requests.get());
+
+		this.requests.set(0);
+		this.failuresBeforeSuccess.set(3);
+		try {
+			tileHttpClient.download(getUrl("/flaky"));
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals(3, this.requests.get());
+		}
+
+		this.requests.set(0);
+		Assert.assertNull(tileHttpClient.download(getUrl("/missing")));
+		Assert.assertEquals(1, this.requests.get());
+	}
+
+	/**
+	 * Tests that permanent failures are neither retried nor delayed by the backoff.
+	 *
+	 * @throws Exception
+	 *             if the download fails unexpectedly.
+	 */
+	@Test
+	public void permanentFailureTest() throws Exception {
+		TileHttpClient tileHttpClient = new TileHttpClient();
+		tileHttpClient.setRetryPolicy(3, PERMANENT_FAILURE_BACKOFF);
+
+		long startTime = System.currentTimeMillis();
+		Assert.assertNull(tileHttpClient.download(getUrl("/missing")));
+		Assert.assertEquals(1, this.requests.get());
+
+		// an endless redirect is a protocol error, not a transient failure
+		this.requests.set(0);
+		try {
+			tileHttpClient.download(getUrl("/redirect"));
+			Assert.fail();
+		} catch (ProtocolException e) {
+			int requestsPerAttempt = this.requests.get();
+			Assert.assertTrue(requestsPerAttempt > 1);
+			Thread.sleep(100);
+			Assert.assertEquals(requestsPerAttempt, this.requests.get());
+		}
+		Assert.assertTrue(System.currentTimeMillis() - startTime < PERMANENT_FAILURE_BACKOFF);
+	}
+
+	/**
+	 * Tests that the number of concurrent requests per host is limited.
+	 *
+	 * @throws Exception
+	 *             if a download fails.
+	 */
+	@Test
+	public void maximumConnectionsPerHostTest() throws Exception {
+		final TileHttpClient tileHttpClient = new TileHttpClient(2);
+		final URL url = getUrl("/slow");
+		final List<Throwable> errors = new ArrayList<Throwable>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; ++i) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						assertContent(tileHttpClient.download(url));
+					} catch (Throwable t) {
+						synchronized (errors) {
+							errors.add(t);
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertTrue(errors.toString(), errors.isEmpty());
+		Assert.assertTrue(this.maximumConcurrentRequests.get() <= 2);
+		Assert.assertTrue(this.maximumConcurrentRequests.get() >= 1);
+	}
+
+	private static void assertContent(byte[] data) {
+		Assert.assertNotNull(data);
+		Assert.assertEquals(CONTENT.length, data.length);
+		for (int i = 0; i < CONTENT.length; ++i) {
+			Assert.assertEquals(CONTENT[i], data[i]);
+		}
+	}
+
+	private URL getUrl(String path) throws IOException {
+		return new URL("http", "127.0.0.1", this.httpServer.getAddress().getPort(), path);
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator.tiledownloader;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TileResponseCache} class.
+ */
+public class TileResponseCacheTest {
+	private static final String KEY_1 = "http://tile.example.org/1/2/3.png?style=a&b";
+	private static final String KEY_2 = "http://tile.example.org/1/2/3.png?style=a_b";
+
+	private File cacheDirectory;
+
+	/**
+	 * Creates the cache directory.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.cacheDirectory = File.createTempFile("tileResponseCache", "");
+		Assert.assertTrue(this.cacheDirectory.delete());
+	}
+
+	/**
+	 * Deletes the cache directory.
+	 */
+	@After
+	public void tearDown() {
+		File[] files = this.cacheDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				Assert.assertTrue(file.delete());
+			}
+		}
+		this.cacheDirectory.delete();
+	}
+
+	/**
+	 * Tests that keys which differ only in special characters are stored in separate files.
+	 */
+	@Test
+	public void distinctKeysTest() {
+		Assert.assertFalse(TileResponseCache.getFileName(KEY_1).equals(TileResponseCache.getFileName(KEY_2)));
+		Assert.assertEquals(TileResponseCache.getFileName(KEY_1), TileResponseCache.getFileName(KEY_1));
+
+		TileResponseCache tileResponseCache = new TileResponseCache(this.cacheDirectory, 10);
+		tileResponseCache.put(KEY_1, new TileResponseCache.Entry(new byte[] { 1 }, "\"1\"", null, 0));
+		tileResponseCache.put(KEY_2, new TileResponseCache.Entry(new byte[] { 2 }, "\"2\"", null, 0));
+		Assert.assertEquals(2, tileResponseCache.size());
+
+		// a new instance reuses the stored files
+		tileResponseCache = new TileResponseCache(this.cacheDirectory, 10);
+		Assert.assertEquals("\"1\"", tileResponseCache.get(KEY_1).eTag);
+		Assert.assertEquals(1, tileResponseCache.get(KEY_1).data[0]);
+		Assert.assertEquals("\"2\"", tileResponseCache.get(KEY_2).eTag);
+		Assert.assertEquals(2, tileResponseCache.get(KEY_2).data[0]);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.overlay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link OverlayClusterIndex} class.
+ */
+public class OverlayClusterIndexTest {
+	private static final int CLUSTER_SIZE = 64;
+	private static final byte MAXIMUM_ZOOM_LEVEL = 10;
+	private static final int NUMBER_OF_ITEMS = 1000;
+
+	private static int countItems(OverlayClusterIndex overlayClusterIndex, byte zoomLevel) {
+		int items = 0;
+		for (OverlayClusterIndex.Cluster cluster : overlayClusterIndex.getClusters(zoomLevel, 0, 0, 256, 256)) {
+			Assert.assertTrue(cluster.size() > 0);
+			Assert.assertEquals(cluster.size(), overlayClusterIndex.getItems(cluster).size());
+			items += cluster.size();
+		}
+		return items;
+	}
+
+	/**
+	 * Tests that every zoom level contains all items and that nearby items are clustered.
+	 */
+	@Test
+	public void clusterTest() {
+		OverlayClusterIndex overlayClusterIndex = new OverlayClusterIndex(CLUSTER_SIZE, MAXIMUM_ZOOM_LEVEL);
+		Random random = new Random(42);
+		List<Object> items = new ArrayList<Object>();
+		for (int i = 0; i < NUMBER_OF_ITEMS; ++i) {
+			Object item = new Object();
+			items.add(item);
+			overlayClusterIndex.add(item, random.nextDouble() * 256, random.nextDouble() * 256);
+		}
+		Assert.assertEquals(NUMBER_OF_ITEMS, overlayClusterIndex.size());
+
+		for (byte zoomLevel = 0; zoomLevel <= MAXIMUM_ZOOM_LEVEL; ++zoomLevel) {
+			Assert.assertEquals(NUMBER_OF_ITEMS, countItems(overlayClusterIndex, zoomLevel));
+		}
+
+		// the world map at zoom level 0 fits into 4 * 4 cells
+		Assert.assertTrue(overlayClusterIndex.getClusters((byte) 0, 0, 0, 256, 256).size() <= 16);
+
+		// remove half of the items and move one
+		for (int i = NUMBER_OF_ITEMS / 2; i < NUMBER_OF_ITEMS; ++i) {
+			Assert.assertTrue(overlayClusterIndex.remove(items.get(i)));
+		}
+		overlayClusterIndex.add(items.get(0), 1, 1);
+		Assert.assertEquals(NUMBER_OF_ITEMS / 2, overlayClusterIndex.size());
+		for (byte zoomLevel = 0; zoomLevel <= MAXIMUM_ZOOM_LEVEL; ++zoomLevel) {
+			Assert.assertEquals(NUMBER_OF_ITEMS / 2, countItems(overlayClusterIndex, zoomLevel));
+		}
+
+		List<OverlayClusterIndex.Cluster> clusters = overlayClusterIndex.getClusters(MAXIMUM_ZOOM_LEVEL, 0.5, 0.5,
+				1.5, 1.5);
+		Assert.assertEquals(1, clusters.size());
+		Assert.assertSame(items.get(0), clusters.get(0).getFirstItem());
+
+		Assert.assertFalse(overlayClusterIndex.remove(items.get(NUMBER_OF_ITEMS - 1)));
+		overlayClusterIndex.clear();
+		Assert.assertEquals(0, overlayClusterIndex.size());
+		Assert.assertEquals(0, countItems(overlayClusterIndex, (byte) 0));
+	}
+
+	/**
+	 * Tests the center of a cluster.
+	 */
+	@Test
+	public void centerTest() {
+		OverlayClusterIndex overlayClusterIndex = new OverlayClusterIndex(CLUSTER_SIZE, MAXIMUM_ZOOM_LEVEL);
+		overlayClusterIndex.add(new Object(), 10, 20);
+		overlayClusterIndex.add(new Object(), 20, 40);
+
+		List<OverlayClusterIndex.Cluster> clusters = overlayClusterIndex.getClusters((byte) 0, 0, 0, 256, 256);
+		Assert.assertEquals(1, clusters.size());
+		Assert.assertEquals(2, clusters.get(0).size());
+		Assert.assertEquals(15, clusters.get(0).getCenterX(), 0);
+		Assert.assertEquals(30, clusters.get(0).getCenterY(), 0);
+
+		Assert.assertEquals(2, overlayClusterIndex.getClusters(MAXIMUM_ZOOM_LEVEL, 0, 0, 256, 256).size());
+	}
+
+	/**
+	 * Tests that equal items are treated as the same item.
+	 */
+	@Test
+	public void equalItemsTest() {
+		OverlayClusterIndex overlayClusterIndex = new OverlayClusterIndex(CLUSTER_SIZE, MAXIMUM_ZOOM_LEVEL);
+		overlayClusterIndex.add(new Integer(1), 10, 20);
+		overlayClusterIndex.add(new Integer(1), 20, 40);
+		Assert.assertEquals(1, overlayClusterIndex.size());
+
+		List<OverlayClusterIndex.Cluster> clusters = overlayClusterIndex.getClusters((byte) 0, 0, 0, 256, 256);
+		Assert.assertEquals(1, clusters.size());
+		Assert.assertEquals(20, clusters.get(0).getCenterX(), 0);
+
+		Assert.assertTrue(overlayClusterIndex.remove(new Integer(1)));
+		Assert.assertEquals(0, overlayClusterIndex.size());
+	}
+
+	/**
+	 * Tests that zoom levels whose grid cells cannot be addressed with int coordinates are rejected.
+	 */
+	@Test
+	public void maximumZoomLevelTest() {
+		OverlayClusterIndex overlayClusterIndex = new OverlayClusterIndex(CLUSTER_SIZE, (byte) 28);
+		overlayClusterIndex.add(new Object(), 255.999, 255.999);
+		Assert.assertEquals(1, countItems(overlayClusterIndex, (byte) 28));
+
+		try {
+			new OverlayClusterIndex(CLUSTER_SIZE, (byte) 29);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new OverlayClusterIndex(1, Byte.MAX_VALUE);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
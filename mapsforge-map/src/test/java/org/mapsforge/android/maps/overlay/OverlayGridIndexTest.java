@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.overlay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MercatorProjection;
+
+/**
+ * Tests the {@link OverlayGridIndex} class.
+ */
+public class OverlayGridIndexTest {
+	private static final int NUMBER_OF_ENTRIES = 2000;
+	private static final int NUMBER_OF_QUERIES = 200;
+
+	/**
+	 * Compares the results of random queries with a linear search over all entries.
+	 */
+	@Test
+	public void queryTest() {
+		Random random = new Random(42);
+		double[][] boxes = new double[NUMBER_OF_ENTRIES][];
+
+		OverlayGridIndex overlayGridIndex = new OverlayGridIndex();
+		overlayGridIndex.reset(NUMBER_OF_ENTRIES);
+		for (int i = 0; i < NUMBER_OF_ENTRIES; ++i) {
+			if (i % 10 == 0) {
+				// entry without a position
+				continue;
+			}
+			double left = random.nextDouble() * 256;
+			double top = random.nextDouble() * 256;
+			double size = i % 3 == 0 ? random.nextDouble() * 20 : 0;
+			boxes[i] = new double[] { left, top, left + size, top + size };
+			overlayGridIndex.set(i, left, top, left + size, top + size);
+		}
+		overlayGridIndex.build();
+
+		for (int q = 0; q < NUMBER_OF_QUERIES; ++q) {
+			double left = random.nextDouble() * 280 - 12;
+			double top = random.nextDouble() * 280 - 12;
+			double width = random.nextDouble() * 40;
+			double height = random.nextDouble() * 40;
+
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int i = 0; i < NUMBER_OF_ENTRIES; ++i) {
+				double[] box = boxes[i];
+				if (box != null && box[2] >= left && box[0] <= left + width && box[3] >= top
+						&& box[1] <= top + height) {
+					expected.add(Integer.valueOf(i));
+				}
+			}
+
+			int[] result = overlayGridIndex.query(left, top, left + width, top + height);
+			Assert.assertEquals(expected.size(), result.length);
+			for (int i = 0; i < result.length; ++i) {
+				Assert.assertEquals(expected.get(i).intValue(), result[i]);
+			}
+		}
+	}
+
+	/**
+	 * Tests the pixel coordinates of the entries on different zoom levels.
+	 */
+	@Test
+	public void pixelTest() {
+		GeoPoint geoPoint = new GeoPoint(52.5, 13.4);
+		double pixelX = OverlayGridIndex.toPixelX(geoPoint);
+		double pixelY = OverlayGridIndex.toPixelY(geoPoint);
+
+		OverlayGridIndex overlayGridIndex = new OverlayGridIndex();
+		overlayGridIndex.reset(1);
+		overlayGridIndex.set(0, pixelX, pixelY, pixelX, pixelY);
+		overlayGridIndex.build();
+
+		for (byte zoomLevel = 0; zoomLevel <= 20; ++zoomLevel) {
+			int expectedX = (int) MercatorProjection.longitudeToPixelX(geoPoint.getLongitude(), zoomLevel);
+			int expectedY = (int) MercatorProjection.latitudeToPixelY(geoPoint.getLatitude(), zoomLevel);
+			Assert.assertTrue(Math.abs(expectedX - overlayGridIndex.getPixelX(0, zoomLevel)) <= 1);
+			Assert.assertTrue(Math.abs(expectedY - overlayGridIndex.getPixelY(0, zoomLevel)) <= 1);
+			// the second call must return the cached value
+			Assert.assertEquals(overlayGridIndex.getPixelX(0, zoomLevel), overlayGridIndex.getPixelX(0, zoomLevel));
+		}
+
+		Assert.assertEquals(0, new OverlayGridIndex().query(0, 0, 256, 256).length);
+	}
+
+	/**
+	 * Tests that a changed item only outdates the indices which contain it.
+	 */
+	@Test
+	public void geometryVersionTest() {
+		OverlayGridIndex overlayGridIndex1 = new OverlayGridIndex();
+		OverlayGridIndex overlayGridIndex2 = new OverlayGridIndex();
+		OverlayItem overlayItem = new OverlayItem();
+		overlayItem.register(overlayGridIndex1);
+		overlayItem.register(overlayGridIndex1);
+
+		overlayItem.setPoint(new GeoPoint(52.5, 13.4));
+		Assert.assertEquals(1, overlayGridIndex1.getGeometryVersion());
+		Assert.assertEquals(0, overlayGridIndex2.getGeometryVersion());
+
+		overlayItem.register(overlayGridIndex2);
+		overlayItem.setPoint(null);
+		Assert.assertEquals(2, overlayGridIndex1.getGeometryVersion());
+		Assert.assertEquals(1, overlayGridIndex2.getGeometryVersion());
+	}
+
+	/**
+	 * Tests that a partial reset keeps the entries before the first discarded entry.
+	 */
+	@Test
+	public void partialResetTest() {
+		OverlayGridIndex overlayGridIndex = new OverlayGridIndex();
+		overlayGridIndex.reset(2);
+		overlayGridIndex.set(0, 10, 10, 10, 10);
+		overlayGridIndex.set(1, 20, 20, 20, 20);
+		overlayGridIndex.build();
+
+		overlayGridIndex.reset(1, 20);
+		overlayGridIndex.set(19, 30, 30, 30, 30);
+		overlayGridIndex.build();
+		Assert.assertEquals(20, overlayGridIndex.size());
+		Assert.assertFalse(overlayGridIndex.isEmpty(0));
+		Assert.assertTrue(overlayGridIndex.isEmpty(1));
+
+		int[] result = overlayGridIndex.query(0, 0, 256, 256);
+		Assert.assertEquals(2, result.length);
+		Assert.assertEquals(0, result[0]);
+		Assert.assertEquals(19, result[1]);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.overlay;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.core.GeoPoint;
+
+/**
+ * Tests the {@link OverlayPolyline} class.
+ */
+public class OverlayPolylineTest {
+	private static final int NUMBER_OF_NODES = 1000;
+
+	private static GeoPoint[] createTrack(int numberOfNodes) {
+		Random random = new Random(42);
+		GeoPoint[] geoPoints = new GeoPoint[numberOfNodes];
+		double latitude = 52.5;
+		double longitude = 13.4;
+		for (int i = 0; i < numberOfNodes; ++i) {
+			latitude += (random.nextDouble() - 0.5) * 0.001;
+			longitude += random.nextDouble() * 0.001;
+			geoPoints[i] = new GeoPoint(latitude, longitude);
+		}
+		return geoPoints;
+	}
+
+	/**
+	 * Tests that appending way nodes gives the same result as creating the polyline at once.
+	 */
+	@Test
+	public void appendTest() {
+		GeoPoint[] geoPoints = createTrack(NUMBER_OF_NODES);
+		OverlayPolyline expectedPolyline = new OverlayPolyline(geoPoints);
+
+		OverlayPolyline overlayPolyline = new OverlayPolyline(new GeoPoint[0]);
+		for (int i = 0; i < geoPoints.length; ++i) {
+			overlayPolyline.add(geoPoints[i]);
+			if (i % 97 == 0) {
+				// simplify while appending to fill the caches of the complete blocks
+				overlayPolyline.simplify((byte) 10);
+			}
+		}
+
+		Assert.assertEquals(NUMBER_OF_NODES, overlayPolyline.size());
+		for (byte zoomLevel = 0; zoomLevel <= 20; zoomLevel += 5) {
+			int[] expected = expectedPolyline.simplify(zoomLevel);
+			int[] actual = overlayPolyline.simplify(zoomLevel);
+			Assert.assertEquals(expected.length, actual.length);
+			for (int i = 0; i < expected.length; ++i) {
+				Assert.assertEquals(expected[i], actual[i]);
+			}
+		}
+
+		GeoPoint[] actualGeoPoints = overlayPolyline.getGeoPoints();
+		Assert.assertEquals(geoPoints.length, actualGeoPoints.length);
+		Assert.assertSame(geoPoints[NUMBER_OF_NODES - 1], actualGeoPoints[NUMBER_OF_NODES - 1]);
+		Assert.assertEquals(expectedPolyline.getMinX(), overlayPolyline.getMinX(), 0);
+		Assert.assertEquals(expectedPolyline.getMaxY(), overlayPolyline.getMaxY(), 0);
+	}
+
+	/**
+	 * Tests the simplification on different zoom levels.
+	 */
+	@Test
+	public void simplifyTest() {
+		OverlayPolyline overlayPolyline = new OverlayPolyline(createTrack(NUMBER_OF_NODES));
+
+		int previousLength = 0;
+		for (byte zoomLevel = 0; zoomLevel <= 24; zoomLevel += 4) {
+			int[] simplification = overlayPolyline.simplify(zoomLevel);
+			// the first and the last node must always be kept
+			Assert.assertEquals(0, simplification[0]);
+			Assert.assertEquals(NUMBER_OF_NODES - 1, simplification[simplification.length - 1]);
+			for (int i = 1; i < simplification.length; ++i) {
+				Assert.assertTrue(simplification[i - 1] < simplification[i]);
+			}
+			Assert.assertTrue(simplification.length >= previousLength);
+			previousLength = simplification.length;
+		}
+
+		// a random track is hardly simplified at a high zoom level but much at a low one
+		Assert.assertTrue(overlayPolyline.simplify((byte) 24).length > NUMBER_OF_NODES * 9 / 10);
+		Assert.assertTrue(overlayPolyline.simplify((byte) 4).length < NUMBER_OF_NODES / 10);
+
+		// a straight line is reduced to the shared nodes of its blocks
+		GeoPoint[] line = new GeoPoint[NUMBER_OF_NODES];
+		for (int i = 0; i < NUMBER_OF_NODES; ++i) {
+			line[i] = new GeoPoint(0, i * 0.001);
+		}
+		int blocks = (NUMBER_OF_NODES - 2) / OverlayPolyline.BLOCK_SIZE + 1;
+		Assert.assertEquals(blocks + 1, new OverlayPolyline(line).simplify((byte) 18).length);
+	}
+}